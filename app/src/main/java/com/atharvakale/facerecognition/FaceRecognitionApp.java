@@ -0,0 +1,25 @@
+package com.atharvakale.facerecognition;
+
+import android.app.Application;
+
+import com.atharvakale.facerecognition.startup.StartupOrchestrator;
+
+/**
+ * Application entry point
+ * Kicks off background preloading of the recognition pipeline as soon as the process starts
+ */
+public class FaceRecognitionApp extends Application {
+
+    private StartupOrchestrator startupOrchestrator;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        startupOrchestrator = new StartupOrchestrator(this);
+        startupOrchestrator.start();
+    }
+
+    public StartupOrchestrator getStartupOrchestrator() {
+        return startupOrchestrator;
+    }
+}
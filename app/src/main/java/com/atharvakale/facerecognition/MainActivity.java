@@ -6,16 +6,26 @@ import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.drawable.BitmapDrawable;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.text.Editable;
 import android.text.InputType;
+import android.text.TextWatcher;
 import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.ImageView;
+import android.widget.LinearLayout;
+import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -26,11 +36,29 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.camera.core.ImageProxy;
 import androidx.camera.view.PreviewView;
 
+import com.atharvakale.facerecognition.control.ControlServers;
+import com.atharvakale.facerecognition.control.KioskControlServer;
+import com.atharvakale.facerecognition.data.thumbnails.ThumbnailCache;
+import com.atharvakale.facerecognition.features.face.AutotuneController;
 import com.atharvakale.facerecognition.features.face.FaceRecognitionManager;
+import com.atharvakale.facerecognition.features.face.IdentityDirectory;
+import com.atharvakale.facerecognition.features.face.RecognitionResult;
+import com.atharvakale.facerecognition.features.face.RecognitionResultPublisher;
 import com.atharvakale.facerecognition.hardware.CameraManager;
+import com.atharvakale.facerecognition.ml.InferenceProfile;
+import com.atharvakale.facerecognition.ml.ModelConfig;
+import com.atharvakale.facerecognition.pipeline.ChoreographerFrameClock;
+import com.atharvakale.facerecognition.pipeline.ResultStream;
+import com.atharvakale.facerecognition.startup.StartupOrchestrator;
 
+import java.io.File;
 import java.io.FileDescriptor;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class MainActivity extends AppCompatActivity {
     
@@ -41,10 +69,31 @@ public class MainActivity extends AppCompatActivity {
     private Button recognize, camera_switch, actions;
     private ImageButton add_face;
     
-    // Modular Components
-    private FaceRecognitionManager faceRecognitionManager;
+    // Modular Components (the manager arrives from the startup orchestrator after onCreate)
+    private volatile FaceRecognitionManager faceRecognitionManager;
+    private ControlServers controlServers;
+    private AutotuneController autotuneController;
     private CameraManager cameraManager;
     
+    // Results of the pipeline, applied at most once per display frame
+    private ResultStream<String, RecognitionResult> resultStream;
+    private RecognitionResultPublisher resultPublisher;
+    private final ResultStream.Subscriber<String, RecognitionResult> resultSubscriber = this::showResults;
+    private String lastErrorMessage;
+    private long lastErrorToastMs;
+    private final StartupOrchestrator.ManagerCallback managerCallback = new StartupOrchestrator.ManagerCallback() {
+        @Override
+        public void onReady(FaceRecognitionManager manager) {
+            onManagerReady(manager);
+        }
+        
+        @Override
+        public void onError(String error) {
+            Toast.makeText(MainActivity.this, "Failed to initialize recognition system: " + error,
+                          Toast.LENGTH_LONG).show();
+        }
+    };
+    
     // Constants
     private static final int SELECT_PICTURE = 1;
     private static final int MY_CAMERA_REQUEST_CODE = 100;
@@ -79,19 +128,60 @@ public class MainActivity extends AppCompatActivity {
     }
     
     private void initializeModularComponents() {
+        // Frames publish to the stream; only the latest result per face reaches the UI each frame
+        resultStream = new ResultStream<>(new ChoreographerFrameClock(), ModelConfig.FaceRecognition.RESULT_STREAM_MAX_KEYS);
+        resultStream.subscribe(resultSubscriber);
+        resultPublisher = new RecognitionResultPublisher(resultStream, 0);
+        
+        // Initialize Camera Manager; frames are dropped until the recognition manager arrives
+        cameraManager = new CameraManager(this);
+        cameraManager.initialize(previewView);
+        
+        // Take the Face Recognition Manager preloaded during the splash screen without blocking
+        // the main thread; the orchestrator falls back to building one in the background
+        FaceRecognitionApp app = (FaceRecognitionApp) getApplication();
+        app.getStartupOrchestrator().requestFaceRecognitionManager(managerCallback);
+    }
+    
+    private void onManagerReady(FaceRecognitionManager manager) {
+        faceRecognitionManager = manager;
+        controlServers = new ControlServers(manager);
+        autotuneController = new AutotuneController(manager);
+        manager.addModelSwitchListener(autotuneController);
         try {
-            // Initialize Face Recognition Manager
-            faceRecognitionManager = new FaceRecognitionManager(this);
+            controlServers.addMetricsSource(resultPublisher);
             
-            // Initialize Camera Manager
-            cameraManager = new CameraManager(this);
-            cameraManager.initialize(previewView);
+            // Metrics and remote control for kiosks without anyone at the screen, once enabled
+            startControlServer();
+            
+            // Use the analysis resolution tuned for this device; tune on first launch or after a model change
+            InferenceProfile profile = manager.getInferenceProfile();
+            if (profile != null) {
+                cameraManager.setAnalysisResolution(profile.analysisWidth, profile.analysisHeight);
+            }
+            autotuneController.autotuneIfNeeded(new AutotuneController.Callback() {
+                @Override
+                public void onTuned(InferenceProfile tuned) {
+                    runOnUiThread(() -> {
+                        cameraManager.setAnalysisResolution(tuned.analysisWidth, tuned.analysisHeight);
+                        startCamera();
+                    });
+                }
+                
+                @Override
+                public void onError(String error) {
+                    // Keep the default configuration
+                }
+            });
             
         } catch (Exception e) {
             e.printStackTrace();
             Toast.makeText(this, "Failed to initialize recognition system: " + e.getMessage(), 
                           Toast.LENGTH_LONG).show();
         }
+        if (checkSelfPermission(Manifest.permission.CAMERA) == PackageManager.PERMISSION_GRANTED) {
+            startCamera();
+        }
     }
     
     private void checkCameraPermission() {
@@ -121,53 +211,63 @@ public class MainActivity extends AppCompatActivity {
     }
     
     private void processFrame(@NonNull ImageProxy imageProxy) {
-        if (faceRecognitionManager != null) {
-            faceRecognitionManager.processFrame(imageProxy, cameraManager.shouldFlipX(), 
-                new FaceRecognitionManager.FaceRecognitionCallback() {
-                    @Override
-                    public void onFaceRecognized(String name, float distance, boolean isKnown) {
-                        runOnUiThread(() -> reco_name.setText(name));
-                    }
-                    
-                    @Override
-                    public void onNoFaceDetected() {
-                        runOnUiThread(() -> {
-                            if (faceRecognitionManager.hasRegisteredFaces()) {
-                                reco_name.setText("No Face Detected!");
-                            } else {
-                                reco_name.setText("Add Face");
-                            }
-                        });
-                    }
-                    
-                    @Override
-                    public void onFaceReadyForRegistration(Bitmap faceBitmap) {
-                        runOnUiThread(() -> face_preview.setImageBitmap(faceBitmap));
-                    }
-                    
-                    @Override
-                    public void onFaceRegistered(String name, boolean success) {
-                        runOnUiThread(() -> {
-                            if (success) {
-                                Toast.makeText(MainActivity.this, "Face registered: " + name, Toast.LENGTH_SHORT).show();
-                                toggleRecognitionMode(); // Switch back to recognition mode
-                            } else {
-                                Toast.makeText(MainActivity.this, "Failed to register face", Toast.LENGTH_SHORT).show();
-                            }
-                        });
-                    }
-                    
-                    @Override
-                    public void onError(String error) {
-                        runOnUiThread(() -> Toast.makeText(MainActivity.this, "Error: " + error, Toast.LENGTH_SHORT).show());
-                    }
-                });
+        FaceRecognitionManager manager = faceRecognitionManager;
+        if (manager != null) {
+            manager.processFrame(imageProxy, cameraManager.shouldFlipX(), resultPublisher);
         } else {
             // Close imageProxy if no face recognition manager
             imageProxy.close();
         }
     }
     
+    /**
+     * Apply the latest results of the pipeline (once per display frame, on the UI thread)
+     */
+    private void showResults(Map<String, RecognitionResult> latest) {
+        for (RecognitionResult result : latest.values()) {
+            switch (result.kind) {
+                case FACE:
+                    // Not known yet may only mean not loaded yet
+                    reco_name.setText(result.isProvisional && !result.isKnown ? "Loading faces..." : result.name);
+                    break;
+                case NO_FACE:
+                    if (faceRecognitionManager.hasRegisteredFaces() || faceRecognitionManager.isGalleryLoading()) {
+                        reco_name.setText("No Face Detected!");
+                    } else {
+                        reco_name.setText("Add Face");
+                    }
+                    break;
+                case PREVIEW:
+                    face_preview.setImageBitmap(result.bitmap);
+                    break;
+                case REGISTERED:
+                    if (result.success) {
+                        Toast.makeText(this, "Face registered: " + result.name, Toast.LENGTH_SHORT).show();
+                        toggleRecognitionMode(); // Switch back to recognition mode
+                    } else {
+                        Toast.makeText(this, "Failed to register face", Toast.LENGTH_SHORT).show();
+                    }
+                    break;
+                case ERROR:
+                    showError(result.message);
+                    break;
+            }
+        }
+    }
+    
+    /**
+     * Toast an error unless the same one is still on screen
+     */
+    private void showError(String message) {
+        long now = SystemClock.uptimeMillis();
+        if (message.equals(lastErrorMessage) && now - lastErrorToastMs < ModelConfig.FaceRecognition.ERROR_TOAST_INTERVAL_MS) {
+            return;
+        }
+        lastErrorMessage = message;
+        lastErrorToastMs = now;
+        Toast.makeText(this, "Error: " + message, Toast.LENGTH_SHORT).show();
+    }
+    
     private void showActionsDialog() {
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setTitle("Select Action:");
@@ -180,7 +280,8 @@ public class MainActivity extends AppCompatActivity {
             "Clear All Recognitions", 
             "Import Photo (Beta)", 
             "Hyperparameters", 
-            "Developer Mode"
+            "Developer Mode",
+            "Kiosk Endpoint"
         };
         
         builder.setItems(actions, (dialog, which) -> {
@@ -193,6 +294,7 @@ public class MainActivity extends AppCompatActivity {
                 case 5: importPhoto(); break;
                 case 6: adjustHyperparameters(); break;
                 case 7: toggleDeveloperMode(); break;
+                case 8: configureKioskEndpoint(); break;
             }
         });
         
@@ -244,33 +346,7 @@ public class MainActivity extends AppCompatActivity {
         builder.setPositiveButton("ADD", (dialog, which) -> {
             String name = input.getText().toString().trim();
             if (!name.isEmpty() && faceRecognitionManager != null) {
-                faceRecognitionManager.registerFace(name, new FaceRecognitionManager.FaceRecognitionCallback() {
-                    @Override
-                    public void onFaceRecognized(String name, float distance, boolean isKnown) {}
-                    
-                    @Override
-                    public void onNoFaceDetected() {}
-                    
-                    @Override
-                    public void onFaceReadyForRegistration(Bitmap faceBitmap) {}
-                    
-                    @Override
-                    public void onFaceRegistered(String registeredName, boolean success) {
-                        runOnUiThread(() -> {
-                            if (success) {
-                                Toast.makeText(MainActivity.this, "Face registered: " + registeredName, Toast.LENGTH_SHORT).show();
-                                toggleRecognitionMode();
-                            } else {
-                                Toast.makeText(MainActivity.this, "Failed to register face", Toast.LENGTH_SHORT).show();
-                            }
-                        });
-                    }
-                    
-                    @Override
-                    public void onError(String error) {
-                        runOnUiThread(() -> Toast.makeText(MainActivity.this, "Error: " + error, Toast.LENGTH_SHORT).show());
-                    }
-                });
+                faceRecognitionManager.registerFace(name, resultPublisher);
             }
         });
         
@@ -278,52 +354,206 @@ public class MainActivity extends AppCompatActivity {
         builder.show();
     }
     private void displayRecognitionList() {
-        if (faceRecognitionManager != null) {
-            String[] names = faceRecognitionManager.getRegisteredFaceNames();
+        showIdentityDirectory(false);
+    }
+    
+    private void updateRecognitionList() {
+        showIdentityDirectory(true);
+    }
+    
+    /**
+     * Searchable list of registered names, loaded one page at a time while scrolling
+     * @param selectForDeletion Show check boxes and delete the checked names as one batch
+     */
+    private void showIdentityDirectory(boolean selectForDeletion) {
+        if (faceRecognitionManager == null) {
+            return;
+        }
+        IdentityDirectory directory = faceRecognitionManager.getIdentityDirectory();
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        if (directory.size() == 0) {
+            builder.setTitle("No Faces Added!!");
+            builder.setPositiveButton("OK", null);
+            builder.show();
+            return;
+        }
+        
+        EditText search = new EditText(this);
+        search.setHint("Search " + directory.size() + " names");
+        ListView list = new ListView(this);
+        LinearLayout layout = new LinearLayout(this);
+        layout.setOrientation(LinearLayout.VERTICAL);
+        layout.addView(search);
+        layout.addView(list);
+        
+        IdentityPager pager = new IdentityPager(directory, faceRecognitionManager.getThumbnailCache(), list,
+            selectForDeletion);
+        search.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
             
-            AlertDialog.Builder builder = new AlertDialog.Builder(this);
-            if (names.length == 0) {
-                builder.setTitle("No Faces Added!!");
-            } else {
-                builder.setTitle("Recognitions:");
-                builder.setItems(names, null);
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+            
+            @Override
+            public void afterTextChanged(Editable s) {
+                pager.setPrefix(s.toString().trim());
             }
+        });
+        
+        builder.setView(layout);
+        if (selectForDeletion) {
+            builder.setTitle("Select Recognition to delete:");
+            builder.setPositiveButton("Delete", (dialog, which) -> {
+                faceRecognitionManager.deleteFaces(new ArrayList<>(pager.selected), (names, success) ->
+                    runOnUiThread(() -> Toast.makeText(this, success
+                        ? names.size() + " Recognitions Deleted" : "Failed to delete",
+                        Toast.LENGTH_SHORT).show()));
+            });
+            builder.setNegativeButton("Cancel", null);
+        } else {
+            builder.setTitle("Recognitions:");
             builder.setPositiveButton("OK", null);
-            builder.show();
         }
+        builder.show();
     }
     
-    private void updateRecognitionList() {
-        if (faceRecognitionManager != null) {
-            String[] names = faceRecognitionManager.getRegisteredFaceNames();
-            
-            AlertDialog.Builder builder = new AlertDialog.Builder(this);
-            if (names.length == 0) {
-                builder.setTitle("No Faces Added!!");
-                builder.setPositiveButton("OK", null);
-            } else {
-                builder.setTitle("Select Recognition to delete:");
-                
-                boolean[] checkedItems = new boolean[names.length];
-                builder.setMultiChoiceItems(names, checkedItems, 
-                    (dialog, which, isChecked) -> checkedItems[which] = isChecked);
-                
-                builder.setPositiveButton("OK", (dialog, which) -> {
-                    for (int i = 0; i < checkedItems.length; i++) {
-                        if (checkedItems[i]) {
-                            faceRecognitionManager.deleteFace(names[i]);
-                        }
+    /**
+     * Feeds a list view from the identity directory; the next page is queried when the list is
+     * scrolled near its end, and checked names are remembered across searches
+     * Rows show the face thumbnail once decoded; rows just off screen are decoded ahead of time
+     */
+    private class IdentityPager implements AbsListView.OnScrollListener {
+        private final IdentityDirectory directory;
+        private final ThumbnailCache thumbnails;
+        private final ListView list;
+        private final ArrayAdapter<String> adapter;
+        private final boolean checkable;
+        private final Set<String> selected = new HashSet<>();
+        private final Set<String> requested = new HashSet<>();
+        private String prefix = "";
+        private int loaded;
+        private int total;
+        private int prefetchedFrom = -1;
+        
+        IdentityPager(IdentityDirectory directory, ThumbnailCache thumbnails, ListView list, boolean checkable) {
+            this.directory = directory;
+            this.thumbnails = thumbnails;
+            this.list = list;
+            this.checkable = checkable;
+            this.adapter = new ArrayAdapter<String>(MainActivity.this, checkable
+                ? android.R.layout.simple_list_item_multiple_choice
+                : android.R.layout.simple_list_item_1, new ArrayList<>()) {
+                @Override
+                public View getView(int position, View convertView, ViewGroup parent) {
+                    View row = super.getView(position, convertView, parent);
+                    bindThumbnail((TextView) row, getItem(position));
+                    return row;
+                }
+            };
+            list.setAdapter(adapter);
+            list.setOnScrollListener(this);
+            if (checkable) {
+                list.setChoiceMode(AbsListView.CHOICE_MODE_MULTIPLE);
+                list.setOnItemClickListener((parent, view, position, id) -> {
+                    String name = adapter.getItem(position);
+                    if (list.isItemChecked(position)) {
+                        selected.add(name);
+                    } else {
+                        selected.remove(name);
                     }
-                    Toast.makeText(this, "Recognitions Updated", Toast.LENGTH_SHORT).show();
                 });
-                builder.setNegativeButton("Cancel", null);
             }
-            builder.show();
+            loadNextPage();
+        }
+        
+        void setPrefix(String prefix) {
+            this.prefix = prefix;
+            adapter.clear();
+            loaded = 0;
+            prefetchedFrom = -1;
+            loadNextPage();
+        }
+        
+        /**
+         * Show the cached thumbnail, or a blank one while it is decoded in the background
+         */
+        private void bindThumbnail(TextView row, String name) {
+            if (thumbnails == null) {
+                return;
+            }
+            Bitmap thumbnail = thumbnails.get(name);
+            row.setCompoundDrawablePadding(16);
+            row.setCompoundDrawablesWithIntrinsicBounds(
+                thumbnail != null ? new BitmapDrawable(getResources(), thumbnail) : null, null, null, null);
+            if (thumbnail == null && requested.add(name)) {
+                thumbnails.request(name, (loadedName, bitmap) -> runOnUiThread(() -> {
+                    if (bitmap != null) {
+                        // Decode again if it is evicted later; names without a thumbnail are not retried
+                        requested.remove(loadedName);
+                        adapter.notifyDataSetChanged();
+                    }
+                }));
+            }
+        }
+        
+        private void loadNextPage() {
+            IdentityDirectory.Page page = directory.query(prefix, loaded,
+                ModelConfig.FaceRecognition.DIRECTORY_PAGE_SIZE, IdentityDirectory.Order.RECENTLY_SEEN);
+            adapter.addAll(page.names);
+            if (checkable) {
+                for (int i = 0; i < page.names.size(); i++) {
+                    list.setItemChecked(loaded + i, selected.contains(page.names.get(i)));
+                }
+            }
+            loaded += page.names.size();
+            total = page.total;
+        }
+        
+        @Override
+        public void onScrollStateChanged(AbsListView view, int scrollState) {
+        }
+        
+        @Override
+        public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+            if (loaded < total && firstVisibleItem + visibleItemCount >= totalItemCount - visibleItemCount) {
+                loadNextPage();
+            }
+            if (thumbnails != null && firstVisibleItem != prefetchedFrom) {
+                prefetchedFrom = firstVisibleItem;
+                thumbnails.prefetch(rowsAround(firstVisibleItem, visibleItemCount,
+                    ModelConfig.FaceRecognition.THUMBNAIL_PREFETCH_ROWS));
+            }
+        }
+        
+        /**
+         * Names of the rows just below and above the visible ones, nearest first
+         */
+        private List<String> rowsAround(int first, int visible, int rows) {
+            List<String> names = new ArrayList<>();
+            int count = adapter.getCount();
+            for (int i = 0; i < rows; i++) {
+                int below = first + visible + i;
+                int above = first - 1 - i;
+                if (below < count) {
+                    names.add(adapter.getItem(below));
+                }
+                if (above >= 0) {
+                    names.add(adapter.getItem(above));
+                }
+            }
+            return names;
         }
     }
     
     private void saveRecognitions() {
         if (faceRecognitionManager != null) {
+            if (faceRecognitionManager.isGalleryLoading()) {
+                Toast.makeText(this, "Gallery is still loading", Toast.LENGTH_SHORT).show();
+                return;
+            }
             boolean success = faceRecognitionManager.saveAllFaces();
             Toast.makeText(this, success ? "Recognitions Saved" : "Failed to save", Toast.LENGTH_SHORT).show();
         }
@@ -389,7 +619,78 @@ public class MainActivity extends AppCompatActivity {
         if (faceRecognitionManager != null) {
             boolean currentMode = faceRecognitionManager.isDeveloperMode();
             faceRecognitionManager.setDeveloperMode(!currentMode);
-            Toast.makeText(this, "Developer Mode " + (!currentMode ? "ON" : "OFF"), Toast.LENGTH_SHORT).show();
+            String message = "Developer Mode " + (!currentMode ? "ON" : "OFF");
+            KioskControlServer controlServer = controlServers.getControlServer();
+            if (!currentMode && controlServer != null) {
+                message += "\nControl endpoint " + faceRecognitionManager.getControlHost() + ":" + controlServer.getPort();
+            }
+            Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+        }
+    }
+    
+    private void configureKioskEndpoint() {
+        if (faceRecognitionManager == null) {
+            return;
+        }
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Kiosk Endpoint");
+        
+        LinearLayout layout = new LinearLayout(this);
+        layout.setOrientation(LinearLayout.VERTICAL);
+        
+        final CheckBox enabled = new CheckBox(this);
+        enabled.setText("Serve metrics and control on port " + ModelConfig.Control.PORT);
+        enabled.setChecked(faceRecognitionManager.isControlEnabled());
+        layout.addView(enabled);
+        
+        final CheckBox replayClips = new CheckBox(this);
+        replayClips.setText("Record camera frames for replay clips");
+        replayClips.setChecked(faceRecognitionManager.isReplayClipsEnabled());
+        layout.addView(replayClips);
+        
+        final EditText host = new EditText(this);
+        host.setHint("Address to bind (" + ModelConfig.Control.HOST + " = this device only)");
+        host.setText(faceRecognitionManager.getControlHost());
+        layout.addView(host);
+        
+        // Write-only: the current token is never shown
+        final EditText token = new EditText(this);
+        token.setInputType(InputType.TYPE_CLASS_TEXT | InputType.TYPE_TEXT_VARIATION_PASSWORD);
+        token.setHint("New bearer token (blank keeps the current one)");
+        layout.addView(token);
+        
+        builder.setView(layout);
+        
+        builder.setPositiveButton("Save", (dialog, which) -> {
+            String address = host.getText().toString().trim();
+            String secret = token.getText().toString().trim();
+            if (!secret.isEmpty()) {
+                faceRecognitionManager.setControlToken(secret);
+            }
+            faceRecognitionManager.setControlSettings(enabled.isChecked(),
+                address.isEmpty() ? ModelConfig.Control.HOST : address, replayClips.isChecked());
+            controlServers.stopControlServer();
+            startControlServer();
+        });
+        
+        builder.setNegativeButton("Cancel", null);
+        builder.show();
+    }
+    
+    /**
+     * Start the control endpoint if the kiosk settings enable it
+     */
+    private void startControlServer() {
+        FaceRecognitionManager manager = faceRecognitionManager;
+        if (!manager.isControlEnabled()) {
+            return;
+        }
+        File clipDirectory = manager.isReplayClipsEnabled()
+            ? new File(getFilesDir(), ModelConfig.Control.CLIP_DIRECTORY) : null;
+        if (!controlServers.startControlServer(manager.getControlHost(), ModelConfig.Control.PORT,
+                manager.getControlToken(), clipDirectory)) {
+            Toast.makeText(this, "Control endpoint unavailable on port " + ModelConfig.Control.PORT,
+                          Toast.LENGTH_SHORT).show();
         }
     }
     @Override
@@ -437,8 +738,12 @@ public class MainActivity extends AppCompatActivity {
     protected void onDestroy() {
         super.onDestroy();
         
-        // Cleanup modular components
+        // Cleanup modular components; a manager still on its way is closed by the orchestrator
+        ((FaceRecognitionApp) getApplication()).getStartupOrchestrator().cancel(managerCallback);
+        resultStream.unsubscribe(resultSubscriber);
         if (faceRecognitionManager != null) {
+            controlServers.stop();
+            faceRecognitionManager.removeModelSwitchListener(autotuneController);
             faceRecognitionManager.cleanup();
         }
         
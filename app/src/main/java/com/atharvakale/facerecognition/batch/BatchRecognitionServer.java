@@ -0,0 +1,183 @@
+package com.atharvakale.facerecognition.batch;
+
+import com.atharvakale.facerecognition.control.NioHttpServer;
+import com.atharvakale.facerecognition.diagnostics.LatencyHistogram;
+import com.atharvakale.facerecognition.diagnostics.MetricsSource;
+import com.atharvakale.facerecognition.diagnostics.MetricsWriter;
+import com.atharvakale.facerecognition.features.face.FaceGallery;
+import com.atharvakale.facerecognition.features.face.NearestMatches;
+import com.atharvakale.facerecognition.features.face.ParallelGalleryMatcher;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Headless recognition of uploaded snapshots with the same model, gallery and threshold as
+ * the kiosks
+ * <pre>
+ * POST /recognize   RecognitionCodec request of aligned crops or embeddings, results in the same order
+ * GET  /metrics     batching and request latency, Prometheus text format
+ * GET  /healthz     "ok" while the server runs (no token)
+ * </pre>
+ * Recognition and metrics need "Authorization: Bearer &lt;token&gt;": the server answers with the
+ * gallery's names to anyone who can reach it.
+ * Crops from concurrent requests are embedded together (EmbeddingBatcher); each request is then
+ * matched exactly against the current gallery for its nearest and second nearest identities.
+ * Request handlers wait for their batch, so the worker pool bounds how many requests can share one.
+ */
+public class BatchRecognitionServer implements MetricsSource {
+    private final EmbeddingEngine engine;
+    private final GalleryProvider galleryProvider;
+    private final EmbeddingBatcher batcher;
+    private final ParallelGalleryMatcher matcher;
+    private final int maxItems;
+    private final long timeoutMs;
+    private final NioHttpServer server;
+    private final LatencyHistogram requestLatency = new LatencyHistogram();
+    private final AtomicLong recognized = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Gallery and threshold to match against, read for every request
+     */
+    public interface GalleryProvider {
+        FaceGallery getGallery();
+
+        float getSimilarityThreshold();
+    }
+
+    /**
+     * @param maxDelayMs Longest a crop waits for others to share its batch
+     * @param maxItems Crops or embeddings per request at most
+     * @param timeoutMs Longest a request waits for its embeddings
+     * @param token Bearer token required for /recognize and /metrics
+     * @throws IllegalArgumentException if the token is null or empty
+     */
+    public BatchRecognitionServer(EmbeddingEngine engine, GalleryProvider galleryProvider, ParallelGalleryMatcher matcher,
+                                  long maxDelayMs, int maxItems, long timeoutMs, String token) {
+        if (token == null || token.isEmpty()) {
+            throw new IllegalArgumentException("The batch server needs a bearer token");
+        }
+        this.engine = engine;
+        this.galleryProvider = galleryProvider;
+        this.matcher = matcher;
+        this.maxItems = maxItems;
+        this.timeoutMs = timeoutMs;
+        this.batcher = new EmbeddingBatcher(engine, maxDelayMs);
+        int cropBytes = engine.getInputSize() * engine.getInputSize() * 3;
+        this.server = new NioHttpServer("batch-server", token, 1024 + maxItems * Math.max(cropBytes, engine.getDimension() * 4));
+        server.route("POST", "/recognize", this::handleRecognize, true);
+        server.route("GET", "/metrics", request -> {
+            MetricsWriter writer = new MetricsWriter("facerec_");
+            collect(writer);
+            return new NioHttpServer.Response(200, MetricsWriter.CONTENT_TYPE,
+                writer.toString().getBytes(StandardCharsets.UTF_8));
+        }, true);
+        server.route("GET", "/healthz", request -> NioHttpServer.Response.text(200, "ok"), false);
+    }
+
+    /**
+     * @param host Address to bind, null for all interfaces
+     * @param port Port to bind, 0 for any free port
+     * @param workerThreads Requests handled at once; more than the batch size cannot share a batch
+     * @return true if the server is listening
+     */
+    public boolean start(String host, int port, int workerThreads) {
+        return server.start(host, port, workerThreads);
+    }
+
+    public void stop() {
+        server.stop();
+        batcher.shutdown();
+    }
+
+    public int getPort() {
+        return server.getPort();
+    }
+
+    private NioHttpServer.Response handleRecognize(NioHttpServer.Request request) throws Exception {
+        long start = System.nanoTime();
+        RecognitionCodec.Request batch;
+        try {
+            batch = RecognitionCodec.readRequest(new ByteArrayInputStream(request.body), maxItems);
+        } catch (IOException e) {
+            rejected.incrementAndGet();
+            return NioHttpServer.Response.text(400, e.getMessage());
+        }
+        // Embeddings of another model are not comparable with the gallery
+        String fingerprint = engine.getFingerprint();
+        if (fingerprint == null) {
+            return NioHttpServer.Response.text(503, "Model not loaded");
+        }
+        if (!batch.fingerprint.isEmpty() && !batch.fingerprint.equals(fingerprint)) {
+            rejected.incrementAndGet();
+            return NioHttpServer.Response.text(409, "Model mismatch");
+        }
+        List<RecognitionCodec.Result> results;
+        if (batch.kind == RecognitionCodec.CROPS) {
+            if (batch.size != engine.getInputSize()) {
+                rejected.incrementAndGet();
+                return NioHttpServer.Response.text(400, "Crops must be " + engine.getInputSize() + " pixels square");
+            }
+            results = recognizeCrops(batch.crops);
+        } else {
+            if (batch.size != engine.getDimension()) {
+                rejected.incrementAndGet();
+                return NioHttpServer.Response.text(400, "Embeddings must have " + engine.getDimension() + " dimensions");
+            }
+            results = recognizeEmbeddings(batch.embeddings);
+        }
+        if (results == null) {
+            return NioHttpServer.Response.text(503, "Embedding failed or timed out");
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        RecognitionCodec.writeResults(results, body);
+        requestLatency.recordNanos(System.nanoTime() - start);
+        return new NioHttpServer.Response(200, RecognitionCodec.CONTENT_TYPE, body.toByteArray());
+    }
+
+    /**
+     * Embed and match crops on the calling thread, batched with other callers
+     * @return Results in crop order, or null if embedding failed or timed out
+     */
+    public List<RecognitionCodec.Result> recognizeCrops(List<byte[]> crops) throws InterruptedException {
+        float[][] embeddings = batcher.embed(crops, timeoutMs);
+        return embeddings != null ? recognizeEmbeddings(embeddings) : null;
+    }
+
+    /**
+     * Match embeddings against the current gallery
+     */
+    public List<RecognitionCodec.Result> recognizeEmbeddings(float[][] embeddings) {
+        FaceGallery gallery = galleryProvider.getGallery();
+        float threshold = galleryProvider.getSimilarityThreshold();
+        List<RecognitionCodec.Result> results = new ArrayList<>(embeddings.length);
+        for (float[] embedding : embeddings) {
+            NearestMatches matches = matcher.findNearest(gallery, embedding, 2);
+            String nearest = matches.size() > 0 ? matches.getName(0) : "";
+            float distance = matches.size() > 0 ? matches.getDistance(0) : Float.MAX_VALUE;
+            String second = matches.size() > 1 ? matches.getName(1) : "";
+            float secondDistance = matches.size() > 1 ? matches.getDistance(1) : Float.MAX_VALUE;
+            results.add(new RecognitionCodec.Result(nearest, distance, second, secondDistance, distance < threshold));
+        }
+        recognized.addAndGet(embeddings.length);
+        return results;
+    }
+
+    public EmbeddingBatcher getBatcher() {
+        return batcher;
+    }
+
+    @Override
+    public void collect(MetricsWriter writer) {
+        batcher.collect(writer);
+        writer.counter("recognize_items_total", "Crops and embeddings matched", recognized.get());
+        writer.counter("recognize_rejected_total", "Malformed or incompatible requests", rejected.get());
+        writer.summary("recognize_request_seconds", "Time per recognition request", requestLatency, requestLatency);
+        writer.gauge("gallery_identities", "Identities matched against", galleryProvider.getGallery().size());
+    }
+}
@@ -0,0 +1,239 @@
+package com.atharvakale.facerecognition.batch;
+
+import com.atharvakale.facerecognition.diagnostics.LatencyHistogram;
+import com.atharvakale.facerecognition.diagnostics.MetricsSource;
+import com.atharvakale.facerecognition.diagnostics.MetricsWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces crops from concurrent requests into batched engine calls
+ * A batch is dispatched as soon as it is full, or when its oldest crop has waited the maximum
+ * delay, whichever comes first: a lone request pays at most the delay, while under load every
+ * call is a full batch. Crops of one request may be split over consecutive batches.
+ */
+public class EmbeddingBatcher implements MetricsSource {
+    private final EmbeddingEngine engine;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final Thread dispatcher;
+    private final LatencyHistogram queueLatency = new LatencyHistogram();
+    private final LatencyHistogram inferenceLatency = new LatencyHistogram();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong items = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+
+    // Guarded by queue
+    private final ArrayDeque<Item> queue = new ArrayDeque<>();
+    private boolean running = true;
+
+    private static class Item {
+        final Job job;
+        final int index;
+        final byte[] crop;
+        final long enqueuedNanos;
+
+        Item(Job job, int index, byte[] crop, long enqueuedNanos) {
+            this.job = job;
+            this.index = index;
+            this.crop = crop;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+
+    /**
+     * Embeddings of one caller's crops, filled in by the dispatcher
+     */
+    private static class Job {
+        final float[][] embeddings;
+        int remaining;
+        boolean failed;
+
+        Job(int count) {
+            this.embeddings = new float[count][];
+            this.remaining = count;
+        }
+
+        synchronized void complete(int index, float[] embedding) {
+            if (embedding == null) {
+                failed = true;
+            } else {
+                embeddings[index] = embedding;
+            }
+            if (--remaining == 0) {
+                notifyAll();
+            }
+        }
+
+        synchronized float[][] await(long timeoutNanos) throws InterruptedException {
+            long deadline = System.nanoTime() + timeoutNanos;
+            while (remaining > 0) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    return null;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, left);
+            }
+            return failed ? null : embeddings;
+        }
+    }
+
+    /**
+     * @param maxDelayMs Longest a crop waits for others to share its batch
+     */
+    public EmbeddingBatcher(EmbeddingEngine engine, long maxDelayMs) {
+        this.engine = engine;
+        this.maxBatch = engine.getMaxBatchSize();
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+        this.dispatcher = new Thread(this::dispatchLoop, "embedding-batcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Embed crops, waiting for the batches they are part of
+     * @return One embedding per crop, or null if inference failed, timed out or the batcher stopped
+     */
+    public float[][] embed(List<byte[]> crops, long timeoutMs) throws InterruptedException {
+        if (crops.isEmpty()) {
+            return new float[0][];
+        }
+        Job job = new Job(crops.size());
+        long now = System.nanoTime();
+        synchronized (queue) {
+            if (!running) {
+                return null;
+            }
+            for (int i = 0; i < crops.size(); i++) {
+                queue.addLast(new Item(job, i, crops.get(i), now));
+            }
+            queue.notifyAll();
+        }
+        return job.await(TimeUnit.MILLISECONDS.toNanos(timeoutMs));
+    }
+
+    private void dispatchLoop() {
+        List<Item> batch = new ArrayList<>(maxBatch);
+        List<byte[]> crops = new ArrayList<>(maxBatch);
+        while (true) {
+            batch.clear();
+            crops.clear();
+            try {
+                synchronized (queue) {
+                    while (running && queue.isEmpty()) {
+                        queue.wait();
+                    }
+                    if (!running) {
+                        break;
+                    }
+                    // Wait for the batch to fill, but never past the oldest crop's deadline
+                    long deadline = queue.peekFirst().enqueuedNanos + maxDelayNanos;
+                    while (running && queue.size() < maxBatch) {
+                        long left = deadline - System.nanoTime();
+                        if (left <= 0) {
+                            break;
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(queue, left);
+                    }
+                    while (batch.size() < maxBatch && !queue.isEmpty()) {
+                        batch.add(queue.removeFirst());
+                    }
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            long start = System.nanoTime();
+            for (Item item : batch) {
+                crops.add(item.crop);
+                queueLatency.recordNanos(start - item.enqueuedNanos);
+            }
+            float[][] embeddings = null;
+            try {
+                embeddings = engine.embed(crops);
+                if (embeddings != null && embeddings.length != batch.size()) {
+                    embeddings = null;
+                }
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            inferenceLatency.recordNanos(System.nanoTime() - start);
+            batches.incrementAndGet();
+            items.addAndGet(batch.size());
+            if (embeddings == null) {
+                failedBatches.incrementAndGet();
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                Item item = batch.get(i);
+                item.job.complete(item.index, embeddings != null ? embeddings[i] : null);
+            }
+        }
+        failQueued();
+    }
+
+    private void failQueued() {
+        List<Item> left;
+        synchronized (queue) {
+            left = new ArrayList<>(queue);
+            queue.clear();
+        }
+        for (Item item : left) {
+            item.job.complete(item.index, null);
+        }
+    }
+
+    /**
+     * Stop dispatching; waiting callers get null
+     */
+    public void shutdown() {
+        synchronized (queue) {
+            running = false;
+            queue.notifyAll();
+        }
+        try {
+            dispatcher.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        failQueued();
+    }
+
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    public long getItemCount() {
+        return items.get();
+    }
+
+    public float getAverageBatchSize() {
+        long n = batches.get();
+        return n == 0 ? 0f : (float) items.get() / n;
+    }
+
+    public int getQueuedCount() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    @Override
+    public void collect(MetricsWriter writer) {
+        writer.gauge("batch_queue_depth", "Crops waiting for a batch", getQueuedCount());
+        writer.counter("batch_calls_total", "Batched engine calls", batches.get());
+        writer.counter("batch_items_total", "Crops embedded in batches", items.get());
+        writer.counter("batch_failed_total", "Batched engine calls that failed", failedBatches.get());
+        writer.gauge("batch_average_size", "Crops per engine call", getAverageBatchSize());
+        writer.summary("batch_queue_seconds", "Time crops waited for their batch", queueLatency, queueLatency);
+        writer.summary("batch_inference_seconds", "Time per batched engine call", inferenceLatency, inferenceLatency);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("batches=%d items=%d avgBatch=%.2f failed=%d queue: %s inference: %s", batches.get(),
+            items.get(), getAverageBatchSize(), failedBatches.get(), queueLatency, inferenceLatency);
+    }
+}
@@ -0,0 +1,32 @@
+package com.atharvakale.facerecognition.batch;
+
+import java.util.List;
+
+/**
+ * Turns aligned face crops into embeddings, several at a time
+ */
+public interface EmbeddingEngine {
+    /**
+     * Side of the square crops the model takes, in pixels
+     */
+    int getInputSize();
+
+    int getDimension();
+
+    /**
+     * Fingerprint of the model; embeddings are only comparable between equal fingerprints
+     */
+    String getFingerprint();
+
+    /**
+     * Crops embedded in one call at most
+     */
+    int getMaxBatchSize();
+
+    /**
+     * Embed crops in a single model invocation
+     * @param crops RGB bytes of inputSize x inputSize crops, row-major, at most getMaxBatchSize()
+     * @return One embedding per crop, or null if inference failed
+     */
+    float[][] embed(List<byte[]> crops);
+}
@@ -0,0 +1,193 @@
+package com.atharvakale.facerecognition.batch;
+
+import com.atharvakale.facerecognition.diagnostics.LatencyHistogram;
+import com.atharvakale.facerecognition.ml.ModelConfig;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives a BatchRecognitionServer with concurrent clients and reports throughput and tail latency
+ * Each client sends its next request as soon as the previous one is answered (closed loop), so
+ * the concurrency is the number of requests in flight. Requests carry random crops or
+ * embeddings: the numbers measure the serving path, not recognition accuracy.
+ * <pre>
+ * java LoadGenerator http://host:8479 [token] [clients] [seconds] [items per request] [crops|embeddings]
+ * </pre>
+ */
+public class LoadGenerator {
+    private final String url;
+    private final String token;
+    private final int inputSize;
+    private final int dimension;
+    private final int timeoutMs;
+
+    public static class Report {
+        public final long durationMs;
+        public final int clients;
+        public final long requests;
+        public final long items;
+        public final long errors;
+        public final LatencyHistogram latency;
+
+        Report(long durationMs, int clients, long requests, long items, long errors, LatencyHistogram latency) {
+            this.durationMs = durationMs;
+            this.clients = clients;
+            this.requests = requests;
+            this.items = items;
+            this.errors = errors;
+            this.latency = latency;
+        }
+
+        public float getRequestsPerSecond() {
+            return durationMs > 0 ? requests * 1000f / durationMs : 0f;
+        }
+
+        public float getItemsPerSecond() {
+            return durationMs > 0 ? items * 1000f / durationMs : 0f;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d clients, %.1f s: %d requests (%.1f/s), %d faces (%.1f/s), %d errors%n"
+                    + "latency p50=%.1fms p90=%.1fms p99=%.1fms p99.9=%.1fms max=%.1fms",
+                clients, durationMs / 1000f, requests, getRequestsPerSecond(), items, getItemsPerSecond(), errors,
+                latency.percentile(0.5) / 1000f, latency.percentile(0.9) / 1000f, latency.percentile(0.99) / 1000f,
+                latency.percentile(0.999) / 1000f, latency.getMaxMicros() / 1000f);
+        }
+    }
+
+    /**
+     * @param url Base URL of the server, e.g. http://10.0.0.5:8479
+     * @param token Bearer token, or null if the server is open
+     */
+    public LoadGenerator(String url, String token, int inputSize, int dimension, int timeoutMs) {
+        this.url = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+        this.token = token;
+        this.inputSize = inputSize;
+        this.dimension = dimension;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Run clients until the duration is over
+     * @param itemsPerRequest Crops or embeddings in each request
+     * @param embeddings Send embeddings instead of crops (skips the model on the server)
+     */
+    public Report run(int clients, long durationMs, int itemsPerRequest, boolean embeddings, long seed)
+            throws InterruptedException {
+        LatencyHistogram latency = new LatencyHistogram();
+        AtomicLong requests = new AtomicLong();
+        AtomicLong items = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        long start = System.nanoTime();
+        long deadline = start + durationMs * 1000000L;
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            byte[] body = encode(itemsPerRequest, embeddings, new Random(seed + c));
+            Thread thread = new Thread(() -> {
+                while (System.nanoTime() < deadline) {
+                    long sent = System.nanoTime();
+                    if (send(body, itemsPerRequest)) {
+                        latency.recordNanos(System.nanoTime() - sent);
+                        requests.incrementAndGet();
+                        items.addAndGet(itemsPerRequest);
+                    } else {
+                        errors.incrementAndGet();
+                    }
+                }
+            }, "load-client-" + c);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1000000L;
+        return new Report(elapsedMs, clients, requests.get(), items.get(), errors.get(), latency);
+    }
+
+    private byte[] encode(int count, boolean embeddings, Random random) {
+        RecognitionCodec.Request request;
+        if (embeddings) {
+            float[][] vectors = new float[count][dimension];
+            for (float[] vector : vectors) {
+                for (int d = 0; d < dimension; d++) {
+                    vector[d] = (float) random.nextGaussian();
+                }
+            }
+            request = RecognitionCodec.Request.ofEmbeddings("", vectors);
+        } else {
+            List<byte[]> crops = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] crop = new byte[inputSize * inputSize * 3];
+                random.nextBytes(crop);
+                crops.add(crop);
+            }
+            request = RecognitionCodec.Request.ofCrops("", inputSize, crops);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            RecognitionCodec.writeRequest(request, out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return true if the server answered with a result for every item
+     */
+    private boolean send(byte[] body, int count) {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(url + "/recognize").openConnection();
+            connection.setConnectTimeout(timeoutMs);
+            connection.setReadTimeout(timeoutMs);
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            connection.setRequestProperty("Content-Type", RecognitionCodec.CONTENT_TYPE);
+            if (token != null) {
+                connection.setRequestProperty("Authorization", "Bearer " + token);
+            }
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+            if (connection.getResponseCode() != 200) {
+                return false;
+            }
+            try (InputStream in = connection.getInputStream()) {
+                return RecognitionCodec.readResults(in).size() == count;
+            }
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("usage: LoadGenerator url [token|-] [clients] [seconds] [items] [crops|embeddings]");
+            return;
+        }
+        String token = args.length > 1 && !"-".equals(args[1]) ? args[1] : null;
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        long seconds = args.length > 3 ? Long.parseLong(args[3]) : 30;
+        int items = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+        boolean embeddings = args.length > 5 && "embeddings".equals(args[5]);
+        LoadGenerator generator = new LoadGenerator(args[0], token, ModelConfig.FaceRecognition.INPUT_SIZE,
+            ModelConfig.FaceRecognition.OUTPUT_SIZE, ModelConfig.BatchServer.TIMEOUT_MS);
+        System.out.println(generator.run(clients, seconds * 1000, items, embeddings, 1L));
+    }
+}
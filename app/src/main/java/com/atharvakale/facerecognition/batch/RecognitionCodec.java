@@ -0,0 +1,196 @@
+package com.atharvakale.facerecognition.batch;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wire format of batch recognition requests and responses
+ * <pre>
+ * request:  int magic, short version, byte kind, UTF fingerprint ("" = any), int count, int size
+ *           CROPS:      count x size*size*3 bytes of RGB, row-major
+ *           EMBEDDINGS: count x size big-endian floats
+ * response: int magic, short version, int count
+ *           count x { UTF nearest, float distance, UTF second, float secondDistance, bool known }
+ * </pre>
+ * Names are empty when the gallery has fewer identities than asked for.
+ */
+public final class RecognitionCodec {
+    public static final String CONTENT_TYPE = "application/x-face-batch";
+    public static final byte CROPS = 1;
+    public static final byte EMBEDDINGS = 2;
+
+    private static final int REQUEST_MAGIC = 0x46425231;       // "FBR1"
+    private static final int RESPONSE_MAGIC = 0x46425331;      // "FBS1"
+    private static final int VERSION = 1;
+    private static final int MAX_SIZE = 4096;
+    private static final int MAX_CROP_SIZE = 512;
+
+    private RecognitionCodec() {
+    }
+
+    public static class Request {
+        public final byte kind;
+        public final String fingerprint;
+        public final int size;                  // crop side for CROPS, dimension for EMBEDDINGS
+        public final List<byte[]> crops;
+        public final float[][] embeddings;
+
+        private Request(byte kind, String fingerprint, int size, List<byte[]> crops, float[][] embeddings) {
+            this.kind = kind;
+            this.fingerprint = fingerprint;
+            this.size = size;
+            this.crops = crops;
+            this.embeddings = embeddings;
+        }
+
+        public static Request ofCrops(String fingerprint, int inputSize, List<byte[]> crops) {
+            return new Request(CROPS, fingerprint, inputSize, crops, null);
+        }
+
+        public static Request ofEmbeddings(String fingerprint, float[][] embeddings) {
+            return new Request(EMBEDDINGS, fingerprint, embeddings.length > 0 ? embeddings[0].length : 0, null, embeddings);
+        }
+
+        public int getCount() {
+            return kind == CROPS ? crops.size() : embeddings.length;
+        }
+    }
+
+    public static class Result {
+        public final String nearest;
+        public final float distance;
+        public final String second;
+        public final float secondDistance;
+        public final boolean isKnown;
+
+        public Result(String nearest, float distance, String second, float secondDistance, boolean isKnown) {
+            this.nearest = nearest;
+            this.distance = distance;
+            this.second = second;
+            this.secondDistance = secondDistance;
+            this.isKnown = isKnown;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (%.3f, %s) second=%s (%.3f)", nearest, distance, isKnown ? "known" : "unknown",
+                second, secondDistance);
+        }
+    }
+
+    public static void writeRequest(Request request, OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(REQUEST_MAGIC);
+        out.writeShort(VERSION);
+        out.writeByte(request.kind);
+        out.writeUTF(request.fingerprint != null ? request.fingerprint : "");
+        out.writeInt(request.getCount());
+        out.writeInt(request.size);
+        if (request.kind == CROPS) {
+            int cropBytes = request.size * request.size * 3;
+            for (byte[] crop : request.crops) {
+                if (crop.length != cropBytes) {
+                    throw new IOException("Crop of " + crop.length + " bytes, expected " + cropBytes);
+                }
+                out.write(crop);
+            }
+        } else {
+            for (float[] embedding : request.embeddings) {
+                if (embedding.length != request.size) {
+                    throw new IOException("Embeddings of different dimensions");
+                }
+                for (float value : embedding) {
+                    out.writeFloat(value);
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * @param maxCount Largest number of items accepted
+     * @throws IOException On a truncated, malformed or oversized request
+     */
+    public static Request readRequest(InputStream stream, int maxCount) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != REQUEST_MAGIC) {
+            throw new IOException("Not a recognition request");
+        }
+        int version = in.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported request version " + version);
+        }
+        byte kind = in.readByte();
+        String fingerprint = in.readUTF();
+        int count = in.readInt();
+        int size = in.readInt();
+        if (count < 0 || count > maxCount) {
+            throw new IOException("Bad item count " + count);
+        }
+        if (size <= 0 || size > MAX_SIZE) {
+            throw new IOException("Bad item size " + size);
+        }
+        if (kind == CROPS) {
+            if (size > MAX_CROP_SIZE) {
+                throw new IOException("Bad crop size " + size);
+            }
+            List<byte[]> crops = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] crop = new byte[size * size * 3];
+                in.readFully(crop);
+                crops.add(crop);
+            }
+            return new Request(CROPS, fingerprint, size, crops, null);
+        }
+        if (kind == EMBEDDINGS) {
+            float[][] embeddings = new float[count][size];
+            for (float[] embedding : embeddings) {
+                for (int d = 0; d < size; d++) {
+                    embedding[d] = in.readFloat();
+                }
+            }
+            return new Request(EMBEDDINGS, fingerprint, size, null, embeddings);
+        }
+        throw new IOException("Bad request kind " + kind);
+    }
+
+    public static void writeResults(List<Result> results, OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(RESPONSE_MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(results.size());
+        for (Result result : results) {
+            out.writeUTF(result.nearest);
+            out.writeFloat(result.distance);
+            out.writeUTF(result.second);
+            out.writeFloat(result.secondDistance);
+            out.writeBoolean(result.isKnown);
+        }
+        out.flush();
+    }
+
+    public static List<Result> readResults(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != RESPONSE_MAGIC) {
+            throw new IOException("Not a recognition response");
+        }
+        int version = in.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported response version " + version);
+        }
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Bad result count " + count);
+        }
+        List<Result> results = new ArrayList<>(Math.min(count, 4096));
+        for (int i = 0; i < count; i++) {
+            results.add(new Result(in.readUTF(), in.readFloat(), in.readUTF(), in.readFloat(), in.readBoolean()));
+        }
+        return results;
+    }
+}
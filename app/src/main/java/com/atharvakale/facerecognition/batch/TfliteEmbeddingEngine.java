@@ -0,0 +1,79 @@
+package com.atharvakale.facerecognition.batch;
+
+import com.atharvakale.facerecognition.diagnostics.ResourceTracker;
+import com.atharvakale.facerecognition.ml.MLModelManager;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+/**
+ * Embeds batches of crops with a loaded TFLite model through one resized interpreter call
+ * The input buffer is sized for the largest batch and reused, so the engine must be called
+ * from one thread at a time (EmbeddingBatcher's dispatcher).
+ */
+public class TfliteEmbeddingEngine implements EmbeddingEngine {
+    private final MLModelManager modelManager;
+    private final String modelKey;
+    private final int inputSize;
+    private final int dimension;
+    private final float imageMean;
+    private final float imageStd;
+    private final int maxBatchSize;
+    private final ByteBuffer input;
+
+    /**
+     * @param maxBatchSize Crops per interpreter call at most (the autotuned batch size on this device)
+     */
+    public TfliteEmbeddingEngine(MLModelManager modelManager, String modelKey, int inputSize, int dimension,
+                                 float imageMean, float imageStd, int maxBatchSize) {
+        this.modelManager = modelManager;
+        this.modelKey = modelKey;
+        this.inputSize = inputSize;
+        this.dimension = dimension;
+        this.imageMean = imageMean;
+        this.imageStd = imageStd;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.input = ByteBuffer.allocateDirect(this.maxBatchSize * inputSize * inputSize * 3 * 4)
+            .order(ByteOrder.nativeOrder());
+        // Lives as long as the engine; not expected to be released
+        ResourceTracker.handOff(ResourceTracker.track(ResourceTracker.Kind.DIRECT_BUFFER, input, input.capacity(),
+            "batch-input"));
+    }
+
+    @Override
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    @Override
+    public int getDimension() {
+        return dimension;
+    }
+
+    @Override
+    public String getFingerprint() {
+        return modelManager.getModelFingerprint(modelKey);
+    }
+
+    @Override
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    @Override
+    public float[][] embed(List<byte[]> crops) {
+        int count = crops.size();
+        if (count == 0 || count > maxBatchSize) {
+            return null;
+        }
+        input.clear();
+        for (byte[] crop : crops) {
+            for (int i = 0; i < crop.length; i++) {
+                input.putFloat(((crop[i] & 0xFF) - imageMean) / imageStd);
+            }
+        }
+        input.flip();
+        float[][] embeddings = new float[count][dimension];
+        return modelManager.runBatchInference(modelKey, count, input, embeddings) ? embeddings : null;
+    }
+}
@@ -0,0 +1,259 @@
+package com.atharvakale.facerecognition.control;
+
+import android.os.SystemClock;
+import com.atharvakale.facerecognition.batch.BatchRecognitionServer;
+import com.atharvakale.facerecognition.batch.TfliteEmbeddingEngine;
+import com.atharvakale.facerecognition.diagnostics.FrameRecorder;
+import com.atharvakale.facerecognition.diagnostics.MemorySample;
+import com.atharvakale.facerecognition.diagnostics.MetricsSource;
+import com.atharvakale.facerecognition.diagnostics.MetricsWriter;
+import com.atharvakale.facerecognition.features.face.FaceGallery;
+import com.atharvakale.facerecognition.features.face.FaceRecognitionManager;
+import com.atharvakale.facerecognition.features.face.ParallelGalleryMatcher;
+import com.atharvakale.facerecognition.ml.InferenceProfile;
+import com.atharvakale.facerecognition.ml.ModelConfig;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Network endpoints of a face recognition manager: the kiosk metrics and control server and the
+ * batch recognition server
+ * Other components report on the metrics endpoint through addMetricsSource. The batch server embeds
+ * with the manager's active model, so it is stopped before a model switch unloads that model and
+ * restarted on the new one.
+ */
+public class ControlServers implements FaceRecognitionManager.ModelSwitchListener {
+    private final FaceRecognitionManager manager;
+    private final List<MetricsSource> metricsSources = new CopyOnWriteArrayList<>();
+
+    // Servers (guarded by this)
+    private KioskControlServer controlServer;
+    private BatchRecognitionServer batchServer;
+    private ParallelGalleryMatcher batchMatcher;
+    private String batchHost;
+    private int batchPort = -1;
+    private String batchToken;
+
+    public ControlServers(FaceRecognitionManager manager) {
+        this.manager = manager;
+    }
+
+    /**
+     * Serve live metrics and accept authenticated control calls (headless kiosks)
+     * With a clip directory, recent camera frames are kept from now on so a clip can be dumped on
+     * request; without one nothing is recorded and replay-clip requests find no frames.
+     * @param host Address to bind (ModelConfig.Control.HOST keeps the endpoint on this device)
+     * @param port Port to listen on (ModelConfig.Control.PORT by default)
+     * @param token Bearer token for every call but the health check (see FaceRecognitionManager.getControlToken)
+     * @param clipDirectory Directory replay clips are written under, or null to record no frames
+     * @return true if the server is listening
+     */
+    public synchronized boolean startControlServer(String host, int port, String token, File clipDirectory) {
+        if (controlServer != null) {
+            return true;
+        }
+        KioskControlServer server = new KioskControlServer(new KioskControlServer.Controls() {
+            @Override
+            public void collect(MetricsWriter writer) {
+                collectMetrics(writer);
+            }
+
+            @Override
+            public float getSimilarityThreshold() {
+                return manager.getSimilarityThreshold();
+            }
+
+            @Override
+            public void setSimilarityThreshold(float threshold) {
+                manager.setSimilarityThreshold(threshold);
+            }
+
+            @Override
+            public int reload() {
+                manager.reloadFaces();
+                return manager.getRegisteredFaceCount();
+            }
+
+            @Override
+            public File dumpReplayClip() {
+                return ControlServers.this.dumpReplayClip(clipDirectory);
+            }
+        }, token);
+        if (!server.start(host, port, ModelConfig.Control.WORKER_THREADS)) {
+            return false;
+        }
+        if (clipDirectory != null) {
+            manager.setFrameRecorder(new FrameRecorder(ModelConfig.Control.CLIP_MAX_FRAMES,
+                ModelConfig.Control.CLIP_MAX_BYTES));
+        }
+        controlServer = server;
+        return true;
+    }
+
+    public synchronized void stopControlServer() {
+        if (controlServer != null) {
+            controlServer.stop();
+            controlServer = null;
+        }
+        manager.setFrameRecorder(null);
+    }
+
+    /**
+     * Get the control server, or null if it is not running
+     */
+    public synchronized KioskControlServer getControlServer() {
+        return controlServer;
+    }
+
+    /**
+     * Recognize batches of uploaded crops or embeddings over HTTP with the active model and gallery
+     * Crops from concurrent requests share interpreter calls of up to the autotuned batch size.
+     * @param port Port to listen on (ModelConfig.BatchServer.PORT by default)
+     * @param token Bearer token for /recognize and /metrics, or null for the control token
+     * @return true if the server is listening
+     */
+    public synchronized boolean startBatchServer(String host, int port, String token) {
+        if (batchServer != null) {
+            return true;
+        }
+        if (token == null || token.isEmpty()) {
+            token = manager.getControlToken();
+        }
+        if (!openBatchServer(host, port, token)) {
+            return false;
+        }
+        manager.addModelSwitchListener(this);
+        return true;
+    }
+
+    public synchronized void stopBatchServer() {
+        manager.removeModelSwitchListener(this);
+        closeBatchServer();
+        batchPort = -1;
+    }
+
+    /**
+     * Get the batch recognition server, or null if it is not running
+     */
+    public synchronized BatchRecognitionServer getBatchServer() {
+        return batchServer;
+    }
+
+    /**
+     * Stop every server
+     */
+    public void stop() {
+        stopControlServer();
+        stopBatchServer();
+    }
+
+    @Override
+    public synchronized void onModelSwitching(String previousModelKey) {
+        // Drains the batch in flight before the model it embeds with is unloaded
+        closeBatchServer();
+    }
+
+    @Override
+    public synchronized void onModelSwitched(String modelKey) {
+        if (batchServer == null && batchPort >= 0 && !openBatchServer(batchHost, batchPort, batchToken)) {
+            manager.removeModelSwitchListener(this);
+        }
+    }
+
+    private boolean openBatchServer(String host, int port, String token) {
+        InferenceProfile profile = manager.getInferenceProfile();
+        int maxBatch = profile != null ? profile.batchSize : ModelConfig.BatchServer.MAX_BATCH;
+        TfliteEmbeddingEngine engine = new TfliteEmbeddingEngine(manager.getModelManager(), manager.getActiveModelKey(),
+            ModelConfig.FaceRecognition.INPUT_SIZE, ModelConfig.FaceRecognition.OUTPUT_SIZE,
+            ModelConfig.FaceRecognition.IMAGE_MEAN, ModelConfig.FaceRecognition.IMAGE_STD, maxBatch);
+        ParallelGalleryMatcher matcher = new ParallelGalleryMatcher(Runtime.getRuntime().availableProcessors(),
+            ModelConfig.FaceRecognition.MATCH_BLOCK_BYTES, ModelConfig.FaceRecognition.MATCH_PARALLEL_THRESHOLD);
+        matcher.setEarlyAbandon(ModelConfig.FaceRecognition.MATCH_EARLY_ABANDON_DIMS);
+        BatchRecognitionServer server = new BatchRecognitionServer(engine, new BatchRecognitionServer.GalleryProvider() {
+            @Override
+            public FaceGallery getGallery() {
+                return manager.getGallery();
+            }
+
+            @Override
+            public float getSimilarityThreshold() {
+                return manager.getSimilarityThreshold();
+            }
+        }, matcher, ModelConfig.BatchServer.MAX_DELAY_MS, ModelConfig.BatchServer.MAX_REQUEST_ITEMS,
+            ModelConfig.BatchServer.TIMEOUT_MS, token);
+        // Requests beyond the batch size would only wait for the next batch, each holding a thread
+        if (!server.start(host, port, maxBatch)) {
+            server.stop();
+            matcher.shutdown();
+            batchPort = -1;
+            return false;
+        }
+        batchServer = server;
+        batchMatcher = matcher;
+        batchHost = host;
+        batchPort = server.getPort();
+        batchToken = token;
+        addMetricsSource(server);
+        return true;
+    }
+
+    /**
+     * Stop the batch server, remembering where it listened
+     */
+    private void closeBatchServer() {
+        if (batchServer != null) {
+            removeMetricsSource(batchServer);
+            batchServer.stop();
+            batchMatcher.shutdown();
+            batchServer = null;
+            batchMatcher = null;
+        }
+    }
+
+    /**
+     * Report another component's metrics (e.g. a MultiStreamFaceRecognizer) on the endpoint
+     */
+    public void addMetricsSource(MetricsSource source) {
+        metricsSources.add(source);
+    }
+
+    public void removeMetricsSource(MetricsSource source) {
+        metricsSources.remove(source);
+    }
+
+    /**
+     * Write the recently seen camera frames as a replay clip
+     * @return Clip directory, or null if no frames were recorded
+     */
+    public File dumpReplayClip(File clipDirectory) {
+        FrameRecorder recorder = manager.getFrameRecorder();
+        if (clipDirectory == null || recorder == null || recorder.getFrameCount() == 0) {
+            return null;
+        }
+        File clip = new File(clipDirectory, "clip_" + System.currentTimeMillis());
+        return recorder.dump(clip) > 0 ? clip : null;
+    }
+
+    /**
+     * Write the manager's pipeline and gallery metrics, memory use and every added source
+     */
+    public void collectMetrics(MetricsWriter writer) {
+        manager.collectMetrics(writer);
+
+        MemorySample memory = MemorySample.capture(SystemClock.elapsedRealtime());
+        writer.gauge("memory_java_heap_bytes", "Used Java heap", memory.javaHeapBytes);
+        writer.gauge("memory_native_heap_bytes", "Allocated native heap", memory.nativeHeapBytes);
+        if (memory.gcCount >= 0) {
+            writer.counter("gc_total", "Garbage collections", memory.gcCount);
+            writer.counter("gc_blocking_total", "Collections that paused allocating threads", memory.blockingGcCount);
+            writer.counter("gc_blocking_seconds_total", "Time allocating threads were paused", memory.blockingGcTimeMs / 1000.0);
+        }
+        writer.gauge("tracked_resources_outstanding", "Bitmaps, buffers and interpreters not yet released",
+            memory.outstandingResources);
+
+        for (MetricsSource source : metricsSources) {
+            source.collect(writer);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.atharvakale.facerecognition.control;
+
+import com.atharvakale.facerecognition.diagnostics.MetricsSource;
+import com.atharvakale.facerecognition.diagnostics.MetricsWriter;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Metrics and remote control of a headless kiosk over HTTP
+ * <pre>
+ * GET  /metrics                     live pipeline metrics, Prometheus text format
+ * GET  /healthz                     "ok" while the server runs (no token)
+ * GET  /control/threshold           current distance threshold
+ * POST /control/threshold?value=X   change the distance threshold
+ * POST /control/reload              reload the gallery from storage
+ * POST /control/replay-clip         write the last seconds of camera frames to a clip
+ * </pre>
+ * Every call but the health check needs "Authorization: Bearer &lt;token&gt;"; metrics hold no
+ * names or faces but still reveal how busy the kiosk is and how often it is probed.
+ */
+public class KioskControlServer {
+    public static final String METRIC_PREFIX = "facerec_";
+    private static final int MAX_BODY_BYTES = 4096;
+
+    private final Controls controls;
+    private final NioHttpServer server;
+
+    /**
+     * What the server reads and controls
+     */
+    public interface Controls extends MetricsSource {
+        float getSimilarityThreshold();
+
+        void setSimilarityThreshold(float threshold);
+
+        /**
+         * Reload the gallery from storage
+         * @return Identities now enrolled
+         */
+        int reload();
+
+        /**
+         * Write the recently seen frames as a replay clip
+         * @return Directory the clip was written to, or null if there was nothing to write
+         */
+        File dumpReplayClip();
+    }
+
+    /**
+     * @param token Bearer token for every call but the health check; null refuses them
+     */
+    public KioskControlServer(Controls controls, String token) {
+        this.controls = controls;
+        this.server = new NioHttpServer("control-server", token, MAX_BODY_BYTES);
+        server.route("GET", "/metrics", request -> metrics(), true);
+        server.route("GET", "/healthz", request -> NioHttpServer.Response.text(200, "ok"), false);
+        server.route("GET", "/control/threshold", request -> NioHttpServer.Response.text(200,
+            String.format(Locale.US, "%.4f", controls.getSimilarityThreshold())), true);
+        server.route("POST", "/control/threshold", this::setThreshold, true);
+        server.route("POST", "/control/reload", request -> NioHttpServer.Response.text(200,
+            "identities=" + controls.reload()), true);
+        server.route("POST", "/control/replay-clip", request -> replayClip(), true);
+    }
+
+    /**
+     * @param host Address to bind, null for all interfaces (127.0.0.1 keeps it on the device)
+     * @param port Port to bind, 0 for any free port
+     * @return true if the server is listening
+     */
+    public boolean start(String host, int port, int workerThreads) {
+        return server.start(host, port, workerThreads);
+    }
+
+    public void stop() {
+        server.stop();
+    }
+
+    public int getPort() {
+        return server.getPort();
+    }
+
+    private NioHttpServer.Response metrics() {
+        MetricsWriter writer = new MetricsWriter(METRIC_PREFIX);
+        controls.collect(writer);
+        writer.counter("control_requests_total", "Requests served by the control server", server.getRequestCount());
+        writer.counter("control_unauthorized_total", "Control calls refused for a missing or wrong token",
+            server.getUnauthorizedCount());
+        return new NioHttpServer.Response(200, MetricsWriter.CONTENT_TYPE,
+            writer.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private NioHttpServer.Response setThreshold(NioHttpServer.Request request) {
+        String value = request.getParam("value");
+        float threshold;
+        try {
+            threshold = value != null ? Float.parseFloat(value) : Float.NaN;
+        } catch (NumberFormatException e) {
+            threshold = Float.NaN;
+        }
+        if (!(threshold > 0f) || Float.isInfinite(threshold)) {
+            return NioHttpServer.Response.text(400, "value must be a positive distance");
+        }
+        float previous = controls.getSimilarityThreshold();
+        controls.setSimilarityThreshold(threshold);
+        return NioHttpServer.Response.text(200, String.format(Locale.US, "threshold=%.4f previous=%.4f",
+            threshold, previous));
+    }
+
+    private NioHttpServer.Response replayClip() {
+        File clip = controls.dumpReplayClip();
+        if (clip == null) {
+            return NioHttpServer.Response.text(409, "No frames recorded");
+        }
+        return NioHttpServer.Response.text(200, clip.getPath());
+    }
+}
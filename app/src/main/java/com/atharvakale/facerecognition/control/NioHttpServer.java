@@ -0,0 +1,562 @@
+package com.atharvakale.facerecognition.control;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Small HTTP/1.1 server on a single selector thread, one request per connection
+ * The selector reads requests and writes responses without blocking, so slow or idle clients
+ * cost a buffer rather than a thread; handlers run on a small worker pool and their responses
+ * are handed back to the selector. Routes marked as authenticated need an
+ * "Authorization: Bearer &lt;token&gt;" header.
+ */
+public class NioHttpServer {
+    private static final int MAX_HEADER_BYTES = 8192;
+    private static final int INITIAL_BUFFER_BYTES = 2048;
+    private static final long IDLE_TIMEOUT_MS = 10000;
+    private static final long SELECT_TIMEOUT_MS = 1000;
+    private static final byte[] HEADER_END = {'\r', '\n', '\r', '\n'};
+
+    private final String name;
+    private final byte[] token;
+    private final int maxBodyBytes;
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Connection> responsesReady = new ConcurrentLinkedQueue<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong unauthorized = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private ServerSocketChannel serverChannel;
+    private Selector selector;
+    private ExecutorService workers;
+    private Thread selectorThread;
+    private volatile boolean running;
+
+    public interface Handler {
+        /**
+         * Called on a worker thread
+         */
+        Response handle(Request request) throws Exception;
+    }
+
+    public static class Request {
+        public final String method;
+        public final String path;
+        public final Map<String, String> params;
+        public final Map<String, String> headers;     // names in lower case
+        public final byte[] body;
+
+        Request(String method, String path, Map<String, String> params, Map<String, String> headers, byte[] body) {
+            this.method = method;
+            this.path = path;
+            this.params = params;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        /**
+         * Query parameter, or a form field of a urlencoded body
+         */
+        public String getParam(String name) {
+            String value = params.get(name);
+            if (value == null && body.length > 0) {
+                try {
+                    value = parseQuery(new String(body, StandardCharsets.UTF_8)).get(name);
+                } catch (IOException | IllegalArgumentException e) {
+                    return null;
+                }
+            }
+            return value;
+        }
+
+        public String getHeader(String name) {
+            return headers.get(name.toLowerCase(Locale.US));
+        }
+    }
+
+    public static class Response {
+        public final int status;
+        public final String contentType;
+        public final byte[] body;
+
+        public Response(int status, String contentType, byte[] body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        public static Response text(int status, String text) {
+            return new Response(status, "text/plain; charset=utf-8", (text + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static class Route {
+        final Handler handler;
+        final boolean authenticated;
+
+        Route(Handler handler, boolean authenticated) {
+            this.handler = handler;
+            this.authenticated = authenticated;
+        }
+    }
+
+    private static class Connection {
+        final SocketChannel channel;
+        ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+        ByteBuffer out;
+        int headerLength = -1;
+        int contentLength;
+        boolean dispatched;
+        long lastActiveMs;
+
+        Connection(SocketChannel channel, long nowMs) {
+            this.channel = channel;
+            this.lastActiveMs = nowMs;
+        }
+    }
+
+    /**
+     * @param name Name of the selector thread; workers are named name-worker
+     * @param token Secret for authenticated routes; null rejects them all
+     * @param maxBodyBytes Larger request bodies are refused with 413
+     */
+    public NioHttpServer(String name, String token, int maxBodyBytes) {
+        this.name = name;
+        this.token = token != null ? token.getBytes(StandardCharsets.UTF_8) : null;
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    /**
+     * Serve a method and path (exact match, query string excluded)
+     * @param authenticated Whether the bearer token is required
+     */
+    public void route(String method, String path, Handler handler, boolean authenticated) {
+        routes.put(method + " " + path, new Route(handler, authenticated));
+    }
+
+    /**
+     * Start listening
+     * @param host Address to bind, null for all interfaces
+     * @param port Port to bind, 0 for any free port
+     * @return true if the server is accepting connections
+     */
+    public synchronized boolean start(String host, int port, int workerThreads) {
+        if (running) {
+            return true;
+        }
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.socket().bind(host != null ? new InetSocketAddress(host, port) : new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            e.printStackTrace();
+            closeQuietly();
+            return false;
+        }
+        workers = Executors.newFixedThreadPool(Math.max(1, workerThreads), runnable -> {
+            Thread thread = new Thread(runnable, name + "-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        Selector loopSelector = selector;
+        selectorThread = new Thread(() -> selectLoop(loopSelector), name);
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        return true;
+    }
+
+    /**
+     * Port the server is bound to, or -1 if it is not running
+     */
+    public synchronized int getPort() {
+        return serverChannel != null ? serverChannel.socket().getLocalPort() : -1;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (selectorThread != null) {
+            try {
+                selectorThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            selectorThread = null;
+        }
+        if (workers != null) {
+            workers.shutdownNow();
+            workers = null;
+        }
+        closeQuietly();
+    }
+
+    private void closeQuietly() {
+        try {
+            if (selector != null) {
+                for (SelectionKey key : selector.keys()) {
+                    key.channel().close();
+                }
+                selector.close();
+            }
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            e.printStackTrace();
+        }
+        selector = null;
+        serverChannel = null;
+    }
+
+    private void selectLoop(Selector selector) {
+        long lastSweepMs = System.currentTimeMillis();
+        while (running) {
+            try {
+                selector.select(SELECT_TIMEOUT_MS);
+                long nowMs = System.currentTimeMillis();
+                // Responses finished by the workers
+                for (Connection connection = responsesReady.poll(); connection != null; connection = responsesReady.poll()) {
+                    SelectionKey key = connection.channel.keyFor(selector);
+                    if (key != null && key.isValid()) {
+                        connection.lastActiveMs = nowMs;
+                        key.interestOps(SelectionKey.OP_WRITE);
+                    }
+                }
+                Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while (selected.hasNext()) {
+                    SelectionKey key = selected.next();
+                    selected.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept(selector, (ServerSocketChannel) key.channel(), nowMs);
+                    } else if (key.isReadable()) {
+                        read(key, nowMs);
+                    } else if (key.isWritable()) {
+                        write(key, nowMs);
+                    }
+                }
+                if (nowMs - lastSweepMs >= SELECT_TIMEOUT_MS) {
+                    closeIdle(selector, nowMs);
+                    lastSweepMs = nowMs;
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                if (running) {
+                    e.printStackTrace();
+                }
+                break;
+            }
+        }
+    }
+
+    private static void accept(Selector selector, ServerSocketChannel server, long nowMs) throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, new Connection(channel, nowMs));
+    }
+
+    private void read(SelectionKey key, long nowMs) {
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (!connection.in.hasRemaining() && !grow(connection)) {
+                reply(key, connection, Response.text(413, "Request too large"));
+                return;
+            }
+            int n = connection.channel.read(connection.in);
+            if (n < 0) {
+                close(key);
+                return;
+            }
+            connection.lastActiveMs = nowMs;
+            if (connection.headerLength < 0) {
+                connection.headerLength = indexOf(connection.in, HEADER_END);
+                if (connection.headerLength < 0) {
+                    if (connection.in.position() >= MAX_HEADER_BYTES) {
+                        reply(key, connection, Response.text(431, "Headers too large"));
+                    }
+                    return;
+                }
+                connection.headerLength += HEADER_END.length;
+                connection.contentLength = contentLength(connection.in, connection.headerLength);
+                if (connection.contentLength < 0) {
+                    reply(key, connection, Response.text(400, "Bad Content-Length"));
+                    return;
+                }
+                if (connection.contentLength > maxBodyBytes) {
+                    reply(key, connection, Response.text(413, "Body too large"));
+                    return;
+                }
+            }
+            if (connection.in.position() >= connection.headerLength + connection.contentLength) {
+                dispatch(key, connection);
+            }
+        } catch (IOException e) {
+            close(key);
+        }
+    }
+
+    private boolean grow(Connection connection) {
+        int limit = MAX_HEADER_BYTES + maxBodyBytes;
+        int capacity = connection.in.capacity();
+        if (capacity >= limit) {
+            return false;
+        }
+        int wanted = connection.headerLength >= 0 ? connection.headerLength + connection.contentLength : capacity * 2;
+        ByteBuffer bigger = ByteBuffer.allocate(Math.min(limit, Math.max(wanted, capacity * 2)));
+        connection.in.flip();
+        bigger.put(connection.in);
+        connection.in = bigger;
+        return true;
+    }
+
+    private void dispatch(SelectionKey key, Connection connection) {
+        Request request;
+        try {
+            request = parse(connection);
+        } catch (IOException | IllegalArgumentException e) {
+            reply(key, connection, Response.text(400, "Bad request"));
+            return;
+        }
+        requests.incrementAndGet();
+        connection.dispatched = true;
+        connection.in = null;
+        key.interestOps(0);
+        try {
+            workers.execute(() -> {
+                Response response = handle(request);
+                connection.out = encode(response);
+                responsesReady.add(connection);
+                Selector selector = key.selector();
+                if (selector.isOpen()) {
+                    selector.wakeup();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            close(key);
+        }
+    }
+
+    private Response handle(Request request) {
+        Route route = routes.get(request.method + " " + request.path);
+        if (route == null) {
+            for (String key : routes.keySet()) {
+                if (key.endsWith(" " + request.path)) {
+                    return Response.text(405, "Method not allowed");
+                }
+            }
+            return Response.text(404, "Not found");
+        }
+        if (route.authenticated && !isAuthorized(request.getHeader("Authorization"))) {
+            unauthorized.incrementAndGet();
+            return Response.text(401, "Unauthorized");
+        }
+        try {
+            return route.handler.handle(request);
+        } catch (Exception e) {
+            e.printStackTrace();
+            errors.incrementAndGet();
+            return Response.text(500, String.valueOf(e.getMessage()));
+        }
+    }
+
+    private boolean isAuthorized(String authorization) {
+        if (token == null || authorization == null || !authorization.startsWith("Bearer ")) {
+            return false;
+        }
+        // Constant time, so the token cannot be guessed byte by byte from response times
+        byte[] presented = authorization.substring("Bearer ".length()).trim().getBytes(StandardCharsets.UTF_8);
+        return MessageDigest.isEqual(token, presented);
+    }
+
+    private void reply(SelectionKey key, Connection connection, Response response) {
+        connection.in = null;
+        connection.out = encode(response);
+        key.interestOps(SelectionKey.OP_WRITE);
+    }
+
+    private void write(SelectionKey key, long nowMs) {
+        Connection connection = (Connection) key.attachment();
+        try {
+            connection.channel.write(connection.out);
+            connection.lastActiveMs = nowMs;
+            if (!connection.out.hasRemaining()) {
+                close(key);
+            }
+        } catch (IOException e) {
+            close(key);
+        }
+    }
+
+    private void closeIdle(Selector selector, long nowMs) {
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (attachment instanceof Connection) {
+                Connection connection = (Connection) attachment;
+                boolean waitingForHandler = connection.dispatched && connection.out == null;
+                if (!waitingForHandler && nowMs - connection.lastActiveMs > IDLE_TIMEOUT_MS) {
+                    close(key);
+                }
+            }
+        }
+    }
+
+    private static void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // Already gone
+        }
+    }
+
+    private static Request parse(Connection connection) throws IOException {
+        byte[] raw = connection.in.array();
+        String head = new String(raw, 0, connection.headerLength, StandardCharsets.ISO_8859_1);
+        String[] lines = head.split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length < 2) {
+            throw new IOException("Bad request line");
+        }
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon > 0) {
+                headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.US), lines[i].substring(colon + 1).trim());
+            }
+        }
+        String target = requestLine[1];
+        int query = target.indexOf('?');
+        String path = query >= 0 ? target.substring(0, query) : target;
+        Map<String, String> params = parseQuery(query >= 0 ? target.substring(query + 1) : "");
+        byte[] body = new byte[connection.contentLength];
+        System.arraycopy(raw, connection.headerLength, body, 0, body.length);
+        return new Request(requestLine[0], path, Collections.unmodifiableMap(params),
+            Collections.unmodifiableMap(headers), body);
+    }
+
+    /**
+     * Content-Length of a complete header block, 0 if absent, -1 if malformed
+     */
+    private static int contentLength(ByteBuffer in, int headerLength) {
+        String head = new String(in.array(), 0, headerLength, StandardCharsets.ISO_8859_1);
+        for (String line : head.split("\r\n")) {
+            int colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Content-Length")) {
+                try {
+                    int length = Integer.parseInt(line.substring(colon + 1).trim());
+                    return length >= 0 ? length : -1;
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static int indexOf(ByteBuffer in, byte[] pattern) {
+        byte[] raw = in.array();
+        int end = in.position() - pattern.length;
+        outer:
+        for (int i = 0; i <= end; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (raw[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static ByteBuffer encode(Response response) {
+        StringBuilder head = new StringBuilder()
+            .append("HTTP/1.1 ").append(response.status).append(' ').append(reason(response.status)).append("\r\n")
+            .append("Content-Type: ").append(response.contentType).append("\r\n")
+            .append("Content-Length: ").append(response.body.length).append("\r\n")
+            .append("Cache-Control: no-store\r\n");
+        if (response.status == 401) {
+            head.append("WWW-Authenticate: Bearer\r\n");
+        }
+        head.append("Connection: close\r\n\r\n");
+        byte[] headBytes = head.toString().getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer out = ByteBuffer.allocate(headBytes.length + response.body.length);
+        out.put(headBytes).put(response.body);
+        out.flip();
+        return out;
+    }
+
+    private static String reason(int status) {
+        switch (status) {
+            case 200: return "OK";
+            case 400: return "Bad Request";
+            case 401: return "Unauthorized";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 409: return "Conflict";
+            case 413: return "Payload Too Large";
+            case 431: return "Request Header Fields Too Large";
+            case 500: return "Internal Server Error";
+            case 503: return "Service Unavailable";
+            default: return "Error";
+        }
+    }
+
+    static Map<String, String> parseQuery(String query) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        for (String pair : query.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int equals = pair.indexOf('=');
+            String key = equals >= 0 ? pair.substring(0, equals) : pair;
+            String value = equals >= 0 ? pair.substring(equals + 1) : "";
+            params.put(URLDecoder.decode(key, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+        }
+        return params;
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getUnauthorizedCount() {
+        return unauthorized.get();
+    }
+
+    public long getErrorCount() {
+        return errors.get();
+    }
+}
@@ -0,0 +1,81 @@
+package com.atharvakale.facerecognition.data;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stores the aligned face crop of each registered identity
+ * Crops are kept losslessly so the gallery can be re-embedded when the recognition model changes
+ */
+public class FaceCropStore {
+    private final File directory;
+    
+    public FaceCropStore(File directory) {
+        this.directory = directory;
+    }
+    
+    /**
+     * Save the crop for an identity, replacing any previous one
+     * @return true if successful, false otherwise
+     */
+    public boolean save(String name, Bitmap crop) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return false;
+        }
+        File target = fileFor(name);
+        File temp = new File(directory, target.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            if (!crop.compress(Bitmap.CompressFormat.PNG, 100, out)) {
+                return false;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        return temp.renameTo(target);
+    }
+    
+    /**
+     * Load the crop for an identity
+     * @return Decoded crop or null if none is stored
+     */
+    public Bitmap load(String name) {
+        File file = fileFor(name);
+        return file.exists() ? BitmapFactory.decodeFile(file.getAbsolutePath()) : null;
+    }
+    
+    public boolean exists(String name) {
+        return fileFor(name).exists();
+    }
+    
+    public boolean delete(String name) {
+        return fileFor(name).delete();
+    }
+    
+    /**
+     * Delete all stored crops
+     */
+    public void clear() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+    
+    /**
+     * File names are the hex-encoded UTF-8 identity name, which is safe for any name
+     */
+    private File fileFor(String name) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+            hex.append(String.format("%02x", b));
+        }
+        return new File(directory, hex + ".png");
+    }
+}
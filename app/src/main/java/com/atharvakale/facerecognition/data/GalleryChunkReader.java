@@ -0,0 +1,188 @@
+package com.atharvakale.facerecognition.data;
+
+import com.atharvakale.facerecognition.SimilarityClassifier;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.Closeable;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Streams the stored gallery JSON (name -> Recognition) a few identities at a time
+ * Embeddings are read straight into float[1][outputSize], without the boxed Double lists
+ * Gson's object mapping goes through, so no more than one chunk is held besides the source.
+ */
+public class GalleryChunkReader implements Closeable {
+    private final CountingReader source;
+    private final long sourceLength;
+    private final int outputSize;
+    private final JsonReader json;
+    private boolean started;
+    private boolean finished;
+    private int readCount;
+
+    /**
+     * Characters consumed so far, for progress reporting
+     */
+    private static class CountingReader extends FilterReader {
+        volatile long count;
+
+        CountingReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c >= 0) {
+                count++;
+            }
+            return c;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * @param sourceLength Length of the source in characters, or 0 if unknown
+     * @param outputSize Embedding dimension; longer stored vectors are cut, shorter ones zero-padded
+     */
+    public GalleryChunkReader(Reader source, long sourceLength, int outputSize) {
+        this.source = new CountingReader(source);
+        this.sourceLength = sourceLength;
+        this.outputSize = outputSize;
+        this.json = new JsonReader(this.source);
+    }
+
+    /**
+     * Read the next identities in stored order
+     * @param maxEntries Identities to read at most
+     * @return Next chunk (never empty), or null once the gallery is exhausted
+     * @throws IOException If the JSON is malformed; identities returned before stay valid
+     */
+    public Map<String, SimilarityClassifier.Recognition> next(int maxEntries) throws IOException {
+        if (finished) {
+            return null;
+        }
+        if (!started) {
+            started = true;
+            if (json.peek() == JsonToken.NULL) {
+                json.nextNull();
+                finished = true;
+                return null;
+            }
+            json.beginObject();
+        }
+        Map<String, SimilarityClassifier.Recognition> chunk = new LinkedHashMap<>();
+        while (chunk.size() < maxEntries && json.hasNext()) {
+            String name = json.nextName();
+            SimilarityClassifier.Recognition recognition = readRecognition();
+            if (recognition != null) {
+                chunk.put(name, recognition);
+            }
+        }
+        if (!json.hasNext()) {
+            json.endObject();
+            finished = true;
+        }
+        readCount += chunk.size();
+        return chunk.isEmpty() ? null : chunk;
+    }
+
+    private SimilarityClassifier.Recognition readRecognition() throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return null;
+        }
+        String id = null;
+        String title = null;
+        Float distance = null;
+        float[][] embedding = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            String field = json.nextName();
+            if (json.peek() == JsonToken.NULL) {
+                json.nextNull();
+            } else if ("id".equals(field)) {
+                id = json.nextString();
+            } else if ("title".equals(field)) {
+                title = json.nextString();
+            } else if ("distance".equals(field)) {
+                distance = (float) json.nextDouble();
+            } else if ("extra".equals(field)) {
+                embedding = readEmbedding();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+        SimilarityClassifier.Recognition recognition = new SimilarityClassifier.Recognition(id, title, distance);
+        recognition.setExtra(embedding);
+        return recognition;
+    }
+
+    /**
+     * Read [[v0, v1, ...]] as float[1][outputSize]; an empty list leaves no embedding
+     */
+    private float[][] readEmbedding() throws IOException {
+        json.beginArray();
+        if (!json.hasNext()) {
+            json.endArray();
+            return null;
+        }
+        float[][] output = new float[1][outputSize];
+        json.beginArray();
+        for (int d = 0; json.hasNext(); d++) {
+            float value = (float) json.nextDouble();
+            if (d < outputSize) {
+                output[0][d] = value;
+            }
+        }
+        json.endArray();
+        while (json.hasNext()) {
+            json.skipValue();
+        }
+        json.endArray();
+        return output;
+    }
+
+    /**
+     * Identities read so far
+     */
+    public int getReadCount() {
+        return readCount;
+    }
+
+    /**
+     * Fraction of the source consumed, 0 to 1 (1 once exhausted)
+     */
+    public float getProgress() {
+        if (finished) {
+            return 1f;
+        }
+        return sourceLength > 0 ? Math.min(1f, (float) source.count / sourceLength) : 0f;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public void close() {
+        try {
+            json.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -5,7 +5,10 @@ import android.content.SharedPreferences;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import com.atharvakale.facerecognition.SimilarityClassifier;
+import com.atharvakale.facerecognition.ml.InferenceProfile;
+import java.io.StringReader;
 import java.lang.reflect.Type;
+import java.security.SecureRandom;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.ArrayList;
@@ -85,6 +88,14 @@ public class PreferencesRepository implements Repository<String, SimilarityClass
         }
     }
     
+    /**
+     * Open the stored gallery for reading in chunks (see GalleryChunkReader)
+     */
+    public GalleryChunkReader openChunkReader() {
+        String json = sharedPreferences.getString(mapKey, "{}");
+        return new GalleryChunkReader(new StringReader(json), json.length(), outputSize);
+    }
+    
     @Override
     public boolean delete(String key) {
         Map<String, SimilarityClassifier.Recognition> currentMap = loadAll();
@@ -141,4 +152,117 @@ public class PreferencesRepository implements Repository<String, SimilarityClass
     public float loadSimilarityThreshold(float defaultValue) {
         return sharedPreferences.getFloat("distance", defaultValue);
     }
-} 
\ No newline at end of file
+    
+    /**
+     * Load the bearer token of the control endpoint, creating a random one on first use
+     */
+    public synchronized String loadControlToken() {
+        String token = sharedPreferences.getString("control_token", null);
+        if (token == null) {
+            byte[] secret = new byte[16];
+            new SecureRandom().nextBytes(secret);
+            StringBuilder hex = new StringBuilder(secret.length * 2);
+            for (byte b : secret) {
+                hex.append(String.format("%02x", b & 0xff));
+            }
+            token = hex.toString();
+            sharedPreferences.edit().putString("control_token", token).apply();
+        }
+        return token;
+    }
+    
+    /**
+     * Replace the control endpoint's bearer token (e.g. one provisioned by a fleet tool)
+     */
+    public void saveControlToken(String token) {
+        sharedPreferences.edit().putString("control_token", token).apply();
+    }
+    
+    /**
+     * Save whether the control endpoint is served and the address it binds
+     * @param host Address to bind; the loopback address keeps it off the network
+     * @param replayClips Record recent camera frames so the endpoint can dump them to disk
+     */
+    public void saveControlSettings(boolean enabled, String host, boolean replayClips) {
+        sharedPreferences.edit()
+            .putBoolean("control_enabled", enabled)
+            .putString("control_host", host)
+            .putBoolean("control_replay_clips", replayClips)
+            .apply();
+    }
+    
+    /**
+     * Load whether the control endpoint is served (off until enabled in the kiosk settings)
+     */
+    public boolean loadControlEnabled() {
+        return sharedPreferences.getBoolean("control_enabled", false);
+    }
+    
+    /**
+     * Load the address the control endpoint binds
+     */
+    public String loadControlHost(String defaultHost) {
+        return sharedPreferences.getString("control_host", defaultHost);
+    }
+    
+    /**
+     * Load whether camera frames are recorded for replay clips (off until enabled)
+     */
+    public boolean loadControlReplayClips() {
+        return sharedPreferences.getBoolean("control_replay_clips", false);
+    }
+    
+    /**
+     * Save the fingerprint of the model that produced the stored embeddings
+     */
+    public void saveModelFingerprint(String fingerprint) {
+        sharedPreferences.edit().putString(mapKey + "_model", fingerprint).apply();
+    }
+    
+    /**
+     * Load the fingerprint of the model that produced the stored embeddings
+     * @return Fingerprint or null for galleries saved before fingerprints were recorded
+     */
+    public String loadModelFingerprint() {
+        return sharedPreferences.getString(mapKey + "_model", null);
+    }
+    
+    /**
+     * Save the path of the model file to load at startup (null = bundled asset)
+     */
+    public void saveModelSource(String path) {
+        sharedPreferences.edit().putString(mapKey + "_model_source", path).apply();
+    }
+    
+    /**
+     * Load the path of the model file to load at startup
+     * @return Path or null to use the bundled asset
+     */
+    public String loadModelSource() {
+        return sharedPreferences.getString(mapKey + "_model_source", null);
+    }
+    
+    /**
+     * Save the autotuned inference profile of a device
+     */
+    public void saveInferenceProfile(InferenceProfile profile) {
+        sharedPreferences.edit().putString("inference_profile:" + profile.deviceKey, gson.toJson(profile)).apply();
+    }
+    
+    /**
+     * Load the autotuned inference profile of a device
+     * @return Profile or null if the device was never tuned
+     */
+    public InferenceProfile loadInferenceProfile(String deviceKey) {
+        String json = sharedPreferences.getString("inference_profile:" + deviceKey, null);
+        if (json == null) {
+            return null;
+        }
+        try {
+            return gson.fromJson(json, InferenceProfile.class);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.atharvakale.facerecognition.data.archive;
+
+/**
+ * Streaming gallery archive used to provision devices
+ * Records are grouped into chunks that are checksummed, and optionally deflated, one at a time,
+ * so writer and reader hold one chunk in memory however large the gallery is.
+ * <pre>
+ * header: int magic, short version, byte flags (1 = deflated chunks), UTF fingerprint, int dimension,
+ *         int crc32(header fields)
+ * chunk:  int storedLength, int rawLength, int recordCount, int crc32(raw), storedLength bytes
+ *         raw = recordCount x { int length, UTF name, dimension x float, int thumbnailLength, JPEG bytes }
+ * end:    int 0, long totalRecords
+ * </pre>
+ * Floats are big-endian; a thumbnail length of 0 means the record carries none.
+ */
+public final class GalleryArchive {
+    public static final String FILE_EXTENSION = ".fga";
+
+    static final int MAGIC = 0x46474131;                    // "FGA1"
+    static final int VERSION = 1;
+    static final byte FLAG_DEFLATE = 1;
+    static final int CHUNK_BYTES = 256 * 1024;              // raw bytes per chunk before it is flushed
+    static final int MAX_CHUNK_BYTES = 16 * 1024 * 1024;
+    static final int MAX_THUMBNAIL_BYTES = 1024 * 1024;
+    static final int MAX_DIMENSION = 4096;
+
+    private GalleryArchive() {
+    }
+
+    /**
+     * One registered face
+     */
+    public static class Record {
+        public final String name;
+        public final float[] vector;
+        public final byte[] thumbnail;      // encoded image, or null
+
+        public Record(String name, float[] vector, byte[] thumbnail) {
+            this.name = name;
+            this.vector = vector;
+            this.thumbnail = thumbnail;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.atharvakale.facerecognition.data.archive;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a gallery archive one record at a time (see GalleryArchive for the format)
+ * Each chunk is verified against its checksum before any of its records is returned, so a
+ * damaged archive fails at a chunk boundary; records returned before stay valid.
+ */
+public class GalleryArchiveReader implements Closeable {
+    private final DataInputStream in;
+    private final String fingerprint;
+    private final int dimension;
+    private final boolean compressed;
+    private final Inflater inflater;
+    private final CRC32 crc = new CRC32();
+    private byte[] stored = new byte[0];
+    private byte[] raw = new byte[0];
+    private DataInputStream chunk;
+    private int chunkRemaining;
+    private long readRecords;
+    private boolean finished;
+
+    /**
+     * Read and verify the header
+     * @throws IOException If the stream is not an archive, is of another version or is damaged
+     */
+    public GalleryArchiveReader(InputStream stream) throws IOException {
+        this.in = new DataInputStream(stream);
+        int magic = in.readInt();
+        if (magic != GalleryArchive.MAGIC) {
+            throw new IOException("Not a gallery archive");
+        }
+        int version = in.readShort();
+        if (version != GalleryArchive.VERSION) {
+            throw new IOException("Unsupported gallery archive version " + version);
+        }
+        byte flags = in.readByte();
+        this.fingerprint = in.readUTF();
+        this.dimension = in.readInt();
+        int checksum = in.readInt();
+
+        // Re-encode the fields rather than buffering the stream to check them
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream headerOut = new DataOutputStream(header);
+        headerOut.writeInt(magic);
+        headerOut.writeShort(version);
+        headerOut.writeByte(flags);
+        headerOut.writeUTF(fingerprint);
+        headerOut.writeInt(dimension);
+        crc.reset();
+        crc.update(header.toByteArray());
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Gallery archive header is damaged");
+        }
+        if (dimension <= 0 || dimension > GalleryArchive.MAX_DIMENSION) {
+            throw new IOException("Bad dimension " + dimension);
+        }
+        this.compressed = (flags & GalleryArchive.FLAG_DEFLATE) != 0;
+        this.inflater = compressed ? new Inflater() : null;
+    }
+
+    /**
+     * Model fingerprint the vectors were computed with ("" if unknown)
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Read the next face
+     * @return Record, or null at the end of the archive
+     * @throws IOException If the archive is truncated or a chunk is damaged
+     */
+    public GalleryArchive.Record next() throws IOException {
+        if (finished) {
+            return null;
+        }
+        while (chunkRemaining == 0) {
+            if (!readChunk()) {
+                return null;
+            }
+        }
+        int length = chunk.readInt();
+        int available = chunk.available();
+        if (length <= 0 || length > available) {
+            throw new IOException("Bad record length " + length);
+        }
+        String name = chunk.readUTF();
+        float[] vector = new float[dimension];
+        for (int d = 0; d < dimension; d++) {
+            vector[d] = chunk.readFloat();
+        }
+        int thumbnailLength = chunk.readInt();
+        if (thumbnailLength < 0 || thumbnailLength > GalleryArchive.MAX_THUMBNAIL_BYTES) {
+            throw new IOException("Bad thumbnail length " + thumbnailLength);
+        }
+        byte[] thumbnail = null;
+        if (thumbnailLength > 0) {
+            thumbnail = new byte[thumbnailLength];
+            chunk.readFully(thumbnail);
+        }
+        // A record whose fields disagree with its length prefix is misframed, not just damaged
+        int consumed = available - chunk.available();
+        if (consumed != length) {
+            throw new IOException("Record " + readRecords + " is " + consumed + " bytes, its header says " + length);
+        }
+        chunkRemaining--;
+        if (chunkRemaining == 0 && chunk.available() != 0) {
+            throw new IOException("Chunk holds " + chunk.available() + " bytes past its last record");
+        }
+        readRecords++;
+        return new GalleryArchive.Record(name, vector, thumbnail);
+    }
+
+    /**
+     * Load and verify the next chunk
+     * @return false at the end marker
+     */
+    private boolean readChunk() throws IOException {
+        int storedLength = in.readInt();
+        if (storedLength == 0) {
+            long total = in.readLong();
+            if (total != readRecords) {
+                throw new IOException("Archive holds " + total + " records, read " + readRecords);
+            }
+            finished = true;
+            return false;
+        }
+        int rawLength = in.readInt();
+        int recordCount = in.readInt();
+        int checksum = in.readInt();
+        if (storedLength < 0 || storedLength > GalleryArchive.MAX_CHUNK_BYTES
+                || rawLength <= 0 || rawLength > GalleryArchive.MAX_CHUNK_BYTES
+                || recordCount <= 0 || (!compressed && storedLength != rawLength)) {
+            throw new IOException("Bad chunk header");
+        }
+        if (raw.length < rawLength) {
+            raw = new byte[rawLength];
+        }
+        if (compressed) {
+            if (stored.length < storedLength) {
+                stored = new byte[storedLength];
+            }
+            in.readFully(stored, 0, storedLength);
+            inflater.reset();
+            inflater.setInput(stored, 0, storedLength);
+            try {
+                int inflated = 0;
+                while (inflated < rawLength && !inflater.finished()) {
+                    int n = inflater.inflate(raw, inflated, rawLength - inflated);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    inflated += n;
+                }
+                if (inflated != rawLength || !inflater.finished()) {
+                    throw new IOException("Chunk does not inflate to " + rawLength + " bytes");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Damaged chunk", e);
+            }
+        } else {
+            in.readFully(raw, 0, rawLength);
+        }
+        crc.reset();
+        crc.update(raw, 0, rawLength);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Chunk checksum mismatch after " + readRecords + " records");
+        }
+        chunk = new DataInputStream(new ByteArrayInputStream(raw, 0, rawLength));
+        chunkRemaining = recordCount;
+        return true;
+    }
+
+    public long getRecordCount() {
+        return readRecords;
+    }
+
+    /**
+     * Bytes held for chunk buffers, bounded by the largest chunk read
+     */
+    public long getBufferBytes() {
+        return stored.length + raw.length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (inflater != null) {
+            inflater.end();
+        }
+        in.close();
+    }
+}
@@ -0,0 +1,165 @@
+package com.atharvakale.facerecognition.data.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a gallery archive one record at a time (see GalleryArchive for the format)
+ * Records are buffered until a chunk is full, then checksummed, optionally deflated and written.
+ * finish() must be called for the archive to be readable.
+ */
+public class GalleryArchiveWriter implements Closeable {
+    private final DataOutputStream out;
+    private final int dimension;
+    private final Deflater deflater;
+    private final ByteArrayOutputStream chunk = new ByteArrayOutputStream(GalleryArchive.CHUNK_BYTES + 4096);
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(4096);
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final CRC32 crc = new CRC32();
+    private byte[] compressed = new byte[0];
+    private int chunkRecords;
+    private long totalRecords;
+    private long storedBytes;
+    private boolean finished;
+
+    /**
+     * Write the header
+     * @param fingerprint Fingerprint of the model the vectors were computed with
+     * @param compress Deflate each chunk (thumbnails and vectors shrink little; names and sparse vectors do)
+     */
+    public GalleryArchiveWriter(OutputStream stream, String fingerprint, int dimension, boolean compress)
+            throws IOException {
+        if (dimension <= 0 || dimension > GalleryArchive.MAX_DIMENSION) {
+            throw new IllegalArgumentException("Bad dimension " + dimension);
+        }
+        this.out = new DataOutputStream(stream);
+        this.dimension = dimension;
+        this.deflater = compress ? new Deflater(Deflater.DEFAULT_COMPRESSION) : null;
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream headerOut = new DataOutputStream(header);
+        headerOut.writeInt(GalleryArchive.MAGIC);
+        headerOut.writeShort(GalleryArchive.VERSION);
+        headerOut.writeByte(compress ? GalleryArchive.FLAG_DEFLATE : 0);
+        headerOut.writeUTF(fingerprint != null ? fingerprint : "");
+        headerOut.writeInt(dimension);
+        byte[] bytes = header.toByteArray();
+        crc.reset();
+        crc.update(bytes, 0, bytes.length);
+        out.write(bytes);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Append one face
+     * @param thumbnail Encoded thumbnail, or null to leave it out
+     */
+    public void write(String name, float[] vector, byte[] thumbnail) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("Archive already finished");
+        }
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Vector of " + vector.length + " dimensions, expected " + dimension);
+        }
+        if (thumbnail != null && thumbnail.length > GalleryArchive.MAX_THUMBNAIL_BYTES) {
+            thumbnail = null;
+        }
+        record.reset();
+        recordOut.writeUTF(name);
+        for (float value : vector) {
+            recordOut.writeFloat(value);
+        }
+        recordOut.writeInt(thumbnail != null ? thumbnail.length : 0);
+        if (thumbnail != null) {
+            recordOut.write(thumbnail);
+        }
+        DataOutputStream chunkOut = new DataOutputStream(chunk);
+        chunkOut.writeInt(record.size());
+        record.writeTo(chunk);
+        chunkRecords++;
+        totalRecords++;
+        if (chunk.size() >= GalleryArchive.CHUNK_BYTES) {
+            flushChunk();
+        }
+    }
+
+    private void flushChunk() throws IOException {
+        if (chunkRecords == 0) {
+            return;
+        }
+        byte[] raw = chunk.toByteArray();
+        crc.reset();
+        crc.update(raw, 0, raw.length);
+        byte[] stored = raw;
+        int storedLength = raw.length;
+        if (deflater != null) {
+            deflater.reset();
+            deflater.setInput(raw);
+            deflater.finish();
+            int bound = raw.length + raw.length / 1000 + 64;
+            if (compressed.length < bound) {
+                compressed = new byte[bound];
+            }
+            storedLength = 0;
+            while (!deflater.finished()) {
+                if (storedLength == compressed.length) {
+                    byte[] grown = new byte[compressed.length * 2];
+                    System.arraycopy(compressed, 0, grown, 0, storedLength);
+                    compressed = grown;
+                }
+                storedLength += deflater.deflate(compressed, storedLength, compressed.length - storedLength);
+            }
+            stored = compressed;
+        }
+        out.writeInt(storedLength);
+        out.writeInt(raw.length);
+        out.writeInt(chunkRecords);
+        out.writeInt((int) crc.getValue());
+        out.write(stored, 0, storedLength);
+        storedBytes += storedLength;
+        chunk.reset();
+        chunkRecords = 0;
+    }
+
+    /**
+     * Write the last chunk and the end marker, and flush
+     * @return Records written
+     */
+    public long finish() throws IOException {
+        if (!finished) {
+            flushChunk();
+            out.writeInt(0);
+            out.writeLong(totalRecords);
+            out.flush();
+            finished = true;
+        }
+        return totalRecords;
+    }
+
+    public long getRecordCount() {
+        return totalRecords;
+    }
+
+    /**
+     * Chunk bytes written so far (after compression)
+     */
+    public long getStoredBytes() {
+        return storedBytes;
+    }
+
+    /**
+     * Close the underlying stream; an unfinished archive is left without its end marker
+     */
+    @Override
+    public void close() throws IOException {
+        if (deflater != null) {
+            deflater.end();
+        }
+        out.close();
+    }
+}
@@ -0,0 +1,82 @@
+package com.atharvakale.facerecognition.data.journal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free multi-producer / single-consumer queue
+ * Each slot carries a sequence number: producers claim a position with one CAS and publish the slot
+ * by advancing its sequence, so frame threads never block and a full buffer is reported instead of waited on
+ */
+class EventRingBuffer {
+    private final RecognitionEvent[] items;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final int mask;
+    private volatile long head;
+
+    /**
+     * @param capacity Slot count, rounded up to a power of two
+     */
+    EventRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.items = new RecognitionEvent[size];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Enqueue from any thread
+     * @return false if the buffer is full
+     */
+    boolean offer(RecognitionEvent event) {
+        long position = tail.get();
+        while (true) {
+            int slot = (int) position & mask;
+            long difference = sequences.get(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    items[slot] = event;
+                    sequences.set(slot, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Dequeue; only one consumer thread at a time
+     * @return Next event or null if none is published yet
+     */
+    RecognitionEvent poll() {
+        long position = head;
+        int slot = (int) position & mask;
+        if (sequences.get(slot) != position + 1) {
+            return null;
+        }
+        RecognitionEvent event = items[slot];
+        items[slot] = null;
+        sequences.set(slot, position + items.length);
+        head = position + 1;
+        return event;
+    }
+
+    /**
+     * Approximate number of queued events
+     */
+    int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    int capacity() {
+        return items.length;
+    }
+}
@@ -0,0 +1,29 @@
+package com.atharvakale.facerecognition.data.journal;
+
+/**
+ * One committed recognition, as stored in the journal
+ */
+public class RecognitionEvent {
+    public final long timestampMs;
+    public final String name;
+    public final float distance;
+    public final boolean isKnown;
+    public final int trackId;
+    public final int cameraId;
+
+    public RecognitionEvent(long timestampMs, String name, float distance, boolean isKnown,
+                            int trackId, int cameraId) {
+        this.timestampMs = timestampMs;
+        this.name = name;
+        this.distance = distance;
+        this.isKnown = isKnown;
+        this.trackId = trackId;
+        this.cameraId = cameraId;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d %s dist=%.3f known=%b track=%d camera=%d",
+            timestampMs, name, distance, isKnown, trackId, cameraId);
+    }
+}
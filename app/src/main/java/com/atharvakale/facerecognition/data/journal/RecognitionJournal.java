@@ -0,0 +1,658 @@
+package com.atharvakale.facerecognition.data.journal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Persistent log of recognition events for attendance-style queries
+ * The frame path only runs a lock-free cooldown check and a lock-free enqueue; a background thread
+ * drains the buffer in batches into fixed-size records in rotating segment files. Each segment keeps
+ * a sparse index (min/max timestamp per block of records) so time-range queries read only the blocks
+ * that can contain matches.
+ */
+public class RecognitionJournal {
+    public static final int RECORD_BYTES = 32;
+    public static final int INDEX_STRIDE = 256;     // records per sparse index entry
+
+    private static final String SEGMENT_PREFIX = "events-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final String NAMES_FILE = "names.dat";
+    private static final int BATCH_RECORDS = 1024;
+    private static final int FLAG_KNOWN = 1;
+
+    private final File directory;
+    private final int recordsPerSegment;
+    private final int maxSegments;
+    private final long cooldownMs;
+    private final long flushIntervalMs;
+    private final EventRingBuffer buffer;
+    private final ConcurrentHashMap<String, Long> lastAccepted = new ConcurrentHashMap<>();
+    private final AtomicLong recordedCount = new AtomicLong();
+    private final AtomicLong deduplicatedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile long flushedCount;
+
+    // Writer state (guarded by writeLock)
+    private final Object writeLock = new Object();
+    private final List<Segment> segments = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private final ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_RECORDS * RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private FileChannel activeChannel;
+    private FileChannel namesChannel;
+
+    private Thread flusher;
+    private volatile boolean running;
+
+    /**
+     * Record range of one segment file plus its sparse time index
+     */
+    private static class Segment {
+        final int number;
+        final File file;
+        int count;
+        long minTimestamp = Long.MAX_VALUE;
+        long maxTimestamp = Long.MIN_VALUE;
+        long[] blockMin = new long[4];
+        long[] blockMax = new long[4];
+
+        Segment(File directory, int number) {
+            this.number = number;
+            this.file = new File(directory, String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+        }
+
+        /**
+         * Copy of the records written so far, for reading outside the write lock
+         */
+        Segment copy() {
+            Segment copy = new Segment(file.getParentFile(), number);
+            copy.count = count;
+            copy.minTimestamp = minTimestamp;
+            copy.maxTimestamp = maxTimestamp;
+            copy.blockMin = Arrays.copyOf(blockMin, blockMin.length);
+            copy.blockMax = Arrays.copyOf(blockMax, blockMax.length);
+            return copy;
+        }
+
+        File indexFile() {
+            return new File(file.getParentFile(), String.format("%s%08d%s", SEGMENT_PREFIX, number, INDEX_SUFFIX));
+        }
+
+        void add(long timestampMs) {
+            int block = count / INDEX_STRIDE;
+            if (block >= blockMin.length) {
+                blockMin = Arrays.copyOf(blockMin, blockMin.length * 2);
+                blockMax = Arrays.copyOf(blockMax, blockMax.length * 2);
+            }
+            if (count % INDEX_STRIDE == 0) {
+                blockMin[block] = timestampMs;
+                blockMax[block] = timestampMs;
+            } else {
+                blockMin[block] = Math.min(blockMin[block], timestampMs);
+                blockMax[block] = Math.max(blockMax[block], timestampMs);
+            }
+            minTimestamp = Math.min(minTimestamp, timestampMs);
+            maxTimestamp = Math.max(maxTimestamp, timestampMs);
+            count++;
+        }
+
+        int blockCount() {
+            return (count + INDEX_STRIDE - 1) / INDEX_STRIDE;
+        }
+
+        boolean overlaps(long fromMs, long toMs) {
+            return count > 0 && minTimestamp <= toMs && maxTimestamp >= fromMs;
+        }
+    }
+
+    /**
+     * @param directory Directory holding segments, indexes and the name dictionary
+     * @param bufferCapacity Events that can wait for the flusher before new ones are dropped
+     * @param recordsPerSegment Records per segment file before rotating
+     * @param maxSegments Segments kept; the oldest is deleted on rotation beyond this
+     * @param cooldownMs Repeats of the same identity within this time are not recorded
+     * @param flushIntervalMs Maximum time an event waits in memory
+     */
+    public RecognitionJournal(File directory, int bufferCapacity, int recordsPerSegment, int maxSegments,
+                              long cooldownMs, long flushIntervalMs) {
+        this.directory = directory;
+        this.buffer = new EventRingBuffer(bufferCapacity);
+        this.recordsPerSegment = recordsPerSegment;
+        this.maxSegments = Math.max(1, maxSegments);
+        this.cooldownMs = cooldownMs;
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    /**
+     * Load existing segments and start the background flusher
+     * @return true if the journal is ready for events
+     */
+    public boolean open() {
+        synchronized (writeLock) {
+            try {
+                if (!directory.isDirectory() && !directory.mkdirs()) {
+                    return false;
+                }
+                loadNamesLocked();
+                loadSegmentsLocked();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
+        running = true;
+        flusher = new Thread(this::runFlusher, "recognition-journal");
+        flusher.setPriority(Thread.MIN_PRIORITY);
+        flusher.start();
+        return true;
+    }
+
+    /**
+     * Record a recognition now; safe to call from the frame path
+     * @return true if the event was queued, false if it was a repeat within the cooldown or the buffer was full
+     */
+    public boolean record(String name, float distance, boolean isKnown, int trackId, int cameraId) {
+        return record(new RecognitionEvent(System.currentTimeMillis(), name, distance, isKnown, trackId, cameraId));
+    }
+
+    /**
+     * Record an event with its own timestamp
+     */
+    public boolean record(RecognitionEvent event) {
+        // Unknown faces share a label, so they are told apart by track instead
+        String key = event.isKnown ? event.name : event.name + "#" + event.cameraId + ":" + event.trackId;
+        if (!passesCooldown(key, event.timestampMs)) {
+            deduplicatedCount.incrementAndGet();
+            return false;
+        }
+        if (!buffer.offer(event)) {
+            droppedCount.incrementAndGet();
+            return false;
+        }
+        recordedCount.incrementAndGet();
+        Thread thread = flusher;
+        if (thread != null && buffer.size() >= buffer.capacity() / 2) {
+            LockSupport.unpark(thread);
+        }
+        return true;
+    }
+
+    /**
+     * Write all queued events to disk
+     * @return true if successful, false otherwise
+     */
+    public boolean flush() {
+        synchronized (writeLock) {
+            try {
+                drainLocked();
+                return true;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Get all events with a timestamp in [fromMs, toMs], ordered by time
+     * Queued events are flushed first; only index blocks overlapping the range are read
+     */
+    public List<RecognitionEvent> query(long fromMs, long toMs) {
+        List<RecognitionEvent> events = new ArrayList<>();
+        synchronized (writeLock) {
+            try {
+                drainLocked();
+                for (Segment segment : segments) {
+                    if (segment.overlaps(fromMs, toMs)) {
+                        readRangeLocked(segment, fromMs, toMs, events);
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        Collections.sort(events, (a, b) -> Long.compare(a.timestampMs, b.timestampMs));
+        return events;
+    }
+
+    /**
+     * Get the known identities recognized between two times, in order of first appearance
+     */
+    public Set<String> getIdentitiesBetween(long fromMs, long toMs) {
+        Set<String> identities = new LinkedHashSet<>();
+        for (RecognitionEvent event : query(fromMs, toMs)) {
+            if (event.isKnown) {
+                identities.add(event.name);
+            }
+        }
+        return identities;
+    }
+
+    /**
+     * Get the latest time each known identity was recognized at or after fromMs
+     * Only the written records are read, block by block and outside the write lock, keeping one
+     * entry per name; events still queued are not included.
+     */
+    public Map<String, Long> getLatestSeenSince(long fromMs) {
+        List<Segment> written = new ArrayList<>();
+        List<String> knownNames;
+        synchronized (writeLock) {
+            for (Segment segment : segments) {
+                if (segment.overlaps(fromMs, Long.MAX_VALUE)) {
+                    written.add(segment.copy());
+                }
+            }
+            knownNames = new ArrayList<>(names);
+        }
+        Map<Integer, Long> latest = new HashMap<>();
+        ByteBuffer block = ByteBuffer.allocate(INDEX_STRIDE * RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (Segment segment : written) {
+            try (RandomAccessFile file = new RandomAccessFile(segment.file, "r")) {
+                FileChannel channel = file.getChannel();
+                for (int b = 0; b < segment.blockCount(); b++) {
+                    if (segment.blockMax[b] < fromMs) {
+                        continue;
+                    }
+                    int records = readBlock(channel, segment, b, block);
+                    for (int r = 0; r < records; r++) {
+                        int offset = r * RECORD_BYTES;
+                        long timestamp = block.getLong(offset);
+                        if (timestamp < fromMs || (block.get(offset + 24) & FLAG_KNOWN) == 0) {
+                            continue;
+                        }
+                        Integer nameId = block.getInt(offset + 8);
+                        Long previous = latest.get(nameId);
+                        if (previous == null || previous < timestamp) {
+                            latest.put(nameId, timestamp);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // Rotated away since the copy was taken; later segments are still read
+                e.printStackTrace();
+            }
+        }
+        Map<String, Long> byName = new HashMap<>();
+        for (Map.Entry<Integer, Long> entry : latest.entrySet()) {
+            byName.put(knownNames.get(entry.getKey()), entry.getValue());
+        }
+        return byName;
+    }
+
+    /**
+     * Stop the flusher and write everything still queued
+     */
+    public void close() {
+        running = false;
+        Thread thread = flusher;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (writeLock) {
+            try {
+                drainLocked();
+                if (!segments.isEmpty()) {
+                    writeIndexLocked(segments.get(segments.size() - 1));
+                }
+                closeChannelsLocked();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public long getRecordedCount() {
+        return recordedCount.get();
+    }
+
+    public long getDeduplicatedCount() {
+        return deduplicatedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getFlushedCount() {
+        return flushedCount;
+    }
+
+    public int getQueuedCount() {
+        return buffer.size();
+    }
+
+    public int getSegmentCount() {
+        synchronized (writeLock) {
+            return segments.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("recorded=%d deduplicated=%d dropped=%d flushed=%d queued=%d segments=%d",
+            getRecordedCount(), getDeduplicatedCount(), getDroppedCount(), getFlushedCount(),
+            getQueuedCount(), getSegmentCount());
+    }
+
+    private boolean passesCooldown(String key, long nowMs) {
+        while (true) {
+            Long last = lastAccepted.get(key);
+            if (last == null) {
+                if (lastAccepted.putIfAbsent(key, nowMs) == null) {
+                    return true;
+                }
+            } else if (nowMs - last < cooldownMs) {
+                return false;
+            } else if (lastAccepted.replace(key, last, nowMs)) {
+                return true;
+            }
+        }
+    }
+
+    private void runFlusher() {
+        while (running) {
+            LockSupport.parkNanos(flushIntervalMs * 1_000_000L);
+            flush();
+            evictCooldowns(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Forget identities whose cooldown has expired so the map does not grow with every track
+     */
+    private void evictCooldowns(long nowMs) {
+        for (Map.Entry<String, Long> entry : lastAccepted.entrySet()) {
+            if (nowMs - entry.getValue() >= cooldownMs) {
+                lastAccepted.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void drainLocked() throws IOException {
+        long drained = 0;
+        RecognitionEvent event;
+        while ((event = buffer.poll()) != null) {
+            Segment segment = writableSegmentLocked();
+            batch.putLong(event.timestampMs);
+            batch.putInt(nameIdLocked(event.name));
+            batch.putFloat(event.distance);
+            batch.putInt(event.trackId);
+            batch.putInt(event.cameraId);
+            batch.put((byte) (event.isKnown ? FLAG_KNOWN : 0));
+            batch.position(batch.position() + RECORD_BYTES - 25);
+            segment.add(event.timestampMs);
+            drained++;
+            if (!batch.hasRemaining()) {
+                writeBatchLocked();
+            }
+        }
+        writeBatchLocked();
+        flushedCount += drained;
+    }
+
+    /**
+     * Get the segment the next record goes to, rotating when the active one is full
+     */
+    private Segment writableSegmentLocked() throws IOException {
+        Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (last != null && last.count < recordsPerSegment) {
+            if (activeChannel == null) {
+                activeChannel = new RandomAccessFile(last.file, "rw").getChannel();
+                activeChannel.position(activeChannel.size());
+            }
+            return last;
+        }
+
+        // Records still batched belong to the segment being sealed
+        writeBatchLocked();
+        if (last != null) {
+            if (activeChannel != null) {
+                activeChannel.close();
+            }
+            writeIndexLocked(last);
+        }
+        Segment created = new Segment(directory, last == null ? 0 : last.number + 1);
+        segments.add(created);
+        activeChannel = new RandomAccessFile(created.file, "rw").getChannel();
+        while (segments.size() > maxSegments) {
+            Segment oldest = segments.remove(0);
+            oldest.file.delete();
+            oldest.indexFile().delete();
+        }
+        return created;
+    }
+
+    private void writeBatchLocked() throws IOException {
+        batch.flip();
+        while (batch.hasRemaining()) {
+            activeChannel.write(batch);
+        }
+        batch.clear();
+    }
+
+    private void readRangeLocked(Segment segment, long fromMs, long toMs, List<RecognitionEvent> out) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(INDEX_STRIDE * RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        try (RandomAccessFile file = new RandomAccessFile(segment.file, "r")) {
+            FileChannel channel = file.getChannel();
+            for (int b = 0; b < segment.blockCount(); b++) {
+                if (segment.blockMin[b] > toMs || segment.blockMax[b] < fromMs) {
+                    continue;
+                }
+                int records = readBlock(channel, segment, b, block);
+                for (int r = 0; r < records; r++) {
+                    int offset = r * RECORD_BYTES;
+                    long timestamp = block.getLong(offset);
+                    if (timestamp < fromMs || timestamp > toMs) {
+                        continue;
+                    }
+                    out.add(new RecognitionEvent(
+                        timestamp,
+                        names.get(block.getInt(offset + 8)),
+                        block.getFloat(offset + 12),
+                        (block.get(offset + 24) & FLAG_KNOWN) != 0,
+                        block.getInt(offset + 16),
+                        block.getInt(offset + 20)
+                    ));
+                }
+            }
+        }
+    }
+
+    /**
+     * Read one index block of records into the buffer
+     * @return Records in the block
+     */
+    private static int readBlock(FileChannel channel, Segment segment, int b, ByteBuffer block) throws IOException {
+        int records = Math.min(INDEX_STRIDE, segment.count - b * INDEX_STRIDE);
+        block.clear();
+        block.limit(records * RECORD_BYTES);
+        long position = (long) b * INDEX_STRIDE * RECORD_BYTES;
+        while (block.hasRemaining()) {
+            int read = channel.read(block, position + block.position());
+            if (read < 0) {
+                throw new EOFException("Segment shorter than its index: " + segment.file);
+            }
+        }
+        block.flip();
+        return records;
+    }
+
+    /**
+     * Names are stored once in an append-only dictionary; records refer to them by position
+     */
+    private int nameIdLocked(String name) throws IOException {
+        Integer id = nameIds.get(name);
+        if (id != null) {
+            return id;
+        }
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer entry = ByteBuffer.allocate(4 + bytes.length);
+        entry.putInt(bytes.length).put(bytes).flip();
+        while (entry.hasRemaining()) {
+            namesChannel.write(entry);
+        }
+        id = names.size();
+        names.add(name);
+        nameIds.put(name, id);
+        return id;
+    }
+
+    private void loadNamesLocked() throws IOException {
+        File file = new File(directory, NAMES_FILE);
+        long validLength = 0;
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                while (true) {
+                    int length = in.readInt();
+                    byte[] bytes = new byte[length];
+                    in.readFully(bytes);
+                    String name = new String(bytes, StandardCharsets.UTF_8);
+                    nameIds.put(name, names.size());
+                    names.add(name);
+                    validLength += 4 + length;
+                }
+            } catch (EOFException e) {
+                // End of dictionary (a torn last entry is dropped below)
+            }
+        }
+        namesChannel = new RandomAccessFile(file, "rw").getChannel();
+        namesChannel.truncate(validLength);
+        namesChannel.position(validLength);
+    }
+
+    private void loadSegmentsLocked() throws IOException {
+        File[] files = directory.listFiles((dir, fileName) ->
+            fileName.startsWith(SEGMENT_PREFIX) && fileName.endsWith(SEGMENT_SUFFIX));
+        List<Integer> numbers = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                String fileName = file.getName();
+                try {
+                    numbers.add(Integer.parseInt(fileName.substring(
+                        SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        Collections.sort(numbers);
+        for (int number : numbers) {
+            Segment segment = new Segment(directory, number);
+            int records = (int) (segment.file.length() / RECORD_BYTES);
+            if (segment.file.length() != (long) records * RECORD_BYTES) {
+                // Drop a record torn by a crash mid-write
+                try (RandomAccessFile file = new RandomAccessFile(segment.file, "rw")) {
+                    file.setLength((long) records * RECORD_BYTES);
+                }
+            }
+            if (!readIndexLocked(segment, records)) {
+                rebuildIndexLocked(segment, records);
+            }
+            segments.add(segment);
+        }
+    }
+
+    private void writeIndexLocked(Segment segment) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(segment.indexFile())))) {
+            out.writeInt(segment.count);
+            for (int b = 0; b < segment.blockCount(); b++) {
+                out.writeLong(segment.blockMin[b]);
+                out.writeLong(segment.blockMax[b]);
+            }
+        }
+    }
+
+    /**
+     * @return false if the index is missing or does not describe the segment as it is on disk
+     */
+    private boolean readIndexLocked(Segment segment, int records) {
+        File indexFile = segment.indexFile();
+        if (!indexFile.exists()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != records) {
+                return false;
+            }
+            segment.count = records;
+            int blocks = segment.blockCount();
+            segment.blockMin = new long[Math.max(4, blocks)];
+            segment.blockMax = new long[Math.max(4, blocks)];
+            for (int b = 0; b < blocks; b++) {
+                segment.blockMin[b] = in.readLong();
+                segment.blockMax[b] = in.readLong();
+                segment.minTimestamp = Math.min(segment.minTimestamp, segment.blockMin[b]);
+                segment.maxTimestamp = Math.max(segment.maxTimestamp, segment.blockMax[b]);
+            }
+            return true;
+        } catch (IOException e) {
+            segment.count = 0;
+            return false;
+        }
+    }
+
+    private void rebuildIndexLocked(Segment segment, int records) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(BATCH_RECORDS * RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        try (RandomAccessFile file = new RandomAccessFile(segment.file, "r")) {
+            FileChannel channel = file.getChannel();
+            long position = 0;
+            int remaining = records;
+            while (remaining > 0) {
+                int batchRecords = Math.min(BATCH_RECORDS, remaining);
+                chunk.clear();
+                chunk.limit(batchRecords * RECORD_BYTES);
+                while (chunk.hasRemaining()) {
+                    if (channel.read(chunk, position + chunk.position()) < 0) {
+                        throw new EOFException("Unexpected end of segment: " + segment.file);
+                    }
+                }
+                for (int r = 0; r < batchRecords; r++) {
+                    segment.add(chunk.getLong(r * RECORD_BYTES));
+                }
+                position += (long) batchRecords * RECORD_BYTES;
+                remaining -= batchRecords;
+            }
+        }
+    }
+
+    private void closeChannelsLocked() throws IOException {
+        if (activeChannel != null) {
+            activeChannel.close();
+            activeChannel = null;
+        }
+        if (namesChannel != null) {
+            namesChannel.close();
+            namesChannel = null;
+        }
+    }
+}
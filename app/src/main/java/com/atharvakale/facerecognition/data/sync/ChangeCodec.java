@@ -0,0 +1,107 @@
+package com.atharvakale.facerecognition.data.sync;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wire format of a change batch: a small header followed by one record per change, with
+ * embeddings as packed big-endian floats (4 bytes per dimension instead of ~10 in JSON)
+ * <pre>
+ * int magic, short version, UTF fingerprint, int dimension, long lastSequence, bool hasMore, int count
+ * count x { byte type, UTF name, long timestampMs, UTF origin, [dimension x float] for upserts }
+ * </pre>
+ */
+public final class ChangeCodec {
+    public static final String CONTENT_TYPE = "application/x-gallery-changes";
+
+    private static final int MAGIC = 0x47434231;            // "GCB1"
+    private static final int VERSION = 1;
+    private static final int MAX_DIMENSION = 4096;
+    // Allowance per string when sizing request bodies; batches with longer names are refused
+    private static final int MAX_NAME_BYTES = 1024;
+    private static final int MAX_ORIGIN_BYTES = 128;
+
+    private ChangeCodec() {
+    }
+
+    /**
+     * Largest encoded batch of count changes accepted from a peer
+     */
+    public static int maxBatchBytes(int count, int dimension) {
+        int header = 4 + 2 + (2 + MAX_ORIGIN_BYTES) + 4 + 8 + 1 + 4;
+        int record = 1 + (2 + MAX_NAME_BYTES) + 8 + (2 + MAX_ORIGIN_BYTES) + dimension * 4;
+        return header + count * record;
+    }
+
+    public static void write(ChangeFeed.Batch batch, OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeUTF(batch.fingerprint != null ? batch.fingerprint : "");
+        out.writeInt(batch.dimension);
+        out.writeLong(batch.lastSequence);
+        out.writeBoolean(batch.hasMore);
+        out.writeInt(batch.changes.size());
+        for (GalleryChange change : batch.changes) {
+            out.writeByte(change.type);
+            out.writeUTF(change.name);
+            out.writeLong(change.timestampMs);
+            out.writeUTF(change.origin);
+            if (!change.isDelete()) {
+                for (int i = 0; i < batch.dimension; i++) {
+                    out.writeFloat(change.vector[i]);
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * @throws IOException On a truncated or malformed batch
+     */
+    public static ChangeFeed.Batch read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a change batch");
+        }
+        int version = in.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported change batch version " + version);
+        }
+        String fingerprint = in.readUTF();
+        int dimension = in.readInt();
+        if (dimension <= 0 || dimension > MAX_DIMENSION) {
+            throw new IOException("Bad dimension " + dimension);
+        }
+        long lastSequence = in.readLong();
+        boolean hasMore = in.readBoolean();
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Bad change count " + count);
+        }
+        List<GalleryChange> changes = new ArrayList<>(Math.min(count, 4096));
+        for (int c = 0; c < count; c++) {
+            byte type = in.readByte();
+            if (type != GalleryChange.UPSERT && type != GalleryChange.DELETE) {
+                throw new IOException("Bad change type " + type);
+            }
+            String name = in.readUTF();
+            long timestampMs = in.readLong();
+            String origin = in.readUTF();
+            float[] vector = null;
+            if (type == GalleryChange.UPSERT) {
+                vector = new float[dimension];
+                for (int i = 0; i < dimension; i++) {
+                    vector[i] = in.readFloat();
+                }
+            }
+            changes.add(new GalleryChange(type, name, vector, timestampMs, origin));
+        }
+        return new ChangeFeed.Batch(fingerprint, dimension, lastSequence, hasMore, changes);
+    }
+}
@@ -0,0 +1,592 @@
+package com.atharvakale.facerecognition.data.sync;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Versioned feed of gallery upserts and deletes, the source of truth for replication
+ * Every change gets the next local sequence number; a peer that has seen everything up to a
+ * sequence asks only for what came after it. Only the latest change per name is kept (deletes
+ * stay as tombstones), so the feed never grows beyond the number of names ever registered.
+ * Changes are appended to a log file as length-prefixed records and compacted when superseded
+ * records pile up.
+ */
+public class ChangeFeed {
+    private static final int MAGIC = 0x47434631;            // "GCF1"
+    private static final int VERSION = 1;
+    private static final String LOG_FILE = "changes.log";
+    private static final String CHECKPOINT_FILE = "checkpoints.dat";
+    private static final int COMPACT_MIN_RECORDS = 1024;
+
+    private final File directory;
+    private final int dimension;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // Guarded by this
+    private final TreeMap<Long, GalleryChange> bySequence = new TreeMap<>();
+    private final Map<String, GalleryChange> byName = new HashMap<>();
+    private final Map<String, Long> checkpoints = new HashMap<>();
+    private String origin;
+    private String fingerprint;
+    private long sequence;
+    private long clock;
+    private int liveCount;
+    private int logRecords;
+    private DataOutputStream log;
+
+    /**
+     * Notified of remote changes that won over the local state, outside the feed lock
+     */
+    public interface Listener {
+        void onRemoteChanges(List<GalleryChange> applied);
+    }
+
+    /**
+     * Changes after a sequence number, one page at a time
+     */
+    public static class Batch {
+        public final String fingerprint;
+        public final int dimension;
+        public final long lastSequence;     // checkpoint to ask from next time
+        public final boolean hasMore;
+        public final List<GalleryChange> changes;
+
+        public Batch(String fingerprint, int dimension, long lastSequence, boolean hasMore, List<GalleryChange> changes) {
+            this.fingerprint = fingerprint;
+            this.dimension = dimension;
+            this.lastSequence = lastSequence;
+            this.hasMore = hasMore;
+            this.changes = changes;
+        }
+    }
+
+    /**
+     * @param directory Directory holding the change log and replication checkpoints
+     * @param dimension Embedding size
+     */
+    public ChangeFeed(File directory, int dimension) {
+        this.directory = directory;
+        this.dimension = dimension;
+    }
+
+    /**
+     * Load the change log; a log written for another model is discarded
+     * @param fingerprint Fingerprint of the model that produced the embeddings
+     * @return true if the feed is ready for changes
+     */
+    public synchronized boolean open(String fingerprint) {
+        if (log != null) {
+            return fingerprint.equals(this.fingerprint) || reset(fingerprint);
+        }
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                return false;
+            }
+            this.fingerprint = fingerprint;
+            File file = new File(directory, LOG_FILE);
+            if (!file.exists() || !loadLocked(file) || !fingerprint.equals(this.fingerprint)) {
+                this.fingerprint = fingerprint;
+                clearLocked();
+                if (origin == null) {
+                    origin = UUID.randomUUID().toString();
+                }
+                rewriteLocked();
+                saveCheckpointsLocked();
+            } else {
+                loadCheckpointsLocked();
+                log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+            }
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Start over for a new model: changes and checkpoints are dropped, the origin id is kept
+     */
+    public synchronized boolean reset(String fingerprint) {
+        if (origin == null) {
+            return open(fingerprint);
+        }
+        this.fingerprint = fingerprint;
+        clearLocked();
+        try {
+            rewriteLocked();
+            saveCheckpointsLocked();
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Record a local registration or re-registration
+     */
+    public synchronized GalleryChange recordUpsert(String name, float[] vector) {
+        GalleryChange change = new GalleryChange(GalleryChange.UPSERT, name, vector.clone(), nextTimestamp(), origin);
+        return appendAndFlush(change);
+    }
+
+    /**
+     * Record a local deletion
+     */
+    public synchronized GalleryChange recordDelete(String name) {
+        GalleryChange change = new GalleryChange(GalleryChange.DELETE, name, null, nextTimestamp(), origin);
+        return appendAndFlush(change);
+    }
+
+    /**
+     * Record deletions of several names with one log flush
+     */
+    public synchronized void recordDeletes(Collection<String> names) {
+        try {
+            for (String name : names) {
+                appendLocked(new GalleryChange(GalleryChange.DELETE, name, null, nextTimestamp(), origin));
+            }
+            log.flush();
+            compactIfNeededLocked();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Record registrations of several names with one log flush
+     */
+    public synchronized void recordUpserts(Map<String, float[]> faces) {
+        try {
+            for (Map.Entry<String, float[]> entry : faces.entrySet()) {
+                appendLocked(new GalleryChange(GalleryChange.UPSERT, entry.getKey(), entry.getValue().clone(),
+                    nextTimestamp(), origin));
+            }
+            log.flush();
+            compactIfNeededLocked();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Bring the feed in line with the registered faces, recording whatever differs as local changes
+     * Covers faces registered before replication was enabled and edits lost in a crash.
+     * @return Number of changes recorded
+     */
+    public synchronized int reconcile(Map<String, float[]> faces) {
+        int recorded = 0;
+        try {
+            for (Map.Entry<String, float[]> entry : faces.entrySet()) {
+                GalleryChange current = byName.get(entry.getKey());
+                if (current == null || current.isDelete() || !Arrays.equals(current.vector, entry.getValue())) {
+                    appendLocked(new GalleryChange(GalleryChange.UPSERT, entry.getKey(), entry.getValue().clone(),
+                        nextTimestamp(), origin));
+                    recorded++;
+                }
+            }
+            for (GalleryChange current : new ArrayList<>(byName.values())) {
+                if (!current.isDelete() && !faces.containsKey(current.name)) {
+                    appendLocked(new GalleryChange(GalleryChange.DELETE, current.name, null, nextTimestamp(), origin));
+                    recorded++;
+                }
+            }
+            log.flush();
+            compactIfNeededLocked();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return recorded;
+    }
+
+    /**
+     * Merge changes from a peer; each wins only over an older version of the same name
+     * Listeners get the changes that were applied.
+     * @param source Peer the changes came from, so they are not sent back to it
+     * @return Changes that won, with their new local sequence numbers
+     */
+    public List<GalleryChange> apply(List<GalleryChange> remote, String source) {
+        List<GalleryChange> applied = new ArrayList<>();
+        synchronized (this) {
+            try {
+                for (GalleryChange change : remote) {
+                    if (!change.isDelete() && (change.vector == null || change.vector.length != dimension)) {
+                        continue;
+                    }
+                    clock = Math.max(clock, change.timestampMs);
+                    if (!change.supersedes(byName.get(change.name))) {
+                        continue;
+                    }
+                    GalleryChange local = new GalleryChange(change.type, change.name, change.vector,
+                        change.timestampMs, change.origin);
+                    local.source = source;
+                    appendLocked(local);
+                    applied.add(local);
+                }
+                log.flush();
+                compactIfNeededLocked();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (!applied.isEmpty()) {
+            for (Listener listener : listeners) {
+                listener.onRemoteChanges(applied);
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Get changes recorded after a sequence number, in sequence order
+     * @param excludeSource Skip changes that came from this peer, or null to include all
+     * @return Page of at most limit changes; its lastSequence also covers skipped changes
+     */
+    public synchronized Batch getChangesSince(long since, int limit, String excludeSource) {
+        List<GalleryChange> changes = new ArrayList<>();
+        long last = since;
+        boolean hasMore = false;
+        for (GalleryChange change : bySequence.tailMap(since, false).values()) {
+            if (changes.size() == limit) {
+                hasMore = true;
+                break;
+            }
+            last = change.sequence;
+            if (excludeSource == null || !excludeSource.equals(change.source)) {
+                changes.add(change);
+            }
+        }
+        return new Batch(fingerprint, dimension, last, hasMore, changes);
+    }
+
+    /**
+     * Get the latest change of a name, including tombstones
+     */
+    public synchronized GalleryChange get(String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * Get the replication checkpoint stored under a key (0 if none)
+     */
+    public synchronized long getCheckpoint(String key) {
+        Long checkpoint = checkpoints.get(key);
+        return checkpoint != null ? checkpoint : 0L;
+    }
+
+    /**
+     * Store a replication checkpoint
+     */
+    public synchronized boolean setCheckpoint(String key, long sequence) {
+        checkpoints.put(key, sequence);
+        try {
+            saveCheckpointsLocked();
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    public synchronized long getLatestSequence() {
+        return sequence;
+    }
+
+    /**
+     * Id of this device in change versions
+     */
+    public synchronized String getOrigin() {
+        return origin;
+    }
+
+    public synchronized String getFingerprint() {
+        return fingerprint;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Names with a live (not deleted) registration
+     */
+    public synchronized int getLiveCount() {
+        return liveCount;
+    }
+
+    /**
+     * Names in the feed, including tombstones
+     */
+    public synchronized int size() {
+        return byName.size();
+    }
+
+    /**
+     * Get the names with a live registration and their vectors
+     */
+    public synchronized Map<String, float[]> snapshot() {
+        Map<String, float[]> faces = new HashMap<>();
+        for (GalleryChange change : byName.values()) {
+            if (!change.isDelete()) {
+                faces.put(change.name, change.vector);
+            }
+        }
+        return faces;
+    }
+
+    public synchronized void close() {
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            log = null;
+        }
+    }
+
+    /**
+     * Timestamp for a local change: wall clock, but never behind a version already seen,
+     * so a local edit made after receiving a remote one wins over it
+     */
+    private long nextTimestamp() {
+        clock = Math.max(System.currentTimeMillis(), clock + 1);
+        return clock;
+    }
+
+    private GalleryChange appendAndFlush(GalleryChange change) {
+        try {
+            appendLocked(change);
+            log.flush();
+            compactIfNeededLocked();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return change;
+    }
+
+    private void appendLocked(GalleryChange change) throws IOException {
+        if (log == null) {
+            throw new IOException("Change feed is closed");
+        }
+        change.sequence = ++sequence;
+        indexLocked(change);
+        writeRecord(log, change);
+        logRecords++;
+    }
+
+    private void indexLocked(GalleryChange change) {
+        GalleryChange previous = byName.put(change.name, change);
+        if (previous != null) {
+            bySequence.remove(previous.sequence);
+            if (!previous.isDelete()) {
+                liveCount--;
+            }
+        }
+        bySequence.put(change.sequence, change);
+        if (!change.isDelete()) {
+            liveCount++;
+        }
+    }
+
+    private void clearLocked() {
+        bySequence.clear();
+        byName.clear();
+        checkpoints.clear();
+        liveCount = 0;
+    }
+
+    private void compactIfNeededLocked() throws IOException {
+        if (logRecords > COMPACT_MIN_RECORDS && logRecords > 2 * byName.size()) {
+            rewriteLocked();
+        }
+    }
+
+    /**
+     * Write the latest change per name to a new log and swap it in
+     */
+    private void rewriteLocked() throws IOException {
+        close();
+        File file = new File(directory, LOG_FILE);
+        File temp = new File(directory, LOG_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(origin);
+            out.writeUTF(fingerprint);
+            out.writeInt(dimension);
+            out.writeLong(sequence);
+            out.writeLong(clock);
+            for (GalleryChange change : bySequence.values()) {
+                writeRecord(out, change);
+            }
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Failed to replace " + file);
+        }
+        logRecords = bySequence.size();
+        log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+    }
+
+    /**
+     * Replay the log; a record cut short by a crash is truncated away
+     * @return false if the file is not a change log for this dimension
+     */
+    private boolean loadLocked(File file) throws IOException {
+        long validLength;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return false;
+            }
+            origin = in.readUTF();
+            fingerprint = in.readUTF();
+            if (in.readInt() != dimension) {
+                return false;
+            }
+            sequence = in.readLong();
+            clock = in.readLong();
+            validLength = 4 + 4 + utfLength(origin) + utfLength(fingerprint) + 4 + 8 + 8;
+            logRecords = 0;
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] record = new byte[length];
+                try {
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    break;
+                }
+                GalleryChange change = readRecord(record);
+                sequence = Math.max(sequence, change.sequence);
+                clock = Math.max(clock, change.timestampMs);
+                GalleryChange current = byName.get(change.name);
+                if (current == null || current.sequence < change.sequence) {
+                    indexLocked(change);
+                }
+                logRecords++;
+                validLength += 4 + length;
+            }
+        } catch (EOFException e) {
+            return false;
+        }
+        if (validLength < file.length()) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(validLength);
+            }
+        }
+        return true;
+    }
+
+    private void writeRecord(DataOutputStream out, GalleryChange change) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + (change.vector != null ? change.vector.length * 4 : 0));
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeLong(change.sequence);
+        record.writeByte(change.type);
+        record.writeLong(change.timestampMs);
+        record.writeUTF(change.origin);
+        record.writeUTF(change.name);
+        record.writeUTF(change.source != null ? change.source : "");
+        if (!change.isDelete()) {
+            for (float value : change.vector) {
+                record.writeFloat(value);
+            }
+        }
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    private GalleryChange readRecord(byte[] bytes) throws IOException {
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes));
+        long sequence = record.readLong();
+        byte type = record.readByte();
+        long timestampMs = record.readLong();
+        String origin = record.readUTF();
+        String name = record.readUTF();
+        String source = record.readUTF();
+        float[] vector = null;
+        if (type != GalleryChange.DELETE) {
+            vector = new float[dimension];
+            for (int i = 0; i < dimension; i++) {
+                vector[i] = record.readFloat();
+            }
+        }
+        GalleryChange change = new GalleryChange(type, name, vector, timestampMs, origin);
+        change.sequence = sequence;
+        change.source = source.isEmpty() ? null : source;
+        return change;
+    }
+
+    private void loadCheckpointsLocked() throws IOException {
+        checkpoints.clear();
+        File file = new File(directory, CHECKPOINT_FILE);
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                checkpoints.put(in.readUTF(), in.readLong());
+            }
+        } catch (EOFException e) {
+            checkpoints.clear();
+        }
+    }
+
+    private void saveCheckpointsLocked() throws IOException {
+        File file = new File(directory, CHECKPOINT_FILE);
+        File temp = new File(directory, CHECKPOINT_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(checkpoints.size());
+            for (Map.Entry<String, Long> entry : checkpoints.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Failed to replace " + file);
+        }
+    }
+
+    private static int utfLength(String value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeUTF(value);
+        return bytes.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("origin=%s sequence=%d names=%d live=%d logRecords=%d",
+            origin, sequence, byName.size(), liveCount, logRecords);
+    }
+}
@@ -0,0 +1,58 @@
+package com.atharvakale.facerecognition.data.sync;
+
+/**
+ * One upsert or delete of a registered face in the change feed
+ * The version (timestamp, origin) decides conflicts: the later timestamp wins, ties go to the
+ * larger origin id, so every peer settles on the same value whatever order changes arrive in.
+ */
+public class GalleryChange {
+    public static final byte UPSERT = 1;
+    public static final byte DELETE = 2;
+
+    public final byte type;
+    public final String name;
+    public final float[] vector;        // null for deletes
+    public final long timestampMs;
+    public final String origin;         // device that made the change
+
+    // Local bookkeeping, not shipped
+    long sequence;
+    String source;                      // peer the change was pulled from or pushed by, null if local
+
+    public GalleryChange(byte type, String name, float[] vector, long timestampMs, String origin) {
+        this.type = type;
+        this.name = name;
+        this.vector = vector;
+        this.timestampMs = timestampMs;
+        this.origin = origin;
+    }
+
+    public boolean isDelete() {
+        return type == DELETE;
+    }
+
+    /**
+     * Position in the local feed; changes with a higher sequence were recorded later
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Whether this change wins over another change of the same name (last writer wins)
+     */
+    public boolean supersedes(GalleryChange other) {
+        if (other == null) {
+            return true;
+        }
+        if (timestampMs != other.timestampMs) {
+            return timestampMs > other.timestampMs;
+        }
+        return origin.compareTo(other.origin) > 0;
+    }
+
+    @Override
+    public String toString() {
+        return (isDelete() ? "delete " : "upsert ") + name + " @" + timestampMs + "/" + origin + " #" + sequence;
+    }
+}
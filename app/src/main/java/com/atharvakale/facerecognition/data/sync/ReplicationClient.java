@@ -0,0 +1,215 @@
+package com.atharvakale.facerecognition.data.sync;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+
+/**
+ * Keeps a local change feed in sync with a hub running ReplicationServer
+ * A sync pushes local changes recorded since the last acknowledged push, then pulls the hub's
+ * changes since the last pulled checkpoint, one page at a time. Checkpoints are stored in the
+ * feed after every page, so an interrupted sync resumes where it stopped.
+ */
+public class ReplicationClient {
+    private final ChangeFeed feed;
+    private final String hubUrl;
+    private final String token;
+    private final int batchSize;
+    private final int timeoutMs;
+    private final String pullKey;
+    private final String pushKey;
+
+    // Guarded by this
+    private long pulledChanges;
+    private long pushedChanges;
+    private long bytesReceived;
+    private long bytesSent;
+    private long syncs;
+    private String lastError;
+
+    /**
+     * @param hubUrl Base URL of the hub, e.g. http://192.168.1.20:8477
+     * @param token Secret shared by the fleet, sent as a bearer token
+     * @param batchSize Changes per request (at most the hub's batch size)
+     */
+    public ReplicationClient(ChangeFeed feed, String hubUrl, String token, int batchSize, int timeoutMs) {
+        this.feed = feed;
+        this.token = token;
+        this.hubUrl = hubUrl.endsWith("/") ? hubUrl.substring(0, hubUrl.length() - 1) : hubUrl;
+        this.batchSize = batchSize;
+        this.timeoutMs = timeoutMs;
+        this.pullKey = "pull:" + this.hubUrl;
+        this.pushKey = "push:" + this.hubUrl;
+    }
+
+    /**
+     * Push, then pull
+     * @return true if both directions completed
+     */
+    public synchronized boolean sync() {
+        syncs++;
+        lastError = null;
+        return push() && pull();
+    }
+
+    /**
+     * Send local changes the hub has not acknowledged yet
+     */
+    public synchronized boolean push() {
+        try {
+            while (true) {
+                long checkpoint = feed.getCheckpoint(pushKey);
+                // Changes pulled from the hub are not sent back to it
+                ChangeFeed.Batch batch = feed.getChangesSince(checkpoint, batchSize, pullKey);
+                if (batch.lastSequence == checkpoint) {
+                    return true;
+                }
+                if (!batch.changes.isEmpty()) {
+                    ByteArrayOutputStream body = new ByteArrayOutputStream();
+                    ChangeCodec.write(batch, body);
+                    if (post(body.toByteArray()) == null) {
+                        return false;
+                    }
+                    pushedChanges += batch.changes.size();
+                }
+                feed.setCheckpoint(pushKey, batch.lastSequence);
+                if (!batch.hasMore) {
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            lastError = e.toString();
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Apply the hub's changes recorded since the last pull
+     */
+    public synchronized boolean pull() {
+        try {
+            while (true) {
+                long checkpoint = feed.getCheckpoint(pullKey);
+                String query = "?since=" + checkpoint + "&limit=" + batchSize
+                    + "&peer=" + URLEncoder.encode(feed.getOrigin(), "UTF-8");
+                byte[] response = get(query);
+                if (response == null) {
+                    return false;
+                }
+                ChangeFeed.Batch batch = ChangeCodec.read(new ByteArrayInputStream(response));
+                if (!batch.fingerprint.equals(feed.getFingerprint()) || batch.dimension != feed.getDimension()) {
+                    lastError = "Hub gallery belongs to another model (" + batch.fingerprint + ")";
+                    return false;
+                }
+                feed.apply(batch.changes, pullKey);
+                pulledChanges += batch.changes.size();
+                feed.setCheckpoint(pullKey, batch.lastSequence);
+                if (!batch.hasMore) {
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            lastError = e.toString();
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private byte[] get(String query) throws IOException {
+        HttpURLConnection connection = open(query);
+        connection.setRequestMethod("GET");
+        return readResponse(connection);
+    }
+
+    private byte[] post(byte[] body) throws IOException {
+        HttpURLConnection connection = open("?peer=" + URLEncoder.encode(feed.getOrigin(), "UTF-8"));
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", ChangeCodec.CONTENT_TYPE);
+        connection.setFixedLengthStreamingMode(body.length);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+        bytesSent += body.length;
+        return readResponse(connection);
+    }
+
+    private HttpURLConnection open(String query) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(hubUrl + "/changes" + query).openConnection();
+        connection.setConnectTimeout(timeoutMs);
+        connection.setReadTimeout(timeoutMs);
+        connection.setUseCaches(false);
+        if (token != null) {
+            connection.setRequestProperty("Authorization", "Bearer " + token);
+        }
+        return connection;
+    }
+
+    /**
+     * @return Response body, or null on a non-200 status (the reason is kept in lastError)
+     */
+    private byte[] readResponse(HttpURLConnection connection) throws IOException {
+        try {
+            int status = connection.getResponseCode();
+            InputStream in = status == 200 ? connection.getInputStream() : connection.getErrorStream();
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            if (in != null) {
+                try (InputStream stream = in) {
+                    byte[] buffer = new byte[16 * 1024];
+                    int n;
+                    while ((n = stream.read(buffer)) >= 0) {
+                        body.write(buffer, 0, n);
+                    }
+                }
+            }
+            bytesReceived += body.size();
+            if (status != 200) {
+                lastError = "HTTP " + status + ": " + body.toString("UTF-8");
+                return null;
+            }
+            return body.toByteArray();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    public String getHubUrl() {
+        return hubUrl;
+    }
+
+    public synchronized long getPulledChanges() {
+        return pulledChanges;
+    }
+
+    public synchronized long getPushedChanges() {
+        return pushedChanges;
+    }
+
+    public synchronized long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public synchronized long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * Reason the last sync failed, or null if it succeeded
+     */
+    public synchronized String getLastError() {
+        return lastError;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("hub=%s syncs=%d pushed=%d pulled=%d sent=%dB received=%dB%s",
+            hubUrl, syncs, pushedChanges, pulledChanges, bytesSent, bytesReceived,
+            lastError != null ? " error=" + lastError : "");
+    }
+}
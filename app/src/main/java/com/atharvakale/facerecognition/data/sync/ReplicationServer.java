@@ -0,0 +1,124 @@
+package com.atharvakale.facerecognition.data.sync;
+
+import com.atharvakale.facerecognition.control.NioHttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves a change feed to peers over HTTP (NioHttpServer), authenticated with a fleet-wide token
+ * <pre>
+ * GET  /changes?since=N&amp;limit=M&amp;peer=ID  changes after sequence N, minus those pushed by the peer
+ * POST /changes?peer=ID                   apply a batch of the peer's changes
+ * </pre>
+ * Both need "Authorization: Bearer &lt;token&gt;": the feed holds every biometric embedding, and a
+ * pushed batch can overwrite or delete any face. Pushed bodies are capped at maxBatch changes.
+ * A device or a small always-on box runs this as the hub; peers pull and push through
+ * ReplicationClient.
+ */
+public class ReplicationServer {
+    private final ChangeFeed feed;
+    private final int maxBatch;
+    private final NioHttpServer server;
+    private final AtomicLong changesServed = new AtomicLong();
+    private final AtomicLong changesReceived = new AtomicLong();
+
+    /**
+     * @param maxBatch Upper bound on changes per request and response, whatever the peer asks for
+     * @param token Secret shared by the fleet; null refuses every request
+     */
+    public ReplicationServer(ChangeFeed feed, int maxBatch, String token) {
+        this.feed = feed;
+        this.maxBatch = maxBatch;
+        this.server = new NioHttpServer("replication-server", token,
+            ChangeCodec.maxBatchBytes(maxBatch, feed.getDimension()));
+        server.route("GET", "/changes", this::serveChanges, true);
+        server.route("POST", "/changes", this::receiveChanges, true);
+    }
+
+    /**
+     * Start listening
+     * @param host Address to bind, null for all interfaces
+     * @param port Port to bind, 0 for any free port
+     * @return true if the server is accepting connections
+     */
+    public boolean start(String host, int port, int workerThreads) {
+        return server.start(host, port, workerThreads);
+    }
+
+    /**
+     * Port the server is bound to, or -1 if it is not running
+     */
+    public int getPort() {
+        return server.getPort();
+    }
+
+    public void stop() {
+        server.stop();
+    }
+
+    private NioHttpServer.Response serveChanges(NioHttpServer.Request request) throws IOException {
+        long since;
+        int limit;
+        try {
+            since = Long.parseLong(param(request, "since", "0"));
+            limit = Integer.parseInt(param(request, "limit", String.valueOf(maxBatch)));
+        } catch (NumberFormatException e) {
+            return NioHttpServer.Response.text(400, "Bad since/limit");
+        }
+        ChangeFeed.Batch batch = feed.getChangesSince(since, Math.max(1, Math.min(limit, maxBatch)),
+            request.params.get("peer"));
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        ChangeCodec.write(batch, body);
+        changesServed.addAndGet(batch.changes.size());
+        return new NioHttpServer.Response(200, ChangeCodec.CONTENT_TYPE, body.toByteArray());
+    }
+
+    private NioHttpServer.Response receiveChanges(NioHttpServer.Request request) {
+        String peer = request.params.get("peer");
+        if (peer == null || peer.isEmpty()) {
+            return NioHttpServer.Response.text(400, "Missing peer");
+        }
+        ChangeFeed.Batch batch;
+        try {
+            batch = ChangeCodec.read(new ByteArrayInputStream(request.body));
+        } catch (IOException e) {
+            return NioHttpServer.Response.text(400, String.valueOf(e.getMessage()));
+        }
+        if (batch.changes.size() > maxBatch) {
+            return NioHttpServer.Response.text(413, "More than " + maxBatch + " changes");
+        }
+        // Embeddings of another model are not comparable with ours
+        if (!batch.fingerprint.equals(feed.getFingerprint()) || batch.dimension != feed.getDimension()) {
+            return NioHttpServer.Response.text(409, "Model mismatch");
+        }
+        int applied = feed.apply(batch.changes, peer).size();
+        changesReceived.addAndGet(batch.changes.size());
+        return NioHttpServer.Response.text(200, String.valueOf(applied));
+    }
+
+    private static String param(NioHttpServer.Request request, String key, String defaultValue) {
+        String value = request.params.get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    public long getRequestCount() {
+        return server.getRequestCount();
+    }
+
+    /**
+     * Requests refused for a missing or wrong token
+     */
+    public long getUnauthorizedCount() {
+        return server.getUnauthorizedCount();
+    }
+
+    public long getChangesServed() {
+        return changesServed.get();
+    }
+
+    public long getChangesReceived() {
+        return changesReceived.get();
+    }
+}
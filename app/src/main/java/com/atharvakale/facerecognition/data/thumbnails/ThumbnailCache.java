@@ -0,0 +1,183 @@
+package com.atharvakale.facerecognition.data.thumbnails;
+
+import android.graphics.Bitmap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Size-bounded LRU of decoded thumbnails in front of a ThumbnailStore
+ * Lists ask with get() while binding rows (never blocks) and request() on a miss; a background
+ * thread decodes misses and the rows the list is about to show (prefetch). A new prefetch
+ * supersedes the previous one, so flinging through thousands of names only decodes what is
+ * still near the screen. Evicted thumbnails are left to the collector since a row may still
+ * show them.
+ */
+public class ThumbnailCache {
+
+    public interface Listener {
+        /**
+         * Called on the decoding thread
+         * @param thumbnail Decoded thumbnail, or null if the identity has none
+         */
+        void onThumbnailLoaded(String name, Bitmap thumbnail);
+    }
+
+    private final ThumbnailStore store;
+    private final int targetSize;
+    private final long maxBytes;
+    private final ExecutorService decoder;
+    private final AtomicInteger prefetchGeneration = new AtomicInteger();
+
+    // Guarded by this
+    private final LinkedHashMap<String, Bitmap> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private long sizeBytes;
+    private long hits;
+    private long misses;
+    private long decodes;
+    private long evictions;
+
+    /**
+     * @param targetSize Size thumbnails are displayed at, in pixels
+     * @param maxBytes Upper bound on decoded pixel bytes kept
+     */
+    public ThumbnailCache(ThumbnailStore store, int targetSize, long maxBytes) {
+        this.store = store;
+        this.targetSize = targetSize;
+        this.maxBytes = maxBytes;
+        this.decoder = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "thumbnail-decoder");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+    }
+
+    /**
+     * Cached thumbnail, or null on a miss; never touches the disk
+     */
+    public synchronized Bitmap get(String name) {
+        Bitmap thumbnail = cache.get(name);
+        if (thumbnail != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Cached thumbnail, decoding it on the calling thread on a miss
+     */
+    public Bitmap load(String name) {
+        synchronized (this) {
+            Bitmap thumbnail = cache.get(name);
+            if (thumbnail != null) {
+                return thumbnail;
+            }
+        }
+        Bitmap thumbnail = store.decode(name, targetSize);
+        if (thumbnail != null) {
+            insert(name, thumbnail);
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Decode a thumbnail in the background and report it to the listener
+     */
+    public void request(String name, Listener listener) {
+        decoder.execute(() -> listener.onThumbnailLoaded(name, load(name)));
+    }
+
+    /**
+     * Decode the thumbnails of rows about to be shown, in order, dropping any older prefetch
+     * @param names Names around the visible range, nearest first
+     */
+    public void prefetch(List<String> names) {
+        int generation = prefetchGeneration.incrementAndGet();
+        List<String> missing = new ArrayList<>();
+        synchronized (this) {
+            for (String name : names) {
+                if (!cache.containsKey(name)) {
+                    missing.add(name);
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        decoder.execute(() -> {
+            for (String name : missing) {
+                if (prefetchGeneration.get() != generation) {
+                    return;     // the list moved on
+                }
+                load(name);
+            }
+        });
+    }
+
+    private void insert(String name, Bitmap thumbnail) {
+        synchronized (this) {
+            decodes++;
+            Bitmap previous = cache.put(name, thumbnail);
+            if (previous != null) {
+                sizeBytes -= previous.getAllocationByteCount();
+            }
+            sizeBytes += thumbnail.getAllocationByteCount();
+            Iterator<Map.Entry<String, Bitmap>> eldest = cache.entrySet().iterator();
+            while (sizeBytes > maxBytes && eldest.hasNext()) {
+                Map.Entry<String, Bitmap> entry = eldest.next();
+                if (entry.getValue() == thumbnail) {
+                    break;      // never evict what was just decoded
+                }
+                sizeBytes -= entry.getValue().getAllocationByteCount();
+                eldest.remove();
+                evictions++;
+            }
+        }
+    }
+
+    /**
+     * Drop the cached thumbnail of an identity whose stored one changed
+     */
+    public synchronized void invalidate(String name) {
+        Bitmap previous = cache.remove(name);
+        if (previous != null) {
+            sizeBytes -= previous.getAllocationByteCount();
+        }
+    }
+
+    public synchronized void clear() {
+        cache.clear();
+        sizeBytes = 0;
+    }
+
+    public synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public synchronized int getCount() {
+        return cache.size();
+    }
+
+    public int getTargetSize() {
+        return targetSize;
+    }
+
+    public void shutdown() {
+        decoder.shutdownNow();
+        clear();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("thumbnails=%d (%d KB of %d KB) hits=%d misses=%d decodes=%d evictions=%d",
+            cache.size(), sizeBytes / 1024, maxBytes / 1024, hits, misses, decodes, evictions);
+    }
+}
@@ -0,0 +1,464 @@
+package com.atharvakale.facerecognition.data.thumbnails;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Face thumbnails of registered identities in one append-only packed file
+ * Each identity's crop is stored once as a small JPEG; only an index of (offset, length) per
+ * name stays in memory, and images are read and decoded on demand, downsampled to the size the
+ * UI shows. Replaced and deleted thumbnails leave dead bytes that are compacted away once they
+ * outweigh the live ones.
+ * <pre>
+ * int magic, short version
+ * record: int bodyLength, int crc32(body), body = { byte type, UTF name, [JPEG bytes] for puts }
+ * </pre>
+ */
+public class ThumbnailStore {
+    private static final int MAGIC = 0x46544831;            // "FTH1"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 6;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int MAX_RECORD_BYTES = 1024 * 1024;
+    private static final long COMPACT_MIN_DEAD_BYTES = 1024 * 1024;
+
+    private final File file;
+    private final int jpegQuality;
+
+    // Guarded by this
+    private final Map<String, Entry> index = new HashMap<>();
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private long length;
+    private long liveBytes;
+    private long deadBytes;
+    private long compactions;
+
+    /**
+     * Location of one stored image
+     */
+    private static class Entry {
+        final long recordOffset;
+        final int recordLength;     // including the length and checksum prefix
+        final long imageOffset;
+        final int imageLength;
+
+        Entry(long recordOffset, int recordLength, long imageOffset, int imageLength) {
+            this.recordOffset = recordOffset;
+            this.recordLength = recordLength;
+            this.imageOffset = imageOffset;
+            this.imageLength = imageLength;
+        }
+    }
+
+    /**
+     * @param jpegQuality Quality thumbnails are encoded with (0-100)
+     */
+    public ThumbnailStore(File file, int jpegQuality) {
+        this.file = file;
+        this.jpegQuality = jpegQuality;
+    }
+
+    /**
+     * Open the file and index its records; a record cut short by a crash is dropped
+     * @return true if the store is ready
+     */
+    public synchronized boolean open() {
+        if (channel != null) {
+            return true;
+        }
+        try {
+            File parent = file.getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                return false;
+            }
+            index.clear();
+            liveBytes = 0;
+            deadBytes = 0;
+            long validLength = scan();
+            raf = new RandomAccessFile(file, "rw");
+            channel = raf.getChannel();
+            if (validLength < HEADER_BYTES) {
+                raf.setLength(0);
+                raf.writeInt(MAGIC);
+                raf.writeShort(VERSION);
+                validLength = HEADER_BYTES;
+            } else if (validLength < raf.length()) {
+                raf.setLength(validLength);
+            }
+            length = validLength;
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            close();
+            return false;
+        }
+    }
+
+    /**
+     * Rebuild the index from the file, reading only record headers
+     * @return Length of the valid prefix (0 if the file is missing or not a thumbnail file)
+     */
+    private long scan() throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        long offset = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 16 * 1024))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                return 0;
+            }
+            long fileLength = file.length();
+            offset = HEADER_BYTES;
+            while (offset + 8 <= fileLength) {
+                int bodyLength = in.readInt();
+                in.readInt();   // checksum, verified when the image is read
+                if (bodyLength < 3 || bodyLength > MAX_RECORD_BYTES || offset + 8 + bodyLength > fileLength) {
+                    break;
+                }
+                byte type = in.readByte();
+                // The stored (modified UTF-8) length, which differs from UTF-8 for U+0000 and emoji
+                in.mark(2);
+                int headerLength = 1 + 2 + in.readUnsignedShort();
+                in.reset();
+                String name = in.readUTF();
+                int imageLength = bodyLength - headerLength;
+                if (imageLength < 0 || (type != PUT && type != DELETE)) {
+                    break;
+                }
+                skipFully(in, imageLength);
+                int recordLength = 8 + bodyLength;
+                if (type == PUT) {
+                    replace(name, new Entry(offset, recordLength, offset + 8 + headerLength, imageLength));
+                } else {
+                    replace(name, null);
+                    deadBytes += recordLength;
+                }
+                offset += recordLength;
+            }
+            return offset;
+        } catch (EOFException e) {
+            return offset;
+        }
+    }
+
+    private static void skipFully(DataInputStream in, int count) throws IOException {
+        int remaining = count;
+        while (remaining > 0) {
+            int skipped = in.skipBytes(remaining);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            remaining -= skipped;
+        }
+    }
+
+    /**
+     * Point a name at a new entry (or none), accounting for the bytes the old one leaves dead
+     */
+    private void replace(String name, Entry entry) {
+        Entry previous = entry != null ? index.put(name, entry) : index.remove(name);
+        if (previous != null) {
+            liveBytes -= previous.recordLength;
+            deadBytes += previous.recordLength;
+        }
+        if (entry != null) {
+            liveBytes += entry.recordLength;
+        }
+    }
+
+    /**
+     * Store the thumbnail of an identity, replacing any previous one
+     * @return true if successful, false otherwise
+     */
+    public boolean put(String name, Bitmap crop) {
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream(8 * 1024);
+        if (crop == null || crop.isRecycled() || !crop.compress(Bitmap.CompressFormat.JPEG, jpegQuality, jpeg)) {
+            return false;
+        }
+        return putEncoded(name, jpeg.toByteArray());
+    }
+
+    /**
+     * Store an already encoded thumbnail (JPEG or PNG), e.g. one carried by an import
+     */
+    public synchronized boolean putEncoded(String name, byte[] image) {
+        if (channel == null) {
+            return false;
+        }
+        try {
+            byte[] header = recordHeader(PUT, name);
+            int bodyLength = header.length + image.length;
+            if (bodyLength > MAX_RECORD_BYTES) {
+                return false;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(header);
+            crc.update(image);
+            long offset = length;
+            append(bodyLength, (int) crc.getValue(), header, image);
+            replace(name, new Entry(offset, 8 + bodyLength, offset + 8 + header.length, image.length));
+            compactIfWasteful();
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Forget the thumbnail of an identity
+     * @return true if there was one
+     */
+    public synchronized boolean delete(String name) {
+        if (channel == null || !index.containsKey(name)) {
+            return false;
+        }
+        try {
+            byte[] header = recordHeader(DELETE, name);
+            CRC32 crc = new CRC32();
+            crc.update(header);
+            append(header.length, (int) crc.getValue(), header, new byte[0]);
+            replace(name, null);
+            deadBytes += 8 + header.length;
+            compactIfWasteful();
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Forget the thumbnails of several identities
+     */
+    public synchronized void deleteAll(Collection<String> names) {
+        for (String name : names) {
+            delete(name);
+        }
+    }
+
+    /**
+     * Drop every thumbnail
+     */
+    public synchronized boolean clear() {
+        if (channel == null) {
+            return false;
+        }
+        try {
+            raf.setLength(HEADER_BYTES);
+            length = HEADER_BYTES;
+            index.clear();
+            liveBytes = 0;
+            deadBytes = 0;
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static byte[] recordHeader(byte type, String name) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(type);
+        out.writeUTF(name);
+        return bytes.toByteArray();
+    }
+
+    private void append(int bodyLength, int checksum, byte[] header, byte[] image) throws IOException {
+        ByteBuffer prefix = ByteBuffer.allocate(8);
+        prefix.putInt(bodyLength).putInt(checksum).flip();
+        ByteBuffer[] buffers = {prefix, ByteBuffer.wrap(header), ByteBuffer.wrap(image)};
+        long position = length;
+        long total = 8L + bodyLength;
+        long written = 0;
+        channel.position(position);
+        while (written < total) {
+            written += channel.write(buffers);
+        }
+        length = position + total;
+    }
+
+    /**
+     * Read the encoded image of an identity
+     * @return JPEG/PNG bytes, or null if none is stored or the record is damaged
+     */
+    public byte[] readEncoded(String name) {
+        Entry entry;
+        FileChannel source;
+        synchronized (this) {
+            entry = index.get(name);
+            source = channel;
+        }
+        if (entry == null || source == null) {
+            return null;
+        }
+        try {
+            // Positional reads do not move the channel's position, so they need no lock
+            ByteBuffer record = ByteBuffer.allocate(entry.recordLength);
+            while (record.hasRemaining()) {
+                if (source.read(record, entry.recordOffset + record.position()) < 0) {
+                    return null;
+                }
+            }
+            int checksum = record.getInt(4);
+            CRC32 crc = new CRC32();
+            crc.update(record.array(), 8, entry.recordLength - 8);
+            if ((int) crc.getValue() != checksum) {
+                return null;
+            }
+            int imageStart = (int) (entry.imageOffset - entry.recordOffset);
+            byte[] image = new byte[entry.imageLength];
+            System.arraycopy(record.array(), imageStart, image, 0, image.length);
+            return image;
+        } catch (IOException e) {
+            // Closed by a concurrent compaction or close; the caller can retry
+            return null;
+        }
+    }
+
+    /**
+     * Decode the thumbnail of an identity at about the requested size
+     * JPEG decoding skips straight to the nearest power-of-two scale at or above the target,
+     * so a 112 px crop shown at 48 px costs a 56 px, 16-bit decode
+     * @param targetSize Size the thumbnail is displayed at, in pixels
+     * @return Thumbnail, or null if none is stored
+     */
+    public Bitmap decode(String name, int targetSize) {
+        byte[] image = readEncoded(name);
+        if (image == null) {
+            return null;
+        }
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(image, 0, image.length, bounds);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize(Math.min(bounds.outWidth, bounds.outHeight), targetSize);
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        return BitmapFactory.decodeByteArray(image, 0, image.length, options);
+    }
+
+    /**
+     * Largest power of two that keeps the decoded size at or above the target
+     */
+    static int sampleSize(int storedSize, int targetSize) {
+        int sample = 1;
+        while (targetSize > 0 && storedSize / (sample * 2) >= targetSize) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    private void compactIfWasteful() throws IOException {
+        if (deadBytes > COMPACT_MIN_DEAD_BYTES && deadBytes > liveBytes) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrite the file with live thumbnails only
+     */
+    public synchronized boolean compact() {
+        if (channel == null) {
+            return false;
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        Map<String, Entry> compacted = new HashMap<>();
+        try {
+            try (RandomAccessFile out = new RandomAccessFile(temp, "rw")) {
+                out.setLength(0);
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                FileChannel target = out.getChannel();
+                long offset = HEADER_BYTES;
+                for (Map.Entry<String, Entry> item : index.entrySet()) {
+                    Entry entry = item.getValue();
+                    long copied = 0;
+                    while (copied < entry.recordLength) {
+                        copied += channel.transferTo(entry.recordOffset + copied, entry.recordLength - copied, target);
+                    }
+                    compacted.put(item.getKey(), new Entry(offset, entry.recordLength,
+                        offset + (entry.imageOffset - entry.recordOffset), entry.imageLength));
+                    offset += entry.recordLength;
+                }
+                out.getFD().sync();
+            }
+            raf.close();
+            if (!temp.renameTo(file)) {
+                throw new IOException("Could not replace " + file);
+            }
+            raf = new RandomAccessFile(file, "rw");
+            channel = raf.getChannel();
+            length = raf.length();
+            index.clear();
+            index.putAll(compacted);
+            deadBytes = 0;
+            compactions++;
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            temp.delete();
+            close();
+            open();
+            return false;
+        }
+    }
+
+    public synchronized boolean contains(String name) {
+        return index.containsKey(name);
+    }
+
+    public synchronized List<String> getNames() {
+        return new ArrayList<>(index.keySet());
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Bytes on disk, including dead records not compacted yet
+     */
+    public synchronized long getFileBytes() {
+        return length;
+    }
+
+    public synchronized long getDeadBytes() {
+        return deadBytes;
+    }
+
+    public synchronized long getCompactionCount() {
+        return compactions;
+    }
+
+    public synchronized void close() {
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        raf = null;
+        channel = null;
+    }
+}
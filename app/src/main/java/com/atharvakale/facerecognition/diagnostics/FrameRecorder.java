@@ -0,0 +1,100 @@
+package com.atharvakale.facerecognition.diagnostics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Locale;
+
+/**
+ * Keeps the last few seconds of camera frames so a misbehaving kiosk can dump them as a clip
+ * The frames are the JPEGs the pipeline already encodes while converting from YUV, so recording
+ * only holds on to bytes that would otherwise be dropped. Dumped clips replay through
+ * SoakHarness.ReplayFrameSource.
+ */
+public class FrameRecorder {
+    public static final String ROTATION_FILE = "rotation.txt";
+
+    private final int maxFrames;
+    private final long maxBytes;
+
+    // Guarded by this
+    private final ArrayDeque<byte[]> frames = new ArrayDeque<>();
+    private long bytes;
+    private int rotationDegrees;
+    private long recorded;
+
+    /**
+     * @param maxFrames Frames kept at most
+     * @param maxBytes Encoded bytes kept at most; the oldest frames go first
+     */
+    public FrameRecorder(int maxFrames, long maxBytes) {
+        this.maxFrames = maxFrames;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Keep an encoded frame; the recorder owns the array from now on
+     */
+    public synchronized void record(byte[] jpeg, int rotationDegrees) {
+        if (jpeg.length > maxBytes) {
+            return;
+        }
+        frames.addLast(jpeg);
+        bytes += jpeg.length;
+        this.rotationDegrees = rotationDegrees;
+        recorded++;
+        while (frames.size() > maxFrames || bytes > maxBytes) {
+            bytes -= frames.removeFirst().length;
+        }
+    }
+
+    /**
+     * Write the kept frames to a directory as frame_00000.jpg, frame_00001.jpg, ... plus the
+     * rotation that makes them upright
+     * @return Frames written, or -1 if the directory could not be written
+     */
+    public int dump(File directory) {
+        byte[][] clip;
+        int rotation;
+        synchronized (this) {
+            clip = frames.toArray(new byte[0][]);
+            rotation = rotationDegrees;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return -1;
+        }
+        try {
+            for (int i = 0; i < clip.length; i++) {
+                try (FileOutputStream out = new FileOutputStream(
+                        new File(directory, String.format(Locale.US, "frame_%05d.jpg", i)))) {
+                    out.write(clip[i]);
+                }
+            }
+            try (FileOutputStream out = new FileOutputStream(new File(directory, ROTATION_FILE))) {
+                out.write(String.valueOf(rotation).getBytes("US-ASCII"));
+            }
+            return clip.length;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    public synchronized void clear() {
+        frames.clear();
+        bytes = 0;
+    }
+
+    public synchronized int getFrameCount() {
+        return frames.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getRecordedCount() {
+        return recorded;
+    }
+}
@@ -0,0 +1,70 @@
+package com.atharvakale.facerecognition.diagnostics;
+
+import android.os.Build;
+import android.os.Debug;
+
+/**
+ * Point-in-time reading of heap sizes and collector activity
+ * GC counters are cumulative since process start; -1 where the runtime does not report them
+ */
+public class MemorySample {
+    public final long timestampMs;
+    public final long javaHeapBytes;        // used Java heap
+    public final long nativeHeapBytes;      // allocated native heap (Bitmap pixels since API 26, direct buffers)
+    public final long gcCount;
+    public final long gcTimeMs;
+    public final long blockingGcCount;      // collections that paused allocating threads
+    public final long blockingGcTimeMs;
+    public final int outstandingResources;  // tracked by ResourceTracker
+
+    public MemorySample(long timestampMs, long javaHeapBytes, long nativeHeapBytes, long gcCount, long gcTimeMs,
+                        long blockingGcCount, long blockingGcTimeMs, int outstandingResources) {
+        this.timestampMs = timestampMs;
+        this.javaHeapBytes = javaHeapBytes;
+        this.nativeHeapBytes = nativeHeapBytes;
+        this.gcCount = gcCount;
+        this.gcTimeMs = gcTimeMs;
+        this.blockingGcCount = blockingGcCount;
+        this.blockingGcTimeMs = blockingGcTimeMs;
+        this.outstandingResources = outstandingResources;
+    }
+
+    /**
+     * Read the current process's counters
+     */
+    public static MemorySample capture(long timestampMs) {
+        Runtime runtime = Runtime.getRuntime();
+        long javaHeap = runtime.totalMemory() - runtime.freeMemory();
+        long gcCount = -1;
+        long gcTime = -1;
+        long blockingCount = -1;
+        long blockingTime = -1;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            gcCount = runtimeStat("art.gc.gc-count");
+            gcTime = runtimeStat("art.gc.gc-time");
+            blockingCount = runtimeStat("art.gc.blocking-gc-count");
+            blockingTime = runtimeStat("art.gc.blocking-gc-time");
+        }
+        return new MemorySample(timestampMs, javaHeap, Debug.getNativeHeapAllocatedSize(), gcCount, gcTime,
+            blockingCount, blockingTime, ResourceTracker.getOutstandingCount());
+    }
+
+    private static long runtimeStat(String name) {
+        String value = Debug.getRuntimeStat(name);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("t=%dms java=%dKB native=%dKB gc=%d (%dms) blockingGc=%d (%dms) outstanding=%d",
+            timestampMs, javaHeapBytes / 1024, nativeHeapBytes / 1024, gcCount, gcTimeMs, blockingGcCount,
+            blockingGcTimeMs, outstandingResources);
+    }
+}
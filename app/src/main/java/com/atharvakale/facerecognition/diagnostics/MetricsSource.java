@@ -0,0 +1,11 @@
+package com.atharvakale.facerecognition.diagnostics;
+
+/**
+ * Something that reports live metrics when the metrics endpoint is scraped
+ */
+public interface MetricsSource {
+    /**
+     * Called on a server worker thread; must not block on the frame path
+     */
+    void collect(MetricsWriter writer);
+}
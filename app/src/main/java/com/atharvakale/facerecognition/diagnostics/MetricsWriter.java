@@ -0,0 +1,125 @@
+package com.atharvakale.facerecognition.diagnostics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes metrics in the Prometheus text exposition format (version 0.0.4)
+ * <pre>
+ * # HELP facerec_gallery_identities Enrolled identities
+ * # TYPE facerec_gallery_identities gauge
+ * facerec_gallery_identities 1200
+ * </pre>
+ * Labels are given as name/value pairs after the value. Samples of a metric are grouped under
+ * its header whatever order they are written in. Latencies go out as summaries in seconds, as
+ * scrapers expect.
+ */
+public class MetricsWriter {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private final String prefix;
+    private final Map<String, StringBuilder> families = new LinkedHashMap<>();
+
+    /**
+     * @param prefix Prepended to every metric name, e.g. "facerec_"
+     */
+    public MetricsWriter(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public MetricsWriter gauge(String name, String help, double value, String... labels) {
+        return sample(name, help, "gauge", value, labels);
+    }
+
+    /**
+     * Monotonic total; by convention the name ends in _total
+     */
+    public MetricsWriter counter(String name, String help, double value, String... labels) {
+        return sample(name, help, "counter", value, labels);
+    }
+
+    /**
+     * Latency percentiles (recent window) with the all-time count and sum
+     * @param recent Latencies of the last window, for the quantiles
+     * @param total Every latency so far, for _count and _sum
+     */
+    public MetricsWriter summary(String name, String help, LatencyHistogram recent, LatencyHistogram total,
+                                 String... labels) {
+        StringBuilder out = family(name, help, "summary");
+        for (double quantile : QUANTILES) {
+            String[] withQuantile = new String[labels.length + 2];
+            System.arraycopy(labels, 0, withQuantile, 0, labels.length);
+            withQuantile[labels.length] = "quantile";
+            withQuantile[labels.length + 1] = String.valueOf(quantile);
+            line(out, name, withQuantile, recent.percentile(quantile) / 1e6);
+        }
+        line(out, name + "_sum", labels, total.getSumMicros() / 1e6);
+        line(out, name + "_count", labels, total.getCount());
+        return this;
+    }
+
+    private MetricsWriter sample(String name, String help, String type, double value, String... labels) {
+        line(family(name, help, type), name, labels, value);
+        return this;
+    }
+
+    private StringBuilder family(String name, String help, String type) {
+        StringBuilder out = families.get(name);
+        if (out == null) {
+            out = new StringBuilder(256);
+            out.append("# HELP ").append(prefix).append(name).append(' ').append(escapeHelp(help)).append('\n');
+            out.append("# TYPE ").append(prefix).append(name).append(' ').append(type).append('\n');
+            families.put(name, out);
+        }
+        return out;
+    }
+
+    private void line(StringBuilder out, String name, String[] labels, double value) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+        }
+        out.append(prefix).append(name);
+        if (labels.length > 0) {
+            out.append('{');
+            for (int i = 0; i < labels.length; i += 2) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                out.append(labels[i]).append("=\"").append(escapeLabel(labels[i + 1])).append('"');
+            }
+            out.append('}');
+        }
+        out.append(' ').append(format(value)).append('\n');
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return String.valueOf((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static String escapeHelp(String help) {
+        return help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    private static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(4096);
+        for (StringBuilder family : families.values()) {
+            text.append(family);
+        }
+        return text.toString();
+    }
+}
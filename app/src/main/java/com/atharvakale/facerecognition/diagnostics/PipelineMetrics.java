@@ -0,0 +1,139 @@
+package com.atharvakale.facerecognition.diagnostics;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-stage latencies and frame rate of the recognition pipeline
+ * Stages record into the current window; percentiles and fps are read over the current and the
+ * previous window together, so they follow the live load without jumping to nothing at every
+ * rotation. All-time counts and sums are kept alongside for rate queries on the scraper side.
+ */
+public class PipelineMetrics implements MetricsSource {
+
+    public enum Stage {
+        CONVERT,    // YUV to bitmap
+        DETECT,
+        CROP,       // rotate, crop and scale to the model input
+        EMBED,
+        MATCH,
+        FRAME       // the whole frame, end to end
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final long windowNanos;
+    private final LatencyHistogram[] totals = new LatencyHistogram[STAGES.length];
+    private final AtomicLong skippedFrames = new AtomicLong();
+    private volatile Window current;
+    private volatile Window previous;
+
+    private static class Window {
+        final long startNanos;
+        final LatencyHistogram[] stages = new LatencyHistogram[STAGES.length];
+
+        Window(long startNanos) {
+            this.startNanos = startNanos;
+            for (int i = 0; i < stages.length; i++) {
+                stages[i] = new LatencyHistogram();
+            }
+        }
+    }
+
+    /**
+     * @param windowMs Length of each rotation window; readings cover one to two windows
+     */
+    public PipelineMetrics(long windowMs) {
+        this.windowNanos = windowMs * 1000000L;
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] = new LatencyHistogram();
+        }
+        long now = System.nanoTime();
+        this.current = new Window(now);
+        this.previous = new Window(now - windowNanos);
+    }
+
+    /**
+     * Record how long a stage took
+     * @param startNanos System.nanoTime() when the stage began
+     */
+    public void record(Stage stage, long startNanos) {
+        long now = System.nanoTime();
+        window(now).stages[stage.ordinal()].recordNanos(now - startNanos);
+        totals[stage.ordinal()].recordNanos(now - startNanos);
+    }
+
+    /**
+     * Count a frame dropped before processing (static scene, busy stream)
+     */
+    public void recordSkippedFrame() {
+        skippedFrames.incrementAndGet();
+    }
+
+    private Window window(long now) {
+        Window window = current;
+        if (now - window.startNanos < windowNanos) {
+            return window;
+        }
+        synchronized (this) {
+            window = current;
+            if (now - window.startNanos >= windowNanos) {
+                // After an idle spell the last window is stale too
+                previous = now - window.startNanos < 2 * windowNanos ? window : new Window(now - windowNanos);
+                current = window = new Window(now);
+            }
+            return window;
+        }
+    }
+
+    /**
+     * Latencies of a stage over the recent windows
+     */
+    public LatencyHistogram getRecent(Stage stage) {
+        Window now = window(System.nanoTime());
+        LatencyHistogram merged = new LatencyHistogram();
+        merged.add(previous.stages[stage.ordinal()]);
+        merged.add(now.stages[stage.ordinal()]);
+        return merged;
+    }
+
+    public LatencyHistogram getTotal(Stage stage) {
+        return totals[stage.ordinal()];
+    }
+
+    /**
+     * Frames completed per second over the recent windows
+     */
+    public float getFps() {
+        long now = System.nanoTime();
+        Window latest = window(now);
+        Window last = previous;
+        long frames = latest.stages[Stage.FRAME.ordinal()].getCount() + last.stages[Stage.FRAME.ordinal()].getCount();
+        long elapsed = now - last.startNanos;
+        return elapsed > 0 ? frames * 1e9f / elapsed : 0f;
+    }
+
+    public long getSkippedFrames() {
+        return skippedFrames.get();
+    }
+
+    @Override
+    public void collect(MetricsWriter writer) {
+        writer.gauge("pipeline_fps", "Frames completed per second, recent", getFps());
+        writer.counter("pipeline_frames_total", "Frames completed", getTotal(Stage.FRAME).getCount());
+        writer.counter("pipeline_frames_skipped_total", "Frames dropped before processing", getSkippedFrames());
+        for (Stage stage : STAGES) {
+            writer.summary("pipeline_stage_seconds", "Time spent per pipeline stage",
+                getRecent(stage), getTotal(stage), "stage", stage.name().toLowerCase(Locale.US));
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(String.format(Locale.US, "fps=%.1f skipped=%d", getFps(), getSkippedFrames()));
+        for (Stage stage : STAGES) {
+            text.append('\n').append(stage.name().toLowerCase(Locale.US)).append(": ").append(getRecent(stage));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,315 @@
+package com.atharvakale.facerecognition.diagnostics;
+
+import android.graphics.Bitmap;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Debug registry of Bitmaps, direct ByteBuffers and interpreters owned by the pipeline
+ * Allocation sites call track(), the code that frees the resource calls release() (or recycle()
+ * for Bitmaps), and handOff() marks resources whose ownership moves out of the pipeline (preview
+ * crops shown by the UI, exemplars kept by a cache). Resources are held weakly, so one that is
+ * garbage collected while still tracked was dropped without being released: for a Bitmap that
+ * means its pixels waited for the collector instead of being freed right away.
+ * Disabled by default; while disabled every call is a single volatile read.
+ */
+public final class ResourceTracker {
+    public enum Kind {
+        BITMAP,
+        DIRECT_BUFFER,
+        INTERPRETER
+    }
+
+    private static volatile boolean enabled;
+
+    private static final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+    private static final Map<Key, Entry> live = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, SiteCounters> sites = new ConcurrentHashMap<>();
+    private static final AtomicLong untrackedReleases = new AtomicLong();
+
+    /**
+     * Identity key holding its resource weakly
+     */
+    private static class Key extends WeakReference<Object> {
+        final int hash;
+
+        Key(Object resource, ReferenceQueue<Object> queue) {
+            super(resource, queue);
+            this.hash = System.identityHashCode(resource);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Object resource = get();
+            return resource != null && resource == ((Key) other).get();
+        }
+    }
+
+    private static class Entry {
+        final Kind kind;
+        final String site;
+        final long bytes;
+        final long trackedMs;
+
+        Entry(Kind kind, String site, long bytes, long trackedMs) {
+            this.kind = kind;
+            this.site = site;
+            this.bytes = bytes;
+            this.trackedMs = trackedMs;
+        }
+    }
+
+    /**
+     * Running totals for one allocation site
+     */
+    private static class SiteCounters {
+        final Kind kind;
+        final AtomicLong allocated = new AtomicLong();
+        final AtomicLong released = new AtomicLong();
+        final AtomicLong handedOff = new AtomicLong();
+        final AtomicLong collectedUnreleased = new AtomicLong();
+        final AtomicLong collectedUnreleasedBytes = new AtomicLong();
+
+        SiteCounters(Kind kind) {
+            this.kind = kind;
+        }
+    }
+
+    /**
+     * Counts for one allocation site at the time of a snapshot
+     */
+    public static class SiteStats {
+        public final String site;
+        public final Kind kind;
+        public final long allocated;
+        public final long released;
+        public final long handedOff;
+        public final long collectedUnreleased;      // dropped without release, freed only by the collector
+        public final long collectedUnreleasedBytes;
+        public final int outstanding;               // tracked and still reachable
+        public final long outstandingBytes;
+        public final int stale;                     // outstanding for longer than the leak age
+
+        SiteStats(String site, Kind kind, long allocated, long released, long handedOff, long collectedUnreleased,
+                  long collectedUnreleasedBytes, int outstanding, long outstandingBytes, int stale) {
+            this.site = site;
+            this.kind = kind;
+            this.allocated = allocated;
+            this.released = released;
+            this.handedOff = handedOff;
+            this.collectedUnreleased = collectedUnreleased;
+            this.collectedUnreleasedBytes = collectedUnreleasedBytes;
+            this.outstanding = outstanding;
+            this.outstandingBytes = outstandingBytes;
+            this.stale = stale;
+        }
+
+        /**
+         * Whether the site shows signs of a leak
+         */
+        public boolean isSuspect() {
+            return stale > 0 || collectedUnreleased > 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s: allocated=%d released=%d handedOff=%d outstanding=%d (%d KB) stale=%d "
+                    + "collectedUnreleased=%d (%d KB)", kind, site, allocated, released, handedOff, outstanding,
+                outstandingBytes / 1024, stale, collectedUnreleased, collectedUnreleasedBytes / 1024);
+        }
+    }
+
+    private ResourceTracker() {
+    }
+
+    public static void setEnabled(boolean enabled) {
+        ResourceTracker.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Register a resource the pipeline now owns
+     * @param site Short name of the allocation site, e.g. "frame" or "crop"
+     * @return The resource, for use inline
+     */
+    public static <T> T track(Kind kind, T resource, long bytes, String site) {
+        if (!enabled || resource == null) {
+            return resource;
+        }
+        drainCollected();
+        SiteCounters counters = counters(kind, site);
+        counters.allocated.incrementAndGet();
+        live.put(new Key(resource, collected), new Entry(kind, site, bytes, System.currentTimeMillis()));
+        return resource;
+    }
+
+    /**
+     * Register a Bitmap the pipeline now owns
+     */
+    public static Bitmap track(Bitmap bitmap, String site) {
+        if (!enabled || bitmap == null) {
+            return bitmap;
+        }
+        return track(Kind.BITMAP, bitmap, bitmap.getAllocationByteCount(), site);
+    }
+
+    /**
+     * Mark a resource as freed by its owner
+     */
+    public static void release(Object resource) {
+        if (!enabled || resource == null) {
+            return;
+        }
+        Entry entry = remove(resource);
+        if (entry == null) {
+            untrackedReleases.incrementAndGet();
+            return;
+        }
+        counters(entry.kind, entry.site).released.incrementAndGet();
+    }
+
+    /**
+     * Release and recycle a Bitmap; null and already recycled Bitmaps are ignored
+     */
+    public static void recycle(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        release(bitmap);
+        bitmap.recycle();
+    }
+
+    /**
+     * Mark a resource whose ownership leaves the pipeline; it is no longer expected to be released
+     */
+    public static void handOff(Object resource) {
+        if (!enabled || resource == null) {
+            return;
+        }
+        Entry entry = remove(resource);
+        if (entry != null) {
+            counters(entry.kind, entry.site).handedOff.incrementAndGet();
+        }
+    }
+
+    /**
+     * Per-site counts, outstanding resources first
+     * @param leakAgeMs Outstanding resources older than this count as stale
+     */
+    public static List<SiteStats> snapshot(long leakAgeMs) {
+        drainCollected();
+        long now = System.currentTimeMillis();
+        Map<String, long[]> outstanding = new HashMap<>();   // site -> {count, bytes, stale}
+        for (Map.Entry<Key, Entry> item : live.entrySet()) {
+            if (item.getKey().get() == null) {
+                continue;   // collected, drained on the next call
+            }
+            Entry entry = item.getValue();
+            long[] totals = outstanding.get(entry.site);
+            if (totals == null) {
+                totals = new long[3];
+                outstanding.put(entry.site, totals);
+            }
+            totals[0]++;
+            totals[1] += entry.bytes;
+            if (now - entry.trackedMs > leakAgeMs) {
+                totals[2]++;
+            }
+        }
+        List<SiteStats> stats = new ArrayList<>();
+        for (Map.Entry<String, SiteCounters> item : sites.entrySet()) {
+            SiteCounters counters = item.getValue();
+            long[] totals = outstanding.get(item.getKey());
+            stats.add(new SiteStats(item.getKey(), counters.kind, counters.allocated.get(), counters.released.get(),
+                counters.handedOff.get(), counters.collectedUnreleased.get(), counters.collectedUnreleasedBytes.get(),
+                totals != null ? (int) totals[0] : 0, totals != null ? totals[1] : 0, totals != null ? (int) totals[2] : 0));
+        }
+        Collections.sort(stats, (a, b) -> {
+            if (a.outstandingBytes != b.outstandingBytes) {
+                return Long.compare(b.outstandingBytes, a.outstandingBytes);
+            }
+            return a.site.compareTo(b.site);
+        });
+        return stats;
+    }
+
+    /**
+     * Resources tracked and not yet released, handed off or collected
+     */
+    public static int getOutstandingCount() {
+        drainCollected();
+        return live.size();
+    }
+
+    /**
+     * Releases of resources that were never tracked (or released twice)
+     */
+    public static long getUntrackedReleases() {
+        return untrackedReleases.get();
+    }
+
+    /**
+     * Forget everything tracked so far
+     */
+    public static void reset() {
+        live.clear();
+        sites.clear();
+        untrackedReleases.set(0);
+        while (collected.poll() != null) {
+            // discard
+        }
+    }
+
+    private static Entry remove(Object resource) {
+        // Lookup key without a queue so it is never enqueued itself
+        return live.remove(new Key(resource, null));
+    }
+
+    private static SiteCounters counters(Kind kind, String site) {
+        SiteCounters counters = sites.get(site);
+        if (counters == null) {
+            counters = new SiteCounters(kind);
+            SiteCounters raced = sites.putIfAbsent(site, counters);
+            if (raced != null) {
+                counters = raced;
+            }
+        }
+        return counters;
+    }
+
+    /**
+     * Account for resources the collector reclaimed while they were still tracked
+     */
+    private static void drainCollected() {
+        Object reference;
+        while ((reference = collected.poll()) != null) {
+            Entry entry = live.remove(reference);
+            if (entry != null) {
+                SiteCounters counters = counters(entry.kind, entry.site);
+                counters.collectedUnreleased.incrementAndGet();
+                counters.collectedUnreleasedBytes.addAndGet(entry.bytes);
+            }
+        }
+    }
+}
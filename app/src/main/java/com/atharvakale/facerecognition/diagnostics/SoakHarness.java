@@ -0,0 +1,383 @@
+package com.atharvakale.facerecognition.diagnostics;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import com.atharvakale.facerecognition.features.face.FaceRecognitionManager;
+import com.atharvakale.facerecognition.ml.ModelConfig;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Feeds recorded or synthetic frames through the recognition pipeline for hours and watches
+ * what is left behind: heap and native growth, collector pauses, and resources tracked by
+ * ResourceTracker that were never released.
+ * Enable ResourceTracker before models are loaded so interpreters are tracked too.
+ */
+public class SoakHarness {
+
+    /**
+     * Supplies frames; every frame must be a new Bitmap, which the sink recycles
+     */
+    public interface FrameSource {
+        /**
+         * @return Next frame, or null when the source is exhausted
+         */
+        Bitmap nextFrame(long index);
+
+        /**
+         * Rotation that makes the frames upright
+         */
+        int getRotationDegrees();
+
+        void close();
+    }
+
+    /**
+     * Runs one frame through the pipeline and recycles it
+     */
+    public interface FrameSink {
+        void process(Bitmap frame, int rotationDegrees) throws Exception;
+    }
+
+    public interface MemorySampler {
+        MemorySample sample(long elapsedMs);
+    }
+
+    public interface Listener {
+        void onSample(MemorySample sample, long frames);
+    }
+
+    private final FrameSource source;
+    private final FrameSink sink;
+    private final MemorySampler sampler;
+    private volatile boolean stopRequested;
+
+    public SoakHarness(FrameSource source, FrameSink sink) {
+        this(source, sink, MemorySample::capture);
+    }
+
+    public SoakHarness(FrameSource source, FrameSink sink, MemorySampler sampler) {
+        this.source = source;
+        this.sink = sink;
+        this.sampler = sampler;
+    }
+
+    /**
+     * Sink feeding the manager's bitmap entry point, as if frames came from one camera
+     */
+    public static FrameSink forManager(FaceRecognitionManager manager, boolean flipX, int cameraId,
+                                       FaceRecognitionManager.FaceRecognitionCallback callback) {
+        return (frame, rotationDegrees) -> manager.processBitmapBlocking(frame, rotationDegrees, flipX, cameraId, callback);
+    }
+
+    /**
+     * Run on the calling thread until the duration elapses, the source runs out or stop() is called
+     * @param frameIntervalMs Target spacing of frames; 0 feeds them back to back
+     * @param listener Told about every memory sample (may be null)
+     */
+    public Report run(long durationMs, long frameIntervalMs, long sampleIntervalMs, Listener listener) {
+        stopRequested = false;
+        ResourceTracker.setEnabled(true);
+        long startNs = System.nanoTime();
+        List<MemorySample> samples = new ArrayList<>();
+        long frames = 0;
+        long errors = 0;
+        long nextSampleMs = 0;
+        try {
+            while (!stopRequested) {
+                long elapsedMs = (System.nanoTime() - startNs) / 1000000;
+                if (elapsedMs >= nextSampleMs) {
+                    addSample(samples, elapsedMs, frames, listener);
+                    nextSampleMs = elapsedMs + sampleIntervalMs;
+                }
+                if (elapsedMs >= durationMs) {
+                    break;
+                }
+
+                Bitmap frame = ResourceTracker.track(source.nextFrame(frames), "frame");
+                if (frame == null) {
+                    break;
+                }
+                try {
+                    sink.process(frame, source.getRotationDegrees());
+                } catch (Exception e) {
+                    errors++;
+                    ResourceTracker.recycle(frame);
+                }
+                frames++;
+
+                long sleepMs = frames * frameIntervalMs - (System.nanoTime() - startNs) / 1000000;
+                if (sleepMs > 0) {
+                    Thread.sleep(sleepMs);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            source.close();
+        }
+        long elapsedMs = (System.nanoTime() - startNs) / 1000000;
+        addSample(samples, elapsedMs, frames, listener);
+
+        // Let the collector reclaim whatever was dropped so it shows up as unreleased
+        System.gc();
+        System.runFinalization();
+        return new Report(elapsedMs, frames, errors, samples,
+            ResourceTracker.snapshot(ModelConfig.Diagnostics.LEAK_AGE_MS), ResourceTracker.getUntrackedReleases());
+    }
+
+    /**
+     * Ask a running soak to finish after the current frame
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    private void addSample(List<MemorySample> samples, long elapsedMs, long frames, Listener listener) {
+        MemorySample sample = sampler.sample(elapsedMs);
+        samples.add(sample);
+        if (listener != null) {
+            listener.onSample(sample, frames);
+        }
+    }
+
+    /**
+     * Outcome of a soak run
+     */
+    public static class Report {
+        public final long durationMs;
+        public final long frames;
+        public final long errors;
+        public final List<MemorySample> samples;
+        public final List<ResourceTracker.SiteStats> sites;
+        public final long untrackedReleases;
+        public final double javaHeapGrowthPerHour;     // bytes, fitted after the warm-up
+        public final double nativeHeapGrowthPerHour;
+        public final long gcCount;                     // -1 where the runtime does not report collections
+        public final long gcTimeMs;
+        public final long blockingGcCount;
+        public final long blockingGcTimeMs;
+        public final long worstBlockingGcMsPerInterval;
+
+        Report(long durationMs, long frames, long errors, List<MemorySample> samples,
+               List<ResourceTracker.SiteStats> sites, long untrackedReleases) {
+            this.durationMs = durationMs;
+            this.frames = frames;
+            this.errors = errors;
+            this.samples = Collections.unmodifiableList(samples);
+            this.sites = Collections.unmodifiableList(sites);
+            this.untrackedReleases = untrackedReleases;
+
+            // Caches, pools and the JIT fill up early; only the steady state says anything about leaks
+            long warmupMs = (long) (durationMs * ModelConfig.Diagnostics.SOAK_WARMUP_FRACTION);
+            List<MemorySample> steady = new ArrayList<>();
+            for (MemorySample sample : samples) {
+                if (sample.timestampMs >= warmupMs) {
+                    steady.add(sample);
+                }
+            }
+            javaHeapGrowthPerHour = slopePerHour(steady, true);
+            nativeHeapGrowthPerHour = slopePerHour(steady, false);
+
+            MemorySample first = samples.get(0);
+            MemorySample last = samples.get(samples.size() - 1);
+            gcCount = delta(first.gcCount, last.gcCount);
+            gcTimeMs = delta(first.gcTimeMs, last.gcTimeMs);
+            blockingGcCount = delta(first.blockingGcCount, last.blockingGcCount);
+            blockingGcTimeMs = delta(first.blockingGcTimeMs, last.blockingGcTimeMs);
+            long worst = blockingGcTimeMs < 0 ? -1 : 0;
+            for (int i = 1; i < samples.size(); i++) {
+                worst = Math.max(worst, delta(samples.get(i - 1).blockingGcTimeMs, samples.get(i).blockingGcTimeMs));
+            }
+            worstBlockingGcMsPerInterval = worst;
+        }
+
+        /**
+         * Allocation sites with stale or collected-but-unreleased resources
+         */
+        public List<ResourceTracker.SiteStats> getSuspectSites() {
+            List<ResourceTracker.SiteStats> suspects = new ArrayList<>();
+            for (ResourceTracker.SiteStats site : sites) {
+                if (site.isSuspect()) {
+                    suspects.add(site);
+                }
+            }
+            return suspects;
+        }
+
+        /**
+         * Average collector time per collection, or -1 if unknown
+         */
+        public float getAverageGcMs() {
+            return gcCount > 0 ? gcTimeMs / (float) gcCount : -1f;
+        }
+
+        /**
+         * Whether heap or native memory kept growing or resources leaked
+         */
+        public boolean hasLeaks(long maxGrowthBytesPerHour) {
+            return javaHeapGrowthPerHour > maxGrowthBytesPerHour
+                || nativeHeapGrowthPerHour > maxGrowthBytesPerHour
+                || !getSuspectSites().isEmpty();
+        }
+
+        private static long delta(long from, long to) {
+            return from < 0 || to < 0 ? -1 : to - from;
+        }
+
+        /**
+         * Least-squares slope of heap size over time
+         */
+        private static double slopePerHour(List<MemorySample> samples, boolean javaHeap) {
+            int n = samples.size();
+            if (n < 2) {
+                return 0;
+            }
+            double meanT = 0;
+            double meanY = 0;
+            for (MemorySample sample : samples) {
+                meanT += sample.timestampMs;
+                meanY += javaHeap ? sample.javaHeapBytes : sample.nativeHeapBytes;
+            }
+            meanT /= n;
+            meanY /= n;
+            double covariance = 0;
+            double variance = 0;
+            for (MemorySample sample : samples) {
+                double dt = sample.timestampMs - meanT;
+                covariance += dt * ((javaHeap ? sample.javaHeapBytes : sample.nativeHeapBytes) - meanY);
+                variance += dt * dt;
+            }
+            return variance > 0 ? covariance / variance * 3600000.0 : 0;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append(String.format(Locale.US, "Soak %.1f min, %d frames (%.1f fps), %d errors%n",
+                durationMs / 60000f, frames, durationMs > 0 ? frames * 1000f / durationMs : 0f, errors));
+            text.append(String.format(Locale.US, "Java heap growth: %.1f KB/h, native heap growth: %.1f KB/h%n",
+                javaHeapGrowthPerHour / 1024, nativeHeapGrowthPerHour / 1024));
+            text.append(String.format(Locale.US, "GC: %d collections, %d ms (avg %.1f ms); blocking: %d, %d ms "
+                    + "(worst interval %d ms)%n", gcCount, gcTimeMs, getAverageGcMs(), blockingGcCount,
+                blockingGcTimeMs, worstBlockingGcMsPerInterval));
+            for (ResourceTracker.SiteStats site : sites) {
+                text.append(site.isSuspect() ? "LEAK? " : "      ").append(site).append('\n');
+            }
+            if (untrackedReleases > 0) {
+                text.append("Releases of untracked resources: ").append(untrackedReleases).append('\n');
+            }
+            return text.toString();
+        }
+    }
+
+    /**
+     * Generated frames: a face-like blob drifting over a shifting gradient, with sensor noise
+     */
+    public static class SyntheticFrameSource implements FrameSource {
+        private final int width;
+        private final int height;
+        private final int[] pixels;
+        private final Random random;
+
+        public SyntheticFrameSource(int width, int height, long seed) {
+            this.width = width;
+            this.height = height;
+            this.pixels = new int[width * height];
+            this.random = new Random(seed);
+        }
+
+        @Override
+        public Bitmap nextFrame(long index) {
+            double phase = index / 45.0;
+            int centerX = (int) (width * (0.5 + 0.25 * Math.sin(phase)));
+            int centerY = (int) (height * (0.5 + 0.15 * Math.sin(phase * 1.7)));
+            int radiusX = Math.max(8, Math.min(width, height) / 6);
+            int radiusY = radiusX * 5 / 4;
+            int shade = (int) (index % 256);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    float dx = (x - centerX) / (float) radiusX;
+                    float dy = (y - centerY) / (float) radiusY;
+                    int noise = random.nextInt(9) - 4;
+                    int r;
+                    int g;
+                    int b;
+                    if (dx * dx + dy * dy <= 1f) {
+                        boolean eye = dy > -0.45f && dy < -0.2f && Math.abs(Math.abs(dx) - 0.35f) < 0.12f;
+                        r = eye ? 40 : 224;
+                        g = eye ? 30 : 172;
+                        b = eye ? 30 : 140;
+                    } else {
+                        r = (x * 255 / width + shade) & 0xFF;
+                        g = y * 255 / height;
+                        b = 128;
+                    }
+                    pixels[y * width + x] = 0xFF000000 | clamp(r + noise) << 16 | clamp(g + noise) << 8 | clamp(b + noise);
+                }
+            }
+            return Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+        }
+
+        private static int clamp(int value) {
+            return Math.max(0, Math.min(255, value));
+        }
+
+        @Override
+        public int getRotationDegrees() {
+            return 0;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Replays a recorded clip (a directory of JPEG or PNG frames, in name order) in a loop
+     */
+    public static class ReplayFrameSource implements FrameSource {
+        private final File[] frames;
+        private final int rotationDegrees;
+
+        public ReplayFrameSource(File directory, int rotationDegrees) {
+            File[] files = directory.listFiles((dir, name) -> {
+                String lower = name.toLowerCase(Locale.US);
+                return lower.endsWith(".jpg") || lower.endsWith(".jpeg") || lower.endsWith(".png");
+            });
+            this.frames = files != null ? files : new File[0];
+            Arrays.sort(this.frames);
+            this.rotationDegrees = rotationDegrees;
+        }
+
+        public int getFrameCount() {
+            return frames.length;
+        }
+
+        @Override
+        public Bitmap nextFrame(long index) {
+            // Unreadable frames are skipped; a clip with none readable ends the run
+            for (int attempt = 0; attempt < frames.length; attempt++) {
+                Bitmap frame = BitmapFactory.decodeFile(frames[(int) ((index + attempt) % frames.length)].getPath());
+                if (frame != null) {
+                    return frame;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public int getRotationDegrees() {
+            return rotationDegrees;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.atharvakale.facerecognition.features.audio;
+
+import java.io.IOException;
+
+/**
+ * Source of mono audio samples normalized to [-1, 1]
+ * Implemented by the microphone and by WAV files for headless runs
+ */
+public interface AudioInputSource {
+    
+    /**
+     * Get the sample rate in Hz
+     */
+    int getSampleRate();
+    
+    /**
+     * Prepare the source for reading
+     */
+    void open() throws IOException;
+    
+    /**
+     * Blocking read of up to length samples
+     * @return Number of samples read, or -1 at end of stream
+     */
+    int read(float[] buffer, int offset, int length) throws IOException;
+    
+    /**
+     * Release the underlying resources
+     */
+    void close();
+}
@@ -1,66 +1,129 @@
 package com.atharvakale.facerecognition.features.audio;
 
-import android.app.Activity;
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
 import com.atharvakale.facerecognition.features.base.FeatureManager;
+import com.atharvakale.facerecognition.ml.MLModelManager;
+import com.atharvakale.facerecognition.ml.ModelConfig;
+import java.io.File;
+import java.io.IOException;
 
 /**
- * Audio Recognition Manager - Future Implementation
- * Will handle audio-based recognition using TensorFlow Lite models
- * 
- * This is a placeholder for future audio recognition functionality
+ * Audio Recognition Manager
+ * Runs the streaming audio pipeline (microphone -> ring buffer -> log-mel -> sliding-window
+ * TensorFlow Lite inference) and reports the top class of each inference window
  */
 public class AudioRecognitionManager implements FeatureManager {
     
-    private Activity context;
+    private Context context;
+    private MLModelManager modelManager;
+    private AudioStreamPipeline pipeline;
+    private AudioRecognitionCallback callback;
     private boolean isInitialized = false;
     private boolean isActive = false;
     
-    public AudioRecognitionManager(Activity context) {
+    public interface AudioRecognitionCallback {
+        void onAudioRecognized(int classIndex, float score, long frameIndex);
+        void onError(String error);
+    }
+    
+    public AudioRecognitionManager(Context context) {
         this.context = context;
     }
     
+    /**
+     * Set the callback receiving recognition results (called on the audio processing thread)
+     */
+    public void setCallback(AudioRecognitionCallback callback) {
+        this.callback = callback;
+    }
+    
     @Override
     public boolean initialize() {
-        // TODO: Initialize audio recognition components
-        // - Load audio TensorFlow Lite model
-        // - Set up audio recording infrastructure
-        // - Initialize audio feature extraction
+        if (isInitialized) {
+            return true;
+        }
+        modelManager = new MLModelManager(context);
+        if (!modelManager.loadModel(ModelConfig.AudioRecognition.MODEL_FILE,
+                ModelConfig.AudioRecognition.MODEL_KEY)) {
+            modelManager = null;
+            return false;
+        }
+        try {
+            pipeline = createPipeline(modelManager);
+        } catch (IllegalArgumentException e) {
+            e.printStackTrace();
+            modelManager.cleanup();
+            modelManager = null;
+            return false;
+        }
         isInitialized = true;
-        return isInitialized;
+        return true;
     }
     
     @Override
     public boolean start() {
-        if (!isInitialized) {
+        if (!isInitialized || !isSupported()) {
+            return false;
+        }
+        if (isActive) {
+            return true;
+        }
+        try {
+            pipeline.start(new MicrophoneInputSource(
+                ModelConfig.AudioRecognition.SAMPLE_RATE,
+                ModelConfig.AudioRecognition.HOP_SIZE * 4
+            ));
+            isActive = true;
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
             return false;
         }
-        // TODO: Start audio recognition processing
-        // - Begin audio capture
-        // - Start real-time audio analysis
-        isActive = true;
-        return true;
     }
     
     @Override
     public void stop() {
-        // TODO: Stop audio recognition
-        // - Stop audio capture
-        // - Clean up audio resources
+        if (pipeline != null) {
+            pipeline.stop();
+        }
         isActive = false;
     }
     
     @Override
     public void pause() {
-        // TODO: Pause audio recognition
-        isActive = false;
+        stop();
     }
     
     @Override
     public void resume() {
-        // TODO: Resume audio recognition
         if (isInitialized) {
-            isActive = true;
+            start();
+        }
+    }
+    
+    /**
+     * Run a WAV file through the same pipeline without the microphone (headless)
+     * @return Number of feature frames processed, or -1 on failure
+     */
+    public long processFile(File wavFile) {
+        if (!isInitialized || isActive) {
+            return -1;
         }
+        try {
+            return pipeline.runToCompletion(new WavFileInputSource(wavFile));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return -1;
+        }
+    }
+    
+    /**
+     * Get the underlying pipeline for metrics (frames, inferences, drops, real-time factor)
+     */
+    public AudioStreamPipeline getPipeline() {
+        return pipeline;
     }
     
     @Override
@@ -75,34 +138,68 @@ public class AudioRecognitionManager implements FeatureManager {
     
     @Override
     public String getFeatureVersion() {
-        return "1.0.0";
+        return "1.1.0";
     }
     
     @Override
     public void cleanup() {
         stop();
-        // TODO: Clean up audio recognition resources
-        // - Release TensorFlow Lite models
-        // - Clean up audio components
+        if (modelManager != null) {
+            modelManager.cleanup();
+            modelManager = null;
+        }
+        pipeline = null;
         isInitialized = false;
     }
     
     @Override
     public boolean isSupported() {
-        // TODO: Check if device supports audio recognition
-        // - Check microphone availability
-        // - Verify TensorFlow Lite support
-        // - Check minimum API level requirements
-        return true; // Placeholder
+        return context.checkSelfPermission(Manifest.permission.RECORD_AUDIO) == PackageManager.PERMISSION_GRANTED;
     }
     
-    /**
-     * Future methods for audio recognition:
-     * 
-     * public void registerAudioProfile(String name, AudioCallback callback)
-     * public void recognizeAudio(AudioCallback callback)
-     * public void deleteAudioProfile(String name)
-     * public String[] getRegisteredAudioProfiles()
-     * public void setAudioSensitivity(float sensitivity)
-     */
-} 
\ No newline at end of file
+    private AudioStreamPipeline createPipeline(MLModelManager modelManager) {
+        LogMelExtractor extractor = new LogMelExtractor(
+            ModelConfig.AudioRecognition.SAMPLE_RATE,
+            ModelConfig.AudioRecognition.FRAME_SIZE,
+            ModelConfig.AudioRecognition.HOP_SIZE,
+            ModelConfig.AudioRecognition.NUM_MEL_BINS,
+            ModelConfig.AudioRecognition.MEL_MIN_FREQUENCY,
+            ModelConfig.AudioRecognition.MEL_MAX_FREQUENCY,
+            ModelConfig.AudioRecognition.NUM_MFCC
+        );
+        return new AudioStreamPipeline(
+            extractor,
+            ModelConfig.AudioRecognition.WINDOW_FRAMES,
+            ModelConfig.AudioRecognition.INFERENCE_STRIDE,
+            ModelConfig.AudioRecognition.RING_BUFFER_SAMPLES,
+            modelManager,
+            ModelConfig.AudioRecognition.MODEL_KEY,
+            new AudioStreamPipeline.Listener() {
+                @Override
+                public void onFeatureFrame(float[] features, long frameIndex) {}
+                
+                @Override
+                public void onInference(float[] scores, long frameIndex) {
+                    int best = 0;
+                    for (int i = 1; i < scores.length; i++) {
+                        if (scores[i] > scores[best]) {
+                            best = i;
+                        }
+                    }
+                    AudioRecognitionCallback current = callback;
+                    if (current != null) {
+                        current.onAudioRecognized(best, scores[best], frameIndex);
+                    }
+                }
+                
+                @Override
+                public void onError(String error) {
+                    AudioRecognitionCallback current = callback;
+                    if (current != null) {
+                        current.onError(error);
+                    }
+                }
+            }
+        );
+    }
+}
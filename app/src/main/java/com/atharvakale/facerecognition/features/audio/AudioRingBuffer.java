@@ -0,0 +1,97 @@
+package com.atharvakale.facerecognition.features.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer/single-consumer ring buffer of audio samples
+ * The recorder thread writes, the processing thread reads; neither blocks nor allocates
+ */
+public class AudioRingBuffer {
+    private final float[] buffer;
+    private final int mask;
+    private final AtomicLong writePosition = new AtomicLong();
+    private final AtomicLong readPosition = new AtomicLong();
+    private final AtomicLong droppedSamples = new AtomicLong();
+    
+    /**
+     * @param minCapacity Minimum capacity in samples (rounded up to a power of two)
+     */
+    public AudioRingBuffer(int minCapacity) {
+        if (minCapacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        int capacity = Integer.highestOneBit(minCapacity);
+        if (capacity < minCapacity) {
+            capacity <<= 1;
+        }
+        this.buffer = new float[capacity];
+        this.mask = capacity - 1;
+    }
+    
+    /**
+     * Write samples; samples that don't fit are dropped and counted as overrun
+     * Must only be called from the producer thread
+     * @return Number of samples written
+     */
+    public int write(float[] source, int offset, int length) {
+        long write = writePosition.get();
+        long read = readPosition.get();
+        int free = buffer.length - (int) (write - read);
+        int count = Math.min(length, free);
+        
+        int start = (int) (write & mask);
+        int firstPart = Math.min(count, buffer.length - start);
+        System.arraycopy(source, offset, buffer, start, firstPart);
+        System.arraycopy(source, offset + firstPart, buffer, 0, count - firstPart);
+        
+        writePosition.lazySet(write + count);
+        if (count < length) {
+            droppedSamples.addAndGet(length - count);
+        }
+        return count;
+    }
+    
+    /**
+     * Read up to length samples
+     * Must only be called from the consumer thread
+     * @return Number of samples read
+     */
+    public int read(float[] destination, int offset, int length) {
+        long read = readPosition.get();
+        long write = writePosition.get();
+        int count = Math.min(length, (int) (write - read));
+        
+        int start = (int) (read & mask);
+        int firstPart = Math.min(count, buffer.length - start);
+        System.arraycopy(buffer, start, destination, offset, firstPart);
+        System.arraycopy(buffer, 0, destination, offset + firstPart, count - firstPart);
+        
+        readPosition.lazySet(read + count);
+        return count;
+    }
+    
+    /**
+     * Number of samples ready to be read
+     */
+    public int available() {
+        return (int) (writePosition.get() - readPosition.get());
+    }
+    
+    public int capacity() {
+        return buffer.length;
+    }
+    
+    /**
+     * Samples dropped because the consumer fell behind
+     */
+    public long getDroppedSamples() {
+        return droppedSamples.get();
+    }
+    
+    /**
+     * Discard all buffered samples (consumer thread only)
+     */
+    public void clear() {
+        readPosition.lazySet(writePosition.get());
+    }
+}
@@ -0,0 +1,318 @@
+package com.atharvakale.facerecognition.features.audio;
+
+import com.atharvakale.facerecognition.ml.MLModelManager;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import org.tensorflow.lite.Interpreter;
+
+/**
+ * Streaming audio recognition pipeline
+ * A capture thread feeds a lock-free ring buffer; a processing thread turns each hop into a
+ * feature frame and runs sliding-window inference through MLModelManager every few hops.
+ * All buffers are allocated up front so steady-state processing is allocation-free
+ */
+public class AudioStreamPipeline {
+    private static final int CAPTURE_CHUNK_HOPS = 4;
+    
+    private final LogMelExtractor extractor;
+    private final int hopSize;
+    private final int featureSize;
+    private final int windowFrames;
+    private final int inferenceStride;
+    private final AudioRingBuffer ringBuffer;
+    private final MLModelManager modelManager;
+    private final String modelKey;
+    private final Listener listener;
+    
+    // Preallocated working buffers
+    private final float[] captureBuffer;
+    private final float[] hopBuffer;
+    private final float[] featureFrame;
+    private final float[] featureHistory;
+    private ByteBuffer inputBuffer;
+    private Object[] inputArray;
+    private Map<Integer, Object> outputMap;
+    private float[][] outputScores;
+    
+    private volatile boolean running = false;
+    private volatile boolean endOfStream = false;
+    private Thread captureThread;
+    private Thread processingThread;
+    private AudioInputSource source;
+    private long hopNanos;
+    
+    // Metrics
+    private volatile long framesProcessed = 0;
+    private volatile long inferencesRun = 0;
+    private volatile long processingNanos = 0;
+    private volatile long maxHopNanos = 0;
+    
+    /**
+     * Receives pipeline output on the processing thread
+     * Arrays passed to the callbacks are reused and only valid during the call
+     */
+    public interface Listener {
+        void onFeatureFrame(float[] features, long frameIndex);
+        void onInference(float[] scores, long frameIndex);
+        void onError(String error);
+    }
+    
+    /**
+     * @param extractor Feature extractor (defines hop and feature size)
+     * @param windowFrames Feature frames per inference window
+     * @param inferenceStride Hops between consecutive inferences
+     * @param ringCapacity Ring buffer capacity in samples
+     * @param modelManager Model manager used for inference, or null for feature-only operation
+     * @param modelKey Key of the loaded audio model
+     */
+    public AudioStreamPipeline(LogMelExtractor extractor, int windowFrames, int inferenceStride,
+                               int ringCapacity, MLModelManager modelManager, String modelKey,
+                               Listener listener) {
+        if (windowFrames < 1 || inferenceStride < 1) {
+            throw new IllegalArgumentException("Window and stride must be positive");
+        }
+        this.extractor = extractor;
+        this.hopSize = extractor.getHopSize();
+        this.featureSize = extractor.getFeatureSize();
+        this.windowFrames = windowFrames;
+        this.inferenceStride = inferenceStride;
+        this.ringBuffer = new AudioRingBuffer(Math.max(ringCapacity, hopSize * CAPTURE_CHUNK_HOPS * 2));
+        this.modelManager = modelManager;
+        this.modelKey = modelKey;
+        this.listener = listener;
+        
+        this.captureBuffer = new float[hopSize * CAPTURE_CHUNK_HOPS];
+        this.hopBuffer = new float[hopSize];
+        this.featureFrame = new float[featureSize];
+        this.featureHistory = new float[windowFrames * featureSize];
+        prepareInference();
+    }
+    
+    /**
+     * Allocate model input/output buffers once the model is available
+     */
+    private void prepareInference() {
+        if (modelManager == null || !modelManager.isModelLoaded(modelKey)) {
+            return;
+        }
+        Interpreter interpreter = modelManager.getModel(modelKey);
+        int inputBytes = windowFrames * featureSize * 4;
+        if (interpreter.getInputTensor(0).numBytes() != inputBytes) {
+            throw new IllegalArgumentException("Audio model expects " + interpreter.getInputTensor(0).numBytes()
+                + " input bytes, pipeline produces " + inputBytes);
+        }
+        inputBuffer = ByteBuffer.allocateDirect(inputBytes).order(ByteOrder.nativeOrder());
+        inputArray = new Object[]{inputBuffer};
+        outputScores = new float[1][interpreter.getOutputTensor(0).numElements()];
+        outputMap = new HashMap<>();
+        outputMap.put(0, outputScores);
+    }
+    
+    /**
+     * Start real-time processing on background threads
+     */
+    public synchronized void start(AudioInputSource audioSource) throws IOException {
+        if (running) {
+            return;
+        }
+        audioSource.open();
+        source = audioSource;
+        hopNanos = 1_000_000_000L * hopSize / audioSource.getSampleRate();
+        resetState();
+        running = true;
+        
+        processingThread = new Thread(this::processLoop, "audio-processing");
+        processingThread.setPriority(Thread.MAX_PRIORITY);
+        captureThread = new Thread(this::captureLoop, "audio-capture");
+        captureThread.setPriority(Thread.MAX_PRIORITY);
+        processingThread.start();
+        captureThread.start();
+    }
+    
+    /**
+     * Stop processing and release the input source
+     */
+    public synchronized void stop() {
+        running = false;
+        joinQuietly(captureThread);
+        joinQuietly(processingThread);
+        captureThread = null;
+        processingThread = null;
+        if (source != null) {
+            source.close();
+            source = null;
+        }
+    }
+    
+    /**
+     * Process a whole source synchronously on the calling thread (headless runs, WAV files)
+     * @return Number of feature frames produced
+     */
+    public long runToCompletion(AudioInputSource audioSource) throws IOException {
+        audioSource.open();
+        try {
+            resetState();
+            int count;
+            while ((count = audioSource.read(captureBuffer, 0, captureBuffer.length)) >= 0) {
+                ringBuffer.write(captureBuffer, 0, count);
+                drainRingBuffer();
+            }
+            return framesProcessed;
+        } finally {
+            audioSource.close();
+        }
+    }
+    
+    public boolean isRunning() {
+        return running;
+    }
+    
+    private void captureLoop() {
+        try {
+            while (running) {
+                int count = source.read(captureBuffer, 0, captureBuffer.length);
+                if (count < 0) {
+                    break;
+                }
+                ringBuffer.write(captureBuffer, 0, count);
+                LockSupport.unpark(processingThread);
+            }
+        } catch (IOException e) {
+            if (listener != null) {
+                listener.onError("Audio capture failed: " + e.getMessage());
+            }
+        } finally {
+            endOfStream = true;
+            LockSupport.unpark(processingThread);
+        }
+    }
+    
+    private void processLoop() {
+        while (running) {
+            if (ringBuffer.available() >= hopSize) {
+                drainRingBuffer();
+            } else if (endOfStream) {
+                break;
+            } else {
+                LockSupport.parkNanos(this, hopNanos);
+            }
+        }
+        running = false;
+    }
+    
+    private void drainRingBuffer() {
+        while (ringBuffer.available() >= hopSize) {
+            ringBuffer.read(hopBuffer, 0, hopSize);
+            processHop();
+        }
+    }
+    
+    private void processHop() {
+        long start = System.nanoTime();
+        
+        extractor.processHop(hopBuffer, 0, featureFrame, 0);
+        long frameIndex = framesProcessed;
+        int row = (int) (frameIndex % windowFrames);
+        System.arraycopy(featureFrame, 0, featureHistory, row * featureSize, featureSize);
+        framesProcessed = frameIndex + 1;
+        
+        if (listener != null) {
+            listener.onFeatureFrame(featureFrame, frameIndex);
+        }
+        
+        long filled = frameIndex + 1;
+        if (inputBuffer != null && filled >= windowFrames && (filled - windowFrames) % inferenceStride == 0) {
+            runInference(frameIndex);
+        }
+        
+        long elapsed = System.nanoTime() - start;
+        processingNanos += elapsed;
+        if (elapsed > maxHopNanos) {
+            maxHopNanos = elapsed;
+        }
+    }
+    
+    private void runInference(long frameIndex) {
+        // Oldest frame first: the slot after the newest one in the circular history
+        inputBuffer.rewind();
+        int oldest = (int) ((frameIndex + 1) % windowFrames);
+        for (int f = 0; f < windowFrames; f++) {
+            int base = ((oldest + f) % windowFrames) * featureSize;
+            for (int i = 0; i < featureSize; i++) {
+                inputBuffer.putFloat(featureHistory[base + i]);
+            }
+        }
+        inputBuffer.rewind();
+        
+        if (modelManager.runInference(modelKey, inputArray, outputMap)) {
+            inferencesRun++;
+            if (listener != null) {
+                listener.onInference(outputScores[0], frameIndex);
+            }
+        } else if (listener != null) {
+            listener.onError("Audio inference failed");
+        }
+    }
+    
+    private void resetState() {
+        ringBuffer.clear();
+        extractor.reset();
+        endOfStream = false;
+        framesProcessed = 0;
+        inferencesRun = 0;
+        processingNanos = 0;
+        maxHopNanos = 0;
+    }
+    
+    private static void joinQuietly(Thread thread) {
+        if (thread == null) {
+            return;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    public long getFramesProcessed() {
+        return framesProcessed;
+    }
+    
+    public long getInferencesRun() {
+        return inferencesRun;
+    }
+    
+    public long getDroppedSamples() {
+        return ringBuffer.getDroppedSamples();
+    }
+    
+    /**
+     * Average processing time per hop in microseconds
+     */
+    public float getAverageHopMicros() {
+        long frames = framesProcessed;
+        return frames == 0 ? 0f : processingNanos / 1000f / frames;
+    }
+    
+    public float getMaxHopMicros() {
+        return maxHopNanos / 1000f;
+    }
+    
+    /**
+     * Processing time divided by audio time; below 1.0 means faster than real time
+     */
+    public float getRealTimeFactor(int sampleRate) {
+        long frames = framesProcessed;
+        if (frames == 0) {
+            return 0f;
+        }
+        double audioNanos = frames * (double) hopSize * 1_000_000_000L / sampleRate;
+        return (float) (processingNanos / audioNanos);
+    }
+}
@@ -0,0 +1,226 @@
+package com.atharvakale.facerecognition.features.audio;
+
+import java.util.Arrays;
+
+/**
+ * Incremental log-mel / MFCC feature extractor
+ * Each hop of new samples produces one feature frame. The analysis window, FFT scratch,
+ * filterbank and DCT tables are allocated once, so extraction is allocation-free
+ */
+public class LogMelExtractor {
+    private static final float LOG_OFFSET = 1e-6f;
+    
+    private final int frameSize;
+    private final int hopSize;
+    private final int numMelBins;
+    private final int numMfcc;
+    
+    // Sliding analysis frame, newest samples at the end
+    private final float[] frame;
+    private final float[] window;
+    
+    // FFT scratch and tables
+    private final float[] real;
+    private final float[] imag;
+    private final int[] bitReversal;
+    private final float[] cosTable;
+    private final float[] sinTable;
+    private final float[] powerSpectrum;
+    
+    // Sparse mel filterbank
+    private final int[] melStart;
+    private final int[] melLength;
+    private final int[] melOffset;
+    private final float[] melWeights;
+    private final float[] logMel;
+    
+    // DCT-II matrix for MFCC (numMfcc x numMelBins)
+    private final float[] dct;
+    
+    /**
+     * @param sampleRate Sample rate in Hz
+     * @param frameSize Analysis window length in samples (power of two)
+     * @param hopSize Samples per hop
+     * @param numMelBins Number of mel filters
+     * @param minFrequency Lowest filter edge in Hz
+     * @param maxFrequency Highest filter edge in Hz
+     * @param numMfcc Number of cepstral coefficients, or 0 to output log-mel energies
+     */
+    public LogMelExtractor(int sampleRate, int frameSize, int hopSize, int numMelBins,
+                           float minFrequency, float maxFrequency, int numMfcc) {
+        if (frameSize < 2 || Integer.bitCount(frameSize) != 1) {
+            throw new IllegalArgumentException("Frame size must be a power of two");
+        }
+        if (hopSize < 1 || hopSize > frameSize) {
+            throw new IllegalArgumentException("Hop size must be in [1, frameSize]");
+        }
+        if (numMfcc < 0 || numMfcc > numMelBins) {
+            throw new IllegalArgumentException("MFCC count must be in [0, numMelBins]");
+        }
+        this.frameSize = frameSize;
+        this.hopSize = hopSize;
+        this.numMelBins = numMelBins;
+        this.numMfcc = numMfcc;
+        
+        this.frame = new float[frameSize];
+        this.window = new float[frameSize];
+        for (int i = 0; i < frameSize; i++) {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / frameSize));
+        }
+        
+        this.real = new float[frameSize];
+        this.imag = new float[frameSize];
+        this.bitReversal = new int[frameSize];
+        int bits = Integer.numberOfTrailingZeros(frameSize);
+        for (int i = 0; i < frameSize; i++) {
+            bitReversal[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+        this.cosTable = new float[frameSize / 2];
+        this.sinTable = new float[frameSize / 2];
+        for (int i = 0; i < frameSize / 2; i++) {
+            cosTable[i] = (float) Math.cos(2 * Math.PI * i / frameSize);
+            sinTable[i] = (float) -Math.sin(2 * Math.PI * i / frameSize);
+        }
+        int numBins = frameSize / 2 + 1;
+        this.powerSpectrum = new float[numBins];
+        
+        // Triangular filters equally spaced on the mel scale
+        float melMin = hzToMel(minFrequency);
+        float melMax = hzToMel(Math.min(maxFrequency, sampleRate / 2f));
+        float[] edges = new float[numMelBins + 2];
+        for (int i = 0; i < edges.length; i++) {
+            float hz = melToHz(melMin + (melMax - melMin) * i / (numMelBins + 1));
+            edges[i] = hz * frameSize / sampleRate;
+        }
+        this.melStart = new int[numMelBins];
+        this.melLength = new int[numMelBins];
+        this.melOffset = new int[numMelBins];
+        int total = 0;
+        for (int m = 0; m < numMelBins; m++) {
+            int start = Math.max(0, (int) Math.ceil(edges[m]));
+            int end = Math.min(numBins - 1, (int) Math.floor(edges[m + 2]));
+            melStart[m] = start;
+            melLength[m] = Math.max(0, end - start + 1);
+            melOffset[m] = total;
+            total += melLength[m];
+        }
+        this.melWeights = new float[total];
+        for (int m = 0; m < numMelBins; m++) {
+            float left = edges[m];
+            float center = edges[m + 1];
+            float right = edges[m + 2];
+            for (int k = 0; k < melLength[m]; k++) {
+                float bin = melStart[m] + k;
+                float weight = bin <= center
+                    ? (bin - left) / Math.max(center - left, 1e-6f)
+                    : (right - bin) / Math.max(right - center, 1e-6f);
+                melWeights[melOffset[m] + k] = Math.max(0f, weight);
+            }
+        }
+        this.logMel = new float[numMelBins];
+        
+        this.dct = new float[numMfcc * numMelBins];
+        for (int c = 0; c < numMfcc; c++) {
+            float scale = (float) Math.sqrt((c == 0 ? 1.0 : 2.0) / numMelBins);
+            for (int m = 0; m < numMelBins; m++) {
+                dct[c * numMelBins + m] = scale * (float) Math.cos(Math.PI * c * (m + 0.5) / numMelBins);
+            }
+        }
+    }
+    
+    /**
+     * Push one hop of samples and compute the feature frame for the updated window
+     * @param samples Source array holding at least hopSize samples from offset
+     * @param output Destination with room for getFeatureSize() values
+     */
+    public void processHop(float[] samples, int offset, float[] output, int outputOffset) {
+        System.arraycopy(frame, hopSize, frame, 0, frameSize - hopSize);
+        System.arraycopy(samples, offset, frame, frameSize - hopSize, hopSize);
+        
+        for (int i = 0; i < frameSize; i++) {
+            real[bitReversal[i]] = frame[i] * window[i];
+            imag[i] = 0f;
+        }
+        fft();
+        for (int k = 0; k < powerSpectrum.length; k++) {
+            powerSpectrum[k] = real[k] * real[k] + imag[k] * imag[k];
+        }
+        
+        for (int m = 0; m < numMelBins; m++) {
+            float energy = 0f;
+            int base = melOffset[m];
+            int start = melStart[m];
+            for (int k = 0; k < melLength[m]; k++) {
+                energy += melWeights[base + k] * powerSpectrum[start + k];
+            }
+            logMel[m] = (float) Math.log(energy + LOG_OFFSET);
+        }
+        
+        if (numMfcc == 0) {
+            System.arraycopy(logMel, 0, output, outputOffset, numMelBins);
+        } else {
+            for (int c = 0; c < numMfcc; c++) {
+                float sum = 0f;
+                int row = c * numMelBins;
+                for (int m = 0; m < numMelBins; m++) {
+                    sum += dct[row + m] * logMel[m];
+                }
+                output[outputOffset + c] = sum;
+            }
+        }
+    }
+    
+    /**
+     * Reset the analysis window to silence
+     */
+    public void reset() {
+        Arrays.fill(frame, 0f);
+    }
+    
+    /**
+     * Number of values produced per hop
+     */
+    public int getFeatureSize() {
+        return numMfcc == 0 ? numMelBins : numMfcc;
+    }
+    
+    public int getHopSize() {
+        return hopSize;
+    }
+    
+    public int getFrameSize() {
+        return frameSize;
+    }
+    
+    /**
+     * In-place iterative radix-2 FFT over the bit-reversed real/imag scratch arrays
+     */
+    private void fft() {
+        for (int size = 2; size <= frameSize; size <<= 1) {
+            int half = size >> 1;
+            int step = frameSize / size;
+            for (int start = 0; start < frameSize; start += size) {
+                for (int k = 0; k < half; k++) {
+                    float wr = cosTable[k * step];
+                    float wi = sinTable[k * step];
+                    int even = start + k;
+                    int odd = even + half;
+                    float tr = wr * real[odd] - wi * imag[odd];
+                    float ti = wr * imag[odd] + wi * real[odd];
+                    real[odd] = real[even] - tr;
+                    imag[odd] = imag[even] - ti;
+                    real[even] += tr;
+                    imag[even] += ti;
+                }
+            }
+        }
+    }
+    
+    private static float hzToMel(float hz) {
+        return (float) (2595.0 * Math.log10(1.0 + hz / 700.0));
+    }
+    
+    private static float melToHz(float mel) {
+        return (float) (700.0 * (Math.pow(10.0, mel / 2595.0) - 1.0));
+    }
+}
@@ -0,0 +1,81 @@
+package com.atharvakale.facerecognition.features.audio;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import java.io.IOException;
+
+/**
+ * Live microphone input through AudioRecord (16-bit mono PCM)
+ */
+public class MicrophoneInputSource implements AudioInputSource {
+    private final int sampleRate;
+    private final int chunkSamples;
+    private AudioRecord audioRecord;
+    private short[] pcm;
+    
+    /**
+     * @param sampleRate Capture sample rate in Hz
+     * @param chunkSamples Samples per read from the recorder
+     */
+    public MicrophoneInputSource(int sampleRate, int chunkSamples) {
+        this.sampleRate = sampleRate;
+        this.chunkSamples = chunkSamples;
+    }
+    
+    @Override
+    public void open() throws IOException {
+        int minBuffer = AudioRecord.getMinBufferSize(sampleRate,
+            AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT);
+        if (minBuffer <= 0) {
+            throw new IOException("Unsupported audio configuration: " + sampleRate + " Hz");
+        }
+        try {
+            audioRecord = new AudioRecord(MediaRecorder.AudioSource.VOICE_RECOGNITION, sampleRate,
+                AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT,
+                Math.max(minBuffer, chunkSamples * 4));
+        } catch (SecurityException e) {
+            throw new IOException("Microphone permission not granted", e);
+        }
+        if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+            close();
+            throw new IOException("Failed to initialize AudioRecord");
+        }
+        pcm = new short[chunkSamples];
+        audioRecord.startRecording();
+    }
+    
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+    
+    @Override
+    public int read(float[] buffer, int offset, int length) throws IOException {
+        AudioRecord record = audioRecord;
+        if (record == null) {
+            return -1;
+        }
+        int count = record.read(pcm, 0, Math.min(length, pcm.length));
+        if (count < 0) {
+            throw new IOException("AudioRecord read failed: " + count);
+        }
+        for (int i = 0; i < count; i++) {
+            buffer[offset + i] = pcm[i] / 32768f;
+        }
+        return count;
+    }
+    
+    @Override
+    public void close() {
+        if (audioRecord != null) {
+            try {
+                audioRecord.stop();
+            } catch (IllegalStateException e) {
+                // Not recording
+            }
+            audioRecord.release();
+            audioRecord = null;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.atharvakale.facerecognition.features.audio;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads PCM WAV files (16-bit integer or 32-bit float, any channel count) as mono samples
+ * Multi-channel audio is downmixed by averaging
+ */
+public class WavFileInputSource implements AudioInputSource {
+    private static final int FORMAT_PCM = 1;
+    private static final int FORMAT_IEEE_FLOAT = 3;
+    private static final int FORMAT_EXTENSIBLE = 0xFFFE;
+    private static final int SCRATCH_FRAMES = 1024;
+    
+    private final File file;
+    private InputStream input;
+    private int sampleRate;
+    private int channels;
+    private int bitsPerSample;
+    private int format;
+    private long remainingBytes;
+    private byte[] scratch;
+    
+    public WavFileInputSource(File file) {
+        this.file = file;
+    }
+    
+    @Override
+    public void open() throws IOException {
+        input = new BufferedInputStream(new FileInputStream(file));
+        try {
+            readHeader();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        scratch = new byte[SCRATCH_FRAMES * channels * (bitsPerSample / 8)];
+    }
+    
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+    
+    public int getChannels() {
+        return channels;
+    }
+    
+    @Override
+    public int read(float[] buffer, int offset, int length) throws IOException {
+        if (remainingBytes <= 0) {
+            return -1;
+        }
+        int bytesPerSample = bitsPerSample / 8;
+        int frameBytes = bytesPerSample * channels;
+        int frames = (int) Math.min(Math.min(length, SCRATCH_FRAMES), remainingBytes / frameBytes);
+        if (frames == 0) {
+            remainingBytes = 0;
+            return -1;
+        }
+        readFully(scratch, frames * frameBytes);
+        remainingBytes -= (long) frames * frameBytes;
+        
+        int position = 0;
+        for (int i = 0; i < frames; i++) {
+            float sum = 0f;
+            for (int c = 0; c < channels; c++) {
+                if (format == FORMAT_IEEE_FLOAT) {
+                    sum += Float.intBitsToFloat(readIntLE(scratch, position));
+                } else {
+                    sum += (short) ((scratch[position] & 0xFF) | (scratch[position + 1] << 8)) / 32768f;
+                }
+                position += bytesPerSample;
+            }
+            buffer[offset + i] = sum / channels;
+        }
+        return frames;
+    }
+    
+    @Override
+    public void close() {
+        if (input != null) {
+            try {
+                input.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            input = null;
+        }
+    }
+    
+    private void readHeader() throws IOException {
+        byte[] header = new byte[12];
+        readFully(header, 12);
+        if (!matches(header, 0, "RIFF") || !matches(header, 8, "WAVE")) {
+            throw new IOException("Not a RIFF/WAVE file: " + file);
+        }
+        boolean haveFormat = false;
+        byte[] chunkHeader = new byte[8];
+        while (true) {
+            readFully(chunkHeader, 8);
+            long chunkSize = readIntLE(chunkHeader, 4) & 0xFFFFFFFFL;
+            if (matches(chunkHeader, 0, "fmt ")) {
+                byte[] fmt = new byte[(int) chunkSize];
+                readFully(fmt, fmt.length);
+                format = (fmt[0] & 0xFF) | ((fmt[1] & 0xFF) << 8);
+                channels = (fmt[2] & 0xFF) | ((fmt[3] & 0xFF) << 8);
+                sampleRate = readIntLE(fmt, 4);
+                bitsPerSample = (fmt[14] & 0xFF) | ((fmt[15] & 0xFF) << 8);
+                if (format == FORMAT_EXTENSIBLE && fmt.length >= 26) {
+                    format = (fmt[24] & 0xFF) | ((fmt[25] & 0xFF) << 8);
+                }
+                skip(chunkSize & 1);
+                haveFormat = true;
+            } else if (matches(chunkHeader, 0, "data")) {
+                if (!haveFormat) {
+                    throw new IOException("WAV data chunk before fmt chunk");
+                }
+                remainingBytes = chunkSize;
+                break;
+            } else {
+                skip(chunkSize + (chunkSize & 1));
+            }
+        }
+        boolean supported = (format == FORMAT_PCM && bitsPerSample == 16)
+            || (format == FORMAT_IEEE_FLOAT && bitsPerSample == 32);
+        if (!supported || channels < 1) {
+            throw new IOException("Unsupported WAV format " + format + "/" + bitsPerSample + " bit");
+        }
+    }
+    
+    private void readFully(byte[] buffer, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int count = input.read(buffer, read, length - read);
+            if (count < 0) {
+                throw new EOFException("Unexpected end of WAV file");
+            }
+            read += count;
+        }
+    }
+    
+    private void skip(long bytes) throws IOException {
+        while (bytes > 0) {
+            long skipped = input.skip(bytes);
+            if (skipped <= 0) {
+                if (input.read() < 0) {
+                    throw new EOFException("Unexpected end of WAV file");
+                }
+                skipped = 1;
+            }
+            bytes -= skipped;
+        }
+    }
+    
+    private static int readIntLE(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF)
+            | ((buffer[offset + 1] & 0xFF) << 8)
+            | ((buffer[offset + 2] & 0xFF) << 16)
+            | ((buffer[offset + 3] & 0xFF) << 24);
+    }
+    
+    private static boolean matches(byte[] buffer, int offset, String tag) {
+        for (int i = 0; i < 4; i++) {
+            if (buffer[offset + i] != tag.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,74 @@
+package com.atharvakale.facerecognition.features.face;
+
+import com.atharvakale.facerecognition.ml.InferenceProfile;
+
+/**
+ * Runs inference autotuning for a face recognition manager on a background thread
+ * Register it with FaceRecognitionManager.addModelSwitchListener to re-tune after a model switch,
+ * since a profile is measured with one model.
+ */
+public class AutotuneController implements FaceRecognitionManager.ModelSwitchListener {
+    private final FaceRecognitionManager manager;
+    private Thread autotuneThread;
+
+    public interface Callback {
+        void onTuned(InferenceProfile profile);
+        void onError(String error);
+    }
+
+    public AutotuneController(FaceRecognitionManager manager) {
+        this.manager = manager;
+    }
+
+    /**
+     * Tune inference options in the background if this device has no profile for the current model
+     * @param callback Notified when tuning finishes, may be null
+     * @return true if tuning was started
+     */
+    public synchronized boolean autotuneIfNeeded(Callback callback) {
+        if (!InferenceAutotuner.needsTuning(manager.getInferenceProfile(), manager.getModelFingerprint())) {
+            return false;
+        }
+        return autotune(callback);
+    }
+
+    /**
+     * Benchmark the inference options on a background thread, then persist and apply the winner
+     * @param callback Notified when tuning finishes, may be null
+     * @return false if tuning is already running
+     */
+    public synchronized boolean autotune(Callback callback) {
+        if (autotuneThread != null && autotuneThread.isAlive()) {
+            return false;
+        }
+        String modelKey = manager.getActiveModelKey();
+        autotuneThread = new Thread(() -> {
+            InferenceProfile profile = new InferenceAutotuner(manager.getModelManager())
+                .tune(modelKey, manager.getDetector());
+            if (profile == null) {
+                if (callback != null) {
+                    callback.onError("Inference autotuning failed");
+                }
+                return;
+            }
+            manager.saveInferenceProfile(profile);
+            manager.applyInferenceProfile(profile);
+            if (callback != null) {
+                callback.onTuned(profile);
+            }
+        }, "inference-autotune");
+        autotuneThread.setPriority(Thread.MIN_PRIORITY);
+        autotuneThread.start();
+        return true;
+    }
+
+    @Override
+    public void onModelSwitching(String previousModelKey) {
+    }
+
+    @Override
+    public void onModelSwitched(String modelKey) {
+        // The profile was measured with the previous model
+        autotuneIfNeeded(null);
+    }
+}
@@ -0,0 +1,145 @@
+package com.atharvakale.facerecognition.features.face;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Copy of a gallery's rows with dimensions ordered by descending variance, for exact search
+ * that abandons a row once its partial squared distance cannot beat the current k-th best
+ * High-variance dimensions contribute most of the distance to far-away rows, so most rows are
+ * dropped after the first block or two. Rows that survive are scored with FaceGallery.distance in
+ * the original order, so results are identical to a full scan.
+ */
+public class EarlyAbandonIndex {
+    // Partial sums are accumulated in another order than the exact distance; a relative margin
+    // well above the float rounding of 192 terms (~1e-5) keeps abandoning conservative
+    private static final float BOUND_SLACK = 1e-4f;
+
+    private final FaceGallery gallery;
+    private final int dimension;
+    private final int blockDims;
+    private final int[] order;          // original dimension evaluated at each position
+    private final float[] vectors;      // rows in evaluation order, row-major
+
+    private EarlyAbandonIndex(FaceGallery gallery, int blockDims, int[] order, float[] vectors) {
+        this.gallery = gallery;
+        this.dimension = gallery.getDimension();
+        this.blockDims = blockDims;
+        this.order = order;
+        this.vectors = vectors;
+    }
+
+    /**
+     * Reorder a gallery's dimensions by descending variance over its rows
+     * @param blockDims Dimensions accumulated between checks against the bound
+     * @return Index, or null if the gallery keeps its rows off the heap
+     */
+    public static EarlyAbandonIndex build(FaceGallery gallery, int blockDims) {
+        float[] source = gallery.getVectors();
+        if (source == null) {
+            return null;
+        }
+        int dimension = gallery.getDimension();
+        int rows = gallery.size();
+        double[] sum = new double[dimension];
+        double[] sumSquares = new double[dimension];
+        for (int row = 0; row < rows; row++) {
+            int base = row * dimension;
+            for (int d = 0; d < dimension; d++) {
+                double value = source[base + d];
+                sum[d] += value;
+                sumSquares[d] += value * value;
+            }
+        }
+        double[] variance = new double[dimension];
+        Integer[] byVariance = new Integer[dimension];
+        for (int d = 0; d < dimension; d++) {
+            double mean = rows > 0 ? sum[d] / rows : 0;
+            variance[d] = rows > 0 ? sumSquares[d] / rows - mean * mean : 0;
+            byVariance[d] = d;
+        }
+        Arrays.sort(byVariance, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int byValue = Double.compare(variance[b], variance[a]);
+                return byValue != 0 ? byValue : Integer.compare(a, b);
+            }
+        });
+
+        int[] order = new int[dimension];
+        for (int i = 0; i < dimension; i++) {
+            order[i] = byVariance[i];
+        }
+        float[] vectors = new float[source.length];
+        for (int row = 0; row < rows; row++) {
+            int base = row * dimension;
+            for (int i = 0; i < dimension; i++) {
+                vectors[base + i] = source[base + order[i]];
+            }
+        }
+        return new EarlyAbandonIndex(gallery, Math.max(1, blockDims), order, vectors);
+    }
+
+    /**
+     * Query with its dimensions in evaluation order (once per query)
+     */
+    public float[] reorder(float[] query) {
+        float[] ordered = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            ordered[i] = query[order[i]];
+        }
+        return ordered;
+    }
+
+    /**
+     * Offer rows [start, end) to the accumulator, skipping those that cannot enter its top-k
+     * @param ordered Query from reorder()
+     * @return Dimensions evaluated, exact rescoring of surviving rows included
+     */
+    public long scan(float[] query, float[] ordered, int start, int end, NearestMatches matches) {
+        long evaluated = 0;
+        for (int row = start; row < end; row++) {
+            float bound = matches.getBound();
+            if (bound == Float.POSITIVE_INFINITY) {
+                matches.offer(row, gallery.distance(query, row));
+                evaluated += dimension;
+                continue;
+            }
+            float limit = bound * bound * (1f + BOUND_SLACK);
+            int base = row * dimension;
+            float partial = 0;
+            int d = 0;
+            while (d < dimension && partial <= limit) {
+                int blockEnd = Math.min(dimension, d + blockDims);
+                for (; d < blockEnd; d++) {
+                    float diff = ordered[d] - vectors[base + d];
+                    partial += diff * diff;
+                }
+            }
+            evaluated += d;
+            if (partial <= limit) {
+                matches.offer(row, gallery.distance(query, row));
+                evaluated += dimension;
+            }
+        }
+        return evaluated;
+    }
+
+    public FaceGallery getGallery() {
+        return gallery;
+    }
+
+    /**
+     * Original dimension evaluated at each position (highest variance first)
+     */
+    public int[] getOrder() {
+        return order.clone();
+    }
+
+    /**
+     * Extra heap held by the reordered copy
+     */
+    public long getHeapBytes() {
+        return vectors.length * 4L;
+    }
+}
@@ -0,0 +1,151 @@
+package com.atharvakale.facerecognition.features.face;
+
+import com.atharvakale.facerecognition.SimilarityClassifier;
+import java.util.Map;
+
+/**
+ * Immutable, packed snapshot of the registered face embeddings
+ * Embeddings are stored row-major in one contiguous float array so scans stay cache friendly.
+ * Row order follows the iteration order of the map the snapshot was built from
+ */
+public class FaceGallery {
+    public static final FaceGallery EMPTY = new FaceGallery(new String[0], new float[0], 0);
+    
+    private final String[] names;
+    private final float[] vectors;
+    private final int dimension;
+    private boolean provisional;
+    private volatile EarlyAbandonIndex earlyAbandonIndex;
+    
+    public FaceGallery(String[] names, float[] vectors, int dimension) {
+        if (vectors.length != names.length * dimension) {
+            throw new IllegalArgumentException("Vector storage does not match names x dimension");
+        }
+        this.names = names;
+        this.vectors = vectors;
+        this.dimension = dimension;
+    }
+    
+    /**
+     * For galleries whose rows are not held in one heap array; subclasses override distance()
+     */
+    protected FaceGallery(String[] names, int dimension) {
+        this.names = names;
+        this.vectors = null;
+        this.dimension = dimension;
+    }
+    
+    /**
+     * Build a snapshot from registered recognitions (embedding in extra as float[1][dimension])
+     */
+    public static FaceGallery fromRecognitions(Map<String, SimilarityClassifier.Recognition> faces, int dimension) {
+        String[] names = new String[faces.size()];
+        float[] vectors = new float[faces.size() * dimension];
+        int row = 0;
+        for (Map.Entry<String, SimilarityClassifier.Recognition> entry : faces.entrySet()) {
+            if (row == names.length) {
+                break; // map grew while copying
+            }
+            float[] embedding = ((float[][]) entry.getValue().getExtra())[0];
+            names[row] = entry.getKey();
+            System.arraycopy(embedding, 0, vectors, row * dimension, Math.min(dimension, embedding.length));
+            row++;
+        }
+        if (row < names.length) {
+            String[] trimmedNames = new String[row];
+            float[] trimmedVectors = new float[row * dimension];
+            System.arraycopy(names, 0, trimmedNames, 0, row);
+            System.arraycopy(vectors, 0, trimmedVectors, 0, row * dimension);
+            return new FaceGallery(trimmedNames, trimmedVectors, dimension);
+        }
+        return new FaceGallery(names, vectors, dimension);
+    }
+    
+    public int size() {
+        return names.length;
+    }
+    
+    public boolean isEmpty() {
+        return names.length == 0;
+    }
+    
+    public int getDimension() {
+        return dimension;
+    }
+    
+    /**
+     * Whether the snapshot was taken while the stored gallery was still loading, so a
+     * closer identity may not be in it yet
+     */
+    public boolean isProvisional() {
+        return provisional;
+    }
+    
+    /**
+     * Flag a snapshot built from a partly loaded gallery; only before it is published
+     */
+    void markProvisional() {
+        provisional = true;
+    }
+    
+    public String getName(int row) {
+        return names[row];
+    }
+    
+    /**
+     * Backing row-major storage; must not be modified
+     * Null for galleries that keep rows off the heap (see TieredGallery)
+     */
+    public float[] getVectors() {
+        return vectors;
+    }
+    
+    /**
+     * Copy one row's embedding into out
+     */
+    public void copyRow(int row, float[] out) {
+        System.arraycopy(vectors, row * dimension, out, 0, dimension);
+    }
+    
+    /**
+     * Euclidean distance between a query and one row
+     * Accumulates in the same order as TFLiteProcessor.calculateEuclideanDistance so results are identical
+     */
+    public float distance(float[] query, int row) {
+        int base = row * dimension;
+        float distance = 0;
+        for (int i = 0; i < dimension; i++) {
+            float diff = query[i] - vectors[base + i];
+            distance += diff * diff;
+        }
+        return (float) Math.sqrt(distance);
+    }
+    
+    /**
+     * Get the variance-ordered copy used for early-abandoning search, built on first use
+     * @return Index, or null for galleries that keep rows off the heap
+     */
+    public EarlyAbandonIndex getEarlyAbandonIndex(int blockDims) {
+        EarlyAbandonIndex index = earlyAbandonIndex;
+        if (index == null && vectors != null) {
+            // Racing builders produce equal indexes; either may be kept
+            index = EarlyAbandonIndex.build(this, blockDims);
+            earlyAbandonIndex = index;
+        }
+        return index;
+    }
+    
+    /**
+     * Note that a row was accepted as the best match; galleries with access statistics use this
+     */
+    public void recordMatch(int row) {
+    }
+    
+    /**
+     * Embedding bytes held on the Java heap
+     */
+    public long getHeapBytes() {
+        EarlyAbandonIndex index = earlyAbandonIndex;
+        return (vectors != null ? vectors.length * 4L : 0L) + (index != null ? index.getHeapBytes() : 0L);
+    }
+}
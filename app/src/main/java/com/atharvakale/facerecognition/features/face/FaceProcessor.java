@@ -11,18 +11,20 @@ import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.YuvImage;
 import android.media.Image;
+import android.os.SystemClock;
 import android.util.Pair;
 import androidx.annotation.NonNull;
 import androidx.camera.core.ImageProxy;
-import com.atharvakale.facerecognition.SimilarityClassifier;
+import com.atharvakale.facerecognition.diagnostics.FrameRecorder;
+import com.atharvakale.facerecognition.diagnostics.PipelineMetrics;
+import com.atharvakale.facerecognition.diagnostics.ResourceTracker;
+import com.atharvakale.facerecognition.features.face.detection.DetectedFace;
+import com.atharvakale.facerecognition.features.face.detection.FaceDetector;
+import com.atharvakale.facerecognition.features.face.detection.MlKitFaceDetector;
 import com.atharvakale.facerecognition.ml.MLModelManager;
 import com.atharvakale.facerecognition.ml.ModelConfig;
 import com.atharvakale.facerecognition.ml.TFLiteProcessor;
-import com.google.mlkit.vision.common.InputImage;
-import com.google.mlkit.vision.face.Face;
-import com.google.mlkit.vision.face.FaceDetection;
-import com.google.mlkit.vision.face.FaceDetector;
-import com.google.mlkit.vision.face.FaceDetectorOptions;
+import com.atharvakale.facerecognition.pipeline.MotionGate;
 import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ReadOnlyBufferException;
@@ -30,6 +32,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Handles face detection, preprocessing, and recognition
@@ -37,73 +40,141 @@ import java.util.Map;
  */
 public class FaceProcessor {
     private FaceDetector detector;
+    private final Map<Integer, FaceDetector> streamDetectors = new ConcurrentHashMap<>();
+    private final Map<Integer, MotionGate> streamMotionGates = new ConcurrentHashMap<>();
+    private volatile boolean motionGateEnabled = true;
     private MLModelManager modelManager;
     private float similarityThreshold;
     private boolean developerMode;
+    private IdentityVoter identityVoter;
+    private FaceQualityGate qualityGate;
+    private ParallelGalleryMatcher galleryMatcher;
+    private HotMatchCache hotMatchCache;
+    private UnknownFaceClusterer unknownClusterer;
+    private volatile String activeModelKey = ModelConfig.FaceRecognition.MODEL_KEY;
+    private final PipelineMetrics metrics = new PipelineMetrics(ModelConfig.Control.METRICS_WINDOW_MS);
+    private volatile FrameRecorder frameRecorder;
     private long lastErrorTime = 0;
     private static final long ERROR_THROTTLE_MS = 1000; // Only show errors once per second
     
     public interface FaceProcessingCallback {
         void onFaceDetected(String name, float distance, boolean isRecognized);
+        void onIdentityDecided(IdentityVoter.Decision decision, int trackId);
         void onNoFaceDetected();
-        void onFaceForPreview(Bitmap faceBitmap);
+        void onFaceForPreview(Bitmap faceBitmap, float quality);
         void onError(String error);
     }
     
     public FaceProcessor(MLModelManager modelManager) {
+        this(modelManager, createDefaultDetector());
+    }
+    
+    public FaceProcessor(MLModelManager modelManager, FaceDetector detector) {
         this.modelManager = modelManager;
+        this.detector = detector;
+        this.streamDetectors.put(0, detector);
         this.similarityThreshold = ModelConfig.FaceRecognition.DEFAULT_SIMILARITY_THRESHOLD;
         this.developerMode = false;
-        
-        // Initialize Face Detector
-        FaceDetectorOptions highAccuracyOpts = new FaceDetectorOptions.Builder()
-                .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_ACCURATE)
-                .build();
-        this.detector = FaceDetection.getClient(highAccuracyOpts);
+        this.qualityGate = new FaceQualityGate();
+        this.galleryMatcher = new ParallelGalleryMatcher(
+            Runtime.getRuntime().availableProcessors(),
+            ModelConfig.FaceRecognition.MATCH_BLOCK_BYTES,
+            ModelConfig.FaceRecognition.MATCH_PARALLEL_THRESHOLD
+        );
+        galleryMatcher.setEarlyAbandon(ModelConfig.FaceRecognition.MATCH_EARLY_ABANDON_DIMS);
+        this.hotMatchCache = new HotMatchCache(
+            ModelConfig.FaceRecognition.HOT_SET_SIZE,
+            ModelConfig.FaceRecognition.OUTPUT_SIZE,
+            ModelConfig.FaceRecognition.HOT_SET_MARGIN
+        );
+        this.unknownClusterer = new UnknownFaceClusterer(
+            ModelConfig.FaceRecognition.OUTPUT_SIZE,
+            ModelConfig.FaceRecognition.UNKNOWN_CLUSTER_CAPACITY,
+            ModelConfig.FaceRecognition.UNKNOWN_CLUSTER_RADIUS,
+            ModelConfig.FaceRecognition.UNKNOWN_CLUSTER_EXEMPLARS,
+            ModelConfig.FaceRecognition.UNKNOWN_CLUSTER_MAX_WEIGHT,
+            ModelConfig.FaceRecognition.UNKNOWN_CLUSTER_MAX_AGE_MS,
+            1L
+        );
+        this.identityVoter = new IdentityVoter(
+            ModelConfig.FaceRecognition.VOTE_ACCEPT_BOUND,
+            ModelConfig.FaceRecognition.VOTE_REJECT_BOUND,
+            ModelConfig.FaceRecognition.VOTE_MAX_FRAMES,
+            ModelConfig.FaceRecognition.VOTE_TRACK_TIMEOUT_MS,
+            ModelConfig.FaceRecognition.VOTE_UNKNOWN_RECHECK_MS
+        );
+    }
+    
+    /**
+     * Create the default face detector (ML Kit with tracking, so face IDs stay stable across frames for voting)
+     */
+    public static FaceDetector createDefaultDetector() {
+        return MlKitFaceDetector.createDefault();
+    }
+    
+    /**
+     * Detector for a camera stream
+     * Each stream gets its own detector so the tracker only sees consecutive frames of one camera
+     */
+    private FaceDetector detectorFor(int cameraId) {
+        return streamDetectors.computeIfAbsent(cameraId, id -> detector.newInstance());
+    }
+    
+    /**
+     * Motion gate for a camera stream (each stream keeps its own background)
+     */
+    public MotionGate getMotionGate(int cameraId) {
+        return streamMotionGates.computeIfAbsent(cameraId, id -> {
+            MotionGate gate = new MotionGate(
+                ModelConfig.FaceRecognition.MOTION_GRID_WIDTH,
+                ModelConfig.FaceRecognition.MOTION_GRID_HEIGHT,
+                ModelConfig.FaceRecognition.MOTION_PIXEL_THRESHOLD,
+                ModelConfig.FaceRecognition.MOTION_MIN_CHANGED_FRACTION,
+                ModelConfig.FaceRecognition.MOTION_BACKGROUND_RATE,
+                ModelConfig.FaceRecognition.MOTION_TRACK_HOLD_MS,
+                ModelConfig.FaceRecognition.MOTION_IDLE_TIMEOUT_MS,
+                ModelConfig.FaceRecognition.MOTION_IDLE_INTERVAL_MS
+            );
+            gate.setEnabled(motionGateEnabled);
+            return gate;
+        });
+    }
+    
+    /**
+     * Enable or disable motion gating on every stream
+     */
+    public void setMotionGateEnabled(boolean enabled) {
+        this.motionGateEnabled = enabled;
+        for (MotionGate gate : streamMotionGates.values()) {
+            gate.setEnabled(enabled);
+        }
+    }
+    
+    public boolean isMotionGateEnabled() {
+        return motionGateEnabled;
     }
     
     /**
      * Process image for face recognition
      */
     public void processImageForRecognition(@NonNull ImageProxy imageProxy, 
-                                         Map<String, SimilarityClassifier.Recognition> registeredFaces,
+                                         FaceGallery gallery,
                                          boolean flipX, 
                                          FaceProcessingCallback callback) {
-        
-        // Extract image data before async operations
-        Bitmap frameBitmap = toBitmap(imageProxy.getImage());
-        int rotation = imageProxy.getImageInfo().getRotationDegrees();
-        
-        InputImage image = InputImage.fromMediaImage(
-            imageProxy.getImage(), 
-            rotation
-        );
-        
-        detector.process(image)
-            .addOnSuccessListener(faces -> {
-                try {
-                    if (!faces.isEmpty()) {
-                        Face face = faces.get(0);
-                        processFaceFromBitmap(frameBitmap, rotation, face, registeredFaces, flipX, callback, true);
-                    } else {
-                        callback.onNoFaceDetected();
-                    }
-                } finally {
-                    imageProxy.close();
-                }
-            })
-            .addOnFailureListener(e -> {
-                try {
-                    // Throttle error messages to prevent spam
-                    long currentTime = System.currentTimeMillis();
-                    if (currentTime - lastErrorTime > ERROR_THROTTLE_MS) {
-                        callback.onError("Face detection failed: " + e.getMessage());
-                        lastErrorTime = currentTime;
-                    }
-                } finally {
-                    imageProxy.close();
-                }
-            });
+        processImageForRecognition(imageProxy, gallery, flipX, 0, callback);
+    }
+    
+    /**
+     * Process image for face recognition from a specific camera stream
+     * Detection and embedding both run on the calling thread before returning, so a pool of
+     * workers can process several streams in parallel; the image is closed when done
+     */
+    public void processImageForRecognition(@NonNull ImageProxy imageProxy, 
+                                         FaceGallery gallery,
+                                         boolean flipX, 
+                                         int cameraId,
+                                         FaceProcessingCallback callback) {
+        detectAndProcess(imageProxy, gallery, flipX, cameraId, callback, true);
     }
     
     /**
@@ -112,55 +183,130 @@ public class FaceProcessor {
     public void processImageForPreview(@NonNull ImageProxy imageProxy, 
                                      boolean flipX, 
                                      FaceProcessingCallback callback) {
+        detectAndProcess(imageProxy, null, flipX, 0, callback, false);
+    }
+    
+    /**
+     * Recognize faces in an already decoded frame on the calling thread (replayed clips, soak runs)
+     * The frame is recycled when done; motion gating and the blur check are skipped
+     * @param rotationDegrees Rotation that makes the frame upright, as a camera would report it
+     */
+    public void processBitmapForRecognitionBlocking(@NonNull Bitmap frameBitmap,
+                                                    int rotationDegrees,
+                                                    FaceGallery gallery,
+                                                    boolean flipX,
+                                                    int cameraId,
+                                                    FaceProcessingCallback callback) {
+        long frameStart = System.nanoTime();
+        detectInBitmap(null, frameBitmap, rotationDegrees, gallery, flipX, cameraId, callback, true);
+        metrics.record(PipelineMetrics.Stage.FRAME, frameStart);
+    }
+    
+    /**
+     * Detect faces in a frame and process the most prominent one
+     */
+    private void detectAndProcess(@NonNull ImageProxy imageProxy, FaceGallery gallery, boolean flipX,
+                                  int cameraId, FaceProcessingCallback callback, boolean isRecognition) {
+        // Static empty scenes skip conversion and detection (registration always runs)
+        MotionGate motionGate = isRecognition ? getMotionGate(cameraId) : null;
+        long startMs = SystemClock.elapsedRealtime();
+        if (motionGate != null && !motionGate.shouldProcess(imageProxy, startMs)) {
+            imageProxy.close();
+            metrics.recordSkippedFrame();
+            return;
+        }
         
-        // Extract image data before async operations
-        Bitmap frameBitmap = toBitmap(imageProxy.getImage());
+        long frameStart = System.nanoTime();
         int rotation = imageProxy.getImageInfo().getRotationDegrees();
+        byte[] jpeg = toJpeg(imageProxy.getImage());
+        FrameRecorder recorder = frameRecorder;
+        if (recorder != null && isRecognition) {
+            recorder.record(jpeg, rotation);
+        }
+        Bitmap frameBitmap = ResourceTracker.track(BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length), "frame");
+        metrics.record(PipelineMetrics.Stage.CONVERT, frameStart);
         
-        InputImage image = InputImage.fromMediaImage(
-            imageProxy.getImage(), 
-            rotation
-        );
-        
-        detector.process(image)
-            .addOnSuccessListener(faces -> {
-                try {
-                    if (!faces.isEmpty()) {
-                        Face face = faces.get(0);
-                        processFaceFromBitmap(frameBitmap, rotation, face, null, flipX, callback, false);
-                    } else {
-                        callback.onNoFaceDetected();
-                    }
-                } finally {
-                    imageProxy.close();
-                }
-            })
-            .addOnFailureListener(e -> {
-                try {
-                    // Throttle error messages to prevent spam
-                    long currentTime = System.currentTimeMillis();
-                    if (currentTime - lastErrorTime > ERROR_THROTTLE_MS) {
-                        callback.onError("Face detection failed: " + e.getMessage());
-                        lastErrorTime = currentTime;
-                    }
-                } finally {
-                    imageProxy.close();
-                }
-            });
+        boolean faceFound = false;
+        try {
+            faceFound = detectInBitmap(imageProxy, frameBitmap, rotation, gallery, flipX, cameraId, callback, isRecognition);
+        } finally {
+            imageProxy.close();
+            if (motionGate != null) {
+                long nowMs = SystemClock.elapsedRealtime();
+                motionGate.onFrameProcessed(faceFound, nowMs - startMs, nowMs);
+            }
+            metrics.record(PipelineMetrics.Stage.FRAME, frameStart);
+        }
+    }
+    
+    /**
+     * Detect faces in a converted frame and process the most prominent one; the frame is recycled
+     * @param imageProxy Source image, or null for frames that did not come from the camera
+     * @return Whether a face was found
+     */
+    private boolean detectInBitmap(ImageProxy imageProxy, Bitmap frameBitmap, int rotation, FaceGallery gallery,
+                                   boolean flipX, int cameraId, FaceProcessingCallback callback,
+                                   boolean isRecognition) {
+        try {
+            long detectStart = System.nanoTime();
+            List<DetectedFace> faces = detectorFor(cameraId).detect(imageProxy, frameBitmap, rotation);
+            metrics.record(PipelineMetrics.Stage.DETECT, detectStart);
+            if (!faces.isEmpty()) {
+                processFaceFromBitmap(frameBitmap, rotation, faces.get(0), imageProxy, gallery, flipX, cameraId, callback, isRecognition);
+                return true;
+            }
+            ResourceTracker.recycle(frameBitmap);
+            callback.onNoFaceDetected();
+        } catch (Exception e) {
+            ResourceTracker.recycle(frameBitmap);
+            // Throttle error messages to prevent spam
+            long currentTime = System.currentTimeMillis();
+            if (currentTime - lastErrorTime > ERROR_THROTTLE_MS) {
+                callback.onError("Face detection failed: " + e.getMessage());
+                lastErrorTime = currentTime;
+            }
+        }
+        return false;
     }
     
     /**
      * Process detected face using pre-extracted bitmap
      */
-    private void processFaceFromBitmap(Bitmap frameBitmap, int rotation, Face face, 
-                                     Map<String, SimilarityClassifier.Recognition> registeredFaces,
-                                     boolean flipX, FaceProcessingCallback callback, boolean isRecognition) {
+    private void processFaceFromBitmap(Bitmap frameBitmap, int rotation, DetectedFace face, ImageProxy imageProxy,
+                                     FaceGallery gallery,
+                                     boolean flipX, int cameraId, FaceProcessingCallback callback, boolean isRecognition) {
+        
+        int trackId = face.trackingId != DetectedFace.NO_TRACK ? face.trackingId : IdentityVoter.NO_TRACK;
+        long trackKey = IdentityVoter.trackKey(cameraId, trackId);
+        
+        // Tracks that already have a committed identity skip cropping and embedding entirely
+        if (isRecognition && gallery != null && !gallery.isEmpty()) {
+            IdentityVoter.Decision decision = identityVoter.getDecision(trackKey, SystemClock.elapsedRealtime());
+            if (decision != null) {
+                ResourceTracker.recycle(frameBitmap);
+                deliverDecision(decision, trackId, callback);
+                return;
+            }
+        }
+        
+        // Quality gate: unusable faces never reach the embedding model
+        FaceQualityGate.Assessment quality = imageProxy != null
+            ? qualityGate.evaluate(face, imageProxy, rotation)
+            : qualityGate.evaluate(face, frameBitmap.getWidth(), frameBitmap.getHeight(), rotation);
+        if (isRecognition && !quality.isAccepted()) {
+            ResourceTracker.recycle(frameBitmap);
+            if (developerMode) {
+                callback.onFaceDetected("Low quality: " + quality.rejection.name().toLowerCase(), Float.MAX_VALUE, false);
+            }
+            return;
+        }
         
         // Adjust orientation
+        long cropStart = System.nanoTime();
         Bitmap rotatedBitmap = rotateBitmap(frameBitmap, rotation, false, false);
         
         // Get face bounding box and crop
-        RectF boundingBox = new RectF(face.getBoundingBox());
+        RectF boundingBox = new RectF(face.left, face.top, face.right, face.bottom);
         Bitmap croppedFace = getCropBitmapByCPU(rotatedBitmap, boundingBox);
         
         if (flipX) {
@@ -171,71 +317,117 @@ public class FaceProcessor {
         Bitmap scaledFace = getResizedBitmap(croppedFace, 
             ModelConfig.FaceRecognition.INPUT_SIZE, 
             ModelConfig.FaceRecognition.INPUT_SIZE);
+        metrics.record(PipelineMetrics.Stage.CROP, cropStart);
         
-        if (isRecognition && registeredFaces != null) {
-            recognizeFace(scaledFace, registeredFaces, callback);
+        if (isRecognition && gallery != null) {
+            // Crops kept as exemplars of an unknown cluster belong to the clusterer from now on
+            if (recognizeFace(scaledFace, quality.score, gallery, trackId, trackKey, callback)) {
+                ResourceTracker.handOff(scaledFace);
+            } else {
+                ResourceTracker.recycle(scaledFace);
+            }
         } else {
-            callback.onFaceForPreview(scaledFace);
+            // Rejected crops are still previewed but never preferred for registration
+            ResourceTracker.handOff(scaledFace);
+            callback.onFaceForPreview(scaledFace, quality.score);
         }
     }
     
-    /**
-     * Process detected face (legacy method - kept for compatibility)
-     */
-    private void processFace(@NonNull ImageProxy imageProxy, Face face, 
-                           Map<String, SimilarityClassifier.Recognition> registeredFaces,
-                           boolean flipX, FaceProcessingCallback callback, boolean isRecognition) {
-        
-        // Convert MediaImage to Bitmap
-        Bitmap frameBitmap = toBitmap(imageProxy.getImage());
-        
-        // Adjust orientation
-        int rotation = imageProxy.getImageInfo().getRotationDegrees();
-        
-        processFaceFromBitmap(frameBitmap, rotation, face, registeredFaces, flipX, callback, isRecognition);
-    }
-    
     /**
      * Recognize face and find matches
+     * @return Whether the crop was kept by the unknown face clusterer (and must not be recycled)
      */
-    private void recognizeFace(Bitmap faceBitmap, 
-                             Map<String, SimilarityClassifier.Recognition> registeredFaces,
+    private boolean recognizeFace(Bitmap faceBitmap, 
+                             float quality,
+                             FaceGallery gallery,
+                             int trackId,
+                             long trackKey,
                              FaceProcessingCallback callback) {
         
         // Generate embeddings
+        long embedStart = System.nanoTime();
         float[][] embeddings = generateEmbeddings(faceBitmap);
+        metrics.record(PipelineMetrics.Stage.EMBED, embedStart);
         if (embeddings == null) {
             callback.onError("Failed to generate face embeddings");
-            return;
+            return false;
         }
         
-        if (registeredFaces.isEmpty()) {
-            callback.onFaceDetected("Add Face", Float.MAX_VALUE, false);
-            return;
+        if (gallery.isEmpty()) {
+            callback.onFaceDetected(gallery.isProvisional() ? "Loading faces..." : "Add Face", Float.MAX_VALUE, false);
+            return false;
         }
         
+        boolean retained = false;
+        
         // Find nearest matches
-        List<Pair<String, Float>> nearest = findNearest(embeddings[0], registeredFaces);
+        long matchStart = System.nanoTime();
+        List<Pair<String, Float>> nearest = findNearest(embeddings[0], gallery);
+        metrics.record(PipelineMetrics.Stage.MATCH, matchStart);
         
         if (!nearest.isEmpty()) {
             String name = nearest.get(0).first;
             float distance = nearest.get(0).second;
-            boolean isRecognized = distance < similarityThreshold;
+            
+            // Accumulate evidence; only committed decisions reach the UI
+            IdentityVoter.Decision decision = identityVoter.addObservation(
+                trackKey, name, distance, similarityThreshold, SystemClock.elapsedRealtime());
+            
+            if (decision != null) {
+                callback.onIdentityDecided(decision, trackId);
+                if (!decision.isKnown && !gallery.isProvisional()) {
+                    // Recurring strangers become enrollment suggestions (not yet known may just be not yet loaded)
+                    int clusterId = unknownClusterer.observe(embeddings[0], faceBitmap, quality, trackKey,
+                        SystemClock.elapsedRealtime());
+                    retained = unknownClusterer.isRetained(clusterId, faceBitmap);
+                }
+            }
             
             if (developerMode && nearest.size() > 1) {
+                String verdict = decision == null ? "Verifying..." 
+                    : String.format("%s (%d frames)", decision.name, decision.frames);
                 String debugInfo = String.format("Nearest: %s\nDist: %.3f\n2nd Nearest: %s\nDist: %.3f", 
                     name, distance, nearest.get(1).first, nearest.get(1).second);
-                callback.onFaceDetected(isRecognized ? debugInfo : "Unknown\n" + debugInfo, distance, isRecognized);
-            } else {
-                callback.onFaceDetected(isRecognized ? name : "Unknown", distance, isRecognized);
+                callback.onFaceDetected(verdict + "\n" + debugInfo, distance, decision != null && decision.isKnown);
+            } else if (decision != null) {
+                callback.onFaceDetected(decision.name, decision.distance, decision.isKnown);
             }
         }
+        return retained;
+    }
+    
+    /**
+     * Switch the model used for new embeddings
+     * Callers must swap the gallery in the same step so stored and live embeddings stay comparable
+     */
+    public void setActiveModelKey(String modelKey) {
+        this.activeModelKey = modelKey;
+        unknownClusterer.clear();   // centroids belong to the previous model
+    }
+    
+    public String getActiveModelKey() {
+        return activeModelKey;
     }
     
     /**
-     * Generate face embeddings for a given face bitmap
+     * Report a committed identity decision
+     */
+    private void deliverDecision(IdentityVoter.Decision decision, int trackId, FaceProcessingCallback callback) {
+        callback.onIdentityDecided(decision, trackId);
+        callback.onFaceDetected(decision.name, decision.distance, decision.isKnown);
+    }
+    
+    /**
+     * Generate face embeddings for a given face bitmap with the active model
      */
     public float[][] generateEmbeddings(Bitmap faceBitmap) {
+        return generateEmbeddings(faceBitmap, activeModelKey);
+    }
+    
+    /**
+     * Generate face embeddings with a specific loaded model (e.g. while re-embedding for an upgrade)
+     */
+    public float[][] generateEmbeddings(Bitmap faceBitmap, String modelKey) {
         try {
             ByteBuffer imgData = TFLiteProcessor.bitmapToByteBuffer(
                 faceBitmap,
@@ -251,7 +443,7 @@ public class FaceProcessor {
             outputMap.put(0, embeddings);
             
             boolean success = modelManager.runInference(
-                ModelConfig.FaceRecognition.MODEL_KEY, 
+                modelKey, 
                 inputArray, 
                 outputMap
             );
@@ -264,45 +456,40 @@ public class FaceProcessor {
     }
     
     /**
-     * Find nearest matching faces
+     * Find nearest matching faces (exact; parallel across cores for large galleries)
      */
-    private List<Pair<String, Float>> findNearest(float[] embedding, 
-                                                 Map<String, SimilarityClassifier.Recognition> registeredFaces) {
+    private List<Pair<String, Float>> findNearest(float[] embedding, FaceGallery gallery) {
         
         List<Pair<String, Float>> neighbours = new ArrayList<>();
-        Pair<String, Float> closest = null;
-        Pair<String, Float> secondClosest = null;
         
-        for (Map.Entry<String, SimilarityClassifier.Recognition> entry : registeredFaces.entrySet()) {
-            String name = entry.getKey();
-            float[] knownEmbedding = ((float[][]) entry.getValue().getExtra())[0];
-            
-            float distance = TFLiteProcessor.calculateEuclideanDistance(embedding, knownEmbedding);
-            
-            if (closest == null || distance < closest.second) {
-                secondClosest = closest;
-                closest = new Pair<>(name, distance);
-            } else if (secondClosest == null || distance < secondClosest.second) {
-                secondClosest = new Pair<>(name, distance);
+        // Frequent visitors are settled by the hot set; developer mode always shows both neighbours
+        if (!developerMode) {
+            HotMatchCache.Match match = hotMatchCache.findNearest(gallery, embedding, similarityThreshold, galleryMatcher);
+            if (match != null) {
+                neighbours.add(new Pair<>(gallery.getName(match.row), match.distance));
             }
+            return neighbours;
         }
         
-        if (closest != null) neighbours.add(closest);
-        if (secondClosest != null) neighbours.add(secondClosest);
+        NearestMatches matches = galleryMatcher.findNearest(gallery, embedding, 2);
+        if (!matches.isEmpty() && matches.getDistance(0) < similarityThreshold) {
+            gallery.recordMatch(matches.getRow(0));
+        }
+        for (int rank = 0; rank < matches.size(); rank++) {
+            neighbours.add(new Pair<>(matches.getName(rank), matches.getDistance(rank)));
+        }
         
         return neighbours;
     }
     
     // Image processing utility methods
-    private Bitmap toBitmap(Image image) {
+    private static byte[] toJpeg(Image image) {
         byte[] nv21 = YUV_420_888toNV21(image);
         YuvImage yuvImage = new YuvImage(nv21, ImageFormat.NV21, image.getWidth(), image.getHeight(), null);
         
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         yuvImage.compressToJpeg(new Rect(0, 0, yuvImage.getWidth(), yuvImage.getHeight()), 75, out);
-        
-        byte[] imageBytes = out.toByteArray();
-        return BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length);
+        return out.toByteArray();
     }
     
     private static byte[] YUV_420_888toNV21(Image image) {
@@ -378,14 +565,14 @@ public class FaceProcessor {
         Matrix matrix = new Matrix();
         matrix.postScale(scaleWidth, scaleHeight);
         
-        Bitmap resizedBitmap = Bitmap.createBitmap(bm, 0, 0, width, height, matrix, false);
-        bm.recycle();
+        Bitmap resizedBitmap = ResourceTracker.track(Bitmap.createBitmap(bm, 0, 0, width, height, matrix, false), "scaled");
+        ResourceTracker.recycle(bm);
         return resizedBitmap;
     }
     
     private static Bitmap getCropBitmapByCPU(Bitmap source, RectF cropRectF) {
-        Bitmap resultBitmap = Bitmap.createBitmap((int) cropRectF.width(),
-                (int) cropRectF.height(), Bitmap.Config.ARGB_8888);
+        Bitmap resultBitmap = ResourceTracker.track(Bitmap.createBitmap((int) cropRectF.width(),
+                (int) cropRectF.height(), Bitmap.Config.ARGB_8888), "crop");
         Canvas canvas = new Canvas(resultBitmap);
         
         Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
@@ -397,9 +584,7 @@ public class FaceProcessor {
         
         canvas.drawBitmap(source, matrix, paint);
         
-        if (source != null && !source.isRecycled()) {
-            source.recycle();
-        }
+        ResourceTracker.recycle(source);
         
         return resultBitmap;
     }
@@ -412,7 +597,8 @@ public class FaceProcessor {
         Bitmap rotatedBitmap = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
         
         if (rotatedBitmap != bitmap) {
-            bitmap.recycle();
+            ResourceTracker.track(rotatedBitmap, "rotated");
+            ResourceTracker.recycle(bitmap);
         }
         return rotatedBitmap;
     }
@@ -433,4 +619,74 @@ public class FaceProcessor {
     public boolean isDeveloperMode() {
         return developerMode;
     }
+    
+    public IdentityVoter getIdentityVoter() {
+        return identityVoter;
+    }
+    
+    public FaceQualityGate getQualityGate() {
+        return qualityGate;
+    }
+    
+    /**
+     * Get per-stage latencies and frame rate of the pipeline
+     */
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * Keep recent camera frames for replay clips (null stops recording)
+     */
+    public void setFrameRecorder(FrameRecorder recorder) {
+        this.frameRecorder = recorder;
+    }
+    
+    public FrameRecorder getFrameRecorder() {
+        return frameRecorder;
+    }
+    
+    public ParallelGalleryMatcher getGalleryMatcher() {
+        return galleryMatcher;
+    }
+    
+    public HotMatchCache getHotMatchCache() {
+        return hotMatchCache;
+    }
+    
+    public UnknownFaceClusterer getUnknownClusterer() {
+        return unknownClusterer;
+    }
+    
+    /**
+     * Detector of the first stream (template for the other streams' detectors)
+     */
+    public FaceDetector getDetector() {
+        return detector;
+    }
+    
+    /**
+     * Release the detector and matcher threads
+     */
+    public void cleanup() {
+        galleryMatcher.shutdown();
+        for (FaceDetector streamDetector : streamDetectors.values()) {
+            streamDetector.close();
+        }
+        streamDetectors.clear();
+    }
+    
+    /**
+     * Forget all per-track decisions (call when registered faces change)
+     */
+    public void resetIdentityVoting() {
+        identityVoter.reset();
+    }
+    
+    /**
+     * Forget only the per-track decisions of "unknown" (call when faces were added, not changed)
+     */
+    public void resetUnknownVoting() {
+        identityVoter.resetUnknown();
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,257 @@
+package com.atharvakale.facerecognition.features.face;
+
+import android.graphics.Rect;
+import androidx.camera.core.ImageProxy;
+import com.atharvakale.facerecognition.features.face.detection.DetectedFace;
+import com.atharvakale.facerecognition.ml.ModelConfig;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cheap face quality scoring between detection and embedding
+ * Rejects faces that are too small, turned away, clipped by the frame edge or blurred,
+ * so MobileFaceNet only runs on crops that can plausibly match
+ */
+public class FaceQualityGate {
+    private static final int BLUR_SAMPLES_PER_SIDE = 64;
+    
+    public enum Rejection {
+        TOO_SMALL,
+        CLIPPED,
+        POSE,
+        BLURRED
+    }
+    
+    private int minFaceSize;
+    private float maxYaw;
+    private float maxPitch;
+    private float maxRoll;
+    private float minVisibleFraction;
+    private float minSharpness;
+    
+    private final AtomicLong evaluated = new AtomicLong();
+    private final AtomicLong[] rejected = new AtomicLong[Rejection.values().length];
+    
+    /**
+     * Outcome of a quality check
+     */
+    public static class Assessment {
+        public final Rejection rejection;
+        public final float score;
+        public final float sharpness;    // NaN when the frame had no luma plane to measure
+        
+        Assessment(Rejection rejection, float score, float sharpness) {
+            this.rejection = rejection;
+            this.score = score;
+            this.sharpness = sharpness;
+        }
+        
+        public boolean isAccepted() {
+            return rejection == null;
+        }
+    }
+    
+    public FaceQualityGate() {
+        this(ModelConfig.FaceRecognition.QUALITY_MIN_FACE_SIZE,
+            ModelConfig.FaceRecognition.QUALITY_MAX_YAW,
+            ModelConfig.FaceRecognition.QUALITY_MAX_PITCH,
+            ModelConfig.FaceRecognition.QUALITY_MAX_ROLL,
+            ModelConfig.FaceRecognition.QUALITY_MIN_VISIBLE_FRACTION,
+            ModelConfig.FaceRecognition.QUALITY_MIN_SHARPNESS);
+    }
+    
+    public FaceQualityGate(int minFaceSize, float maxYaw, float maxPitch, float maxRoll,
+                           float minVisibleFraction, float minSharpness) {
+        setThresholds(minFaceSize, maxYaw, maxPitch, maxRoll, minVisibleFraction, minSharpness);
+        for (int i = 0; i < rejected.length; i++) {
+            rejected[i] = new AtomicLong();
+        }
+    }
+    
+    /**
+     * Score a detected face; must be called before the ImageProxy is closed
+     * @param face Detected face (bounding box in upright coordinates)
+     * @param imageProxy Source frame, used for the Y plane blur estimate
+     * @param rotation Rotation from sensor to upright orientation in degrees
+     */
+    public Assessment evaluate(DetectedFace face, ImageProxy imageProxy, int rotation) {
+        return evaluate(face, imageProxy.getWidth(), imageProxy.getHeight(), rotation, imageProxy.getPlanes()[0]);
+    }
+    
+    /**
+     * Score a face detected in a decoded frame with no luma plane; blur is not checked
+     * @param sensorWidth Frame width before rotation
+     * @param sensorHeight Frame height before rotation
+     */
+    public Assessment evaluate(DetectedFace face, int sensorWidth, int sensorHeight, int rotation) {
+        return evaluate(face, sensorWidth, sensorHeight, rotation, null);
+    }
+    
+    private Assessment evaluate(DetectedFace face, int sensorWidth, int sensorHeight, int rotation,
+                                ImageProxy.PlaneProxy luma) {
+        evaluated.incrementAndGet();
+        Rect box = face.getBoundingBox();
+        boolean sideways = rotation == 90 || rotation == 270;
+        int frameWidth = sideways ? sensorHeight : sensorWidth;
+        int frameHeight = sideways ? sensorWidth : sensorHeight;
+        
+        // Size
+        int faceSize = Math.min(box.width(), box.height());
+        if (faceSize < minFaceSize) {
+            return reject(Rejection.TOO_SMALL);
+        }
+        
+        // Edge clipping: fraction of the box that lies inside the frame
+        int visibleLeft = Math.max(0, box.left);
+        int visibleTop = Math.max(0, box.top);
+        int visibleRight = Math.min(frameWidth, box.right);
+        int visibleBottom = Math.min(frameHeight, box.bottom);
+        float visibleArea = Math.max(0, visibleRight - visibleLeft) * (float) Math.max(0, visibleBottom - visibleTop);
+        float visibleFraction = visibleArea / ((float) box.width() * box.height());
+        if (visibleFraction < minVisibleFraction) {
+            return reject(Rejection.CLIPPED);
+        }
+        
+        // Head pose (angles the detector does not estimate are not checked)
+        float yaw = absAngle(face.yaw);
+        float pitch = absAngle(face.pitch);
+        float roll = absAngle(face.roll);
+        if (yaw > maxYaw || pitch > maxPitch || roll > maxRoll) {
+            return reject(Rejection.POSE);
+        }
+        
+        // Blur: Laplacian variance over the visible face region of the luma plane
+        float sharpness = Float.NaN;
+        if (luma != null) {
+            Rect sensorBox = toSensorRect(visibleLeft, visibleTop, visibleRight, visibleBottom,
+                rotation, sensorWidth, sensorHeight);
+            sharpness = laplacianVariance(luma.getBuffer(), luma.getRowStride(), luma.getPixelStride(),
+                sensorBox.left, sensorBox.top, sensorBox.right, sensorBox.bottom);
+            if (sharpness < minSharpness) {
+                return reject(Rejection.BLURRED);
+            }
+        }
+        
+        float sizeScore = Math.min(1f, faceSize / (2f * ModelConfig.FaceRecognition.INPUT_SIZE));
+        float poseScore = 1f - (yaw / maxYaw + pitch / maxPitch + roll / maxRoll) / 3f;
+        float sharpnessScore = luma != null ? Math.min(1f, sharpness / (4f * minSharpness)) : 1f;
+        float score = sizeScore * Math.max(0f, poseScore) * sharpnessScore * visibleFraction;
+        return new Assessment(null, score, sharpness);
+    }
+    
+    /**
+     * Variance of a 4-neighbour Laplacian sampled over a luma region
+     * The region is subsampled to a fixed grid so cost is independent of face size
+     */
+    static float laplacianVariance(ByteBuffer luma, int rowStride, int pixelStride,
+                                   int left, int top, int right, int bottom) {
+        int width = right - left;
+        int height = bottom - top;
+        int step = Math.max(1, Math.min(width, height) / BLUR_SAMPLES_PER_SIDE);
+        if (width <= 2 * step || height <= 2 * step) {
+            return 0f;
+        }
+        
+        double sum = 0;
+        double sumSquares = 0;
+        int count = 0;
+        for (int y = top + step; y < bottom - step; y += step) {
+            int row = y * rowStride;
+            for (int x = left + step; x < right - step; x += step) {
+                int center = row + x * pixelStride;
+                int laplacian = 4 * (luma.get(center) & 0xFF)
+                    - (luma.get(center - step * pixelStride) & 0xFF)
+                    - (luma.get(center + step * pixelStride) & 0xFF)
+                    - (luma.get(center - step * rowStride) & 0xFF)
+                    - (luma.get(center + step * rowStride) & 0xFF);
+                sum += laplacian;
+                sumSquares += (double) laplacian * laplacian;
+                count++;
+            }
+        }
+        double mean = sum / count;
+        return (float) (sumSquares / count - mean * mean);
+    }
+    
+    /**
+     * Map an upright-frame rectangle back to sensor (Y plane) coordinates
+     */
+    static Rect toSensorRect(int left, int top, int right, int bottom, int rotation,
+                             int sensorWidth, int sensorHeight) {
+        switch (rotation) {
+            case 90:
+                return new Rect(top, sensorHeight - right, bottom, sensorHeight - left);
+            case 180:
+                return new Rect(sensorWidth - right, sensorHeight - bottom, sensorWidth - left, sensorHeight - top);
+            case 270:
+                return new Rect(sensorWidth - bottom, left, sensorWidth - top, right);
+            default:
+                return new Rect(left, top, right, bottom);
+        }
+    }
+    
+    private Assessment reject(Rejection reason) {
+        rejected[reason.ordinal()].incrementAndGet();
+        return new Assessment(reason, 0f, 0f);
+    }
+    
+    private static float absAngle(float degrees) {
+        return Float.isNaN(degrees) ? 0f : Math.abs(degrees);
+    }
+    
+    /**
+     * Update rejection thresholds
+     */
+    public void setThresholds(int minFaceSize, float maxYaw, float maxPitch, float maxRoll,
+                             float minVisibleFraction, float minSharpness) {
+        this.minFaceSize = minFaceSize;
+        this.maxYaw = maxYaw;
+        this.maxPitch = maxPitch;
+        this.maxRoll = maxRoll;
+        this.minVisibleFraction = minVisibleFraction;
+        this.minSharpness = minSharpness;
+    }
+    
+    /**
+     * Number of faces evaluated
+     */
+    public long getEvaluatedCount() {
+        return evaluated.get();
+    }
+    
+    /**
+     * Number of faces rejected for the given reason (each one is an avoided inference)
+     */
+    public long getRejectedCount(Rejection reason) {
+        return rejected[reason.ordinal()].get();
+    }
+    
+    /**
+     * Total inferences avoided by the gate
+     */
+    public long getAvoidedInferenceCount() {
+        long total = 0;
+        for (AtomicLong counter : rejected) {
+            total += counter.get();
+        }
+        return total;
+    }
+    
+    public void resetCounters() {
+        evaluated.set(0);
+        for (AtomicLong counter : rejected) {
+            counter.set(0);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("evaluated=").append(getEvaluatedCount())
+            .append(" avoided=").append(getAvoidedInferenceCount());
+        for (Rejection reason : Rejection.values()) {
+            builder.append(' ').append(reason.name().toLowerCase()).append('=').append(getRejectedCount(reason));
+        }
+        return builder.toString();
+    }
+}
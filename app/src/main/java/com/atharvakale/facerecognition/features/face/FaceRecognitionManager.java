@@ -1,96 +1,401 @@
 package com.atharvakale.facerecognition.features.face;
 
-import android.app.Activity;
+import android.content.Context;
 import android.graphics.Bitmap;
+import android.os.SystemClock;
 import androidx.annotation.NonNull;
 import androidx.camera.core.ImageProxy;
 import com.atharvakale.facerecognition.SimilarityClassifier;
+import com.atharvakale.facerecognition.data.FaceCropStore;
+import com.atharvakale.facerecognition.data.GalleryChunkReader;
 import com.atharvakale.facerecognition.data.PreferencesRepository;
+import com.atharvakale.facerecognition.data.archive.GalleryArchive;
+import com.atharvakale.facerecognition.data.journal.RecognitionJournal;
+import com.atharvakale.facerecognition.data.sync.ChangeFeed;
+import com.atharvakale.facerecognition.data.sync.GalleryChange;
+import com.atharvakale.facerecognition.data.thumbnails.ThumbnailCache;
+import com.atharvakale.facerecognition.data.thumbnails.ThumbnailStore;
+import com.atharvakale.facerecognition.diagnostics.FrameRecorder;
+import com.atharvakale.facerecognition.diagnostics.MetricsWriter;
+import com.atharvakale.facerecognition.features.face.detection.FaceDetector;
+import com.atharvakale.facerecognition.ml.InferenceProfile;
 import com.atharvakale.facerecognition.ml.MLModelManager;
 import com.atharvakale.facerecognition.ml.ModelConfig;
+import com.atharvakale.facerecognition.pipeline.MotionGate;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Main coordinator for face recognition functionality
- * Manages face data, processing, and provides clean interface for UI
+ * Manages face data, processing, and provides clean interface for UI. Network endpoints, gallery
+ * replication and autotuning hold a reference to it (ControlServers, ReplicationController,
+ * AutotuneController) and are started and stopped by its owner.
  */
 public class FaceRecognitionManager {
     private MLModelManager modelManager;
     private FaceProcessor faceProcessor;
     private PreferencesRepository repository;
+    private PreferencesRepository stagingRepository;
+    private FaceCropStore cropStore;
     private Map<String, SimilarityClassifier.Recognition> registeredFaces;
+    private volatile FaceGallery gallery = FaceGallery.EMPTY;
+    private final IdentityDirectory directory = new IdentityDirectory();
+    private File coldGalleryFile;
+    private long hotGalleryBudgetBytes;
+    private volatile RecognitionJournal journal;
+    private volatile ThumbnailStore thumbnailStore;
+    private volatile ThumbnailCache thumbnailCache;
+    
+    // Stored gallery streaming in after startup (guarded by this)
+    private volatile ProgressiveGalleryLoader galleryLoader;
+    private volatile boolean galleryLoading;
+    private final Set<String> removedWhileLoading = new HashSet<>();
     
     private boolean isRecognitionMode = true;
-    private float[][] currentEmbeddings;
+    private RegistrationCapture registrationCapture;
+    private ExecutorService registrationExecutor;
+    
+    // Model upgrade in progress (guarded by this)
+    private GalleryReembedder reembedder;
+    private String pendingModelKey;
+    private String pendingFingerprint;
+    private String pendingSource;
+    private int inferenceParallelism = 1;
+    
+    // Components bound to the active model (see ModelSwitchListener)
+    private final List<ModelSwitchListener> modelSwitchListeners = new CopyOnWriteArrayList<>();
+    
+    // Autotuned inference options for this device (see AutotuneController)
+    private volatile InferenceProfile inferenceProfile;
+    
+    // Change feed of gallery replication, attached by a ReplicationController (guarded by this)
+    private volatile ChangeFeed changeFeed;
+    private final ChangeFeed.Listener replicationListener = this::applyRemoteChanges;
+    // Writes the gallery to storage outside the manager lock; its monitor is taken before this
+    private final GalleryStorage storage;
     
     public interface FaceRecognitionCallback {
-        void onFaceRecognized(String name, float distance, boolean isKnown);
+        /**
+         * @param isProvisional Matched while the stored gallery was still loading
+         */
+        void onFaceRecognized(String name, float distance, boolean isKnown, boolean isProvisional);
         void onNoFaceDetected();
         void onFaceReadyForRegistration(Bitmap faceBitmap);
         void onFaceRegistered(String name, boolean success);
         void onError(String error);
     }
     
-    public FaceRecognitionManager(Activity context) {
-        // Initialize ML infrastructure
-        this.modelManager = new MLModelManager(context);
+    public interface ModelUpgradeCallback {
+        void onProgress(int completed, int total);
         
-        // Load face recognition model
-        boolean modelLoaded = modelManager.loadModel(
-            ModelConfig.FaceRecognition.MODEL_FILE,
-            ModelConfig.FaceRecognition.MODEL_KEY
-        );
+        /**
+         * @param fingerprint Fingerprint of the model now in use
+         * @param needsReenrollment Identities dropped because no face crop was stored for them
+         */
+        void onModelSwitched(String fingerprint, List<String> needsReenrollment);
+        void onError(String error);
+    }
+    
+    public interface DeleteCallback {
+        /**
+         * Called on the registration worker once the faces are gone from memory and storage
+         */
+        void onFacesDeleted(List<String> names, boolean success);
+    }
+    
+    /**
+     * Component bound to the active model, e.g. a server embedding with it
+     * Called on the upgrade worker without the manager lock held.
+     */
+    public interface ModelSwitchListener {
+        /**
+         * Called once the new model is active and before the previous one is unloaded; stop running
+         * inference with the previous model
+         */
+        void onModelSwitching(String previousModelKey);
         
-        if (!modelLoaded) {
-            throw new RuntimeException("Failed to load face recognition model");
-        }
+        /**
+         * Called once the gallery and model were swapped
+         */
+        void onModelSwitched(String modelKey);
+    }
+    
+    public FaceRecognitionManager(Context context) {
+        this(createModelManager(context), FaceProcessor.createDefaultDetector(), createRepository(context),
+            createStagingRepository(context), createCropStore(context), null);
+        setRecognitionJournal(createRecognitionJournal(context));
+        setGalleryTiering(createColdGalleryFile(context), ModelConfig.FaceRecognition.GALLERY_HOT_BUDGET_BYTES);
+        setThumbnailStore(createThumbnailStore(context));
+    }
+    
+    /**
+     * Create manager from components prepared ahead of time (see StartupOrchestrator)
+     * @param stagingRepository Checkpoint of a model upgrade's re-embedded gallery
+     * @param cropStore Aligned face crops kept for re-embedding
+     * @param preloadedFaces Registered faces already loaded from the repository, or null to stream them in
+     *                       the background (recognition starts at once with provisional matches)
+     */
+    public FaceRecognitionManager(MLModelManager modelManager, FaceDetector detector,
+                                  PreferencesRepository repository,
+                                  PreferencesRepository stagingRepository,
+                                  FaceCropStore cropStore,
+                                  Map<String, SimilarityClassifier.Recognition> preloadedFaces) {
+        this.modelManager = modelManager;
         
         // Initialize face processor
-        this.faceProcessor = new FaceProcessor(modelManager);
+        this.faceProcessor = new FaceProcessor(modelManager, detector);
         
         // Initialize data repository
-        this.repository = new PreferencesRepository(
-            context, 
-            "HashMap", 
-            "map", 
-            ModelConfig.FaceRecognition.OUTPUT_SIZE
-        );
+        this.repository = repository;
+        this.stagingRepository = stagingRepository;
+        this.cropStore = cropStore;
+        
+        // Registered faces (written by the registration worker and the gallery loader, read by the frame path)
+        this.registeredFaces = new ConcurrentHashMap<>();
+        this.storage = new GalleryStorage(this, registeredFaces, repository);
+        if (preloadedFaces != null) {
+            registeredFaces.putAll(preloadedFaces);
+        } else {
+            galleryLoading = true;
+        }
+        rebuildGallery();
+        
+        // Galleries saved before fingerprints were recorded belong to the model in use
+        if (repository.loadModelFingerprint() == null) {
+            repository.saveModelFingerprint(getModelFingerprint());
+        }
+        
+        // Options of a stored profile were applied when the model was loaded (see createModelManager)
+        this.inferenceProfile = repository.loadInferenceProfile(InferenceAutotuner.deviceKey());
         
-        // Load registered faces
-        this.registeredFaces = new HashMap<>(repository.loadAll());
+        // Registration keeps recent crops and embeds only the chosen one on confirm
+        this.registrationCapture = new RegistrationCapture(
+            ModelConfig.FaceRecognition.REGISTRATION_CANDIDATES,
+            ModelConfig.FaceRecognition.REGISTRATION_CANDIDATE_MAX_AGE_MS
+        );
+        this.registrationExecutor = Executors.newSingleThreadExecutor();
         
         // Load similarity threshold
         float threshold = repository.loadSimilarityThreshold(
             ModelConfig.FaceRecognition.DEFAULT_SIMILARITY_THRESHOLD
         );
         faceProcessor.setSimilarityThreshold(threshold);
+        
+        if (galleryLoading) {
+            startGalleryLoad();
+        }
+    }
+    
+    /**
+     * Create a model manager with the face recognition model loaded
+     */
+    public static MLModelManager createModelManager(Context context) {
+        MLModelManager modelManager = new MLModelManager(context);
+        PreferencesRepository repository = createRepository(context);
+        
+        // Interpreter options autotuned for this device, if any
+        InferenceProfile profile = repository.loadInferenceProfile(InferenceAutotuner.deviceKey());
+        if (profile != null) {
+            modelManager.setInterpreterOptions(profile.numThreads, profile.useXnnpack);
+        }
+        
+        // Load the upgraded model the gallery was switched to, or the bundled one
+        String modelSource = repository.loadModelSource();
+        boolean modelLoaded = false;
+        if (modelSource != null && new File(modelSource).exists()) {
+            modelLoaded = modelManager.loadModelFromFile(new File(modelSource), ModelConfig.FaceRecognition.MODEL_KEY);
+        }
+        if (!modelLoaded) {
+            modelLoaded = modelManager.loadModel(
+                ModelConfig.FaceRecognition.MODEL_FILE,
+                ModelConfig.FaceRecognition.MODEL_KEY
+            );
+        }
+        
+        if (!modelLoaded) {
+            throw new RuntimeException("Failed to load face recognition model");
+        }
+        return modelManager;
+    }
+    
+    /**
+     * Create the repository holding registered faces
+     */
+    public static PreferencesRepository createRepository(Context context) {
+        return new PreferencesRepository(
+            context, 
+            "HashMap", 
+            "map", 
+            ModelConfig.FaceRecognition.OUTPUT_SIZE
+        );
+    }
+    
+    /**
+     * Create the repository checkpointing a model upgrade's re-embedded gallery
+     */
+    public static PreferencesRepository createStagingRepository(Context context) {
+        return new PreferencesRepository(
+            context,
+            "HashMap",
+            "map_staging",
+            ModelConfig.FaceRecognition.OUTPUT_SIZE
+        );
+    }
+    
+    /**
+     * Create the store of registered face crops
+     */
+    public static FaceCropStore createCropStore(Context context) {
+        return new FaceCropStore(new File(context.getFilesDir(), "face_crops"));
+    }
+    
+    /**
+     * Create and open the store of face thumbnails shown by the directory list
+     * @return Store, or null if it could not be opened
+     */
+    public static ThumbnailStore createThumbnailStore(Context context) {
+        ThumbnailStore store = new ThumbnailStore(new File(context.getFilesDir(), "face_thumbnails.dat"),
+            ModelConfig.FaceRecognition.THUMBNAIL_JPEG_QUALITY);
+        return store.open() ? store : null;
+    }
+    
+    /**
+     * File holding the cold tier of large galleries
+     */
+    public static File createColdGalleryFile(Context context) {
+        return new File(context.getFilesDir(), "gallery_cold.bin");
+    }
+    
+    /**
+     * Create the change feed used for gallery replication (opened when replication starts)
+     */
+    public static ChangeFeed createChangeFeed(Context context) {
+        return new ChangeFeed(new File(context.getFilesDir(), "replication"), ModelConfig.FaceRecognition.OUTPUT_SIZE);
+    }
+    
+    /**
+     * Create and open the journal of recognition events
+     * @return Journal, or null if it could not be opened
+     */
+    public static RecognitionJournal createRecognitionJournal(Context context) {
+        RecognitionJournal journal = new RecognitionJournal(
+            new File(context.getFilesDir(), "recognition_events"),
+            ModelConfig.FaceRecognition.JOURNAL_BUFFER_EVENTS,
+            ModelConfig.FaceRecognition.JOURNAL_RECORDS_PER_SEGMENT,
+            ModelConfig.FaceRecognition.JOURNAL_MAX_SEGMENTS,
+            ModelConfig.FaceRecognition.JOURNAL_COOLDOWN_MS,
+            ModelConfig.FaceRecognition.JOURNAL_FLUSH_INTERVAL_MS
+        );
+        return journal.open() ? journal : null;
     }
     
     /**
      * Process camera frame for face recognition or registration
      */
     public void processFrame(@NonNull ImageProxy imageProxy, boolean flipX, FaceRecognitionCallback callback) {
+        processFrame(imageProxy, flipX, 0, callback);
+    }
+    
+    /**
+     * Process camera frame for face recognition or registration
+     * @param cameraId Camera the frame came from, recorded with recognition events
+     */
+    public void processFrame(@NonNull ImageProxy imageProxy, boolean flipX, int cameraId,
+                             FaceRecognitionCallback callback) {
+        
+        FaceGallery snapshot = gallery;
+        FaceProcessor.FaceProcessingCallback processingCallback =
+            createProcessingCallback(cameraId, snapshot.isProvisional(), callback);
         
-        FaceProcessor.FaceProcessingCallback processingCallback = new FaceProcessor.FaceProcessingCallback() {
+        if (isRecognitionMode) {
+            faceProcessor.processImageForRecognition(imageProxy, snapshot, flipX, cameraId, processingCallback);
+        } else {
+            faceProcessor.processImageForPreview(imageProxy, flipX, processingCallback);
+        }
+    }
+    
+    /**
+     * Recognize faces in a frame on the calling thread (used by worker pools serving several cameras)
+     * The image is closed before returning
+     * @param cameraId Stream the frame came from; each stream keeps its own face tracks
+     */
+    public void processFrameBlocking(@NonNull ImageProxy imageProxy, boolean flipX, int cameraId,
+                                     FaceRecognitionCallback callback) {
+        FaceGallery snapshot = gallery;
+        faceProcessor.processImageForRecognition(imageProxy, snapshot, flipX, cameraId,
+            createProcessingCallback(cameraId, snapshot.isProvisional(), callback));
+    }
+    
+    /**
+     * Recognize faces in a decoded frame on the calling thread (replayed clips, soak runs)
+     * The frame is recycled before returning
+     * @param rotationDegrees Rotation that makes the frame upright
+     */
+    public void processBitmapBlocking(@NonNull Bitmap frame, int rotationDegrees, boolean flipX, int cameraId,
+                                      FaceRecognitionCallback callback) {
+        FaceGallery snapshot = gallery;
+        faceProcessor.processBitmapForRecognitionBlocking(frame, rotationDegrees, snapshot, flipX, cameraId,
+            createProcessingCallback(cameraId, snapshot.isProvisional(), callback));
+    }
+    
+    /**
+     * Let up to the given number of threads run the embedding model at once
+     * (one interpreter per thread; call before feeding frames from a worker pool)
+     */
+    public synchronized void setInferenceParallelism(int threads) {
+        inferenceParallelism = Math.max(1, threads);
+        modelManager.createInterpreterPool(faceProcessor.getActiveModelKey(), inferenceParallelism);
+    }
+    
+    /**
+     * @param provisional Whether the frame is matched against a partly loaded gallery
+     */
+    private FaceProcessor.FaceProcessingCallback createProcessingCallback(int cameraId, boolean provisional,
+                                                                        FaceRecognitionCallback callback) {
+        return new FaceProcessor.FaceProcessingCallback() {
             @Override
             public void onFaceDetected(String name, float distance, boolean isRecognized) {
-                callback.onFaceRecognized(name, distance, isRecognized);
+                callback.onFaceRecognized(name, distance, isRecognized, provisional);
+            }
+            
+            @Override
+            public void onIdentityDecided(IdentityVoter.Decision decision, int trackId) {
+                RecognitionJournal eventJournal = journal;
+                // An unknown face may only be missing from the part loaded so far
+                if (eventJournal != null && (decision.isKnown || !provisional)) {
+                    eventJournal.record(decision.name, decision.distance, decision.isKnown, trackId, cameraId);
+                }
+                if (decision.isKnown) {
+                    directory.markSeen(decision.name, System.currentTimeMillis());
+                }
             }
             
             @Override
             public void onNoFaceDetected() {
-                if (registeredFaces.isEmpty()) {
-                    callback.onFaceRecognized("Add Face", Float.MAX_VALUE, false);
+                if (registeredFaces.isEmpty() && !provisional) {
+                    callback.onFaceRecognized("Add Face", Float.MAX_VALUE, false, false);
                 } else {
                     callback.onNoFaceDetected();
                 }
             }
             
             @Override
-            public void onFaceForPreview(Bitmap faceBitmap) {
-                // Generate embeddings for potential registration
-                currentEmbeddings = faceProcessor.generateEmbeddings(faceBitmap);
+            public void onFaceForPreview(Bitmap faceBitmap, float quality) {
+                // Keep the crop only; the embedding is computed once the user confirms
+                registrationCapture.offer(faceBitmap, quality, SystemClock.elapsedRealtime());
                 callback.onFaceReadyForRegistration(faceBitmap);
             }
             
@@ -99,76 +404,999 @@ public class FaceRecognitionManager {
                 callback.onError(error);
             }
         };
-        
-        if (isRecognitionMode) {
-            faceProcessor.processImageForRecognition(imageProxy, registeredFaces, flipX, processingCallback);
-        } else {
-            faceProcessor.processImageForPreview(imageProxy, flipX, processingCallback);
-        }
     }
     
     /**
      * Register a new face with the given name
+     * Asynchronous: the best recent preview crop is embedded and persisted on a worker thread,
+     * and the result is delivered through onFaceRegistered on that thread
      */
     public void registerFace(String name, FaceRecognitionCallback callback) {
-        if (currentEmbeddings == null) {
+        RegistrationCapture.Candidate candidate = registrationCapture.takeBest(SystemClock.elapsedRealtime());
+        if (candidate == null) {
             callback.onFaceRegistered(name, false);
             return;
         }
-        
-        // Create recognition object
-        SimilarityClassifier.Recognition recognition = new SimilarityClassifier.Recognition("0", "", -1f);
-        recognition.setExtra(currentEmbeddings);
-        
-        // Save to registered faces
-        registeredFaces.put(name, recognition);
-        
-        // Persist to storage
-        boolean success = repository.save(name, recognition);
-        callback.onFaceRegistered(name, success);
-        
-        // Clear current embeddings
-        currentEmbeddings = null;
+        enroll(name, candidate.getCrop(), callback);
+    }
+    
+    /**
+     * Register a recurring unknown face under a name, from its best exemplar crop (one-tap enrollment)
+     * @param clusterId Id from getRecurringUnknowns()
+     */
+    public void enrollUnknown(int clusterId, String name, FaceRecognitionCallback callback) {
+        UnknownFaceClusterer.RecurringUnknown unknown = faceProcessor.getUnknownClusterer().get(clusterId);
+        Bitmap crop = unknown != null ? unknown.getBestExemplar() : null;
+        if (crop == null) {
+            callback.onFaceRegistered(name, false);
+            return;
+        }
+        faceProcessor.getUnknownClusterer().remove(clusterId);
+        enroll(name, crop, callback);
+    }
+    
+    /**
+     * Get the unregistered faces seen on the most distinct tracks, for enrollment suggestions
+     */
+    public List<UnknownFaceClusterer.RecurringUnknown> getRecurringUnknowns(int limit) {
+        return faceProcessor.getUnknownClusterer().getTopRecurring(limit,
+            ModelConfig.FaceRecognition.UNKNOWN_MIN_SIGHTINGS, SystemClock.elapsedRealtime());
+    }
+    
+    /**
+     * Embed a crop and persist it under a name on the registration worker
+     * Inference and storage run outside the manager lock, which is held only to publish the face
+     */
+    private void enroll(String name, Bitmap crop, FaceRecognitionCallback callback) {
+        registrationExecutor.execute(() -> {
+            String modelKey = faceProcessor.getActiveModelKey();
+            float[][] embeddings = faceProcessor.generateEmbeddings(crop, modelKey);
+            // Stored before publishing, so a model switch committed in between can re-embed the face
+            boolean cropSaved = embeddings != null && cropStore.save(name, crop);
+            
+            SimilarityClassifier.Recognition recognition = new SimilarityClassifier.Recognition("0", "", -1f);
+            synchronized (this) {
+                if (!modelKey.equals(faceProcessor.getActiveModelKey())) {
+                    // A model switch landed while embedding; under the lock another one cannot
+                    embeddings = faceProcessor.generateEmbeddings(crop);
+                }
+                if (embeddings == null) {
+                    callback.onError("Failed to generate face embeddings");
+                    callback.onFaceRegistered(name, false);
+                    return;
+                }
+                recognition.setExtra(embeddings);
+                
+                // Save to registered faces
+                registeredFaces.put(name, recognition);
+                onFacesChanged();
+                ChangeFeed feed = changeFeed;
+                if (feed != null) {
+                    feed.recordUpsert(name, embeddings[0]);
+                }
+            }
+            
+            // Persist to storage, keeping the crop for re-embedding on model upgrades
+            if (!cropSaved) {
+                cropStore.save(name, crop);
+            }
+            boolean success = storage.saveFace(name, recognition, () -> saveThumbnail(name, crop));
+            callback.onFaceRegistered(name, success);
+        });
     }
     
     /**
      * Delete a registered face
      */
     public boolean deleteFace(String name) {
-        registeredFaces.remove(name);
-        return repository.delete(name);
+        synchronized (this) {
+            forgetFace(name);
+            onFacesChanged();
+            ChangeFeed feed = changeFeed;
+            if (feed != null) {
+                feed.recordDelete(name);
+            }
+        }
+        cropStore.delete(name);
+        deleteThumbnails(Collections.singletonList(name));
+        return storage.deleteFaces(Collections.singletonList(name));
     }
     
     /**
      * Delete multiple registered faces
      */
     public boolean deleteFaces(String[] names) {
+        return deleteFaces(java.util.Arrays.asList(names));
+    }
+    
+    /**
+     * Delete multiple registered faces as one batch: a single gallery rebuild and a single storage write
+     */
+    public boolean deleteFaces(Collection<String> names) {
+        if (names.isEmpty()) {
+            return true;
+        }
+        synchronized (this) {
+            for (String name : names) {
+                forgetFace(name);
+            }
+            onFacesChanged();
+            ChangeFeed feed = changeFeed;
+            if (feed != null) {
+                feed.recordDeletes(names);
+            }
+        }
         for (String name : names) {
-            registeredFaces.remove(name);
+            cropStore.delete(name);
         }
-        return repository.deleteAll(java.util.Arrays.asList(names));
+        deleteThumbnails(names);
+        return storage.deleteFaces(names);
+    }
+    
+    /**
+     * Delete multiple registered faces as one batch on the registration worker, keeping the
+     * storage write and file deletes off the caller's thread
+     */
+    public void deleteFaces(List<String> names, DeleteCallback callback) {
+        List<String> deleted = new ArrayList<>(names);
+        registrationExecutor.execute(() -> {
+            boolean success = deleteFaces(deleted);
+            callback.onFacesDeleted(deleted, success);
+        });
+    }
+    
+    /**
+     * Delete every registered face the filter accepts, as one batch
+     * @return Names that were deleted
+     */
+    public List<String> deleteFaces(IdentityDirectory.Filter filter) {
+        List<String> names = directory.select(filter);
+        deleteFaces(names);
+        return names;
     }
     
     /**
      * Clear all registered faces
      */
     public boolean clearAllFaces() {
-        registeredFaces.clear();
-        return repository.clear();
+        synchronized (this) {
+            // Faces not loaded yet are cleared from storage below
+            cancelGalleryLoad();
+            List<String> names = new ArrayList<>(registeredFaces.keySet());
+            registeredFaces.clear();
+            onFacesChanged();
+            ChangeFeed feed = changeFeed;
+            if (feed != null) {
+                feed.recordDeletes(names);
+            }
+        }
+        cropStore.clear();
+        ThumbnailStore thumbnails = thumbnailStore;
+        ThumbnailCache cache = thumbnailCache;
+        if (thumbnails != null) {
+            thumbnails.clear();
+        }
+        if (cache != null) {
+            cache.clear();
+        }
+        // Faces registered since the gallery was cleared are kept
+        return storage.saveSnapshot();
     }
     
     /**
      * Save all current faces to persistent storage
+     * @return false if storage could not be written or the stored gallery is still loading
      */
     public boolean saveAllFaces() {
-        return repository.saveAll(registeredFaces);
+        // Saving a partly loaded gallery would drop the rest from storage; callers on the main
+        // thread cannot wait for it
+        if (isGalleryLoading()) {
+            return false;
+        }
+        return storage.saveSnapshot();
+    }
+    
+    /**
+     * Register a batch of faces read from a gallery archive, replacing faces of the same name
+     * (see GalleryArchiver); storage is written by finishImport
+     */
+    int applyImportedFaces(Map<String, GalleryArchive.Record> batch) {
+        Map<String, float[]> vectors = new HashMap<>();
+        synchronized (this) {
+            for (GalleryArchive.Record record : batch.values()) {
+                SimilarityClassifier.Recognition recognition = new SimilarityClassifier.Recognition("0", "", -1f);
+                recognition.setExtra(new float[][]{record.vector});
+                registeredFaces.put(record.name, recognition);
+                vectors.put(record.name, record.vector);
+            }
+            ChangeFeed feed = changeFeed;
+            if (feed != null) {
+                feed.recordUpserts(vectors);
+            }
+        }
+        ThumbnailStore store = thumbnailStore;
+        ThumbnailCache cache = thumbnailCache;
+        for (GalleryArchive.Record record : batch.values()) {
+            // A local crop of a replaced face no longer matches its embedding
+            cropStore.delete(record.name);
+            if (store != null) {
+                if (record.thumbnail != null) {
+                    store.putEncoded(record.name, record.thumbnail);
+                } else {
+                    store.delete(record.name);
+                }
+            }
+            if (cache != null) {
+                cache.invalidate(record.name);
+            }
+        }
+        return batch.size();
+    }
+    
+    /**
+     * Rebuild the matching snapshot and write storage once the imported batches are applied
+     */
+    void finishImport() {
+        onFacesChanged();
+        // Taken under the storage monitor, so it cannot overwrite a face enrolled after it
+        storage.saveSnapshot();
+    }
+    
+    /**
+     * Reload faces from persistent storage, replacing the in-memory gallery
+     * Faces deleted from storage since startup are dropped; a streaming gallery load is superseded
+     */
+    public synchronized void reloadFaces() {
+        cancelGalleryLoad();
+        Map<String, SimilarityClassifier.Recognition> stored = repository.loadAll();
+        registeredFaces.clear();
+        registeredFaces.putAll(stored);
+        onFacesChanged();
+    }
+    
+    /**
+     * Rebuild the matching snapshot and drop stale voting decisions after a gallery change
+     */
+    private synchronized void onFacesChanged() {
+        rebuildGallery();
+        faceProcessor.resetIdentityVoting();
+    }
+    
+    private void rebuildGallery() {
+        int dimension = ModelConfig.FaceRecognition.OUTPUT_SIZE;
+        FaceGallery rebuilt = null;
+        if (coldGalleryFile != null && (long) registeredFaces.size() * dimension * 4 > hotGalleryBudgetBytes) {
+            rebuilt = TieredGallery.create(registeredFaces, dimension, coldGalleryFile, hotGalleryBudgetBytes,
+                ModelConfig.FaceRecognition.GALLERY_REBALANCE_INTERVAL,
+                ModelConfig.FaceRecognition.GALLERY_ACCESS_DECAY, gallery);
+        }
+        if (rebuilt == null) {
+            rebuilt = FaceGallery.fromRecognitions(registeredFaces, dimension);
+        }
+        if (galleryLoading) {
+            rebuilt.markProvisional();
+        }
+        faceProcessor.getGalleryMatcher().prepare(rebuilt);
+        gallery = rebuilt;
+        directory.setNames(registeredFaces.keySet());
+    }
+    
+    /**
+     * Stream the stored gallery in on a background thread; frames are matched against the part
+     * loaded so far in the meantime
+     */
+    private synchronized void startGalleryLoad() {
+        ProgressiveGalleryLoader loader = new ProgressiveGalleryLoader(repository::openChunkReader,
+            ModelConfig.FaceRecognition.GALLERY_LOAD_FIRST_CHUNK, ModelConfig.FaceRecognition.GALLERY_LOAD_MAX_CHUNK,
+            new ProgressiveGalleryLoader.Sink() {
+                @Override
+                public void onChunk(Map<String, SimilarityClassifier.Recognition> faces) {
+                    addLoadedFaces(faces);
+                }
+                
+                @Override
+                public void onFinished(boolean complete) {
+                    finishGalleryLoad(complete);
+                }
+            });
+        galleryLoader = loader;
+        loader.start();
+    }
+    
+    private synchronized void addLoadedFaces(Map<String, SimilarityClassifier.Recognition> faces) {
+        if (!galleryLoading) {
+            return;
+        }
+        for (Map.Entry<String, SimilarityClassifier.Recognition> entry : faces.entrySet()) {
+            // Faces registered or deleted since startup are newer than the stored copy
+            if (!removedWhileLoading.contains(entry.getKey())) {
+                registeredFaces.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+        }
+        // A rebuild costs O(gallery); rebuilding only once the gallery has doubled keeps the whole
+        // load O(n). Loading only adds faces, so accepted tracks keep their decision
+        if (registeredFaces.size() >= 2 * gallery.size()) {
+            rebuildGallery();
+            faceProcessor.resetUnknownVoting();
+        }
+    }
+    
+    /**
+     * @param complete false if the load was cancelled or failed part way
+     */
+    private synchronized void finishGalleryLoad(boolean complete) {
+        if (!galleryLoading) {
+            return;
+        }
+        galleryLoading = false;
+        removedWhileLoading.clear();
+        rebuildGallery();
+        faceProcessor.resetUnknownVoting();
+        notifyAll();
+        // Deferred until every registered face is known
+        if (complete && thumbnailStore != null && !registrationExecutor.isShutdown()) {
+            registrationExecutor.execute(this::reconcileThumbnails);
+        }
+    }
+    
+    private synchronized void cancelGalleryLoad() {
+        ProgressiveGalleryLoader loader = galleryLoader;
+        if (galleryLoading && loader != null) {
+            loader.cancel();
+            finishGalleryLoad(false);
+        }
+    }
+    
+    /**
+     * Remove a face, keeping the gallery loader from bringing back its stored copy (caller holds the lock)
+     */
+    private void forgetFace(String name) {
+        registeredFaces.remove(name);
+        if (galleryLoading) {
+            removedWhileLoading.add(name);
+        }
+    }
+    
+    /**
+     * Whether the stored gallery is still streaming in (matches are provisional meanwhile)
+     */
+    public boolean isGalleryLoading() {
+        return galleryLoading;
+    }
+    
+    /**
+     * Get the background gallery load, or null if the faces were preloaded
+     */
+    public ProgressiveGalleryLoader getGalleryLoader() {
+        return galleryLoader;
+    }
+    
+    /**
+     * Wait until the whole stored gallery is loaded
+     * Safe to call while holding the manager's lock, which is released while waiting
+     * @return true if loaded, false on timeout or interrupt
+     */
+    public synchronized boolean awaitGalleryLoaded(long timeoutMs) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (galleryLoading) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                return false;
+            }
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Keep galleries larger than the hot budget in a memory-mapped file, with only frequently
+     * matched identities on the heap
+     * @param coldFile Cold tier file, or null to keep the whole gallery on the heap
+     * @param hotBudgetBytes Heap bytes allowed for the hot tier
+     */
+    public synchronized void setGalleryTiering(File coldFile, long hotBudgetBytes) {
+        this.coldGalleryFile = coldFile;
+        this.hotGalleryBudgetBytes = hotBudgetBytes;
+        rebuildGallery();
+    }
+    
+    /**
+     * Get the current matching snapshot; a TieredGallery reports memory use per tier
+     */
+    public FaceGallery getGallery() {
+        return gallery;
+    }
+    
+    /**
+     * Get the fingerprint of the model producing embeddings
+     */
+    public String getModelFingerprint() {
+        return modelManager.getModelFingerprint(faceProcessor.getActiveModelKey());
+    }
+    
+    /**
+     * Switch to a new recognition model without interrupting recognition
+     * The new model is loaded next to the current one and the stored face crops are re-embedded
+     * in the background; the gallery and model are swapped together once every identity is done
+     * @param modelFile New model file on local storage (must stay in place, it is loaded on later starts)
+     * @return true if the upgrade was started; false while the stored gallery is still loading
+     */
+    public synchronized boolean upgradeModel(File modelFile, ModelUpgradeCallback callback) {
+        // Faces not loaded yet would be dropped by the switch
+        if (galleryLoading) {
+            callback.onError("Gallery is still loading");
+            return false;
+        }
+        if (reembedder != null) {
+            callback.onError("Model upgrade already in progress");
+            return false;
+        }
+        String fingerprint = MLModelManager.fingerprintOf(modelFile);
+        if (fingerprint == null) {
+            callback.onError("Failed to read model file");
+            return false;
+        }
+        
+        String modelKey = faceProcessor.getActiveModelKey();
+        if (!fingerprint.equals(getModelFingerprint())) {
+            modelKey = ModelConfig.FaceRecognition.MODEL_KEY + "@" + fingerprint;
+            if (!modelManager.loadModelFromFile(modelFile, modelKey)) {
+                callback.onError("Failed to load model");
+                return false;
+            }
+        }
+        startReembedding(modelKey, fingerprint, modelFile.getAbsolutePath(), callback);
+        return true;
+    }
+    
+    /**
+     * Continue an upgrade interrupted by process death, or re-embed a gallery that was saved
+     * with a different model than the one now loaded
+     * @return true if re-embedding was started; false while the stored gallery is still loading
+     */
+    public synchronized boolean resumeModelUpgrade(ModelUpgradeCallback callback) {
+        if (reembedder != null || galleryLoading) {
+            return false;
+        }
+        String stagedSource = stagingRepository.loadModelSource();
+        if (stagingRepository.loadModelFingerprint() != null && stagedSource != null && new File(stagedSource).exists()) {
+            return upgradeModel(new File(stagedSource), callback);
+        }
+        String galleryFingerprint = repository.loadModelFingerprint();
+        String activeFingerprint = getModelFingerprint();
+        if (galleryFingerprint != null && !galleryFingerprint.equals(activeFingerprint)) {
+            startReembedding(faceProcessor.getActiveModelKey(), activeFingerprint, repository.loadModelSource(), callback);
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Stop a running upgrade; its checkpoint is kept so resumeModelUpgrade continues later
+     */
+    public synchronized void cancelModelUpgrade() {
+        if (reembedder == null) {
+            return;
+        }
+        reembedder.cancel();
+        if (!pendingModelKey.equals(faceProcessor.getActiveModelKey())) {
+            modelManager.unloadModel(pendingModelKey);
+        }
+        reembedder = null;
+    }
+    
+    public synchronized boolean isModelUpgradeInProgress() {
+        return reembedder != null;
+    }
+    
+    private void startReembedding(String modelKey, String fingerprint, String source, ModelUpgradeCallback callback) {
+        // A checkpoint for a different target model is useless
+        if (!fingerprint.equals(stagingRepository.loadModelFingerprint())) {
+            stagingRepository.clear();
+            stagingRepository.saveModelFingerprint(fingerprint);
+            stagingRepository.saveModelSource(source);
+        }
+        pendingModelKey = modelKey;
+        pendingFingerprint = fingerprint;
+        pendingSource = source;
+        
+        GalleryReembedder job = new GalleryReembedder(
+            cropStore,
+            stagingRepository,
+            crop -> faceProcessor.generateEmbeddings(crop, modelKey),
+            ModelConfig.FaceRecognition.REEMBED_THROTTLE_MS,
+            ModelConfig.FaceRecognition.REEMBED_CHECKPOINT_INTERVAL
+        );
+        reembedder = job;
+        job.start(registeredFaces.keySet(), new GalleryReembedder.Listener() {
+            @Override
+            public void onProgress(int completed, int total) {
+                callback.onProgress(completed, total);
+            }
+            
+            @Override
+            public void onFinished(Map<String, SimilarityClassifier.Recognition> embeddings, List<String> missingCrops) {
+                commitModelSwitch(job, embeddings, callback);
+            }
+            
+            @Override
+            public void onError(String error) {
+                synchronized (FaceRecognitionManager.this) {
+                    if (reembedder == job) {
+                        cancelModelUpgrade();
+                    }
+                }
+                callback.onError(error);
+            }
+        });
+    }
+    
+    /**
+     * Atomically replace gallery and model once the re-embedding job has finished
+     * Faces registered during the job are embedded first, outside the locks; the gallery is then
+     * swapped under the storage monitor and the manager lock, and stored before the former is let go.
+     */
+    private void commitModelSwitch(GalleryReembedder job,
+                                   Map<String, SimilarityClassifier.Recognition> embeddings,
+                                   ModelUpgradeCallback callback) {
+        Map<String, SimilarityClassifier.Recognition> embedded = new HashMap<>(embeddings);
+        Set<String> missingCrops = new HashSet<>();
+        String previousKey = null;
+        String modelKey = null;
+        String fingerprint = null;
+        String source = null;
+        List<String> needsReenrollment = new ArrayList<>();
+        while (true) {
+            List<String> late = new ArrayList<>();
+            synchronized (storage) {
+                synchronized (this) {
+                    if (reembedder != job) {
+                        return;
+                    }
+                    for (String name : registeredFaces.keySet()) {
+                        if (!embedded.containsKey(name) && !missingCrops.contains(name)) {
+                            late.add(name);
+                        }
+                    }
+                    if (late.isEmpty()) {
+                        // Deleted faces are left out; faces without a crop must be enrolled again
+                        Map<String, SimilarityClassifier.Recognition> switched = new HashMap<>();
+                        for (String name : registeredFaces.keySet()) {
+                            SimilarityClassifier.Recognition recognition = embedded.get(name);
+                            if (recognition != null) {
+                                switched.put(name, recognition);
+                            } else {
+                                needsReenrollment.add(name);
+                            }
+                        }
+                        
+                        previousKey = faceProcessor.getActiveModelKey();
+                        modelKey = pendingModelKey;
+                        fingerprint = pendingFingerprint;
+                        source = pendingSource;
+                        registeredFaces.clear();
+                        registeredFaces.putAll(switched);
+                        if (inferenceParallelism > 1) {
+                            modelManager.createInterpreterPool(modelKey, inferenceParallelism);
+                        }
+                        faceProcessor.setActiveModelKey(modelKey);
+                        onFacesChanged();
+                        
+                        // Replicated embeddings of the previous model are no longer comparable
+                        if (changeFeed != null) {
+                            changeFeed.reset(fingerprint);
+                            changeFeed.reconcile(faceVectors());
+                        }
+                        reembedder = null;
+                    }
+                }
+                if (late.isEmpty()) {
+                    storage.saveSnapshot();
+                    repository.saveModelFingerprint(fingerprint);
+                    repository.saveModelSource(source);
+                    stagingRepository.clear();
+                    stagingRepository.saveModelFingerprint(null);
+                    stagingRepository.saveModelSource(null);
+                    break;
+                }
+            }
+            
+            // Registered while the job ran; embedded with the new model before the next attempt
+            for (String name : late) {
+                SimilarityClassifier.Recognition recognition = job.embedStored(name);
+                if (recognition != null) {
+                    embedded.put(name, recognition);
+                } else {
+                    missingCrops.add(name);
+                }
+            }
+        }
+        
+        // Components embedding with the previous model (the batch server) stop before it is unloaded
+        for (ModelSwitchListener listener : modelSwitchListeners) {
+            listener.onModelSwitching(previousKey);
+        }
+        if (!previousKey.equals(modelKey)) {
+            modelManager.unloadModel(previousKey);
+        }
+        
+        callback.onModelSwitched(fingerprint, needsReenrollment);
+        for (ModelSwitchListener listener : modelSwitchListeners) {
+            listener.onModelSwitched(modelKey);
+        }
+    }
+    
+    /**
+     * Recreate the recognition interpreters with a profile's options
+     * (analysis resolution is applied by the camera owner)
+     */
+    public synchronized void applyInferenceProfile(InferenceProfile profile) {
+        modelManager.setInterpreterOptions(profile.numThreads, profile.useXnnpack);
+        modelManager.reloadInterpreters(faceProcessor.getActiveModelKey());
+        inferenceProfile = profile;
+    }
+    
+    /**
+     * Get the inference profile in use, or null if the device has not been tuned
+     */
+    public InferenceProfile getInferenceProfile() {
+        return inferenceProfile;
+    }
+    
+    /**
+     * Persist a profile for this device; applied on later starts (see createModelManager)
+     */
+    void saveInferenceProfile(InferenceProfile profile) {
+        repository.saveInferenceProfile(profile);
+    }
+    
+    /**
+     * Notify a component before and after the active model is switched
+     */
+    public void addModelSwitchListener(ModelSwitchListener listener) {
+        if (!modelSwitchListeners.contains(listener)) {
+            modelSwitchListeners.add(listener);
+        }
+    }
+    
+    public void removeModelSwitchListener(ModelSwitchListener listener) {
+        modelSwitchListeners.remove(listener);
+    }
+    
+    /**
+     * Get the key of the model producing embeddings
+     */
+    public String getActiveModelKey() {
+        return faceProcessor.getActiveModelKey();
+    }
+    
+    public MLModelManager getModelManager() {
+        return modelManager;
+    }
+    
+    FaceDetector getDetector() {
+        return faceProcessor.getDetector();
+    }
+    
+    /**
+     * Get this device's control endpoint token (created on first use)
+     */
+    public String getControlToken() {
+        return repository.loadControlToken();
+    }
+    
+    /**
+     * Replace this device's control endpoint token
+     */
+    public void setControlToken(String token) {
+        repository.saveControlToken(token);
+    }
+    
+    /**
+     * Check whether the control endpoint should be served (off until enabled in the kiosk settings)
+     */
+    public boolean isControlEnabled() {
+        return repository.loadControlEnabled();
+    }
+    
+    /**
+     * Get the address the control endpoint binds (loopback unless configured otherwise)
+     */
+    public String getControlHost() {
+        return repository.loadControlHost(ModelConfig.Control.HOST);
+    }
+    
+    /**
+     * Check whether camera frames are recorded for the endpoint's replay clips
+     */
+    public boolean isReplayClipsEnabled() {
+        return repository.loadControlReplayClips();
+    }
+    
+    /**
+     * Save the control endpoint settings; they take effect when the endpoint is next started
+     */
+    public void setControlSettings(boolean enabled, String host, boolean replayClips) {
+        repository.saveControlSettings(enabled, host, replayClips);
+    }
+    
+    /**
+     * Keep recent camera frames for replay clips (null to stop recording)
+     */
+    public void setFrameRecorder(FrameRecorder recorder) {
+        faceProcessor.setFrameRecorder(recorder);
+    }
+    
+    public FrameRecorder getFrameRecorder() {
+        return faceProcessor.getFrameRecorder();
+    }
+    
+    /**
+     * Write live pipeline and gallery metrics
+     */
+    public void collectMetrics(MetricsWriter writer) {
+        faceProcessor.getMetrics().collect(writer);
+        
+        FaceGallery current = gallery;
+        writer.gauge("gallery_identities", "Enrolled identities", current.size());
+        writer.gauge("gallery_heap_bytes", "Heap held by the matching snapshot", current.getHeapBytes());
+        writer.gauge("match_dimensions_per_row", "Dimensions computed per gallery row before abandoning",
+            faceProcessor.getGalleryMatcher().getAverageDimensionsEvaluated());
+        ProgressiveGalleryLoader loader = galleryLoader;
+        if (loader != null) {
+            writer.gauge("gallery_loading", "1 while the stored gallery is still loading", galleryLoading ? 1 : 0);
+            writer.gauge("gallery_load_progress", "Fraction of the stored gallery parsed", loader.getProgress());
+            writer.gauge("gallery_load_identities", "Identities loaded from storage", loader.getLoadedCount());
+            if (loader.getFirstChunkMs() >= 0) {
+                writer.gauge("gallery_first_match_seconds", "Time from startup until faces could be matched",
+                    loader.getFirstChunkMs() / 1000.0);
+            }
+            if (loader.getReadyMs() >= 0) {
+                writer.gauge("gallery_ready_seconds", "Time from startup until the whole gallery was loaded",
+                    loader.getReadyMs() / 1000.0);
+            }
+        }
+        writer.gauge("similarity_threshold", "Distance below which a face is recognized", getSimilarityThreshold());
+        writer.gauge("voter_active_tracks", "Face tracks being voted on", faceProcessor.getIdentityVoter().getActiveTrackCount());
+        writer.gauge("unknown_clusters", "Recurring unknown faces", faceProcessor.getUnknownClusterer().getClusterCount());
+        
+        FaceQualityGate qualityGate = faceProcessor.getQualityGate();
+        writer.counter("quality_evaluated_total", "Faces checked by the quality gate", qualityGate.getEvaluatedCount());
+        for (FaceQualityGate.Rejection reason : FaceQualityGate.Rejection.values()) {
+            writer.counter("quality_rejected_total", "Faces rejected before embedding", qualityGate.getRejectedCount(reason),
+                "reason", reason.name().toLowerCase(Locale.US));
+        }
+        
+        RecognitionJournal currentJournal = journal;
+        if (currentJournal != null) {
+            writer.gauge("journal_queue_depth", "Recognition events waiting to be written", currentJournal.getQueuedCount());
+            writer.counter("journal_dropped_total", "Recognition events dropped on overflow", currentJournal.getDroppedCount());
+        }
+        ThumbnailCache cache = thumbnailCache;
+        if (cache != null) {
+            writer.gauge("thumbnail_cache_bytes", "Decoded thumbnail bytes cached", cache.getSizeBytes());
+        }
+    }
+    
+    /**
+     * Open the feed for the current model and record faces changed while it was closed
+     * Gallery edits are recorded in it from now on, and changes other devices bring in are applied
+     */
+    synchronized boolean attachChangeFeed(ChangeFeed feed) {
+        // Reconciling a partly loaded gallery would record deletes for the rest
+        if (!awaitGalleryLoaded(ModelConfig.FaceRecognition.GALLERY_LOAD_WAIT_MS)) {
+            return false;
+        }
+        if (changeFeed != null && changeFeed != feed) {
+            return false;
+        }
+        if (changeFeed == null) {
+            if (!feed.open(getModelFingerprint())) {
+                return false;
+            }
+            feed.reconcile(faceVectors());
+            feed.addListener(replicationListener);
+            changeFeed = feed;
+        }
+        return true;
+    }
+    
+    /**
+     * Stop recording gallery edits in the feed and close it; it keeps its checkpoints for the next start
+     */
+    synchronized void detachChangeFeed(ChangeFeed feed) {
+        if (changeFeed == feed) {
+            feed.removeListener(replicationListener);
+            feed.close();
+            changeFeed = null;
+        }
+    }
+    
+    /**
+     * Apply changes from other devices that won over the local state
+     * Hub workers apply pushes concurrently; the storage monitor is held throughout so crops and
+     * thumbnails are dropped before a newer change can store its own.
+     */
+    private void applyRemoteChanges(List<GalleryChange> applied) {
+        synchronized (storage) {
+            List<String> deleted = new ArrayList<>();
+            synchronized (this) {
+                ChangeFeed feed = changeFeed;
+                if (feed == null) {
+                    return;
+                }
+                for (GalleryChange change : applied) {
+                    // A local edit recorded since then is newer and already applied
+                    if (feed.get(change.name) != change) {
+                        continue;
+                    }
+                    if (change.isDelete()) {
+                        forgetFace(change.name);
+                    } else {
+                        SimilarityClassifier.Recognition recognition = new SimilarityClassifier.Recognition("0", "", -1f);
+                        recognition.setExtra(new float[][]{change.vector});
+                        registeredFaces.put(change.name, recognition);
+                    }
+                    // A local crop of a replaced or deleted face no longer matches its embedding
+                    deleted.add(change.name);
+                }
+                if (deleted.isEmpty()) {
+                    return;
+                }
+                onFacesChanged();
+            }
+            for (String name : deleted) {
+                cropStore.delete(name);
+            }
+            deleteThumbnails(deleted);
+            storage.saveSnapshot();
+        }
+    }
+    
+    /**
+     * Get the embedding of every registered face
+     */
+    Map<String, float[]> faceVectors() {
+        Map<String, float[]> vectors = new HashMap<>();
+        for (Map.Entry<String, SimilarityClassifier.Recognition> entry : registeredFaces.entrySet()) {
+            vectors.put(entry.getKey(), ((float[][]) entry.getValue().getExtra())[0]);
+        }
+        return vectors;
+    }
+    
+    /**
+     * Attach the journal recognition events are written to (null to stop recording)
+     * Recently-seen ordering is restored from it in the background. The manager takes ownership
+     * and closes it on cleanup
+     */
+    public void setRecognitionJournal(RecognitionJournal journal) {
+        this.journal = journal;
+        if (journal != null && !registrationExecutor.isShutdown()) {
+            registrationExecutor.execute(() -> seedLastSeen(journal));
+        }
+    }
+    
+    /**
+     * Attach the store of face thumbnails (null to keep none)
+     * Thumbnails missing for registered faces are backfilled from their stored crops in the
+     * background. The manager takes ownership and closes it on cleanup
+     */
+    public void setThumbnailStore(ThumbnailStore store) {
+        ThumbnailStore previousStore = thumbnailStore;
+        ThumbnailCache previousCache = thumbnailCache;
+        thumbnailCache = store != null ? new ThumbnailCache(store,
+            ModelConfig.FaceRecognition.THUMBNAIL_DISPLAY_SIZE, ModelConfig.FaceRecognition.THUMBNAIL_CACHE_BYTES) : null;
+        thumbnailStore = store;
+        if (previousCache != null) {
+            previousCache.shutdown();
+        }
+        if (previousStore != null && previousStore != store) {
+            previousStore.close();
+        }
+        if (store != null) {
+            registrationExecutor.execute(this::reconcileThumbnails);
+        }
+    }
+    
+    ThumbnailStore getThumbnailStore() {
+        return thumbnailStore;
+    }
+    
+    /**
+     * Decoded thumbnails of registered faces, or null if no thumbnail store is attached
+     */
+    public ThumbnailCache getThumbnailCache() {
+        return thumbnailCache;
     }
     
     /**
-     * Reload faces from persistent storage
+     * Bring the thumbnail store in line with the registered faces (runs on the registration worker)
      */
-    public void reloadFaces() {
-        registeredFaces.putAll(repository.loadAll());
+    private void reconcileThumbnails() {
+        ThumbnailStore store = thumbnailStore;
+        if (store == null || galleryLoading) {
+            return;     // rerun once the gallery is loaded
+        }
+        // Faces deleted while the store was not attached
+        List<String> stale = new ArrayList<>();
+        for (String name : store.getNames()) {
+            if (!registeredFaces.containsKey(name)) {
+                stale.add(name);
+            }
+        }
+        store.deleteAll(stale);
+        // Faces registered before thumbnails were kept
+        for (String name : new ArrayList<>(registeredFaces.keySet())) {
+            if (store.contains(name)) {
+                continue;
+            }
+            Bitmap crop = cropStore.load(name);
+            if (crop != null) {
+                store.put(name, crop);
+                crop.recycle();
+            }
+        }
+    }
+    
+    private void saveThumbnail(String name, Bitmap crop) {
+        ThumbnailStore store = thumbnailStore;
+        ThumbnailCache cache = thumbnailCache;
+        if (store != null) {
+            store.put(name, crop);
+        }
+        if (cache != null) {
+            cache.invalidate(name);
+        }
+    }
+    
+    private void deleteThumbnails(Collection<String> names) {
+        ThumbnailStore store = thumbnailStore;
+        ThumbnailCache cache = thumbnailCache;
+        if (store != null) {
+            store.deleteAll(names);
+        }
+        if (cache != null) {
+            for (String name : names) {
+                cache.invalidate(name);
+            }
+        }
+    }
+    
+    /**
+     * Get the journal of recognition events, for time-range queries
+     */
+    public RecognitionJournal getRecognitionJournal() {
+        return journal;
+    }
+    
+    /**
+     * Restore recently-seen ordering from the journal after a restart
+     */
+    private void seedLastSeen(RecognitionJournal journal) {
+        long from = System.currentTimeMillis() - ModelConfig.FaceRecognition.DIRECTORY_SEEN_SEED_MS;
+        for (Map.Entry<String, Long> seen : journal.getLatestSeenSince(from).entrySet()) {
+            directory.markSeen(seen.getKey(), seen.getValue());
+        }
+    }
+    
+    /**
+     * Get the searchable index of registered names
+     */
+    public IdentityDirectory getIdentityDirectory() {
+        return directory;
+    }
+    
+    /**
+     * Query one page of registered names
+     * @param prefix Case-insensitive name prefix, empty for all
+     */
+    public IdentityDirectory.Page queryIdentities(String prefix, int offset, int limit, IdentityDirectory.Order order) {
+        return directory.query(prefix, offset, limit, order);
     }
     
     /**
@@ -197,6 +1425,7 @@ public class FaceRecognitionManager {
      */
     public void setRecognitionMode(boolean recognitionMode) {
         this.isRecognitionMode = recognitionMode;
+        registrationCapture.clear();
     }
     
     /**
@@ -235,10 +1464,74 @@ public class FaceRecognitionManager {
         return faceProcessor.isDeveloperMode();
     }
     
+    /**
+     * Configure multi-frame voting bounds
+     * @param acceptBound Evidence margin needed to commit to a known identity
+     * @param rejectBound Evidence needed to commit to "Unknown"
+     * @param maxFrames Frames after which a decision is forced
+     */
+    public void setVotingBounds(float acceptBound, float rejectBound, int maxFrames) {
+        faceProcessor.getIdentityVoter().setBounds(acceptBound, rejectBound, maxFrames);
+    }
+    
+    /**
+     * Get frames-to-decision metrics of the identity voter
+     */
+    public IdentityVoter.Stats getVotingStats() {
+        return faceProcessor.getIdentityVoter().getStats();
+    }
+    
+    /**
+     * Get quality gate counters (inferences avoided and why)
+     */
+    public FaceQualityGate getQualityGate() {
+        return faceProcessor.getQualityGate();
+    }
+    
+    /**
+     * Get hot-set counters (hit ratio and comparisons per query)
+     */
+    public HotMatchCache getHotMatchCache() {
+        return faceProcessor.getHotMatchCache();
+    }
+    
+    /**
+     * Set how far below the similarity threshold a hot-set match must be to skip the full scan
+     */
+    public void setHotSetMargin(float margin) {
+        faceProcessor.getHotMatchCache().setMargin(margin);
+    }
+    
+    /**
+     * Get a camera stream's motion gate counters (frames skipped and estimated CPU saved)
+     */
+    public MotionGate getMotionGate(int cameraId) {
+        return faceProcessor.getMotionGate(cameraId);
+    }
+    
+    /**
+     * Enable or disable skipping detection while the scene is static and no face is tracked
+     */
+    public void setMotionGateEnabled(boolean enabled) {
+        faceProcessor.setMotionGateEnabled(enabled);
+    }
+    
     /**
      * Cleanup resources
      */
     public void cleanup() {
+        ProgressiveGalleryLoader loader = galleryLoader;
+        if (loader != null) {
+            loader.cancel();
+        }
+        cancelModelUpgrade();
+        registrationExecutor.shutdown();
+        registrationCapture.clear();
+        if (journal != null) {
+            journal.close();
+        }
+        setThumbnailStore(null);
+        faceProcessor.cleanup();
         if (modelManager != null) {
             modelManager.cleanup();
         }
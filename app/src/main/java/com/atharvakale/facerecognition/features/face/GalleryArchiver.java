@@ -0,0 +1,90 @@
+package com.atharvakale.facerecognition.features.face;
+
+import com.atharvakale.facerecognition.data.archive.GalleryArchive;
+import com.atharvakale.facerecognition.data.archive.GalleryArchiveReader;
+import com.atharvakale.facerecognition.data.archive.GalleryArchiveWriter;
+import com.atharvakale.facerecognition.data.thumbnails.ThumbnailStore;
+import com.atharvakale.facerecognition.ml.ModelConfig;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Moves a face recognition manager's gallery in and out of gallery archives, for provisioning
+ * devices that run the same model
+ */
+public class GalleryArchiver {
+    private final FaceRecognitionManager manager;
+
+    public GalleryArchiver(FaceRecognitionManager manager) {
+        this.manager = manager;
+    }
+
+    /**
+     * Stream every registered face, with its thumbnail if one is stored, into a gallery archive
+     * @param compress Deflate each chunk of the archive
+     * @return Faces written, or -1 on failure or while the stored gallery is still loading
+     */
+    public int exportGallery(OutputStream stream, boolean compress) {
+        // A partly loaded gallery would be exported incomplete
+        if (manager.isGalleryLoading()) {
+            return -1;
+        }
+        ThumbnailStore thumbnails = manager.getThumbnailStore();
+        try {
+            GalleryArchiveWriter writer = new GalleryArchiveWriter(stream, manager.getModelFingerprint(),
+                ModelConfig.FaceRecognition.OUTPUT_SIZE, compress);
+            for (Map.Entry<String, float[]> entry : manager.faceVectors().entrySet()) {
+                byte[] thumbnail = thumbnails != null ? thumbnails.readEncoded(entry.getKey()) : null;
+                writer.write(entry.getKey(), entry.getValue(), thumbnail);
+            }
+            return (int) writer.finish();
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    /**
+     * Register the faces of a gallery archive written by a device running the same model
+     * Faces are applied and journaled in batches as the archive streams in, replacing faces of the
+     * same name; the matching snapshot is rebuilt and storage written once at the end. Faces read
+     * before a damaged chunk are kept.
+     * @param stream Archive to read; closed when done
+     * @return Faces imported, or -1 if the archive is unreadable, damaged or from another model, or
+     *         the stored gallery is still loading
+     */
+    public int importGallery(InputStream stream) {
+        // Storing the import would drop the faces not loaded yet
+        if (manager.isGalleryLoading()) {
+            return -1;
+        }
+        int imported = 0;
+        boolean complete = false;
+        try (GalleryArchiveReader reader = new GalleryArchiveReader(stream)) {
+            if (!reader.getFingerprint().equals(manager.getModelFingerprint())
+                    || reader.getDimension() != ModelConfig.FaceRecognition.OUTPUT_SIZE) {
+                throw new IOException("Archive was written for model " + reader.getFingerprint()
+                    + " (" + reader.getDimension() + " dimensions)");
+            }
+            Map<String, GalleryArchive.Record> batch = new LinkedHashMap<>();
+            for (GalleryArchive.Record record = reader.next(); record != null; record = reader.next()) {
+                batch.put(record.name, record);
+                if (batch.size() >= ModelConfig.FaceRecognition.GALLERY_IMPORT_BATCH) {
+                    imported += manager.applyImportedFaces(batch);
+                    batch.clear();
+                }
+            }
+            imported += manager.applyImportedFaces(batch);
+            complete = true;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+        if (imported > 0) {
+            manager.finishImport();
+        }
+        return complete ? imported : -1;
+    }
+}
@@ -0,0 +1,167 @@
+package com.atharvakale.facerecognition.features.face;
+
+import android.graphics.Bitmap;
+import android.os.Process;
+import com.atharvakale.facerecognition.SimilarityClassifier;
+import com.atharvakale.facerecognition.data.FaceCropStore;
+import com.atharvakale.facerecognition.data.Repository;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Re-embeds the stored face crops of every registered identity with a new model
+ * Runs on a low-priority thread with a pause between faces so live recognition keeps its frame rate,
+ * and checkpoints finished embeddings into a staging repository so an interrupted job resumes
+ * where it stopped instead of starting over
+ */
+public class GalleryReembedder {
+    private final FaceCropStore cropStore;
+    private final Repository<String, SimilarityClassifier.Recognition> staging;
+    private final Embedder embedder;
+    private final long throttleMs;
+    private final int checkpointInterval;
+    private volatile boolean cancelled;
+    private Thread worker;
+
+    public interface Embedder {
+        float[][] embed(Bitmap crop);
+    }
+
+    public interface Listener {
+        void onProgress(int completed, int total);
+
+        /**
+         * @param embeddings New embeddings of every identity that had a stored crop
+         * @param missingCrops Identities without a stored crop (they need to be enrolled again)
+         */
+        void onFinished(Map<String, SimilarityClassifier.Recognition> embeddings, List<String> missingCrops);
+        void onError(String error);
+    }
+
+    /**
+     * @param staging Repository holding embeddings finished so far (its fingerprint names the target model)
+     * @param throttleMs Pause after each face
+     * @param checkpointInterval Faces embedded between checkpoints
+     */
+    public GalleryReembedder(FaceCropStore cropStore, Repository<String, SimilarityClassifier.Recognition> staging,
+                             Embedder embedder, long throttleMs, int checkpointInterval) {
+        this.cropStore = cropStore;
+        this.staging = staging;
+        this.embedder = embedder;
+        this.throttleMs = throttleMs;
+        this.checkpointInterval = Math.max(1, checkpointInterval);
+    }
+
+    /**
+     * Start re-embedding the given identities in the background
+     * Identities already present in the staging repository are not embedded again
+     */
+    public synchronized void start(Collection<String> names, Listener listener) {
+        if (worker != null) {
+            throw new IllegalStateException("Re-embedding already started");
+        }
+        List<String> pending = new ArrayList<>(names);
+        worker = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            run(pending, listener);
+        }, "gallery-reembed");
+        worker.start();
+    }
+
+    /**
+     * Stop after the current face; finished embeddings are checkpointed
+     */
+    public void cancel() {
+        cancelled = true;
+        Thread thread;
+        synchronized (this) {
+            thread = worker;
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Embed one crop synchronously (used for identities registered while the job was running)
+     * @return Recognition holding the new embedding, or null if there is no crop or inference failed
+     */
+    public SimilarityClassifier.Recognition embedStored(String name) {
+        Bitmap crop = cropStore.load(name);
+        if (crop == null) {
+            return null;
+        }
+        try {
+            float[][] embeddings = embedder.embed(crop);
+            if (embeddings == null) {
+                return null;
+            }
+            SimilarityClassifier.Recognition recognition = new SimilarityClassifier.Recognition("0", "", -1f);
+            recognition.setExtra(embeddings);
+            return recognition;
+        } finally {
+            crop.recycle();
+        }
+    }
+
+    /**
+     * Re-embed on the calling thread; start() runs this on the background worker
+     */
+    void run(List<String> names, Listener listener) {
+        try {
+            Map<String, SimilarityClassifier.Recognition> done = new HashMap<>(staging.loadAll());
+            List<String> missingCrops = new ArrayList<>();
+            int completed = 0;
+            int sinceCheckpoint = 0;
+            for (String name : names) {
+                if (done.containsKey(name)) {
+                    completed++;
+                }
+            }
+            listener.onProgress(completed, names.size());
+
+            for (String name : names) {
+                if (cancelled) {
+                    break;
+                }
+                if (done.containsKey(name)) {
+                    continue;
+                }
+                SimilarityClassifier.Recognition recognition = embedStored(name);
+                if (recognition == null) {
+                    missingCrops.add(name);
+                } else {
+                    done.put(name, recognition);
+                    if (++sinceCheckpoint >= checkpointInterval) {
+                        staging.saveAll(done);
+                        sinceCheckpoint = 0;
+                    }
+                }
+                listener.onProgress(++completed, names.size());
+
+                if (throttleMs > 0) {
+                    try {
+                        Thread.sleep(throttleMs);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+            }
+
+            staging.saveAll(done);
+            if (!cancelled) {
+                listener.onFinished(done, missingCrops);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            listener.onError("Re-embedding failed: " + e.getMessage());
+        }
+    }
+}
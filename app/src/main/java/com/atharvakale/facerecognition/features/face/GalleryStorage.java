@@ -0,0 +1,86 @@
+package com.atharvakale.facerecognition.features.face;
+
+import com.atharvakale.facerecognition.SimilarityClassifier;
+import com.atharvakale.facerecognition.data.Repository;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a face recognition manager's in-memory gallery to storage so that storage ends up
+ * matching memory, however enrollments, deletes, imports and replicated changes interleave
+ * Every write holds this object's monitor, taken before the gallery lock, and decides what to
+ * write from the gallery as it is at that moment: a snapshot is copied inside the monitor, a
+ * face is saved only while it is still the registered one and deleted only once it is gone.
+ * A write that lost a race therefore never overwrites a newer one. Callers that must keep
+ * files such as thumbnails in step with storage hold the monitor around them too.
+ */
+class GalleryStorage {
+    private final Object galleryLock;
+    private final Map<String, SimilarityClassifier.Recognition> faces;
+    private final Repository<String, SimilarityClassifier.Recognition> repository;
+
+    /**
+     * @param galleryLock Lock guarding the faces
+     * @param faces Registered faces, read only under the gallery lock
+     */
+    GalleryStorage(Object galleryLock, Map<String, SimilarityClassifier.Recognition> faces,
+                   Repository<String, SimilarityClassifier.Recognition> repository) {
+        this.galleryLock = galleryLock;
+        this.faces = faces;
+        this.repository = repository;
+    }
+
+    /**
+     * Replace storage with the faces registered now
+     * @return true if storage was written
+     */
+    synchronized boolean saveSnapshot() {
+        return repository.saveAll(snapshot());
+    }
+
+    /**
+     * Copy the faces registered now; writes made under this monitor see no change after it
+     */
+    synchronized Map<String, SimilarityClassifier.Recognition> snapshot() {
+        synchronized (galleryLock) {
+            return new HashMap<>(faces);
+        }
+    }
+
+    /**
+     * Store a newly registered face, unless it was replaced or deleted since
+     * @param beforeSave Run first when the face is still current (e.g. to store its thumbnail), may be null
+     * @return false only if storage could not be written
+     */
+    synchronized boolean saveFace(String name, SimilarityClassifier.Recognition recognition, Runnable beforeSave) {
+        synchronized (galleryLock) {
+            // Deleted or replaced in the meantime: the newer state is stored by its own write
+            if (faces.get(name) != recognition) {
+                return true;
+            }
+        }
+        if (beforeSave != null) {
+            beforeSave.run();
+        }
+        return repository.save(name, recognition);
+    }
+
+    /**
+     * Remove deleted faces from storage, skipping any registered again since
+     * @return true if storage was written
+     */
+    synchronized boolean deleteFaces(Collection<String> names) {
+        List<String> gone = new ArrayList<>();
+        synchronized (galleryLock) {
+            for (String name : names) {
+                if (!faces.containsKey(name)) {
+                    gone.add(name);
+                }
+            }
+        }
+        return !gone.isEmpty() && repository.deleteAll(gone);
+    }
+}
@@ -0,0 +1,271 @@
+package com.atharvakale.facerecognition.features.face;
+
+/**
+ * Small cache of recently matched identities, checked before the full gallery scan
+ * A query ends at the cache only if its best cached distance is below the similarity threshold
+ * minus a margin and below the identity's isolation radius (half the distance to its nearest other
+ * gallery row). By the triangle inequality no other row can then be closer, so an early exit
+ * returns exactly what the exhaustive scan would. An identity is admitted on its second accepted
+ * full-scan match, so one-off visitors do not evict regulars.
+ */
+public class HotMatchCache {
+    private final int capacity;
+    private final int[] rows;
+    private final float[] vectors;
+    private final float[] isolation;
+    private final long[] lastUsed;
+    private final int dimension;
+    private final int[] candidates;     // rows accepted once by a full scan, ring buffer
+    private int candidateCount;
+    private int size;
+    private FaceGallery gallery;
+    private float margin;
+    private long clock;
+
+    private long queries;
+    private long hits;
+    private long comparisons;
+    private long maintenanceComparisons;
+
+    /**
+     * Nearest gallery row for a query
+     */
+    public static class Match {
+        public final int row;
+        public final float distance;
+
+        Match(int row, float distance) {
+            this.row = row;
+            this.distance = distance;
+        }
+    }
+
+    /**
+     * @param capacity Identities kept
+     * @param dimension Embedding size
+     * @param margin Distance below the similarity threshold required to skip the full scan
+     */
+    public HotMatchCache(int capacity, int dimension, float margin) {
+        this.capacity = capacity;
+        this.dimension = dimension;
+        this.rows = new int[capacity];
+        this.vectors = new float[capacity * dimension];
+        this.isolation = new float[capacity];
+        this.lastUsed = new long[capacity];
+        this.candidates = new int[Math.max(1, capacity * 4)];
+        this.margin = margin;
+    }
+
+    /**
+     * Check the cached identities
+     * @return Nearest gallery row if the full scan can be skipped, null otherwise
+     */
+    public synchronized Match lookup(FaceGallery gallery, float[] query, float threshold) {
+        queries++;
+        if (gallery != this.gallery) {
+            reset(gallery);
+        }
+        if (gallery.getDimension() != dimension) {
+            return null;
+        }
+        int best = -1;
+        float bestDistance = Float.POSITIVE_INFINITY;
+        for (int slot = 0; slot < size; slot++) {
+            float distance = distance(query, slot);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = slot;
+            }
+        }
+        comparisons += size;
+        if (best < 0 || bestDistance >= threshold - margin || bestDistance >= isolation[best]) {
+            return null;
+        }
+        hits++;
+        lastUsed[best] = ++clock;
+        return new Match(rows[best], bestDistance);
+    }
+
+    /**
+     * Nearest row for a query: the cache when it can decide, otherwise a full scan whose
+     * accepted match is then cached
+     * @return Nearest row, or null for an empty gallery
+     */
+    public Match findNearest(FaceGallery gallery, float[] query, float threshold, ParallelGalleryMatcher matcher) {
+        Match hit = lookup(gallery, query, threshold);
+        if (hit != null) {
+            gallery.recordMatch(hit.row);
+            return hit;
+        }
+        NearestMatches matches = matcher.findNearest(gallery, query, 1);
+        recordFullScan(gallery.size());
+        if (matches.isEmpty()) {
+            return null;
+        }
+        int row = matches.getRow(0);
+        if (matches.getDistance(0) < threshold) {
+            gallery.recordMatch(row);
+            if (!contains(gallery, row) && admit(row)) {
+                cache(gallery, row, matcher);
+            }
+        }
+        return new Match(row, matches.getDistance(0));
+    }
+
+    /**
+     * Whether a row accepted by a full scan was accepted before; remembers it otherwise
+     */
+    private synchronized boolean admit(int row) {
+        int held = Math.min(candidateCount, candidates.length);
+        for (int i = 0; i < held; i++) {
+            if (candidates[i] == row) {
+                return true;
+            }
+        }
+        candidates[candidateCount++ % candidates.length] = row;
+        return false;
+    }
+
+    /**
+     * Measure the row's isolation radius with one more scan and cache it
+     */
+    private void cache(FaceGallery gallery, int row, ParallelGalleryMatcher matcher) {
+        float[] vector = new float[gallery.getDimension()];
+        gallery.copyRow(row, vector);
+        NearestMatches neighbours = matcher.findNearest(gallery, vector, 2);
+        float nearestOther = Float.POSITIVE_INFINITY;
+        for (int rank = 0; rank < neighbours.size(); rank++) {
+            if (neighbours.getRow(rank) != row) {
+                nearestOther = neighbours.getDistance(rank);
+                break;
+            }
+        }
+        insert(gallery, row, vector, nearestOther, gallery.size());
+    }
+
+    /**
+     * Count the rows compared by a full scan after a miss
+     */
+    public synchronized void recordFullScan(int rowsCompared) {
+        comparisons += rowsCompared;
+    }
+
+    /**
+     * Add an identity accepted by a full scan, replacing the least recently used one
+     * @param nearestOtherDistance Distance from the row to its nearest other gallery row
+     */
+    public synchronized void insert(FaceGallery gallery, int row, float[] vector, float nearestOtherDistance,
+                                    int rowsCompared) {
+        maintenanceComparisons += rowsCompared;
+        comparisons += rowsCompared;
+        if (gallery != this.gallery || capacity == 0 || gallery.getDimension() != dimension) {
+            return;
+        }
+        int slot = -1;
+        for (int i = 0; i < size; i++) {
+            if (rows[i] == row) {
+                slot = i;
+                break;
+            }
+        }
+        if (slot < 0) {
+            if (size < capacity) {
+                slot = size++;
+            } else {
+                slot = 0;
+                for (int i = 1; i < size; i++) {
+                    if (lastUsed[i] < lastUsed[slot]) {
+                        slot = i;
+                    }
+                }
+            }
+        }
+        rows[slot] = row;
+        System.arraycopy(vector, 0, vectors, slot * dimension, dimension);
+        isolation[slot] = nearestOtherDistance / 2f;
+        lastUsed[slot] = ++clock;
+    }
+
+    /**
+     * Whether the row is cached for the given gallery snapshot
+     */
+    public synchronized boolean contains(FaceGallery gallery, int row) {
+        if (gallery != this.gallery) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (rows[i] == row) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private float distance(float[] query, int slot) {
+        int base = slot * dimension;
+        float distance = 0;
+        for (int i = 0; i < dimension; i++) {
+            float diff = query[i] - vectors[base + i];
+            distance += diff * diff;
+        }
+        return (float) Math.sqrt(distance);
+    }
+
+    /**
+     * Drop cached rows; they belong to one gallery snapshot
+     */
+    private void reset(FaceGallery gallery) {
+        this.gallery = gallery;
+        size = 0;
+        candidateCount = 0;
+    }
+
+    public synchronized void setMargin(float margin) {
+        this.margin = margin;
+    }
+
+    public synchronized float getMargin() {
+        return margin;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized long getQueries() {
+        return queries;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized float getHitRatio() {
+        return queries == 0 ? 0f : (float) hits / queries;
+    }
+
+    /**
+     * Embedding comparisons per query, including cache checks, full scans and the scans
+     * that measure the isolation radius of inserted identities
+     */
+    public synchronized float getAverageComparisons() {
+        return queries == 0 ? 0f : (float) comparisons / queries;
+    }
+
+    public synchronized long getMaintenanceComparisons() {
+        return maintenanceComparisons;
+    }
+
+    public synchronized void resetCounters() {
+        queries = 0;
+        hits = 0;
+        comparisons = 0;
+        maintenanceComparisons = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("queries=%d hits=%d (%.0f%%) avgComparisons=%.1f cached=%d/%d margin=%.2f",
+            queries, hits, getHitRatio() * 100f, getAverageComparisons(), size, capacity, margin);
+    }
+}
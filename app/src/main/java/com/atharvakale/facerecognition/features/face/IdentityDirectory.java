@@ -0,0 +1,246 @@
+package com.atharvakale.facerecognition.features.face;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Searchable index of registered identity names for browsing large galleries
+ * Names are kept in a case-insensitively sorted array, so a prefix is a contiguous range found by
+ * binary search and a page is a slice of it. Lookups never copy the whole name set.
+ */
+public class IdentityDirectory {
+    public static final long NEVER_SEEN = 0L;
+
+    /**
+     * Case-insensitive order with an exact tie break, so names differing only in case stay distinct
+     */
+    private static final Comparator<String> NAME_ORDER = new Comparator<String>() {
+        @Override
+        public int compare(String a, String b) {
+            int result = String.CASE_INSENSITIVE_ORDER.compare(a, b);
+            return result != 0 ? result : a.compareTo(b);
+        }
+    };
+
+    public enum Order {
+        NAME,
+        RECENTLY_SEEN
+    }
+
+    /**
+     * Selects identities for bulk operations
+     */
+    public interface Filter {
+        boolean accept(String name, long lastSeenMs);
+    }
+
+    /**
+     * One page of a query
+     */
+    public static class Page {
+        public final List<String> names;
+        public final int offset;
+        public final int total;     // matches of the whole query
+
+        Page(List<String> names, int offset, int total) {
+            this.names = names;
+            this.offset = offset;
+            this.total = total;
+        }
+
+        public boolean hasMore() {
+            return offset + names.size() < total;
+        }
+    }
+
+    private volatile String[] sortedNames = new String[0];
+    private final ConcurrentHashMap<String, Long> lastSeenMs = new ConcurrentHashMap<>();
+
+    /**
+     * Replace the indexed names after a gallery change; last-seen times of removed names are dropped
+     */
+    public void setNames(Collection<String> names) {
+        String[] sorted = names.toArray(new String[0]);
+        Arrays.sort(sorted, NAME_ORDER);
+        sortedNames = sorted;
+        lastSeenMs.keySet().retainAll(new HashSet<>(Arrays.asList(sorted)));
+    }
+
+    /**
+     * Record that an identity was recognized (wall-clock time); ignored for names not in the index
+     */
+    public void markSeen(String name, long timeMs) {
+        if (name == null || !contains(name)) {
+            return;
+        }
+        // Seeding from the journal runs alongside live recognitions; never move a time backwards
+        while (true) {
+            Long previous = lastSeenMs.putIfAbsent(name, timeMs);
+            if (previous == null || previous >= timeMs || lastSeenMs.replace(name, previous, timeMs)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return Wall-clock time the identity was last recognized, or NEVER_SEEN
+     */
+    public long getLastSeen(String name) {
+        Long seen = lastSeenMs.get(name);
+        return seen != null ? seen : NEVER_SEEN;
+    }
+
+    public int size() {
+        return sortedNames.length;
+    }
+
+    public boolean contains(String name) {
+        return Arrays.binarySearch(sortedNames, name, NAME_ORDER) >= 0;
+    }
+
+    /**
+     * Number of names starting with the prefix (case-insensitive)
+     */
+    public int count(String prefix) {
+        String[] names = sortedNames;
+        int[] range = prefixRange(names, prefix);
+        return range[1] - range[0];
+    }
+
+    /**
+     * Query a page of names
+     * @param prefix Case-insensitive name prefix, empty or null for all names
+     * @param order NAME sorts alphabetically; RECENTLY_SEEN puts the latest recognized first,
+     *              followed by never-seen names alphabetically
+     */
+    public Page query(String prefix, int offset, int limit, Order order) {
+        String[] names = sortedNames;
+        int[] range = prefixRange(names, prefix);
+        int total = range[1] - range[0];
+        int start = Math.max(0, Math.min(offset, total));
+        int end = Math.min(total, start + Math.max(0, limit));
+
+        if (order == Order.NAME) {
+            List<String> page = new ArrayList<>(end - start);
+            for (int i = range[0] + start; i < range[0] + end; i++) {
+                page.add(names[i]);
+            }
+            return new Page(page, start, total);
+        }
+
+        // Only the seen identities are sorted by time; unseen ones keep their index order
+        List<String> seen = new ArrayList<>();
+        for (String name : lastSeenMs.keySet()) {
+            if ((prefix == null || prefix.isEmpty() || startsWithIgnoreCase(name, prefix)) && contains(name)) {
+                seen.add(name);
+            }
+        }
+        Collections.sort(seen, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                int result = Long.compare(getLastSeen(b), getLastSeen(a));
+                return result != 0 ? result : NAME_ORDER.compare(a, b);
+            }
+        });
+        List<String> page = new ArrayList<>(end - start);
+        for (int i = start; i < Math.min(end, seen.size()); i++) {
+            page.add(seen.get(i));
+        }
+        if (page.size() < end - start) {
+            int skipUnseen = Math.max(0, start - seen.size());
+            for (int i = range[0]; i < range[1] && page.size() < end - start; i++) {
+                if (lastSeenMs.containsKey(names[i])) {
+                    continue;
+                }
+                if (skipUnseen > 0) {
+                    skipUnseen--;
+                    continue;
+                }
+                page.add(names[i]);
+            }
+        }
+        return new Page(page, start, total);
+    }
+
+    /**
+     * Names that have been recognized since the given wall-clock time
+     */
+    public Set<String> getSeenSince(long timeMs) {
+        Set<String> names = new HashSet<>();
+        for (Map.Entry<String, Long> entry : lastSeenMs.entrySet()) {
+            if (entry.getValue() >= timeMs) {
+                names.add(entry.getKey());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * All names accepted by the filter, in name order
+     */
+    public List<String> select(Filter filter) {
+        List<String> selected = new ArrayList<>();
+        for (String name : sortedNames) {
+            if (filter.accept(name, getLastSeen(name))) {
+                selected.add(name);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * All names starting with the prefix, in name order
+     */
+    public List<String> selectPrefix(String prefix) {
+        String[] names = sortedNames;
+        int[] range = prefixRange(names, prefix);
+        return new ArrayList<>(Arrays.asList(names).subList(range[0], range[1]));
+    }
+
+    /**
+     * Index range [from, to) of the names starting with the prefix; names with a prefix are
+     * contiguous in case-insensitive order
+     */
+    private static int[] prefixRange(String[] names, String prefix) {
+        if (prefix == null || prefix.isEmpty()) {
+            return new int[]{0, names.length};
+        }
+        return new int[]{bound(names, prefix, false), bound(names, prefix, true)};
+    }
+
+    /**
+     * First index whose name compares above the prefix (upper) or at least equal to it (lower),
+     * looking only at the leading prefix-length characters
+     */
+    private static int bound(String[] names, String prefix, boolean upper) {
+        int low = 0;
+        int high = names.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int result = comparePrefix(names[mid], prefix);
+            if (upper ? result <= 0 : result < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int comparePrefix(String name, String prefix) {
+        String head = name.length() > prefix.length() ? name.substring(0, prefix.length()) : name;
+        return String.CASE_INSENSITIVE_ORDER.compare(head, prefix);
+    }
+
+    private static boolean startsWithIgnoreCase(String name, String prefix) {
+        return name.regionMatches(true, 0, prefix, 0, prefix.length());
+    }
+}
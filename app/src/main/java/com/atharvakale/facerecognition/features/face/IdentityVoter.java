@@ -0,0 +1,336 @@
+package com.atharvakale.facerecognition.features.face;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Temporal decision layer for face recognition
+ * Accumulates per-frame match distances for each tracked face and commits to an identity
+ * as soon as the evidence crosses a confidence bound (sequential test with early stopping)
+ */
+public class IdentityVoter {
+    public static final int NO_TRACK = -1;
+
+    private float acceptBound;
+    private float rejectBound;
+    private int maxFrames;
+    private long trackTimeoutMs;
+    private long unknownRecheckMs;
+
+    private final Map<Long, TrackState> tracks = new HashMap<>();
+    private final Stats stats = new Stats();
+
+    /**
+     * Committed identity for a track
+     */
+    public static class Decision {
+        public final String name;
+        public final float distance;
+        public final boolean isKnown;
+        public final boolean isForced;
+        public final int frames;
+        public final long elapsedMs;
+
+        Decision(String name, float distance, boolean isKnown, boolean isForced, int frames, long elapsedMs) {
+            this.name = name;
+            this.distance = distance;
+            this.isKnown = isKnown;
+            this.isForced = isForced;
+            this.frames = frames;
+            this.elapsedMs = elapsedMs;
+        }
+    }
+
+    /**
+     * Frames-to-decision metrics
+     */
+    public static class Stats {
+        private long knownDecisions;
+        private long unknownDecisions;
+        private long forcedDecisions;
+        private long totalFrames;
+        private long totalElapsedMs;
+        private long skippedFrames;
+        private int[] histogram = new int[0];
+
+        public synchronized long getKnownDecisions() { return knownDecisions; }
+        public synchronized long getUnknownDecisions() { return unknownDecisions; }
+        public synchronized long getForcedDecisions() { return forcedDecisions; }
+
+        /**
+         * Frames whose embedding was skipped because the track was already decided
+         */
+        public synchronized long getSkippedFrames() { return skippedFrames; }
+
+        public synchronized long getDecisionCount() {
+            return knownDecisions + unknownDecisions;
+        }
+
+        public synchronized float getAverageFramesToDecision() {
+            long decisions = knownDecisions + unknownDecisions;
+            return decisions == 0 ? 0f : (float) totalFrames / decisions;
+        }
+
+        public synchronized float getAverageTimeToDecisionMs() {
+            long decisions = knownDecisions + unknownDecisions;
+            return decisions == 0 ? 0f : (float) totalElapsedMs / decisions;
+        }
+
+        /**
+         * Decision count indexed by number of frames it took (index 0 unused)
+         */
+        public synchronized int[] getFramesToDecisionHistogram() {
+            return histogram.clone();
+        }
+
+        public synchronized void reset() {
+            knownDecisions = 0;
+            unknownDecisions = 0;
+            forcedDecisions = 0;
+            totalFrames = 0;
+            totalElapsedMs = 0;
+            skippedFrames = 0;
+            histogram = new int[0];
+        }
+
+        synchronized void record(Decision decision) {
+            if (decision.isKnown) {
+                knownDecisions++;
+            } else {
+                unknownDecisions++;
+            }
+            if (decision.isForced) {
+                forcedDecisions++;
+            }
+            totalFrames += decision.frames;
+            totalElapsedMs += decision.elapsedMs;
+            if (decision.frames >= histogram.length) {
+                int[] grown = new int[decision.frames + 1];
+                System.arraycopy(histogram, 0, grown, 0, histogram.length);
+                histogram = grown;
+            }
+            histogram[decision.frames]++;
+        }
+
+        synchronized void recordSkipped() {
+            skippedFrames++;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("decisions=%d (known=%d, unknown=%d, forced=%d) avgFrames=%.2f avgMs=%.1f skipped=%d",
+                knownDecisions + unknownDecisions, knownDecisions, unknownDecisions, forcedDecisions,
+                getAverageFramesToDecision(), getAverageTimeToDecisionMs(), skippedFrames);
+        }
+    }
+
+    private static class TrackState {
+        final long firstSeenMs;
+        long lastSeenMs;
+        int frames;
+        float unknownEvidence;
+        final Map<String, Float> knownEvidence = new HashMap<>();
+        final Map<String, Float> bestDistance = new HashMap<>();
+        float lastDistance;
+        Decision decision;
+        long decidedAtMs;
+
+        TrackState(long nowMs) {
+            this.firstSeenMs = nowMs;
+            this.lastSeenMs = nowMs;
+        }
+    }
+
+    /**
+     * @param acceptBound Evidence margin the leading identity needs over the runner-up to be accepted
+     * @param rejectBound Evidence needed to declare the track unknown
+     * @param maxFrames Frames after which a decision is forced
+     * @param trackTimeoutMs Idle time after which a track is forgotten
+     * @param unknownRecheckMs Time after which an unknown decision is re-evaluated (0 = never)
+     */
+    public IdentityVoter(float acceptBound, float rejectBound, int maxFrames,
+                         long trackTimeoutMs, long unknownRecheckMs) {
+        setBounds(acceptBound, rejectBound, maxFrames);
+        this.trackTimeoutMs = trackTimeoutMs;
+        this.unknownRecheckMs = unknownRecheckMs;
+    }
+
+    /**
+     * Combine a camera and a detector track ID into one key, since each camera's detector numbers
+     * its tracks independently
+     */
+    public static long trackKey(int cameraId, int trackId) {
+        if (trackId == NO_TRACK) {
+            return NO_TRACK;
+        }
+        return ((long) cameraId << 32) | (trackId & 0xffffffffL);
+    }
+
+    /**
+     * Get the committed decision for a track, if any
+     * @param trackId Track key (see trackKey) or NO_TRACK
+     * @return Decision or null if the track is still being evaluated
+     */
+    public synchronized Decision getDecision(long trackId, long nowMs) {
+        if (trackId == NO_TRACK) {
+            return null;
+        }
+        evictStale(nowMs);
+        TrackState track = tracks.get(trackId);
+        if (track == null || track.decision == null) {
+            return null;
+        }
+        if (!track.decision.isKnown && unknownRecheckMs > 0 && nowMs - track.decidedAtMs >= unknownRecheckMs) {
+            tracks.remove(trackId);
+            return null;
+        }
+        track.lastSeenMs = nowMs;
+        stats.recordSkipped();
+        return track.decision;
+    }
+
+    /**
+     * Add one frame's nearest match to a track's evidence
+     * Untracked faces cannot be followed across frames, so their frames are never pooled (two strangers
+     * would otherwise vote together): each one is decided on its own against the threshold
+     * @param nearestName Closest registered identity for this frame
+     * @param distance Distance to the closest identity
+     * @param threshold Current similarity threshold
+     * @return Decision if the track was committed by this frame, null otherwise
+     */
+    public synchronized Decision addObservation(long trackId, String nearestName, float distance,
+                                                float threshold, long nowMs) {
+        if (trackId == NO_TRACK) {
+            boolean isKnown = distance < threshold;
+            Decision decision = new Decision(isKnown ? nearestName : "Unknown", distance, isKnown, false, 1, 0);
+            stats.record(decision);
+            return decision;
+        }
+        evictStale(nowMs);
+        TrackState track = tracks.get(trackId);
+        if (track == null || track.decision != null) {
+            track = new TrackState(nowMs);
+            tracks.put(trackId, track);
+        }
+        track.lastSeenMs = nowMs;
+        track.frames++;
+        track.lastDistance = distance;
+
+        // Normalized per-frame evidence, positive on one side of the threshold only
+        float known = Math.max(0f, (threshold - distance) / threshold);
+        float unknown = Math.max(0f, (distance - threshold) / threshold);
+
+        Float previous = track.knownEvidence.get(nearestName);
+        track.knownEvidence.put(nearestName, (previous != null ? previous : 0f) + known);
+        Float best = track.bestDistance.get(nearestName);
+        if (best == null || distance < best) {
+            track.bestDistance.put(nearestName, distance);
+        }
+        track.unknownEvidence += unknown;
+
+        String leader = null;
+        float leaderScore = 0f;
+        float runnerUpScore = 0f;
+        for (Map.Entry<String, Float> entry : track.knownEvidence.entrySet()) {
+            float score = entry.getValue();
+            if (leader == null || score > leaderScore) {
+                runnerUpScore = leader == null ? 0f : leaderScore;
+                leader = entry.getKey();
+                leaderScore = score;
+            } else if (score > runnerUpScore) {
+                runnerUpScore = score;
+            }
+        }
+
+        Decision decision = null;
+        if (leader != null && leaderScore - runnerUpScore >= acceptBound) {
+            decision = new Decision(leader, track.bestDistance.get(leader), true, false,
+                track.frames, nowMs - track.firstSeenMs);
+        } else if (track.unknownEvidence >= rejectBound) {
+            decision = new Decision("Unknown", track.lastDistance, false, false,
+                track.frames, nowMs - track.firstSeenMs);
+        } else if (track.frames >= maxFrames) {
+            boolean isKnown = leader != null && leaderScore > track.unknownEvidence;
+            decision = new Decision(isKnown ? leader : "Unknown",
+                isKnown ? track.bestDistance.get(leader) : track.lastDistance,
+                isKnown, true, track.frames, nowMs - track.firstSeenMs);
+        }
+
+        if (decision != null) {
+            stats.record(decision);
+            track.decision = decision;
+            track.decidedAtMs = nowMs;
+        }
+        return decision;
+    }
+
+    /**
+     * Forget all tracks, e.g. after the registered faces changed
+     */
+    public synchronized void reset() {
+        tracks.clear();
+    }
+
+    /**
+     * Forget the tracks decided unknown, keeping accepted identities, e.g. after faces were added
+     * that those tracks may match
+     */
+    public synchronized void resetUnknown() {
+        Iterator<TrackState> iterator = tracks.values().iterator();
+        while (iterator.hasNext()) {
+            Decision decision = iterator.next().decision;
+            if (decision != null && !decision.isKnown) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Forget a single track
+     */
+    public synchronized void resetTrack(long trackId) {
+        tracks.remove(trackId);
+    }
+
+    /**
+     * Update the decision bounds; tracks in progress keep their accumulated evidence
+     */
+    public synchronized void setBounds(float acceptBound, float rejectBound, int maxFrames) {
+        if (acceptBound <= 0f || rejectBound <= 0f || maxFrames < 1) {
+            throw new IllegalArgumentException("Voting bounds must be positive");
+        }
+        this.acceptBound = acceptBound;
+        this.rejectBound = rejectBound;
+        this.maxFrames = maxFrames;
+    }
+
+    public synchronized float getAcceptBound() {
+        return acceptBound;
+    }
+
+    public synchronized float getRejectBound() {
+        return rejectBound;
+    }
+
+    public synchronized int getMaxFrames() {
+        return maxFrames;
+    }
+
+    public synchronized int getActiveTrackCount() {
+        return tracks.size();
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+
+    private void evictStale(long nowMs) {
+        Iterator<TrackState> it = tracks.values().iterator();
+        while (it.hasNext()) {
+            if (nowMs - it.next().lastSeenMs > trackTimeoutMs) {
+                it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.atharvakale.facerecognition.features.face;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import com.atharvakale.facerecognition.features.face.detection.FaceDetector;
+import com.atharvakale.facerecognition.ml.InferenceProfile;
+import com.atharvakale.facerecognition.ml.MLModelManager;
+import com.atharvakale.facerecognition.ml.ModelConfig;
+import java.util.Arrays;
+
+/**
+ * Picks the fastest inference setup for the device by timing candidates through MLModelManager
+ * Thread count and XNNPACK are measured first, then batch size with the winner, then the int8 model
+ * (if bundled) and finally the largest analysis resolution whose detection fits the frame budget.
+ * Runs for a few seconds, so call it off the UI thread.
+ */
+public class InferenceAutotuner {
+    private static final String TUNING_MODEL_KEY = "autotune_quantized";
+
+    private final MLModelManager modelManager;
+    private final int warmupRuns;
+    private final int timedRuns;
+    private final int cores;
+
+    private static class Resolution {
+        final int width;
+        final int height;
+        final float detectionMs;
+
+        Resolution(int width, int height, float detectionMs) {
+            this.width = width;
+            this.height = height;
+            this.detectionMs = detectionMs;
+        }
+    }
+
+    public InferenceAutotuner(MLModelManager modelManager) {
+        this(modelManager, ModelConfig.Autotune.WARMUP_RUNS, ModelConfig.Autotune.TIMED_RUNS);
+    }
+
+    public InferenceAutotuner(MLModelManager modelManager, int warmupRuns, int timedRuns) {
+        this(modelManager, warmupRuns, timedRuns, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param cores Thread candidates above this are not measured
+     */
+    InferenceAutotuner(MLModelManager modelManager, int warmupRuns, int timedRuns, int cores) {
+        this.modelManager = modelManager;
+        this.warmupRuns = warmupRuns;
+        this.timedRuns = timedRuns;
+        this.cores = cores;
+    }
+
+    /**
+     * Key of the current device and OS build that profiles are stored under
+     */
+    public static String deviceKey() {
+        return Build.MANUFACTURER + " " + Build.MODEL + " / Android " + Build.VERSION.RELEASE
+            + " (API " + Build.VERSION.SDK_INT + ")";
+    }
+
+    /**
+     * Whether a stored profile is missing or was measured with another model
+     */
+    public static boolean needsTuning(InferenceProfile profile, String modelFingerprint) {
+        return profile == null || !profile.matches(modelFingerprint) || !deviceKey().equals(profile.deviceKey);
+    }
+
+    /**
+     * Benchmark the candidate configurations
+     * @param modelKey Loaded embedding model
+     * @param detector Detector to time at each analysis resolution, or null to keep the default resolution
+     * @return Winning profile, or null if the model could not be benchmarked at all
+     */
+    public InferenceProfile tune(String modelKey, FaceDetector detector) {
+        // Threads x XNNPACK at batch size 1
+        int bestThreads = -1;
+        boolean bestXnnpack = true;
+        float bestMs = Float.MAX_VALUE;
+        for (int threads : ModelConfig.Autotune.THREAD_CANDIDATES) {
+            if (threads > cores) {
+                continue;
+            }
+            for (boolean xnnpack : new boolean[]{true, false}) {
+                float ms = modelManager.benchmark(modelKey, threads, xnnpack, 1, warmupRuns, timedRuns);
+                if (ms >= 0 && ms < bestMs) {
+                    bestMs = ms;
+                    bestThreads = threads;
+                    bestXnnpack = xnnpack;
+                }
+            }
+        }
+        if (bestMs == Float.MAX_VALUE) {
+            return null;
+        }
+
+        // Batch size: only worth its extra latency if it is clearly cheaper per face
+        int bestBatch = 1;
+        float bestBatchMs = bestMs;
+        for (int batch : ModelConfig.Autotune.BATCH_CANDIDATES) {
+            if (batch == 1) {
+                continue;
+            }
+            float ms = modelManager.benchmark(modelKey, bestThreads, bestXnnpack, batch, warmupRuns, timedRuns);
+            if (ms >= 0 && ms < bestBatchMs * (1f - ModelConfig.Autotune.MIN_BATCH_GAIN)) {
+                bestBatch = batch;
+                bestBatchMs = ms;
+            }
+        }
+
+        boolean preferQuantized = false;
+        if (modelManager.loadModel(ModelConfig.Autotune.QUANTIZED_MODEL_FILE, TUNING_MODEL_KEY)) {
+            try {
+                float ms = modelManager.benchmark(TUNING_MODEL_KEY, bestThreads, bestXnnpack, 1, warmupRuns, timedRuns);
+                preferQuantized = ms >= 0 && ms < bestMs * (1f - ModelConfig.Autotune.MIN_QUANTIZED_GAIN);
+            } finally {
+                modelManager.unloadModel(TUNING_MODEL_KEY);
+            }
+        }
+
+        Resolution resolution = detector != null ? pickResolution(detector, bestMs) : null;
+        if (resolution == null) {
+            resolution = new Resolution(ModelConfig.Autotune.DEFAULT_ANALYSIS_WIDTH,
+                ModelConfig.Autotune.DEFAULT_ANALYSIS_HEIGHT, -1f);
+        }
+
+        return new InferenceProfile(deviceKey(), modelManager.getModelFingerprint(modelKey), bestThreads,
+            bestXnnpack, bestBatch, preferQuantized, resolution.width, resolution.height, bestMs,
+            resolution.detectionMs, System.currentTimeMillis());
+    }
+
+    /**
+     * Largest candidate resolution whose detection plus one embedding fits the frame budget
+     * (candidates are ordered from largest); the smallest measured one if none fits
+     * @return Resolution, or null if detection failed at every candidate
+     */
+    private Resolution pickResolution(FaceDetector template, float embeddingMs) {
+        FaceDetector detector = template.newInstance();
+        try {
+            Resolution smallest = null;
+            for (int[] candidate : ModelConfig.Autotune.RESOLUTION_CANDIDATES) {
+                float ms = timeDetection(detector, candidate[0], candidate[1]);
+                if (ms < 0) {
+                    continue;
+                }
+                smallest = new Resolution(candidate[0], candidate[1], ms);
+                if (ms + embeddingMs <= ModelConfig.Autotune.FRAME_BUDGET_MS) {
+                    return smallest;
+                }
+            }
+            return smallest;
+        } finally {
+            detector.close();
+        }
+    }
+
+    /**
+     * Median milliseconds to detect faces in a blank frame of the given size, or -1 if detection failed
+     */
+    float timeDetection(FaceDetector detector, int width, int height) {
+        Bitmap frame = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        try {
+            long[] durations = new long[timedRuns];
+            for (int run = -warmupRuns; run < timedRuns; run++) {
+                long start = System.nanoTime();
+                detector.detect(null, frame, 0);
+                if (run >= 0) {
+                    durations[run] = System.nanoTime() - start;
+                }
+            }
+            Arrays.sort(durations);
+            return durations[timedRuns / 2] / 1e6f;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return -1f;
+        } finally {
+            frame.recycle();
+        }
+    }
+}
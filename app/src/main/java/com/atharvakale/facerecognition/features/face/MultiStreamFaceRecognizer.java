@@ -0,0 +1,157 @@
+package com.atharvakale.facerecognition.features.face;
+
+import android.graphics.Bitmap;
+import androidx.annotation.NonNull;
+import androidx.camera.core.ImageProxy;
+import com.atharvakale.facerecognition.diagnostics.MetricsSource;
+import com.atharvakale.facerecognition.diagnostics.MetricsWriter;
+import com.atharvakale.facerecognition.pipeline.DropPolicy;
+import com.atharvakale.facerecognition.pipeline.FrameScheduler;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Recognizes faces from several frame sources (cameras or replayed clips) at once
+ * All streams share one gallery, one identity voter and a pool of embedding interpreters;
+ * a fair scheduler spreads the worker threads over the streams
+ */
+public class MultiStreamFaceRecognizer implements MetricsSource {
+    private final FrameScheduler<ImageProxy> scheduler;
+    private final StreamCallback callback;
+    private final Map<Integer, Boolean> flipByStream = new ConcurrentHashMap<>();
+    private final Map<Integer, FaceRecognitionManager.FaceRecognitionCallback> callbacks = new ConcurrentHashMap<>();
+
+    public interface StreamCallback {
+        /**
+         * @param isProvisional Matched while the stored gallery was still loading
+         */
+        void onFaceRecognized(int streamId, String name, float distance, boolean isKnown, boolean isProvisional);
+        void onNoFaceDetected(int streamId);
+        void onError(int streamId, String error);
+    }
+
+    /**
+     * @param workers Worker threads (and embedding interpreters) shared by all streams
+     */
+    public MultiStreamFaceRecognizer(FaceRecognitionManager manager, int workers, StreamCallback callback) {
+        this.callback = callback;
+        manager.setInferenceParallelism(workers);
+        this.scheduler = new FrameScheduler<>(workers, new FrameScheduler.FrameHandler<ImageProxy>() {
+            @Override
+            public void process(int streamId, ImageProxy frame) {
+                Boolean flipX = flipByStream.get(streamId);
+                FaceRecognitionManager.FaceRecognitionCallback streamCallback = callbacks.get(streamId);
+                if (flipX == null || streamCallback == null) {
+                    frame.close();
+                    return;
+                }
+                manager.processFrameBlocking(frame, flipX, streamId, streamCallback);
+            }
+
+            @Override
+            public void discard(int streamId, ImageProxy frame) {
+                frame.close();
+            }
+        });
+        scheduler.start();
+    }
+
+    /**
+     * Add a live camera: only the newest frame waits, older ones are dropped under load
+     */
+    public void addCameraStream(int streamId, boolean flipX) {
+        addStream(streamId, flipX, 1, 1, DropPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * Add a replayed clip: every frame is analyzed and the producer waits when the pipeline is busy
+     */
+    public void addReplayStream(int streamId, boolean flipX) {
+        addStream(streamId, flipX, 1, 4, DropPolicy.BLOCK);
+    }
+
+    /**
+     * Add a stream with explicit scheduling parameters
+     * @param weight Share of the workers relative to other streams
+     * @param queueCapacity Frames that may wait before the drop policy applies
+     */
+    public void addStream(int streamId, boolean flipX, int weight, int queueCapacity, DropPolicy policy) {
+        flipByStream.put(streamId, flipX);
+        callbacks.put(streamId, forStream(streamId, callback));
+        // One frame in flight per stream keeps its frames in order for face tracking
+        scheduler.addStream(streamId, weight, queueCapacity, 1, policy);
+    }
+
+    public void removeStream(int streamId) {
+        scheduler.removeStream(streamId);
+        flipByStream.remove(streamId);
+        callbacks.remove(streamId);
+    }
+
+    /**
+     * Hand a frame to the shared pipeline; the frame is closed once processed or dropped
+     * @return false if the frame was dropped
+     */
+    public boolean submit(int streamId, @NonNull ImageProxy frame) {
+        return scheduler.submit(streamId, frame);
+    }
+
+    /**
+     * Get submitted/processed/dropped counters of a stream
+     */
+    public FrameScheduler.StreamStats getStreamStats(int streamId) {
+        return scheduler.getStats(streamId);
+    }
+
+    /**
+     * Report per-stream queue depths and frame counts (register with ControlServers.addMetricsSource)
+     */
+    @Override
+    public void collect(MetricsWriter writer) {
+        for (Integer streamId : flipByStream.keySet()) {
+            FrameScheduler.StreamStats stats = scheduler.getStats(streamId);
+            if (stats == null) {
+                continue;
+            }
+            String stream = String.valueOf(streamId);
+            writer.gauge("stream_queue_depth", "Frames waiting per stream", stats.queued, "stream", stream);
+            writer.counter("stream_frames_processed_total", "Frames processed per stream", stats.processed, "stream", stream);
+            writer.counter("stream_frames_dropped_total", "Frames dropped under load per stream", stats.dropped, "stream", stream);
+        }
+    }
+
+    /**
+     * Stop the workers and close queued frames (the manager stays usable)
+     */
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    private static FaceRecognitionManager.FaceRecognitionCallback forStream(int streamId, StreamCallback callback) {
+        return new FaceRecognitionManager.FaceRecognitionCallback() {
+            @Override
+            public void onFaceRecognized(String name, float distance, boolean isKnown, boolean isProvisional) {
+                callback.onFaceRecognized(streamId, name, distance, isKnown, isProvisional);
+            }
+
+            @Override
+            public void onNoFaceDetected() {
+                callback.onNoFaceDetected(streamId);
+            }
+
+            @Override
+            public void onFaceReadyForRegistration(Bitmap faceBitmap) {
+                // Registration is only done from the single-camera screen
+            }
+
+            @Override
+            public void onFaceRegistered(String name, boolean success) {
+            }
+
+            @Override
+            public void onError(String error) {
+                callback.onError(streamId, error);
+            }
+        };
+    }
+}
@@ -0,0 +1,82 @@
+package com.atharvakale.facerecognition.features.face;
+
+/**
+ * Top-k nearest gallery rows for one query, ordered by (distance, row)
+ * Also used as the mutable per-worker accumulator during a scan
+ */
+public class NearestMatches {
+    private final FaceGallery gallery;
+    private final int[] rows;
+    private final float[] distances;
+    private int count = 0;
+    
+    public NearestMatches(FaceGallery gallery, int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1");
+        }
+        this.gallery = gallery;
+        this.rows = new int[k];
+        this.distances = new float[k];
+    }
+    
+    /**
+     * Offer a candidate; ties on distance are broken by the lower row index
+     */
+    public void offer(int row, float distance) {
+        if (Float.isNaN(distance)) {
+            return;
+        }
+        int k = rows.length;
+        if (count == k && !isBetter(distance, row, distances[k - 1], rows[k - 1])) {
+            return;
+        }
+        int position = count < k ? count++ : k - 1;
+        while (position > 0 && isBetter(distance, row, distances[position - 1], rows[position - 1])) {
+            rows[position] = rows[position - 1];
+            distances[position] = distances[position - 1];
+            position--;
+        }
+        rows[position] = row;
+        distances[position] = distance;
+    }
+    
+    /**
+     * Fold another accumulator's candidates into this one
+     */
+    public void merge(NearestMatches other) {
+        for (int i = 0; i < other.count; i++) {
+            offer(other.rows[i], other.distances[i]);
+        }
+    }
+    
+    /**
+     * Current worst distance kept, or +infinity while fewer than k candidates are held
+     */
+    public float getBound() {
+        return count < rows.length ? Float.POSITIVE_INFINITY : distances[rows.length - 1];
+    }
+    
+    public int size() {
+        return count;
+    }
+    
+    public boolean isEmpty() {
+        return count == 0;
+    }
+    
+    public int getRow(int rank) {
+        return rows[rank];
+    }
+    
+    public String getName(int rank) {
+        return gallery.getName(rows[rank]);
+    }
+    
+    public float getDistance(int rank) {
+        return distances[rank];
+    }
+    
+    private static boolean isBetter(float distance, int row, float otherDistance, int otherRow) {
+        return distance < otherDistance || (distance == otherDistance && row < otherRow);
+    }
+}
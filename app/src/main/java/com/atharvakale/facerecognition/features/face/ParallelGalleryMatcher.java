@@ -0,0 +1,174 @@
+package com.atharvakale.facerecognition.features.face;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exact nearest-neighbour search over a FaceGallery
+ * Large galleries are split into cache-sized blocks that worker threads claim dynamically;
+ * each worker keeps its own top-k which are merged at the end. Small galleries are scanned
+ * on the calling thread. Results are identical to a sequential scan in gallery order, also
+ * with early abandoning enabled (see EarlyAbandonIndex)
+ */
+public class ParallelGalleryMatcher {
+    private final int threads;
+    private final int blockBytes;
+    private final int parallelThreshold;
+    private final ExecutorService executor;
+    private volatile int earlyAbandonBlockDims;
+    private final AtomicLong rowsScanned = new AtomicLong();
+    private final AtomicLong dimensionsEvaluated = new AtomicLong();
+    
+    /**
+     * @param threads Number of threads used for a parallel scan (including the caller)
+     * @param blockBytes Target embedding bytes per block claimed by a worker
+     * @param parallelThreshold Galleries smaller than this are scanned sequentially
+     */
+    public ParallelGalleryMatcher(int threads, int blockBytes, int parallelThreshold) {
+        if (threads < 1 || blockBytes < 1) {
+            throw new IllegalArgumentException("Threads and block size must be positive");
+        }
+        this.threads = threads;
+        this.blockBytes = blockBytes;
+        this.parallelThreshold = parallelThreshold;
+        this.executor = threads > 1 ? Executors.newFixedThreadPool(threads - 1, runnable -> {
+            Thread thread = new Thread(runnable, "gallery-matcher");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+    
+    /**
+     * Drop rows part way through their distance once they cannot be among the k nearest
+     * Galleries are reordered by dimension variance on first use (heap galleries only)
+     * @param blockDims Dimensions between checks against the bound, 0 to always compute full distances
+     */
+    public void setEarlyAbandon(int blockDims) {
+        earlyAbandonBlockDims = Math.max(0, blockDims);
+    }
+    
+    /**
+     * Build the early-abandon index of a new gallery now rather than on its first query
+     */
+    public void prepare(FaceGallery gallery) {
+        int blockDims = earlyAbandonBlockDims;
+        if (blockDims > 0) {
+            gallery.getEarlyAbandonIndex(blockDims);
+        }
+    }
+    
+    /**
+     * Find the k nearest gallery rows to the query
+     */
+    public NearestMatches findNearest(FaceGallery gallery, float[] query, int k) {
+        int blockDims = earlyAbandonBlockDims;
+        EarlyAbandonIndex index = blockDims > 0 ? gallery.getEarlyAbandonIndex(blockDims) : null;
+        float[] ordered = index != null ? index.reorder(query) : null;
+        if (executor == null || gallery.size() < parallelThreshold) {
+            if (index == null) {
+                return scanSequential(gallery, query, k);
+            }
+            NearestMatches matches = new NearestMatches(gallery, k);
+            countScan(gallery.size(), index.scan(query, ordered, 0, gallery.size(), matches));
+            return matches;
+        }
+        
+        int rowsPerBlock = Math.max(1, blockBytes / (gallery.getDimension() * 4));
+        int blockCount = (gallery.size() + rowsPerBlock - 1) / rowsPerBlock;
+        AtomicInteger nextBlock = new AtomicInteger();
+        Callable<NearestMatches> worker = () -> {
+            NearestMatches local = new NearestMatches(gallery, k);
+            long evaluated = 0;
+            int block;
+            while ((block = nextBlock.getAndIncrement()) < blockCount) {
+                int start = block * rowsPerBlock;
+                int end = Math.min(gallery.size(), start + rowsPerBlock);
+                if (index != null) {
+                    evaluated += index.scan(query, ordered, start, end, local);
+                    continue;
+                }
+                for (int row = start; row < end; row++) {
+                    local.offer(row, gallery.distance(query, row));
+                }
+            }
+            if (index != null) {
+                countScan(0, evaluated);
+            }
+            return local;
+        };
+        
+        int helpers = Math.min(threads, blockCount) - 1;
+        List<Future<NearestMatches>> futures = new ArrayList<>(helpers);
+        for (int i = 0; i < helpers; i++) {
+            futures.add(executor.submit(worker));
+        }
+        
+        NearestMatches result;
+        try {
+            result = worker.call();
+            for (Future<NearestMatches> future : futures) {
+                result.merge(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Gallery scan interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Gallery scan failed", e.getCause());
+        } catch (Exception e) {
+            throw new IllegalStateException("Gallery scan failed", e);
+        }
+        if (index != null) {
+            countScan(gallery.size(), 0);
+        }
+        return result;
+    }
+    
+    private void countScan(long rows, long dimensions) {
+        rowsScanned.addAndGet(rows);
+        dimensionsEvaluated.addAndGet(dimensions);
+    }
+    
+    /**
+     * Average dimensions computed per row in early-abandoning scans, exact rescoring included
+     * (the gallery dimension would mean nothing was abandoned)
+     */
+    public float getAverageDimensionsEvaluated() {
+        long rows = rowsScanned.get();
+        return rows == 0 ? 0f : (float) dimensionsEvaluated.get() / rows;
+    }
+    
+    public long getRowsScanned() {
+        return rowsScanned.get();
+    }
+    
+    /**
+     * Single-threaded scan in gallery order
+     */
+    public static NearestMatches scanSequential(FaceGallery gallery, float[] query, int k) {
+        NearestMatches matches = new NearestMatches(gallery, k);
+        for (int row = 0; row < gallery.size(); row++) {
+            matches.offer(row, gallery.distance(query, row));
+        }
+        return matches;
+    }
+    
+    public int getThreads() {
+        return threads;
+    }
+    
+    /**
+     * Stop the worker threads
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
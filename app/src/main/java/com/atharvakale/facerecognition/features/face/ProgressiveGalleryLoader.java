@@ -0,0 +1,137 @@
+package com.atharvakale.facerecognition.features.face;
+
+import com.atharvakale.facerecognition.SimilarityClassifier;
+import com.atharvakale.facerecognition.data.GalleryChunkReader;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Streams the stored gallery into the matcher on a background thread
+ * Chunks double in size from a small first one: the first identities can be matched almost
+ * immediately, while the number of snapshot rebuilds stays logarithmic and their total cost
+ * linear in the gallery size.
+ */
+public class ProgressiveGalleryLoader {
+    private final Callable<GalleryChunkReader> source;
+    private final int firstChunk;
+    private final int maxChunk;
+    private final Sink sink;
+    private final long startNanos;
+    private volatile GalleryChunkReader reader;
+    private volatile boolean cancelled;
+    private volatile boolean finished;
+    private volatile int loadedCount;
+    private volatile int chunkCount;
+    private volatile long firstChunkNanos = -1;
+    private volatile long readyNanos = -1;
+    private Thread thread;
+
+    /**
+     * Receives the gallery as it is parsed (called on the loader thread)
+     */
+    public interface Sink {
+        void onChunk(Map<String, SimilarityClassifier.Recognition> faces);
+
+        /**
+         * @param complete false if the load failed or was cancelled part way
+         */
+        void onFinished(boolean complete);
+    }
+
+    /**
+     * @param source Opens the stored gallery; called on the loader thread since it may hit storage
+     * @param firstChunk Identities in the first chunk
+     * @param maxChunk Identities per chunk at most
+     */
+    public ProgressiveGalleryLoader(Callable<GalleryChunkReader> source, int firstChunk, int maxChunk, Sink sink) {
+        this.source = source;
+        this.firstChunk = Math.max(1, firstChunk);
+        this.maxChunk = Math.max(this.firstChunk, maxChunk);
+        this.sink = sink;
+        this.startNanos = System.nanoTime();
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(this::load, "gallery-loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop after the chunk being parsed; onFinished(false) follows unless loading already ended
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    private void load() {
+        boolean complete = false;
+        try {
+            GalleryChunkReader chunks = source.call();
+            reader = chunks;
+            try {
+                int chunkSize = firstChunk;
+                Map<String, SimilarityClassifier.Recognition> chunk;
+                while (!cancelled && (chunk = chunks.next(chunkSize)) != null) {
+                    sink.onChunk(chunk);
+                    loadedCount += chunk.size();
+                    chunkCount++;
+                    if (firstChunkNanos < 0) {
+                        firstChunkNanos = System.nanoTime() - startNanos;
+                    }
+                    chunkSize = Math.min(maxChunk, chunkSize * 2);
+                }
+                complete = !cancelled;
+            } finally {
+                chunks.close();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        readyNanos = System.nanoTime() - startNanos;
+        finished = true;
+        sink.onFinished(complete);
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Fraction of the stored gallery parsed, 0 to 1
+     */
+    public float getProgress() {
+        if (finished) {
+            return 1f;
+        }
+        GalleryChunkReader chunks = reader;
+        return chunks != null ? chunks.getProgress() : 0f;
+    }
+
+    public int getLoadedCount() {
+        return loadedCount;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    /**
+     * Time from construction until the first identities were matchable, or -1 if none were loaded yet
+     */
+    public long getFirstChunkMs() {
+        long nanos = firstChunkNanos;
+        return nanos < 0 ? -1 : nanos / 1000000L;
+    }
+
+    /**
+     * Time from construction until the whole gallery was loaded, or -1 while loading
+     */
+    public long getReadyMs() {
+        long nanos = readyNanos;
+        return nanos < 0 ? -1 : nanos / 1000000L;
+    }
+}
@@ -0,0 +1,79 @@
+package com.atharvakale.facerecognition.features.face;
+
+import android.graphics.Bitmap;
+
+/**
+ * One outcome of the recognition pipeline, as published to a ResultStream
+ * Results that update the same thing share a key, so only the latest of them reaches the UI.
+ */
+public class RecognitionResult {
+    public enum Kind {
+        FACE,           // name, distance, isKnown, isProvisional
+        NO_FACE,
+        PREVIEW,        // bitmap
+        REGISTERED,     // name, success
+        ERROR           // message
+    }
+
+    public final Kind kind;
+    public final int cameraId;
+    public final String name;
+    public final float distance;
+    public final boolean isKnown;
+    public final boolean isProvisional;
+    public final Bitmap bitmap;
+    public final boolean success;
+    public final String message;
+
+    private RecognitionResult(Kind kind, int cameraId, String name, float distance, boolean isKnown,
+                              boolean isProvisional, Bitmap bitmap, boolean success, String message) {
+        this.kind = kind;
+        this.cameraId = cameraId;
+        this.name = name;
+        this.distance = distance;
+        this.isKnown = isKnown;
+        this.isProvisional = isProvisional;
+        this.bitmap = bitmap;
+        this.success = success;
+        this.message = message;
+    }
+
+    public static RecognitionResult face(int cameraId, String name, float distance, boolean isKnown,
+                                         boolean isProvisional) {
+        return new RecognitionResult(Kind.FACE, cameraId, name, distance, isKnown, isProvisional, null, false, null);
+    }
+
+    public static RecognitionResult noFace(int cameraId) {
+        return new RecognitionResult(Kind.NO_FACE, cameraId, null, Float.MAX_VALUE, false, false, null, false, null);
+    }
+
+    public static RecognitionResult preview(int cameraId, Bitmap bitmap) {
+        return new RecognitionResult(Kind.PREVIEW, cameraId, null, Float.MAX_VALUE, false, false, bitmap, false, null);
+    }
+
+    public static RecognitionResult registered(String name, boolean success) {
+        return new RecognitionResult(Kind.REGISTERED, 0, name, Float.MAX_VALUE, false, false, null, success, null);
+    }
+
+    public static RecognitionResult error(int cameraId, String message) {
+        return new RecognitionResult(Kind.ERROR, cameraId, null, Float.MAX_VALUE, false, false, null, false, message);
+    }
+
+    /**
+     * Conflation key: the face shown for a camera (a face and "no face" replace each other), its
+     * registration preview, the last error; registrations are never conflated with each other
+     */
+    public String key() {
+        switch (kind) {
+            case FACE:
+            case NO_FACE:
+                return "face/" + cameraId;
+            case PREVIEW:
+                return "preview/" + cameraId;
+            case REGISTERED:
+                return "registered/" + name;
+            default:
+                return "error";
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.atharvakale.facerecognition.features.face;
+
+import android.graphics.Bitmap;
+import com.atharvakale.facerecognition.diagnostics.MetricsSource;
+import com.atharvakale.facerecognition.diagnostics.MetricsWriter;
+import com.atharvakale.facerecognition.pipeline.ResultStream;
+
+/**
+ * Recognition callback that publishes every outcome to a ResultStream instead of posting it to the
+ * UI thread, so the frame path neither blocks on nor floods the UI
+ * One instance serves every frame of a camera.
+ */
+public class RecognitionResultPublisher implements FaceRecognitionManager.FaceRecognitionCallback, MetricsSource {
+    private final ResultStream<String, RecognitionResult> stream;
+    private final int cameraId;
+
+    public RecognitionResultPublisher(ResultStream<String, RecognitionResult> stream, int cameraId) {
+        this.stream = stream;
+        this.cameraId = cameraId;
+    }
+
+    public ResultStream<String, RecognitionResult> getStream() {
+        return stream;
+    }
+
+    @Override
+    public void onFaceRecognized(String name, float distance, boolean isKnown, boolean isProvisional) {
+        publish(RecognitionResult.face(cameraId, name, distance, isKnown, isProvisional));
+    }
+
+    @Override
+    public void onNoFaceDetected() {
+        publish(RecognitionResult.noFace(cameraId));
+    }
+
+    @Override
+    public void onFaceReadyForRegistration(Bitmap faceBitmap) {
+        publish(RecognitionResult.preview(cameraId, faceBitmap));
+    }
+
+    @Override
+    public void onFaceRegistered(String name, boolean success) {
+        publish(RecognitionResult.registered(name, success));
+    }
+
+    @Override
+    public void onError(String error) {
+        publish(RecognitionResult.error(cameraId, error));
+    }
+
+    private void publish(RecognitionResult result) {
+        stream.publish(result.key(), result);
+    }
+
+    /**
+     * Report how many results reached the UI (register with ControlServers.addMetricsSource)
+     */
+    @Override
+    public void collect(MetricsWriter writer) {
+        ResultStream.Stats stats = stream.getStats();
+        writer.counter("ui_results_published_total", "Results published for the UI", stats.published);
+        writer.counter("ui_results_delivered_total", "Results delivered to the UI", stats.delivered);
+        writer.counter("ui_results_conflated_total", "Results replaced by a newer one before delivery", stats.conflated);
+        writer.counter("ui_results_dropped_total", "Results dropped with no subscriber or too many pending", stats.dropped);
+        writer.counter("ui_frames_total", "Display frames that delivered results", stats.frames);
+    }
+}
@@ -0,0 +1,98 @@
+package com.atharvakale.facerecognition.features.face;
+
+import android.graphics.Bitmap;
+
+/**
+ * Holds the most recent aligned face crops seen during registration preview
+ * Crops are scored on arrival; the best recent one is embedded once when the user confirms
+ */
+public class RegistrationCapture {
+    private final Candidate[] ring;
+    private final long maxAgeMs;
+    private int next = 0;
+    private Candidate latest;
+    
+    /**
+     * A scored face crop
+     */
+    public static class Candidate {
+        private final Bitmap crop;
+        private final float quality;
+        private final long timestampMs;
+        
+        Candidate(Bitmap crop, float quality, long timestampMs) {
+            this.crop = crop;
+            this.quality = quality;
+            this.timestampMs = timestampMs;
+        }
+        
+        public Bitmap getCrop() {
+            return crop;
+        }
+        
+        public float getQuality() {
+            return quality;
+        }
+        
+        public long getTimestampMs() {
+            return timestampMs;
+        }
+    }
+    
+    /**
+     * @param capacity Number of recent crops to choose from
+     * @param maxAgeMs Crops older than this are ignored when picking the best one
+     */
+    public RegistrationCapture(int capacity, long maxAgeMs) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        this.ring = new Candidate[capacity];
+        this.maxAgeMs = maxAgeMs;
+    }
+    
+    /**
+     * Record a new preview crop
+     */
+    public synchronized void offer(Bitmap crop, float quality, long nowMs) {
+        latest = new Candidate(crop, quality, nowMs);
+        ring[next] = latest;
+        next = (next + 1) % ring.length;
+    }
+    
+    /**
+     * Get the most recent crop, or null if none
+     */
+    public synchronized Bitmap getLatest() {
+        return latest != null ? latest.crop : null;
+    }
+    
+    /**
+     * Remove and return the highest quality crop that is not older than the max age
+     * @return Best candidate, or null if no recent crop is available
+     */
+    public synchronized Candidate takeBest(long nowMs) {
+        Candidate best = null;
+        for (Candidate candidate : ring) {
+            if (candidate == null || nowMs - candidate.timestampMs > maxAgeMs) {
+                continue;
+            }
+            if (best == null || candidate.quality > best.quality) {
+                best = candidate;
+            }
+        }
+        clear();
+        return best;
+    }
+    
+    /**
+     * Drop all stored crops
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = null;
+        }
+        next = 0;
+        latest = null;
+    }
+}
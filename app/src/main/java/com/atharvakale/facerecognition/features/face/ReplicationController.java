@@ -0,0 +1,138 @@
+package com.atharvakale.facerecognition.features.face;
+
+import com.atharvakale.facerecognition.data.sync.ChangeFeed;
+import com.atharvakale.facerecognition.data.sync.ReplicationClient;
+import com.atharvakale.facerecognition.data.sync.ReplicationServer;
+import com.atharvakale.facerecognition.diagnostics.MetricsSource;
+import com.atharvakale.facerecognition.diagnostics.MetricsWriter;
+import com.atharvakale.facerecognition.ml.ModelConfig;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replicates a face recognition manager's gallery with other devices, as a peer syncing through
+ * a hub or as the hub itself
+ * The manager records its own changes in the change feed and applies the ones other devices
+ * brought in; this class only moves them over the network.
+ */
+public class ReplicationController implements MetricsSource {
+    private final FaceRecognitionManager manager;
+
+    // Guarded by this
+    private ChangeFeed changeFeed;
+    private ReplicationClient replicationClient;
+    private ReplicationServer replicationServer;
+    private ScheduledExecutorService replicationExecutor;
+
+    public ReplicationController(FaceRecognitionManager manager) {
+        this.manager = manager;
+    }
+
+    /**
+     * Replicate the gallery through a hub: local changes are pushed and the hub's changes pulled
+     * every sync interval, with conflicts resolved last-writer-wins
+     * @param feed Change feed of this device (see FaceRecognitionManager.createChangeFeed)
+     * @param hubUrl Base URL of the hub, e.g. http://192.168.1.20:8477
+     * @param token Bearer token shared with the hub
+     * @return true if replication was started
+     */
+    public synchronized boolean start(ChangeFeed feed, String hubUrl, String token) {
+        if (token == null || token.isEmpty() || !attach(feed)) {
+            return false;
+        }
+        replicationClient = new ReplicationClient(feed, hubUrl, token,
+            ModelConfig.Replication.BATCH_CHANGES, ModelConfig.Replication.TIMEOUT_MS);
+        ReplicationClient client = replicationClient;
+        replicationExecutor.scheduleWithFixedDelay(client::sync, 0,
+            ModelConfig.Replication.SYNC_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    /**
+     * Serve this device's gallery as the hub other devices replicate through
+     * @param port Port to listen on (ModelConfig.Replication.HUB_PORT by default)
+     * @param token Bearer token peers must present; the hub does not start without one
+     * @return true if the hub is listening
+     */
+    public synchronized boolean startHub(ChangeFeed feed, int port, String token) {
+        if (token == null || token.isEmpty() || !attach(feed)) {
+            return false;
+        }
+        if (replicationServer == null) {
+            ReplicationServer server = new ReplicationServer(feed, ModelConfig.Replication.BATCH_CHANGES, token);
+            if (!server.start(null, port, ModelConfig.Replication.HUB_WORKER_THREADS)) {
+                return false;
+            }
+            replicationServer = server;
+        }
+        return true;
+    }
+
+    /**
+     * Sync with the hub now instead of waiting for the next interval
+     */
+    public synchronized void requestSync() {
+        if (replicationClient != null) {
+            replicationExecutor.execute(replicationClient::sync);
+        }
+    }
+
+    /**
+     * Stop syncing and serving; the feed keeps its checkpoints for the next start
+     */
+    public synchronized void stop() {
+        if (replicationExecutor != null) {
+            replicationExecutor.shutdownNow();
+            replicationExecutor = null;
+        }
+        if (replicationServer != null) {
+            replicationServer.stop();
+            replicationServer = null;
+        }
+        replicationClient = null;
+        if (changeFeed != null) {
+            manager.detachChangeFeed(changeFeed);
+            changeFeed = null;
+        }
+    }
+
+    /**
+     * Get the replication client, or null if this device does not sync with a hub
+     */
+    public synchronized ReplicationClient getClient() {
+        return replicationClient;
+    }
+
+    /**
+     * Get the replication hub server, or null if this device is not the hub
+     */
+    public synchronized ReplicationServer getServer() {
+        return replicationServer;
+    }
+
+    /**
+     * Report the hub's request counters (register with ControlServers.addMetricsSource)
+     */
+    @Override
+    public void collect(MetricsWriter writer) {
+        ReplicationServer hub = getServer();
+        if (hub != null) {
+            writer.counter("replication_requests_total", "Requests served to replicating peers", hub.getRequestCount());
+            writer.counter("replication_unauthorized_total", "Replication requests refused for a bad token",
+                hub.getUnauthorizedCount());
+        }
+    }
+
+    private boolean attach(ChangeFeed feed) {
+        if (changeFeed != null) {
+            return changeFeed == feed;
+        }
+        if (!manager.attachChangeFeed(feed)) {
+            return false;
+        }
+        changeFeed = feed;
+        replicationExecutor = Executors.newSingleThreadScheduledExecutor();
+        return true;
+    }
+}
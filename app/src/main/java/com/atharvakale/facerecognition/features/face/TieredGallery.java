@@ -0,0 +1,362 @@
+package com.atharvakale.facerecognition.features.face;
+
+import com.atharvakale.facerecognition.SimilarityClassifier;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gallery split into a hot tier on the heap and a cold tier in a memory-mapped file
+ * Every row is written to the cold file and scanned there in place, without copying it to the heap.
+ * Rows matched often or recently are also kept in a compact heap matrix bounded by the hot budget;
+ * promotion and eviction follow decayed match counts and are re-evaluated every few matches.
+ * Distances are accumulated exactly like FaceGallery, so results do not depend on the tier.
+ */
+public class TieredGallery extends FaceGallery {
+    private static final int MAGIC = 0x46474331;     // "FGC1"
+    private static final int HEADER_BYTES = 16;
+    private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+    private static final float MIN_HOT_SCORE = 0.05f;
+
+    /**
+     * Immutable hot tier, swapped as a whole on rebalance
+     */
+    private static class HotSet {
+        static final HotSet EMPTY = new HotSet(new int[0], new float[0], 0);
+
+        final int[] slots;      // gallery row -> hot row, -1 while cold
+        final float[] matrix;
+        final int size;
+
+        HotSet(int[] slots, float[] matrix, int size) {
+            this.slots = slots;
+            this.matrix = matrix;
+            this.size = size;
+        }
+    }
+
+    private final FloatBuffer cold;
+    private final long coldBytes;
+    private final int hotCapacity;
+    private final int rebalanceInterval;
+    private final float decay;
+    private volatile HotSet hot;
+
+    // Access statistics (guarded by this)
+    private final float[] scores;
+    private final long[] lastMatch;
+    private long matchCount;
+    private long hotMatches;
+    private long coldMatches;
+    private long promotions;
+    private long evictions;
+
+    private TieredGallery(String[] names, int dimension, FloatBuffer cold, long coldBytes,
+                          long hotBudgetBytes, int rebalanceInterval, float decay) {
+        super(names, dimension);
+        this.cold = cold;
+        this.coldBytes = coldBytes;
+        long matrixBudget = hotBudgetBytes - names.length * 4L;    // the row-to-slot map comes first
+        this.hotCapacity = (int) Math.min(names.length, Math.max(0L, matrixBudget / (dimension * 4L)));
+        this.rebalanceInterval = Math.max(1, rebalanceInterval);
+        this.decay = decay;
+        this.scores = new float[names.length];
+        this.lastMatch = new long[names.length];
+        int[] slots = new int[names.length];
+        Arrays.fill(slots, -1);
+        this.hot = names.length == 0 ? HotSet.EMPTY : new HotSet(slots, new float[0], 0);
+    }
+
+    /**
+     * Write the cold file and map it
+     * @param file Cold tier file; replaced atomically so scans of an older mapping stay valid
+     * @param hotBudgetBytes Heap bytes allowed for hot rows
+     * @param rebalanceInterval Accepted matches between promotion/eviction passes
+     * @param decay Weight kept by a match count per later match (e.g. 0.999)
+     * @param previous Gallery being replaced; its access statistics are carried over by name
+     * @return Gallery, or null if the file could not be written
+     */
+    public static TieredGallery create(Map<String, SimilarityClassifier.Recognition> faces, int dimension,
+                                       File file, long hotBudgetBytes, int rebalanceInterval, float decay,
+                                       FaceGallery previous) {
+        File temp = new File(file.getPath() + ".tmp");
+        List<String> names = new ArrayList<>(faces.size());
+        try (RandomAccessFile out = new RandomAccessFile(temp, "rw")) {
+            out.setLength(0);
+            FileChannel channel = out.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(WRITE_BUFFER_BYTES, dimension * 4))
+                .order(ByteOrder.nativeOrder());
+            channel.position(HEADER_BYTES);
+            for (Map.Entry<String, SimilarityClassifier.Recognition> entry : faces.entrySet()) {
+                float[] embedding = ((float[][]) entry.getValue().getExtra())[0];
+                if (buffer.remaining() < dimension * 4) {
+                    drain(buffer, channel);
+                }
+                for (int i = 0; i < dimension; i++) {
+                    buffer.putFloat(i < embedding.length ? embedding[i] : 0f);
+                }
+                names.add(entry.getKey());
+            }
+            drain(buffer, channel);
+            buffer.putInt(MAGIC).putInt(1).putInt(dimension).putInt(names.size());
+            buffer.flip();
+            channel.write(buffer, 0);
+        } catch (IOException e) {
+            e.printStackTrace();
+            temp.delete();
+            return null;
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            return null;
+        }
+        TieredGallery gallery = open(file, names.toArray(new String[0]), dimension, hotBudgetBytes,
+            rebalanceInterval, decay);
+        if (gallery != null && previous instanceof TieredGallery) {
+            gallery.inheritStatistics((TieredGallery) previous);
+        }
+        return gallery;
+    }
+
+    /**
+     * Map an existing cold file
+     * @param names Row names in file order
+     * @return Gallery, or null if the file is missing or does not match
+     */
+    public static TieredGallery open(File file, String[] names, int dimension, long hotBudgetBytes,
+                                     int rebalanceInterval, float decay) {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            long length = in.length();
+            MappedByteBuffer mapped = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+            mapped.order(ByteOrder.nativeOrder());
+            if (length < HEADER_BYTES || mapped.getInt(0) != MAGIC || mapped.getInt(8) != dimension
+                || mapped.getInt(12) != names.length
+                || length != HEADER_BYTES + (long) names.length * dimension * 4) {
+                return null;
+            }
+            mapped.position(HEADER_BYTES);
+            FloatBuffer cold = mapped.slice().order(ByteOrder.nativeOrder()).asFloatBuffer();
+            return new TieredGallery(names, dimension, cold, length, hotBudgetBytes, rebalanceInterval, decay);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public float distance(float[] query, int row) {
+        int dimension = getDimension();
+        HotSet current = hot;
+        int slot = current.slots[row];
+        float distance = 0;
+        if (slot >= 0) {
+            float[] matrix = current.matrix;
+            int base = slot * dimension;
+            for (int i = 0; i < dimension; i++) {
+                float diff = query[i] - matrix[base + i];
+                distance += diff * diff;
+            }
+        } else {
+            int base = row * dimension;
+            for (int i = 0; i < dimension; i++) {
+                float diff = query[i] - cold.get(base + i);
+                distance += diff * diff;
+            }
+        }
+        return (float) Math.sqrt(distance);
+    }
+
+    @Override
+    public void copyRow(int row, float[] out) {
+        int dimension = getDimension();
+        HotSet current = hot;
+        int slot = current.slots[row];
+        if (slot >= 0) {
+            System.arraycopy(current.matrix, slot * dimension, out, 0, dimension);
+        } else {
+            FloatBuffer reader = cold.duplicate();
+            reader.position(row * dimension);
+            reader.get(out, 0, dimension);
+        }
+    }
+
+    /**
+     * Count an accepted match; every rebalance interval the hot tier is recomputed
+     */
+    @Override
+    public synchronized void recordMatch(int row) {
+        if (row < 0 || row >= size()) {
+            return;
+        }
+        matchCount++;
+        scores[row] = scoreOf(row) + 1f;
+        lastMatch[row] = matchCount;
+        if (hot.slots[row] >= 0) {
+            hotMatches++;
+        } else {
+            coldMatches++;
+        }
+        if (matchCount % rebalanceInterval == 0) {
+            rebalance();
+        }
+    }
+
+    private float scoreOf(int row) {
+        return scores[row] == 0f ? 0f : scores[row] * (float) Math.pow(decay, matchCount - lastMatch[row]);
+    }
+
+    /**
+     * Promote the highest-scoring rows into the hot tier and evict the rest
+     */
+    public synchronized void rebalance() {
+        List<Integer> candidates = new ArrayList<>();
+        final float[] current = new float[size()];
+        for (int row = 0; row < size(); row++) {
+            current[row] = scoreOf(row);
+            if (current[row] >= MIN_HOT_SCORE) {
+                candidates.add(row);
+            }
+        }
+        Collections.sort(candidates, (a, b) -> {
+            int result = Float.compare(current[b], current[a]);
+            return result != 0 ? result : Integer.compare(a, b);
+        });
+        List<Integer> chosen = candidates.subList(0, Math.min(hotCapacity, candidates.size()));
+
+        HotSet previous = hot;
+        int retained = 0;
+        for (int row : chosen) {
+            if (previous.slots[row] >= 0) {
+                retained++;
+            }
+        }
+        if (retained == chosen.size() && retained == previous.size) {
+            return;
+        }
+
+        int dimension = getDimension();
+        int[] slots = new int[size()];
+        Arrays.fill(slots, -1);
+        float[] matrix = new float[chosen.size() * dimension];
+        FloatBuffer reader = cold.duplicate();
+        for (int slot = 0; slot < chosen.size(); slot++) {
+            int row = chosen.get(slot);
+            int previousSlot = previous.slots[row];
+            if (previousSlot >= 0) {
+                System.arraycopy(previous.matrix, previousSlot * dimension, matrix, slot * dimension, dimension);
+            } else {
+                reader.position(row * dimension);
+                reader.get(matrix, slot * dimension, dimension);
+            }
+            slots[row] = slot;
+        }
+        promotions += chosen.size() - retained;
+        evictions += previous.size - retained;
+        hot = new HotSet(slots, matrix, chosen.size());
+    }
+
+    /**
+     * Carry decayed match counts of identities that are still registered, then fill the hot tier
+     */
+    private synchronized void inheritStatistics(TieredGallery previous) {
+        Map<String, Integer> rows = new HashMap<>(size() * 2);
+        for (int row = 0; row < size(); row++) {
+            rows.put(getName(row), row);
+        }
+        synchronized (previous) {
+            for (int oldRow = 0; oldRow < previous.size(); oldRow++) {
+                float score = previous.scoreOf(oldRow);
+                Integer row = score > 0f ? rows.get(previous.getName(oldRow)) : null;
+                if (row != null) {
+                    scores[row] = score;
+                }
+            }
+            hotMatches = previous.hotMatches;
+            coldMatches = previous.coldMatches;
+            promotions = previous.promotions;
+            evictions = previous.evictions;
+        }
+        rebalance();
+    }
+
+    public int getHotSize() {
+        return hot.size;
+    }
+
+    public int getHotCapacity() {
+        return hotCapacity;
+    }
+
+    public boolean isHot(int row) {
+        return hot.slots[row] >= 0;
+    }
+
+    /**
+     * Heap bytes of the hot tier (matrix plus row-to-slot map)
+     */
+    public long getHotBytes() {
+        HotSet current = hot;
+        return current.matrix.length * 4L + current.slots.length * 4L;
+    }
+
+    /**
+     * Bytes of the memory-mapped cold file; paged in by the OS, not held on the heap
+     */
+    public long getColdBytes() {
+        return coldBytes;
+    }
+
+    /**
+     * Heap bytes of the per-row access statistics
+     */
+    public long getStatisticsBytes() {
+        return scores.length * 4L + lastMatch.length * 8L;
+    }
+
+    @Override
+    public long getHeapBytes() {
+        return hot.matrix.length * 4L;
+    }
+
+    public synchronized long getHotMatches() {
+        return hotMatches;
+    }
+
+    public synchronized long getColdMatches() {
+        return coldMatches;
+    }
+
+    public synchronized long getPromotions() {
+        return promotions;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("rows=%d hot=%d/%d hotKB=%d coldKB=%d statsKB=%d matches hot/cold=%d/%d promoted=%d evicted=%d",
+            size(), getHotSize(), hotCapacity, getHotBytes() / 1024, coldBytes / 1024, getStatisticsBytes() / 1024,
+            hotMatches, coldMatches, promotions, evictions);
+    }
+}
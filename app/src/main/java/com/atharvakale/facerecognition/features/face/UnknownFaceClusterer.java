@@ -0,0 +1,415 @@
+package com.atharvakale.facerecognition.features.face;
+
+import android.graphics.Bitmap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Online leader clustering of embeddings decided as unknown, to surface recurring visitors
+ * An embedding joins the nearest cluster within the join radius or starts a new one. Centroids
+ * are indexed by the signs of random projections in a few independent tables; only the own bucket
+ * and the buckets one sign flip away are compared, so the cost per embedding grows with the log
+ * of the cluster count. The search is approximate: a face missed by every table starts a new
+ * cluster. Clusters age out after a while unseen; at capacity the least recently seen is evicted.
+ */
+public class UnknownFaceClusterer {
+    private static final int TABLES = 3;
+
+    private final int dimension;
+    private final int capacity;
+    private final int exemplarsPerCluster;
+    private final int maxCentroidWeight;
+    private final float[][][] hyperplanes;   // [table][bit][dimension]
+    private float joinRadius;
+    private long maxAgeMs;
+
+    private final LinkedHashMap<Integer, Cluster> clusters = new LinkedHashMap<>(16, 0.75f, true);
+    private final List<Map<Integer, List<Cluster>>> tables = new ArrayList<>(TABLES);
+    private int nextId = 1;
+
+    private long observations;
+    private long comparisons;
+    private long evicted;
+    private long expired;
+
+    /**
+     * One recurring unknown, as returned to the UI
+     */
+    public static class RecurringUnknown {
+        public final int id;
+        public final int sightings;        // distinct tracks assigned to the cluster
+        public final int observations;
+        public final long firstSeenMs;
+        public final long lastSeenMs;
+        public final List<Bitmap> exemplars;    // best quality first
+
+        RecurringUnknown(Cluster cluster) {
+            this.id = cluster.id;
+            this.sightings = cluster.sightings;
+            this.observations = cluster.observations;
+            this.firstSeenMs = cluster.firstSeenMs;
+            this.lastSeenMs = cluster.lastSeenMs;
+            List<Bitmap> crops = new ArrayList<>(cluster.exemplarCount);
+            for (int i = 0; i < cluster.exemplarCount; i++) {
+                crops.add(cluster.exemplars[i]);
+            }
+            this.exemplars = Collections.unmodifiableList(crops);
+        }
+
+        /**
+         * Best exemplar crop, or null if none was kept
+         */
+        public Bitmap getBestExemplar() {
+            return exemplars.isEmpty() ? null : exemplars.get(0);
+        }
+    }
+
+    private static class Cluster {
+        final int id;
+        final float[] centroid;
+        final int[] buckets = new int[TABLES];
+        long visited;
+        int weight;
+        int sightings;
+        int observations;
+        long lastTrackKey;
+        long firstSeenMs;
+        long lastSeenMs;
+        final Bitmap[] exemplars;
+        final float[] exemplarQuality;
+        int exemplarCount;
+
+        Cluster(int id, float[] embedding, int dimension, int exemplars) {
+            this.id = id;
+            this.centroid = new float[dimension];
+            System.arraycopy(embedding, 0, centroid, 0, dimension);
+            this.exemplars = new Bitmap[exemplars];
+            this.exemplarQuality = new float[exemplars];
+        }
+
+        /**
+         * Keep the crop if it beats the worst exemplar; exemplars stay sorted by quality
+         */
+        void offerExemplar(Bitmap crop, float quality) {
+            if (crop == null || exemplars.length == 0) {
+                return;
+            }
+            int position;
+            if (exemplarCount < exemplars.length) {
+                position = exemplarCount++;
+            } else if (quality > exemplarQuality[exemplars.length - 1]) {
+                position = exemplars.length - 1;
+            } else {
+                return;
+            }
+            while (position > 0 && exemplarQuality[position - 1] < quality) {
+                exemplars[position] = exemplars[position - 1];
+                exemplarQuality[position] = exemplarQuality[position - 1];
+                position--;
+            }
+            exemplars[position] = crop;
+            exemplarQuality[position] = quality;
+        }
+    }
+
+    /**
+     * @param capacity Maximum clusters held
+     * @param joinRadius Distance to a centroid within which an embedding joins the cluster
+     * @param exemplarsPerCluster Crops kept per cluster (best quality)
+     * @param maxCentroidWeight Observations after which the centroid becomes a moving average
+     * @param maxAgeMs Clusters unseen for longer are dropped
+     * @param seed Seed of the random projections
+     */
+    public UnknownFaceClusterer(int dimension, int capacity, float joinRadius, int exemplarsPerCluster,
+                                int maxCentroidWeight, long maxAgeMs, long seed) {
+        this.dimension = dimension;
+        this.capacity = Math.max(1, capacity);
+        this.joinRadius = joinRadius;
+        this.exemplarsPerCluster = exemplarsPerCluster;
+        this.maxCentroidWeight = Math.max(1, maxCentroidWeight);
+        this.maxAgeMs = maxAgeMs;
+
+        // Two to four clusters per bucket at capacity
+        int bits = 1;
+        while (bits < 16 && (this.capacity >> (bits + 2)) > 0) {
+            bits++;
+        }
+        Random random = new Random(seed);
+        this.hyperplanes = new float[TABLES][bits][dimension];
+        for (float[][] table : hyperplanes) {
+            for (float[] plane : table) {
+                for (int i = 0; i < dimension; i++) {
+                    plane[i] = (float) random.nextGaussian();
+                }
+            }
+            tables.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Assign an unknown embedding to a cluster
+     * @param crop Face crop kept as an exemplar if it is among the best of its cluster (may be null)
+     * @param quality Quality score of the crop
+     * @param trackKey Track the embedding came from; repeated observations of one track count as one sighting
+     * @param nowMs Monotonic time
+     * @return Id of the cluster the embedding was assigned to
+     */
+    public synchronized int observe(float[] embedding, Bitmap crop, float quality, long trackKey, long nowMs) {
+        observations++;
+        expire(nowMs);
+
+        int[] keys = bucketsOf(embedding);
+        Cluster nearest = null;
+        float nearestDistance = joinRadius;
+        int bits = hyperplanes[0].length;
+        for (int table = 0; table < TABLES; table++) {
+            for (int probe = -1; probe < bits; probe++) {
+                List<Cluster> bucket = tables.get(table).get(probe < 0 ? keys[table] : keys[table] ^ (1 << probe));
+                if (bucket == null) {
+                    continue;
+                }
+                for (Cluster cluster : bucket) {
+                    if (cluster.visited == observations) {
+                        continue;   // already compared through another table
+                    }
+                    cluster.visited = observations;
+                    comparisons++;
+                    float distance = distance(embedding, cluster.centroid);
+                    if (distance < nearestDistance) {
+                        nearestDistance = distance;
+                        nearest = cluster;
+                    }
+                }
+            }
+        }
+
+        if (nearest == null) {
+            if (clusters.size() >= capacity) {
+                Iterator<Cluster> eldest = clusters.values().iterator();
+                unindex(eldest.next());
+                eldest.remove();
+                evicted++;
+            }
+            nearest = new Cluster(nextId++, embedding, dimension, exemplarsPerCluster);
+            nearest.firstSeenMs = nowMs;
+            nearest.lastTrackKey = trackKey;
+            nearest.sightings = 1;
+            System.arraycopy(keys, 0, nearest.buckets, 0, TABLES);
+            index(nearest);
+            clusters.put(nearest.id, nearest);
+        } else {
+            clusters.get(nearest.id);   // refresh recency
+            if (trackKey != nearest.lastTrackKey) {
+                nearest.sightings++;
+                nearest.lastTrackKey = trackKey;
+            }
+            updateCentroid(nearest, embedding);
+        }
+        nearest.observations++;
+        nearest.lastSeenMs = nowMs;
+        nearest.offerExemplar(crop, quality);
+        return nearest.id;
+    }
+
+    private void updateCentroid(Cluster cluster, float[] embedding) {
+        cluster.weight = Math.min(cluster.weight + 1, maxCentroidWeight);
+        float rate = 1f / (cluster.weight + 1);
+        for (int i = 0; i < dimension; i++) {
+            cluster.centroid[i] += (embedding[i] - cluster.centroid[i]) * rate;
+        }
+        int[] keys = bucketsOf(cluster.centroid);
+        if (!Arrays.equals(keys, cluster.buckets)) {
+            unindex(cluster);
+            System.arraycopy(keys, 0, cluster.buckets, 0, TABLES);
+            index(cluster);
+        }
+    }
+
+    /**
+     * Drop clusters unseen for longer than the maximum age (least recently seen come first)
+     */
+    private void expire(long nowMs) {
+        Iterator<Cluster> iterator = clusters.values().iterator();
+        while (iterator.hasNext()) {
+            Cluster cluster = iterator.next();
+            if (nowMs - cluster.lastSeenMs <= maxAgeMs) {
+                break;
+            }
+            unindex(cluster);
+            iterator.remove();
+            expired++;
+        }
+    }
+
+    /**
+     * Most recurring unknowns, by distinct sightings and then recency
+     * @param minSightings Clusters seen on fewer tracks are left out
+     */
+    public synchronized List<RecurringUnknown> getTopRecurring(int limit, int minSightings, long nowMs) {
+        expire(nowMs);
+        List<Cluster> candidates = new ArrayList<>();
+        for (Cluster cluster : clusters.values()) {
+            if (cluster.sightings >= minSightings) {
+                candidates.add(cluster);
+            }
+        }
+        Collections.sort(candidates, (a, b) -> {
+            int result = Integer.compare(b.sightings, a.sightings);
+            return result != 0 ? result : Long.compare(b.lastSeenMs, a.lastSeenMs);
+        });
+        List<RecurringUnknown> top = new ArrayList<>();
+        for (int i = 0; i < Math.min(limit, candidates.size()); i++) {
+            top.add(new RecurringUnknown(candidates.get(i)));
+        }
+        return top;
+    }
+
+    /**
+     * Get one cluster, or null if it aged out
+     */
+    public synchronized RecurringUnknown get(int id) {
+        Cluster cluster = clusters.get(id);
+        return cluster != null ? new RecurringUnknown(cluster) : null;
+    }
+
+    /**
+     * Copy of a cluster's centroid, or null if it aged out
+     */
+    public synchronized float[] getCentroid(int id) {
+        Cluster cluster = clusters.get(id);
+        return cluster != null ? cluster.centroid.clone() : null;
+    }
+
+    /**
+     * Whether a cluster kept the crop as one of its exemplars (and so now owns it)
+     */
+    public synchronized boolean isRetained(int id, Bitmap crop) {
+        Cluster cluster = clusters.get(id);
+        if (cluster == null || crop == null) {
+            return false;
+        }
+        for (int i = 0; i < cluster.exemplarCount; i++) {
+            if (cluster.exemplars[i] == crop) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forget a cluster (e.g. after it was enrolled)
+     */
+    public synchronized boolean remove(int id) {
+        Cluster cluster = clusters.remove(id);
+        if (cluster == null) {
+            return false;
+        }
+        unindex(cluster);
+        return true;
+    }
+
+    public synchronized void clear() {
+        clusters.clear();
+        for (Map<Integer, List<Cluster>> table : tables) {
+            table.clear();
+        }
+    }
+
+    /**
+     * Bucket key of a vector in every table: one bit per projection sign
+     */
+    private int[] bucketsOf(float[] vector) {
+        int[] keys = new int[TABLES];
+        for (int table = 0; table < TABLES; table++) {
+            float[][] planes = hyperplanes[table];
+            for (int bit = 0; bit < planes.length; bit++) {
+                float dot = 0f;
+                for (int i = 0; i < dimension; i++) {
+                    dot += planes[bit][i] * vector[i];
+                }
+                if (dot >= 0f) {
+                    keys[table] |= 1 << bit;
+                }
+            }
+        }
+        return keys;
+    }
+
+    private void index(Cluster cluster) {
+        for (int table = 0; table < TABLES; table++) {
+            Map<Integer, List<Cluster>> buckets = tables.get(table);
+            List<Cluster> bucket = buckets.get(cluster.buckets[table]);
+            if (bucket == null) {
+                bucket = new ArrayList<>();
+                buckets.put(cluster.buckets[table], bucket);
+            }
+            bucket.add(cluster);
+        }
+    }
+
+    private void unindex(Cluster cluster) {
+        for (int table = 0; table < TABLES; table++) {
+            Map<Integer, List<Cluster>> buckets = tables.get(table);
+            List<Cluster> bucket = buckets.get(cluster.buckets[table]);
+            if (bucket != null) {
+                bucket.remove(cluster);
+                if (bucket.isEmpty()) {
+                    buckets.remove(cluster.buckets[table]);
+                }
+            }
+        }
+    }
+
+    private float distance(float[] a, float[] b) {
+        float distance = 0f;
+        for (int i = 0; i < dimension; i++) {
+            float diff = a[i] - b[i];
+            distance += diff * diff;
+        }
+        return (float) Math.sqrt(distance);
+    }
+
+    public synchronized void setJoinRadius(float joinRadius) {
+        this.joinRadius = joinRadius;
+    }
+
+    public synchronized void setMaxAge(long maxAgeMs) {
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    public synchronized int getClusterCount() {
+        return clusters.size();
+    }
+
+    public synchronized long getObservations() {
+        return observations;
+    }
+
+    /**
+     * Centroids compared per observed embedding
+     */
+    public synchronized float getAverageComparisons() {
+        return observations == 0 ? 0f : (float) comparisons / observations;
+    }
+
+    public synchronized long getEvictedCount() {
+        return evicted;
+    }
+
+    public synchronized long getExpiredCount() {
+        return expired;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("clusters=%d/%d observed=%d avgComparisons=%.1f evicted=%d expired=%d",
+            clusters.size(), capacity, observations, getAverageComparisons(), evicted, expired);
+    }
+}
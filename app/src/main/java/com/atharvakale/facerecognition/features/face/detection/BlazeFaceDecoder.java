@@ -0,0 +1,174 @@
+package com.atharvakale.facerecognition.features.face.detection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Turns raw BlazeFace outputs into face detections
+ * Decodes the regressors against the SSD anchor grid, drops low scores and merges overlapping boxes
+ * with weighted non-maximum suppression; plain Java so it can be benchmarked off-device
+ */
+public class BlazeFaceDecoder {
+    private static final int KEYPOINT_OFFSET = 4;
+
+    private final float[] anchorCenters;
+    private final int numCoords;
+    private final float boxScale;
+    private final float scoreClip;
+    private final float scoreThreshold;
+    private final float iouThreshold;
+    private final int maxFaces;
+
+    /**
+     * @param inputSize Model input width and height in pixels
+     * @param strides Feature map stride of each anchor layer
+     * @param anchorsPerLayer Anchors each layer places on a feature map cell
+     * @param numCoords Regressor values per anchor (4 box values followed by keypoint pairs)
+     * @param boxScale Regressor units per input image
+     * @param scoreClip Raw scores are clipped to +/- this before the sigmoid
+     * @param scoreThreshold Minimum detection score
+     * @param iouThreshold Overlap above which boxes are merged into one face
+     * @param maxFaces Maximum faces returned
+     */
+    public BlazeFaceDecoder(int inputSize, int[] strides, int anchorsPerLayer, int numCoords,
+                            float boxScale, float scoreClip, float scoreThreshold, float iouThreshold, int maxFaces) {
+        this.anchorCenters = generateAnchors(inputSize, strides, anchorsPerLayer);
+        this.numCoords = numCoords;
+        this.boxScale = boxScale;
+        this.scoreClip = scoreClip;
+        this.scoreThreshold = scoreThreshold;
+        this.iouThreshold = iouThreshold;
+        this.maxFaces = maxFaces;
+    }
+
+    /**
+     * Anchor centers as normalized (x, y) pairs
+     * Consecutive layers with the same stride share one feature map, so their anchors are
+     * interleaved per cell; anchor size is fixed at 1 so only centers are needed
+     */
+    static float[] generateAnchors(int inputSize, int[] strides, int anchorsPerLayer) {
+        List<Float> centers = new ArrayList<>();
+        int layer = 0;
+        while (layer < strides.length) {
+            int sameStride = layer;
+            while (sameStride < strides.length && strides[sameStride] == strides[layer]) {
+                sameStride++;
+            }
+            int anchorsPerCell = (sameStride - layer) * anchorsPerLayer;
+            int featureMapSize = (int) Math.ceil((float) inputSize / strides[layer]);
+            for (int y = 0; y < featureMapSize; y++) {
+                for (int x = 0; x < featureMapSize; x++) {
+                    for (int a = 0; a < anchorsPerCell; a++) {
+                        centers.add((x + 0.5f) / featureMapSize);
+                        centers.add((y + 0.5f) / featureMapSize);
+                    }
+                }
+            }
+            layer = sameStride;
+        }
+        float[] anchors = new float[centers.size()];
+        for (int i = 0; i < anchors.length; i++) {
+            anchors[i] = centers.get(i);
+        }
+        return anchors;
+    }
+
+    public int getAnchorCount() {
+        return anchorCenters.length / 2;
+    }
+
+    /**
+     * Decode one inference
+     * @param regressors Flattened [anchors][numCoords] regressor output
+     * @param scores Raw (logit) score of each anchor
+     * @param width Output width the normalized coordinates are scaled to
+     * @param height Output height the normalized coordinates are scaled to
+     * @return Faces sorted by descending score
+     */
+    public List<DetectedFace> decode(float[] regressors, float[] scores, float width, float height) {
+        List<DetectedFace> candidates = new ArrayList<>();
+        int anchors = getAnchorCount();
+        for (int i = 0; i < anchors; i++) {
+            float score = sigmoid(Math.max(-scoreClip, Math.min(scoreClip, scores[i])));
+            if (score < scoreThreshold) {
+                continue;
+            }
+            int base = i * numCoords;
+            float anchorX = anchorCenters[2 * i];
+            float anchorY = anchorCenters[2 * i + 1];
+            float centerX = regressors[base] / boxScale + anchorX;
+            float centerY = regressors[base + 1] / boxScale + anchorY;
+            float halfWidth = regressors[base + 2] / boxScale / 2f;
+            float halfHeight = regressors[base + 3] / boxScale / 2f;
+
+            float[] landmarks = DetectedFace.emptyLandmarks();
+            int keypoints = Math.min(DetectedFace.LANDMARK_COUNT, (numCoords - KEYPOINT_OFFSET) / 2);
+            for (int k = 0; k < keypoints; k++) {
+                landmarks[2 * k] = (regressors[base + KEYPOINT_OFFSET + 2 * k] / boxScale + anchorX) * width;
+                landmarks[2 * k + 1] = (regressors[base + KEYPOINT_OFFSET + 2 * k + 1] / boxScale + anchorY) * height;
+            }
+            candidates.add(new DetectedFace((centerX - halfWidth) * width, (centerY - halfHeight) * height,
+                (centerX + halfWidth) * width, (centerY + halfHeight) * height, score, landmarks,
+                DetectedFace.NO_TRACK, Float.NaN, Float.NaN, Float.NaN));
+        }
+        return weightedNms(candidates);
+    }
+
+    /**
+     * Weighted non-maximum suppression
+     * Every box overlapping the best remaining one is folded into it, averaging box and keypoints
+     * by score, which is steadier across frames than keeping only the top box
+     */
+    List<DetectedFace> weightedNms(List<DetectedFace> candidates) {
+        List<DetectedFace> remaining = new ArrayList<>(candidates);
+        Collections.sort(remaining, (a, b) -> Float.compare(b.score, a.score));
+
+        List<DetectedFace> faces = new ArrayList<>();
+        while (!remaining.isEmpty() && faces.size() < maxFaces) {
+            DetectedFace best = remaining.get(0);
+            float totalScore = 0f;
+            float left = 0f, top = 0f, right = 0f, bottom = 0f;
+            float[] landmarks = new float[best.landmarks.length];
+            List<DetectedFace> kept = new ArrayList<>();
+            for (DetectedFace candidate : remaining) {
+                if (candidate != best && DetectedFace.iou(best, candidate) <= iouThreshold) {
+                    kept.add(candidate);
+                    continue;
+                }
+                float weight = candidate.score;
+                totalScore += weight;
+                left += candidate.left * weight;
+                top += candidate.top * weight;
+                right += candidate.right * weight;
+                bottom += candidate.bottom * weight;
+                for (int i = 0; i < landmarks.length; i++) {
+                    landmarks[i] += candidate.landmarks[i] * weight;
+                }
+            }
+            for (int i = 0; i < landmarks.length; i++) {
+                landmarks[i] /= totalScore;
+            }
+            faces.add(new DetectedFace(left / totalScore, top / totalScore, right / totalScore, bottom / totalScore,
+                best.score, landmarks, DetectedFace.NO_TRACK, Float.NaN, Float.NaN, rollFromEyes(landmarks)));
+            remaining = kept;
+        }
+        return faces;
+    }
+
+    /**
+     * In-plane head rotation from the eye line in degrees (NaN without eye keypoints)
+     */
+    static float rollFromEyes(float[] landmarks) {
+        float dx = landmarks[2 * DetectedFace.LEFT_EYE] - landmarks[2 * DetectedFace.RIGHT_EYE];
+        float dy = landmarks[2 * DetectedFace.LEFT_EYE + 1] - landmarks[2 * DetectedFace.RIGHT_EYE + 1];
+        if (Float.isNaN(dx) || Float.isNaN(dy)) {
+            return Float.NaN;
+        }
+        return (float) Math.toDegrees(Math.atan2(dy, dx));
+    }
+
+    private static float sigmoid(float x) {
+        return (float) (1.0 / (1.0 + Math.exp(-x)));
+    }
+}
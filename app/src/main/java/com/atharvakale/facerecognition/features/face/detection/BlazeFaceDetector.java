@@ -0,0 +1,159 @@
+package com.atharvakale.facerecognition.features.face.detection;
+
+import android.graphics.Bitmap;
+import android.graphics.Matrix;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.camera.core.ImageProxy;
+import com.atharvakale.facerecognition.diagnostics.ResourceTracker;
+import com.atharvakale.facerecognition.ml.MLModelManager;
+import com.atharvakale.facerecognition.ml.ModelConfig;
+import com.atharvakale.facerecognition.ml.TFLiteProcessor;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BlazeFace face detection on TensorFlow Lite
+ * Runs through MLModelManager like the recognition model, so it shares its interpreter handling
+ * and its timing can be compared with ML Kit on the same frames; track IDs come from box overlap
+ * between consecutive frames
+ */
+public class BlazeFaceDetector implements FaceDetector {
+    private final MLModelManager modelManager;
+    private final String modelKey;
+    private final BlazeFaceDecoder decoder;
+    private final float[][][] regressors;
+    private final float[][][] scores;
+    private final float[] flatRegressors;
+    private final float[] flatScores;
+
+    private List<DetectedFace> previousFaces = new ArrayList<>();
+    private int nextTrackId;
+
+    public BlazeFaceDetector(MLModelManager modelManager, String modelKey) {
+        this.modelManager = modelManager;
+        this.modelKey = modelKey;
+        this.decoder = new BlazeFaceDecoder(
+            ModelConfig.FaceDetection.INPUT_SIZE,
+            ModelConfig.FaceDetection.ANCHOR_STRIDES,
+            ModelConfig.FaceDetection.ANCHORS_PER_LAYER,
+            ModelConfig.FaceDetection.NUM_COORDS,
+            ModelConfig.FaceDetection.BOX_SCALE,
+            ModelConfig.FaceDetection.SCORE_CLIP,
+            ModelConfig.FaceDetection.SCORE_THRESHOLD,
+            ModelConfig.FaceDetection.NMS_IOU_THRESHOLD,
+            ModelConfig.FaceDetection.MAX_FACES
+        );
+        int anchors = decoder.getAnchorCount();
+        this.regressors = new float[1][anchors][ModelConfig.FaceDetection.NUM_COORDS];
+        this.scores = new float[1][anchors][1];
+        this.flatRegressors = new float[anchors * ModelConfig.FaceDetection.NUM_COORDS];
+        this.flatScores = new float[anchors];
+    }
+
+    /**
+     * Create a detector, loading the BlazeFace model into the manager if needed
+     * @return Detector, or null if the model could not be loaded
+     */
+    public static BlazeFaceDetector create(MLModelManager modelManager) {
+        String modelKey = ModelConfig.FaceDetection.MODEL_KEY;
+        if (!modelManager.isModelLoaded(modelKey)
+                && !modelManager.loadModel(ModelConfig.FaceDetection.MODEL_FILE, modelKey)) {
+            return null;
+        }
+        return new BlazeFaceDetector(modelManager, modelKey);
+    }
+
+    @Override
+    public List<DetectedFace> detect(@Nullable ImageProxy imageProxy, @NonNull Bitmap frameBitmap,
+                                     int rotationDegrees) throws Exception {
+        boolean sideways = rotationDegrees == 90 || rotationDegrees == 270;
+        int width = sideways ? frameBitmap.getHeight() : frameBitmap.getWidth();
+        int height = sideways ? frameBitmap.getWidth() : frameBitmap.getHeight();
+
+        Bitmap upright = frameBitmap;
+        if (rotationDegrees != 0) {
+            Matrix matrix = new Matrix();
+            matrix.postRotate(rotationDegrees);
+            upright = Bitmap.createBitmap(frameBitmap, 0, 0, frameBitmap.getWidth(), frameBitmap.getHeight(), matrix, true);
+            if (upright != frameBitmap) {
+                ResourceTracker.track(upright, "detector-upright");
+            }
+        }
+        Bitmap input = Bitmap.createScaledBitmap(upright,
+            ModelConfig.FaceDetection.INPUT_SIZE, ModelConfig.FaceDetection.INPUT_SIZE, true);
+        if (input != upright) {
+            ResourceTracker.track(input, "detector-input");
+        }
+        if (upright != frameBitmap && upright != input) {
+            ResourceTracker.recycle(upright);
+        }
+
+        ByteBuffer imgData = TFLiteProcessor.bitmapToByteBuffer(
+            input,
+            ModelConfig.FaceDetection.INPUT_SIZE,
+            false,
+            ModelConfig.FaceDetection.IMAGE_MEAN,
+            ModelConfig.FaceDetection.IMAGE_STD
+        );
+        if (input != frameBitmap) {
+            ResourceTracker.recycle(input);
+        }
+
+        Map<Integer, Object> outputMap = new HashMap<>();
+        outputMap.put(0, regressors);
+        outputMap.put(1, scores);
+        if (!modelManager.runInference(modelKey, new Object[]{imgData}, outputMap)) {
+            throw new IllegalStateException("BlazeFace inference failed");
+        }
+
+        for (int i = 0; i < flatScores.length; i++) {
+            System.arraycopy(regressors[0][i], 0, flatRegressors, i * ModelConfig.FaceDetection.NUM_COORDS,
+                ModelConfig.FaceDetection.NUM_COORDS);
+            flatScores[i] = scores[0][i][0];
+        }
+        return assignTracks(decoder.decode(flatRegressors, flatScores, width, height));
+    }
+
+    /**
+     * Continue the track of the previous-frame face with the largest overlap, or start a new one
+     */
+    private List<DetectedFace> assignTracks(List<DetectedFace> faces) {
+        List<DetectedFace> unmatched = new ArrayList<>(previousFaces);
+        List<DetectedFace> tracked = new ArrayList<>(faces.size());
+        for (DetectedFace face : faces) {
+            DetectedFace match = null;
+            float bestOverlap = ModelConfig.FaceDetection.TRACK_IOU_THRESHOLD;
+            for (DetectedFace previous : unmatched) {
+                float overlap = DetectedFace.iou(face, previous);
+                if (overlap >= bestOverlap) {
+                    bestOverlap = overlap;
+                    match = previous;
+                }
+            }
+            if (match != null) {
+                unmatched.remove(match);
+                tracked.add(face.withTrackingId(match.trackingId));
+            } else {
+                tracked.add(face.withTrackingId(nextTrackId));
+                nextTrackId = (nextTrackId + 1) & Integer.MAX_VALUE;
+            }
+        }
+        previousFaces = tracked;
+        return tracked;
+    }
+
+    @Override
+    public FaceDetector newInstance() {
+        return new BlazeFaceDetector(modelManager, modelKey);
+    }
+
+    @Override
+    public void close() {
+        // The model belongs to the manager and stays loaded for other detectors
+        previousFaces = new ArrayList<>();
+    }
+}
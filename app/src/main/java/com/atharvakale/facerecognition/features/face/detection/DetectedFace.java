@@ -0,0 +1,100 @@
+package com.atharvakale.facerecognition.features.face.detection;
+
+import android.graphics.Rect;
+
+/**
+ * Detector-independent face detection result
+ * Coordinates are in pixels of the upright frame; landmarks are (x, y) pairs in the order of the
+ * landmark constants and NaN when the detector does not provide them
+ */
+public class DetectedFace {
+    public static final int NO_TRACK = -1;
+
+    public static final int RIGHT_EYE = 0;
+    public static final int LEFT_EYE = 1;
+    public static final int NOSE = 2;
+    public static final int MOUTH = 3;
+    public static final int RIGHT_EAR = 4;
+    public static final int LEFT_EAR = 5;
+    public static final int LANDMARK_COUNT = 6;
+
+    public final float left;
+    public final float top;
+    public final float right;
+    public final float bottom;
+    public final float score;
+    public final float[] landmarks;
+    public final int trackingId;
+    public final float yaw;     // degrees, NaN if unknown
+    public final float pitch;
+    public final float roll;
+
+    public DetectedFace(float left, float top, float right, float bottom, float score, float[] landmarks,
+                        int trackingId, float yaw, float pitch, float roll) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+        this.score = score;
+        this.landmarks = landmarks;
+        this.trackingId = trackingId;
+        this.yaw = yaw;
+        this.pitch = pitch;
+        this.roll = roll;
+    }
+
+    /**
+     * Copy with a tracking ID assigned
+     */
+    public DetectedFace withTrackingId(int id) {
+        return new DetectedFace(left, top, right, bottom, score, landmarks, id, yaw, pitch, roll);
+    }
+
+    public float getWidth() {
+        return right - left;
+    }
+
+    public float getHeight() {
+        return bottom - top;
+    }
+
+    public float getLandmarkX(int landmark) {
+        return landmarks[2 * landmark];
+    }
+
+    public float getLandmarkY(int landmark) {
+        return landmarks[2 * landmark + 1];
+    }
+
+    /**
+     * Bounding box rounded to whole pixels
+     */
+    public Rect getBoundingBox() {
+        return new Rect(Math.round(left), Math.round(top), Math.round(right), Math.round(bottom));
+    }
+
+    /**
+     * Intersection over union of two boxes
+     */
+    public static float iou(float leftA, float topA, float rightA, float bottomA,
+                            float leftB, float topB, float rightB, float bottomB) {
+        float width = Math.min(rightA, rightB) - Math.max(leftA, leftB);
+        float height = Math.min(bottomA, bottomB) - Math.max(topA, topB);
+        if (width <= 0 || height <= 0) {
+            return 0f;
+        }
+        float intersection = width * height;
+        float union = (rightA - leftA) * (bottomA - topA) + (rightB - leftB) * (bottomB - topB) - intersection;
+        return union <= 0 ? 0f : intersection / union;
+    }
+
+    public static float iou(DetectedFace a, DetectedFace b) {
+        return iou(a.left, a.top, a.right, a.bottom, b.left, b.top, b.right, b.bottom);
+    }
+
+    static float[] emptyLandmarks() {
+        float[] landmarks = new float[2 * LANDMARK_COUNT];
+        java.util.Arrays.fill(landmarks, Float.NaN);
+        return landmarks;
+    }
+}
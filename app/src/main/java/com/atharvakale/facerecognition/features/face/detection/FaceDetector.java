@@ -0,0 +1,30 @@
+package com.atharvakale.facerecognition.features.face.detection;
+
+import android.graphics.Bitmap;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.camera.core.ImageProxy;
+import java.util.List;
+
+/**
+ * Face detector used by the recognition pipeline
+ * Implementations run synchronously on the calling thread and are not shared between camera streams
+ */
+public interface FaceDetector {
+    /**
+     * Detect faces in a frame
+     * @param imageProxy Camera frame, or null when only a bitmap is available
+     * @param frameBitmap The frame as a bitmap in sensor orientation
+     * @param rotationDegrees Rotation that makes the frame upright
+     * @return Faces in upright frame coordinates, most prominent first
+     */
+    List<DetectedFace> detect(@Nullable ImageProxy imageProxy, @NonNull Bitmap frameBitmap, int rotationDegrees)
+        throws Exception;
+
+    /**
+     * Create another detector with the same configuration (e.g. for another camera stream)
+     */
+    FaceDetector newInstance();
+
+    void close();
+}
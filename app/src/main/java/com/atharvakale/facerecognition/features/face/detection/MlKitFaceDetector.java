@@ -0,0 +1,81 @@
+package com.atharvakale.facerecognition.features.face.detection;
+
+import android.graphics.Bitmap;
+import android.graphics.PointF;
+import android.graphics.Rect;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.camera.core.ImageProxy;
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.face.Face;
+import com.google.mlkit.vision.face.FaceDetection;
+import com.google.mlkit.vision.face.FaceDetectorOptions;
+import com.google.mlkit.vision.face.FaceLandmark;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ML Kit face detection behind the FaceDetector interface
+ */
+public class MlKitFaceDetector implements FaceDetector {
+    private static final int[] LANDMARK_TYPES = {
+        FaceLandmark.RIGHT_EYE, FaceLandmark.LEFT_EYE, FaceLandmark.NOSE_BASE,
+        FaceLandmark.MOUTH_BOTTOM, FaceLandmark.RIGHT_EAR, FaceLandmark.LEFT_EAR
+    };
+
+    private final FaceDetectorOptions options;
+    private final com.google.mlkit.vision.face.FaceDetector client;
+
+    public MlKitFaceDetector(FaceDetectorOptions options) {
+        this.options = options;
+        this.client = FaceDetection.getClient(options);
+    }
+
+    /**
+     * Accurate mode with tracking (face IDs stay stable across frames for voting)
+     */
+    public static MlKitFaceDetector createDefault() {
+        return new MlKitFaceDetector(new FaceDetectorOptions.Builder()
+            .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_ACCURATE)
+            .enableTracking()
+            .build());
+    }
+
+    @Override
+    public List<DetectedFace> detect(@Nullable ImageProxy imageProxy, @NonNull Bitmap frameBitmap,
+                                     int rotationDegrees) throws Exception {
+        InputImage image = imageProxy != null && imageProxy.getImage() != null
+            ? InputImage.fromMediaImage(imageProxy.getImage(), rotationDegrees)
+            : InputImage.fromBitmap(frameBitmap, rotationDegrees);
+        List<Face> faces = Tasks.await(client.process(image));
+
+        List<DetectedFace> detected = new ArrayList<>(faces.size());
+        for (Face face : faces) {
+            Rect box = face.getBoundingBox();
+            float[] landmarks = DetectedFace.emptyLandmarks();
+            for (int i = 0; i < LANDMARK_TYPES.length; i++) {
+                FaceLandmark landmark = face.getLandmark(LANDMARK_TYPES[i]);
+                if (landmark != null) {
+                    PointF position = landmark.getPosition();
+                    landmarks[2 * i] = position.x;
+                    landmarks[2 * i + 1] = position.y;
+                }
+            }
+            detected.add(new DetectedFace(box.left, box.top, box.right, box.bottom, 1f, landmarks,
+                face.getTrackingId() != null ? face.getTrackingId() : DetectedFace.NO_TRACK,
+                face.getHeadEulerAngleY(), face.getHeadEulerAngleX(), face.getHeadEulerAngleZ()));
+        }
+        return detected;
+    }
+
+    @Override
+    public FaceDetector newInstance() {
+        return new MlKitFaceDetector(options);
+    }
+
+    @Override
+    public void close() {
+        client.close();
+    }
+}
@@ -3,17 +3,22 @@ package com.atharvakale.facerecognition.hardware;
 import android.app.Activity;
 import android.util.Size;
 import androidx.annotation.NonNull;
+import androidx.camera.core.CameraInfo;
 import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ConcurrentCamera;
 import androidx.camera.core.ImageAnalysis;
 import androidx.camera.core.ImageProxy;
 import androidx.camera.core.Preview;
+import androidx.camera.core.UseCaseGroup;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.view.PreviewView;
 import androidx.core.content.ContextCompat;
 import androidx.lifecycle.LifecycleOwner;
 import com.google.common.util.concurrent.ListenableFuture;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 /**
@@ -29,17 +34,37 @@ public class CameraManager {
     private PreviewView previewView;
     private ListenableFuture<ProcessCameraProvider> cameraProviderFuture;
     
+    // One analyzer thread for the lifetime of the manager, shared by every binding
+    private final ExecutorService analysisExecutor = Executors.newSingleThreadExecutor();
+    
     private int cameraFacing = CameraSelector.LENS_FACING_BACK;
+    private Size analysisResolution = new Size(640, 480);
     private boolean flipX = false;
+    private int[] streamLensFacings = new int[0];
     
     public interface ImageAnalysisCallback {
         void onImageAvailable(@NonNull ImageProxy imageProxy);
     }
     
+    /**
+     * Frames from several cameras, told apart by stream index
+     * Called on the shared analyzer thread, so implementations should hand frames off quickly
+     */
+    public interface StreamCallback {
+        void onImageAvailable(int cameraId, @NonNull ImageProxy imageProxy);
+    }
+    
     public CameraManager(Activity context) {
         this.context = context;
     }
     
+    /**
+     * Set the analysis resolution (e.g. from the autotuned profile); applies from the next bind
+     */
+    public void setAnalysisResolution(int width, int height) {
+        this.analysisResolution = new Size(width, height);
+    }
+    
     /**
      * Initialize camera with preview view
      */
@@ -77,13 +102,8 @@ public class CameraManager {
         
         preview.setSurfaceProvider(previewView.getSurfaceProvider());
         
-        imageAnalysis = new ImageAnalysis.Builder()
-                .setTargetResolution(new Size(640, 480))
-                .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
-                .build();
-        
-        Executor executor = Executors.newSingleThreadExecutor();
-        imageAnalysis.setAnalyzer(executor, callback::onImageAvailable);
+        imageAnalysis = createImageAnalysis();
+        imageAnalysis.setAnalyzer(analysisExecutor, callback::onImageAvailable);
         
         try {
             cameraProvider.bindToLifecycle(
@@ -97,6 +117,81 @@ public class CameraManager {
         }
     }
     
+    private ImageAnalysis createImageAnalysis() {
+        return new ImageAnalysis.Builder()
+                .setTargetResolution(analysisResolution)
+                .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                .build();
+    }
+    
+    /**
+     * Start all cameras the device can run concurrently (e.g. front and back), each with its own analysis
+     * Falls back to the current single camera as stream 0 when concurrent cameras are not supported
+     */
+    public void startConcurrentCameras(StreamCallback callback) {
+        cameraProviderFuture.addListener(() -> {
+            try {
+                cameraProvider = cameraProviderFuture.get();
+                bindConcurrent(callback);
+            } catch (ExecutionException | InterruptedException e) {
+                e.printStackTrace();
+            }
+        }, ContextCompat.getMainExecutor(context));
+    }
+    
+    private void bindConcurrent(StreamCallback callback) {
+        List<List<CameraInfo>> combinations = cameraProvider.getAvailableConcurrentCameraInfos();
+        if (combinations == null || combinations.isEmpty()) {
+            streamLensFacings = new int[] {cameraFacing};
+            bindPreview(imageProxy -> callback.onImageAvailable(0, imageProxy));
+            return;
+        }
+        
+        cameraProvider.unbindAll();
+        List<CameraInfo> cameras = combinations.get(0);
+        List<ConcurrentCamera.SingleCameraConfig> configs = new ArrayList<>();
+        int[] lensFacings = new int[cameras.size()];
+        for (int i = 0; i < cameras.size(); i++) {
+            int cameraId = i;
+            lensFacings[i] = cameras.get(i).getLensFacing();
+            
+            ImageAnalysis analysis = createImageAnalysis();
+            analysis.setAnalyzer(analysisExecutor, imageProxy -> callback.onImageAvailable(cameraId, imageProxy));
+            UseCaseGroup.Builder group = new UseCaseGroup.Builder().addUseCase(analysis);
+            
+            // Only the first camera is shown on screen
+            if (i == 0) {
+                preview = new Preview.Builder().build();
+                preview.setSurfaceProvider(previewView.getSurfaceProvider());
+                group.addUseCase(preview);
+            }
+            configs.add(new ConcurrentCamera.SingleCameraConfig(
+                cameras.get(i).getCameraSelector(), group.build(), (LifecycleOwner) context));
+        }
+        streamLensFacings = lensFacings;
+        
+        try {
+            cameraProvider.bindToLifecycle(configs);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Get the number of camera streams bound by startConcurrentCameras
+     */
+    public int getStreamCount() {
+        return streamLensFacings.length;
+    }
+    
+    /**
+     * Check if frames of a concurrent camera stream should be flipped horizontally
+     */
+    public boolean shouldFlipX(int cameraId) {
+        return cameraId < streamLensFacings.length
+            && streamLensFacings[cameraId] == CameraSelector.LENS_FACING_FRONT;
+    }
+    
     /**
      * Switch between front and back camera
      */
@@ -149,6 +244,10 @@ public class CameraManager {
      */
     public void cleanup() {
         stopCamera();
+        if (imageAnalysis != null) {
+            imageAnalysis.clearAnalyzer();
+        }
+        analysisExecutor.shutdown();
         cameraProvider = null;
     }
 } 
\ No newline at end of file
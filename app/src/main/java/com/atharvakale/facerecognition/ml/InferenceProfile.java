@@ -0,0 +1,49 @@
+package com.atharvakale.facerecognition.ml;
+
+/**
+ * Inference configuration chosen by the autotuner for one device and model
+ * Stored as JSON, keyed by device model and OS version
+ */
+public class InferenceProfile {
+    public final String deviceKey;
+    public final String modelFingerprint;
+    public final int numThreads;
+    public final boolean useXnnpack;
+    public final int batchSize;
+    public final boolean preferQuantized;   // int8 model measured faster (needs a model upgrade to use)
+    public final int analysisWidth;
+    public final int analysisHeight;
+    public final float embeddingMs;         // per face with the chosen options
+    public final float detectionMs;         // per frame at the chosen resolution, -1 if not measured
+    public final long tunedAtMs;
+
+    public InferenceProfile(String deviceKey, String modelFingerprint, int numThreads, boolean useXnnpack,
+                            int batchSize, boolean preferQuantized, int analysisWidth, int analysisHeight,
+                            float embeddingMs, float detectionMs, long tunedAtMs) {
+        this.deviceKey = deviceKey;
+        this.modelFingerprint = modelFingerprint;
+        this.numThreads = numThreads;
+        this.useXnnpack = useXnnpack;
+        this.batchSize = batchSize;
+        this.preferQuantized = preferQuantized;
+        this.analysisWidth = analysisWidth;
+        this.analysisHeight = analysisHeight;
+        this.embeddingMs = embeddingMs;
+        this.detectionMs = detectionMs;
+        this.tunedAtMs = tunedAtMs;
+    }
+
+    /**
+     * Whether this profile was measured for the given model
+     */
+    public boolean matches(String fingerprint) {
+        return modelFingerprint != null && modelFingerprint.equals(fingerprint);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s threads=%d xnnpack=%b batch=%d int8=%b analysis=%dx%d embed=%.1fms detect=%.1fms",
+            deviceKey, numThreads, useXnnpack, batchSize, preferQuantized, analysisWidth, analysisHeight,
+            embeddingMs, detectionMs);
+    }
+}
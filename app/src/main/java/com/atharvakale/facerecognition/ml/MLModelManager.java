@@ -1,14 +1,27 @@
 package com.atharvakale.facerecognition.ml;
 
-import android.app.Activity;
+import android.content.Context;
 import android.content.res.AssetFileDescriptor;
+import com.atharvakale.facerecognition.diagnostics.ResourceTracker;
 import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Manages TensorFlow Lite models for the application
@@ -16,11 +29,44 @@ import java.util.Map;
  */
 public class MLModelManager {
     private Map<String, Interpreter> loadedModels;
-    private Activity context;
+    private Map<String, String> modelFingerprints;
+    private Map<String, MappedByteBuffer> modelBuffers;
+    private Map<String, InterpreterPool> interpreterPools;
+    private Map<String, Interpreter> batchInterpreters;
+    private Context context;
+    private volatile int numThreads = -1;
+    private volatile boolean useXnnpack = true;
     
-    public MLModelManager(Activity context) {
+    /**
+     * Interpreters of one model handed out to concurrent callers
+     * The first member is the model's primary interpreter
+     */
+    private static class InterpreterPool {
+        final List<Interpreter> members;
+        final BlockingQueue<Interpreter> idle;
+        
+        InterpreterPool(List<Interpreter> members) {
+            this.members = members;
+            this.idle = new ArrayBlockingQueue<>(members.size(), false, members);
+        }
+        
+        /**
+         * Close all interpreters except the primary one
+         */
+        void closeReplicas() {
+            for (int i = 1; i < members.size(); i++) {
+                closeInterpreter(members.get(i));
+            }
+        }
+    }
+    
+    public MLModelManager(Context context) {
         this.context = context;
-        this.loadedModels = new HashMap<>();
+        this.loadedModels = new ConcurrentHashMap<>();
+        this.modelFingerprints = new ConcurrentHashMap<>();
+        this.modelBuffers = new ConcurrentHashMap<>();
+        this.interpreterPools = new ConcurrentHashMap<>();
+        this.batchInterpreters = new ConcurrentHashMap<>();
     }
     
     /**
@@ -31,16 +77,192 @@ public class MLModelManager {
      */
     public boolean loadModel(String modelName, String modelKey) {
         try {
-            MappedByteBuffer modelBuffer = loadModelFile(context, modelName);
-            Interpreter interpreter = new Interpreter(modelBuffer);
-            loadedModels.put(modelKey, interpreter);
-            return true;
+            return register(modelKey, loadModelFile(context, modelName));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+    
+    /**
+     * Load a TensorFlow Lite model from a file (e.g. a downloaded model upgrade)
+     * @param modelFile Model file on local storage
+     * @param modelKey Unique key to identify this model
+     * @return true if loaded successfully, false otherwise
+     */
+    public boolean loadModelFromFile(File modelFile, String modelKey) {
+        try (FileInputStream inputStream = new FileInputStream(modelFile)) {
+            FileChannel fileChannel = inputStream.getChannel();
+            return register(modelKey, fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size()));
         } catch (IOException e) {
             e.printStackTrace();
             return false;
         }
     }
     
+    private boolean register(String modelKey, MappedByteBuffer modelBuffer) {
+        String fingerprint = fingerprint(modelBuffer);
+        Interpreter interpreter = createInterpreter(modelBuffer, numThreads, useXnnpack);
+        InterpreterPool previousPool = interpreterPools.remove(modelKey);
+        closeBatchInterpreter(modelKey);
+        Interpreter previous = loadedModels.put(modelKey, interpreter);
+        modelFingerprints.put(modelKey, fingerprint);
+        modelBuffers.put(modelKey, modelBuffer);
+        if (previousPool != null) {
+            previousPool.closeReplicas();
+        }
+        if (previous != null) {
+            closeInterpreter(previous);
+        }
+        return true;
+    }
+    
+    private static Interpreter createInterpreter(ByteBuffer modelBuffer, int threads, boolean xnnpack) {
+        Interpreter.Options options = new Interpreter.Options()
+            .setNumThreads(threads)
+            .setUseXNNPACK(xnnpack);
+        return ResourceTracker.track(ResourceTracker.Kind.INTERPRETER, new Interpreter(modelBuffer, options),
+            modelBuffer.capacity(), "interpreter");
+    }
+    
+    /**
+     * Set the interpreter options used for interpreters created from now on
+     * Already loaded models keep their interpreters until reloadInterpreters is called
+     * @param numThreads CPU threads per interpreter (-1 = runtime default)
+     * @param useXnnpack Whether to use the XNNPACK CPU delegate
+     */
+    public void setInterpreterOptions(int numThreads, boolean useXnnpack) {
+        this.numThreads = numThreads;
+        this.useXnnpack = useXnnpack;
+    }
+    
+    public int getNumThreads() {
+        return numThreads;
+    }
+    
+    public boolean isXnnpackEnabled() {
+        return useXnnpack;
+    }
+    
+    /**
+     * Recreate a loaded model's interpreters (and pool) with the current interpreter options
+     * @return true if the model was reloaded, false if it is not loaded
+     */
+    public boolean reloadInterpreters(String modelKey) {
+        MappedByteBuffer modelBuffer = modelBuffers.get(modelKey);
+        if (modelBuffer == null) {
+            return false;
+        }
+        int poolSize = getInterpreterCount(modelKey);
+        register(modelKey, modelBuffer);
+        if (poolSize > 1) {
+            createInterpreterPool(modelKey, poolSize);
+        }
+        return true;
+    }
+    
+    /**
+     * Time a loaded model with the given options on a temporary interpreter
+     * The input's first dimension is resized to the batch size; inputs are zero-filled
+     * @param batchSize Items per inference
+     * @param warmupRuns Untimed runs before measuring
+     * @param timedRuns Measured runs
+     * @return Median milliseconds per item, or -1 if the model is not loaded or the configuration failed
+     */
+    public float benchmark(String modelKey, int numThreads, boolean useXnnpack, int batchSize,
+                           int warmupRuns, int timedRuns) {
+        MappedByteBuffer modelBuffer = modelBuffers.get(modelKey);
+        if (modelBuffer == null || batchSize < 1 || timedRuns < 1) {
+            return -1f;
+        }
+        Interpreter interpreter = null;
+        try {
+            interpreter = createInterpreter(modelBuffer, numThreads, useXnnpack);
+            if (batchSize > 1) {
+                for (int i = 0; i < interpreter.getInputTensorCount(); i++) {
+                    int[] shape = interpreter.getInputTensor(i).shape().clone();
+                    shape[0] = batchSize;
+                    interpreter.resizeInput(i, shape);
+                }
+                interpreter.allocateTensors();
+            }
+            Object[] inputArray = new Object[interpreter.getInputTensorCount()];
+            for (int i = 0; i < inputArray.length; i++) {
+                inputArray[i] = allocateTensorBuffer(interpreter.getInputTensor(i), "dummy-input");
+            }
+            Map<Integer, Object> outputMap = new HashMap<>();
+            for (int i = 0; i < interpreter.getOutputTensorCount(); i++) {
+                outputMap.put(i, allocateTensorBuffer(interpreter.getOutputTensor(i), "dummy-output"));
+            }
+            
+            long[] durations = new long[timedRuns];
+            for (int run = -warmupRuns; run < timedRuns; run++) {
+                for (Object input : inputArray) {
+                    ((ByteBuffer) input).rewind();
+                }
+                for (Object output : outputMap.values()) {
+                    ((ByteBuffer) output).rewind();
+                }
+                long start = System.nanoTime();
+                interpreter.runForMultipleInputsOutputs(inputArray, outputMap);
+                if (run >= 0) {
+                    durations[run] = System.nanoTime() - start;
+                }
+            }
+            releaseTensorBuffers(inputArray, outputMap);
+            Arrays.sort(durations);
+            return durations[timedRuns / 2] / 1e6f / batchSize;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return -1f;
+        } finally {
+            if (interpreter != null) {
+                closeInterpreter(interpreter);
+            }
+        }
+    }
+    
+    /**
+     * Get the content fingerprint of a loaded model
+     * Embeddings are only comparable when produced by models with the same fingerprint
+     * @return Hex fingerprint, or null if the model is not loaded
+     */
+    public String getModelFingerprint(String modelKey) {
+        return modelFingerprints.get(modelKey);
+    }
+    
+    /**
+     * Compute the fingerprint of a model file without loading it
+     * @return Hex fingerprint, or null if the file cannot be read
+     */
+    public static String fingerprintOf(File modelFile) {
+        try (FileInputStream inputStream = new FileInputStream(modelFile)) {
+            FileChannel fileChannel = inputStream.getChannel();
+            return fingerprint(fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size()));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+    
+    /**
+     * Truncated SHA-256 of the model bytes
+     */
+    private static String fingerprint(ByteBuffer modelBuffer) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(modelBuffer.duplicate());
+            byte[] hash = digest.digest();
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
     /**
      * Get a loaded model interpreter
      * @param modelKey The key of the model to retrieve
@@ -50,32 +272,198 @@ public class MLModelManager {
         return loadedModels.get(modelKey);
     }
     
+    /**
+     * Create extra interpreters for a model so several threads can run it at once
+     * Afterwards each runInference call borrows an idle interpreter instead of waiting for the single one
+     * @param modelKey The key of a loaded model
+     * @param size Total number of interpreters, including the primary one
+     * @return true if the pool was created, false if the model is not loaded
+     */
+    public boolean createInterpreterPool(String modelKey, int size) {
+        Interpreter primary = loadedModels.get(modelKey);
+        MappedByteBuffer modelBuffer = modelBuffers.get(modelKey);
+        if (primary == null || modelBuffer == null || size < 1) {
+            return false;
+        }
+        List<Interpreter> members = new ArrayList<>();
+        members.add(primary);
+        for (int i = 1; i < size; i++) {
+            members.add(createInterpreter(modelBuffer, numThreads, useXnnpack));
+        }
+        InterpreterPool previous = interpreterPools.put(modelKey, new InterpreterPool(members));
+        if (previous != null) {
+            previous.closeReplicas();
+        }
+        return true;
+    }
+    
+    /**
+     * Get the number of interpreters serving a model (1 without a pool)
+     */
+    public int getInterpreterCount(String modelKey) {
+        InterpreterPool pool = interpreterPools.get(modelKey);
+        return pool != null ? pool.members.size() : (loadedModels.containsKey(modelKey) ? 1 : 0);
+    }
+    
     /**
      * Run inference on a model
+     * Calls on the same interpreter are serialized since an Interpreter is not thread-safe;
+     * models with an interpreter pool run up to the pool size in parallel
      * @param modelKey The key of the model to use
      * @param inputArray Input data for the model
      * @param outputMap Output map to store results
      * @return true if inference successful, false otherwise
      */
     public boolean runInference(String modelKey, Object[] inputArray, Map<Integer, Object> outputMap) {
-        Interpreter interpreter = loadedModels.get(modelKey);
+        InterpreterPool pool = interpreterPools.get(modelKey);
+        Interpreter interpreter;
+        try {
+            interpreter = pool != null ? pool.idle.take() : loadedModels.get(modelKey);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
         if (interpreter != null) {
             try {
-                interpreter.runForMultipleInputsOutputs(inputArray, outputMap);
+                synchronized (interpreter) {
+                    interpreter.runForMultipleInputsOutputs(inputArray, outputMap);
+                }
                 return true;
             } catch (Exception e) {
                 e.printStackTrace();
                 return false;
+            } finally {
+                if (pool != null) {
+                    pool.idle.offer(interpreter);
+                }
             }
         }
         return false;
     }
     
+    /**
+     * Run several inputs through one invocation of a dedicated batch interpreter
+     * The interpreter's first input dimension is resized only when the batch size changes, so
+     * callers that keep a steady batch size allocate tensors once
+     * @param batchSize Items in the input
+     * @param input Items back to back in the model's input layout
+     * @param output Output array with batchSize rows
+     * @return true if inference successful, false otherwise
+     */
+    public boolean runBatchInference(String modelKey, int batchSize, ByteBuffer input, Object output) {
+        MappedByteBuffer modelBuffer = modelBuffers.get(modelKey);
+        if (modelBuffer == null || batchSize < 1) {
+            return false;
+        }
+        Interpreter interpreter;
+        synchronized (batchInterpreters) {
+            interpreter = batchInterpreters.get(modelKey);
+            if (interpreter == null) {
+                interpreter = createInterpreter(modelBuffer, numThreads, useXnnpack);
+                batchInterpreters.put(modelKey, interpreter);
+            }
+        }
+        try {
+            synchronized (interpreter) {
+                int[] shape = interpreter.getInputTensor(0).shape();
+                if (shape[0] != batchSize) {
+                    shape = shape.clone();
+                    shape[0] = batchSize;
+                    interpreter.resizeInput(0, shape);
+                    interpreter.allocateTensors();
+                }
+                input.rewind();
+                interpreter.run(input, output);
+            }
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+    
+    private void closeBatchInterpreter(String modelKey) {
+        Interpreter interpreter;
+        synchronized (batchInterpreters) {
+            interpreter = batchInterpreters.remove(modelKey);
+        }
+        if (interpreter != null) {
+            closeInterpreter(interpreter);
+        }
+    }
+    
+    /**
+     * Run dummy inferences so the first real frame doesn't pay interpreter initialization cost
+     * (delegate setup, kernel preparation and JIT of the Java call path)
+     * @param modelKey The key of the model to warm up
+     * @param iterations Number of dummy inferences to run
+     * @return true if all warm-up runs succeeded, false otherwise
+     */
+    public boolean warmUp(String modelKey, int iterations) {
+        Interpreter interpreter = loadedModels.get(modelKey);
+        if (interpreter == null) {
+            return false;
+        }
+        try {
+            Object[] inputArray = new Object[interpreter.getInputTensorCount()];
+            for (int i = 0; i < inputArray.length; i++) {
+                inputArray[i] = allocateTensorBuffer(interpreter.getInputTensor(i), "dummy-input");
+            }
+            Map<Integer, Object> outputMap = new HashMap<>();
+            for (int i = 0; i < interpreter.getOutputTensorCount(); i++) {
+                outputMap.put(i, allocateTensorBuffer(interpreter.getOutputTensor(i), "dummy-output"));
+            }
+            for (int run = 0; run < iterations; run++) {
+                for (Object input : inputArray) {
+                    ((ByteBuffer) input).rewind();
+                }
+                for (Object output : outputMap.values()) {
+                    ((ByteBuffer) output).rewind();
+                }
+                synchronized (interpreter) {
+                    interpreter.runForMultipleInputsOutputs(inputArray, outputMap);
+                }
+            }
+            releaseTensorBuffers(inputArray, outputMap);
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+    
+    /**
+     * Close an interpreter once no inference is running on it
+     */
+    private static void closeInterpreter(Interpreter interpreter) {
+        synchronized (interpreter) {
+            interpreter.close();
+        }
+        ResourceTracker.release(interpreter);
+    }
+    
+    private static ByteBuffer allocateTensorBuffer(Tensor tensor, String site) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(tensor.numBytes()).order(ByteOrder.nativeOrder());
+        return ResourceTracker.track(ResourceTracker.Kind.DIRECT_BUFFER, buffer, buffer.capacity(), site);
+    }
+    
+    /**
+     * Mark dummy tensor buffers as no longer used (they are freed by the collector)
+     */
+    private static void releaseTensorBuffers(Object[] inputArray, Map<Integer, Object> outputMap) {
+        for (Object input : inputArray) {
+            ResourceTracker.release(input);
+        }
+        for (Object output : outputMap.values()) {
+            ResourceTracker.release(output);
+        }
+    }
+    
     /**
      * Load model file from assets
      */
-    private MappedByteBuffer loadModelFile(Activity activity, String modelFile) throws IOException {
-        AssetFileDescriptor fileDescriptor = activity.getAssets().openFd(modelFile);
+    private MappedByteBuffer loadModelFile(Context context, String modelFile) throws IOException {
+        AssetFileDescriptor fileDescriptor = context.getAssets().openFd(modelFile);
         FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
         FileChannel fileChannel = inputStream.getChannel();
         long startOffset = fileDescriptor.getStartOffset();
@@ -94,9 +482,16 @@ public class MLModelManager {
      * Unload a specific model to free memory
      */
     public void unloadModel(String modelKey) {
+        InterpreterPool pool = interpreterPools.remove(modelKey);
+        closeBatchInterpreter(modelKey);
         Interpreter interpreter = loadedModels.remove(modelKey);
+        modelFingerprints.remove(modelKey);
+        modelBuffers.remove(modelKey);
+        if (pool != null) {
+            pool.closeReplicas();
+        }
         if (interpreter != null) {
-            interpreter.close();
+            closeInterpreter(interpreter);
         }
     }
     
@@ -104,11 +499,20 @@ public class MLModelManager {
      * Unload all models and cleanup
      */
     public void cleanup() {
+        for (InterpreterPool pool : interpreterPools.values()) {
+            pool.closeReplicas();
+        }
+        interpreterPools.clear();
+        for (String modelKey : new ArrayList<>(batchInterpreters.keySet())) {
+            closeBatchInterpreter(modelKey);
+        }
         for (Interpreter interpreter : loadedModels.values()) {
             if (interpreter != null) {
-                interpreter.close();
+                closeInterpreter(interpreter);
             }
         }
         loadedModels.clear();
+        modelFingerprints.clear();
+        modelBuffers.clear();
     }
 } 
\ No newline at end of file
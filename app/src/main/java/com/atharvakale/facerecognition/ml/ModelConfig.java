@@ -16,13 +16,175 @@ public class ModelConfig {
         public static final float IMAGE_STD = 128.0f;
         public static final boolean IS_QUANTIZED = false;
         public static final float DEFAULT_SIMILARITY_THRESHOLD = 0.65f;
+        public static final int WARMUP_RUNS = 2;
+        public static final int REGISTRATION_CANDIDATES = 5;
+        public static final long REGISTRATION_CANDIDATE_MAX_AGE_MS = 2000;
+        
+        // Face quality gate (applied before embedding)
+        public static final int QUALITY_MIN_FACE_SIZE = 64;            // pixels in the analysis frame
+        public static final float QUALITY_MAX_YAW = 35f;               // degrees
+        public static final float QUALITY_MAX_PITCH = 25f;
+        public static final float QUALITY_MAX_ROLL = 30f;
+        public static final float QUALITY_MIN_VISIBLE_FRACTION = 0.9f; // of the bounding box inside the frame
+        public static final float QUALITY_MIN_SHARPNESS = 25f;         // Laplacian variance on the Y plane
+        
+        // Gallery matching
+        public static final int MATCH_BLOCK_BYTES = 128 * 1024;        // embedding bytes per worker block
+        public static final int MATCH_PARALLEL_THRESHOLD = 8192;       // smaller galleries scan on one thread
+        public static final int MATCH_EARLY_ABANDON_DIMS = 16;         // dimensions between bound checks, 0 = off
+        public static final int HOT_SET_SIZE = 16;                     // recently matched identities checked first
+        public static final float HOT_SET_MARGIN = 0.1f;               // below the threshold needed to skip the scan
+        
+        // Background re-embedding on model upgrade
+        public static final long REEMBED_THROTTLE_MS = 50;             // pause after each face
+        public static final int REEMBED_CHECKPOINT_INTERVAL = 25;      // faces between checkpoints
+        
+        // Motion gate (skips detection in static, empty scenes)
+        public static final int MOTION_GRID_WIDTH = 32;
+        public static final int MOTION_GRID_HEIGHT = 24;
+        public static final float MOTION_PIXEL_THRESHOLD = 12f;        // luma change of a grid cell
+        public static final float MOTION_MIN_CHANGED_FRACTION = 0.01f; // of the grid cells
+        public static final float MOTION_BACKGROUND_RATE = 0.05f;      // background adaptation per checked frame
+        public static final long MOTION_TRACK_HOLD_MS = 1000;          // keep detecting after the last face
+        public static final long MOTION_IDLE_TIMEOUT_MS = 10000;
+        public static final long MOTION_IDLE_INTERVAL_MS = 500;        // 2 checked frames/s while idle
+        
+        // Tiered gallery: galleries larger than the hot budget keep cold rows in a memory-mapped file
+        public static final long GALLERY_HOT_BUDGET_BYTES = 4L * 1024 * 1024;
+        public static final int GALLERY_REBALANCE_INTERVAL = 64;       // accepted matches between rebalances
+        public static final float GALLERY_ACCESS_DECAY = 0.999f;       // match count half-life ~700 matches
+        
+        // Progressive gallery load at startup: chunks double from the first size up to the max
+        public static final int GALLERY_LOAD_FIRST_CHUNK = 256;
+        public static final int GALLERY_LOAD_MAX_CHUNK = 16384;
+        public static final long GALLERY_LOAD_WAIT_MS = 30000;         // replication start, never on the main thread
+        
+        // Gallery archives for provisioning: imported faces are applied and journaled in batches
+        public static final int GALLERY_IMPORT_BATCH = 4096;
+        
+        // Identity directory
+        public static final int DIRECTORY_PAGE_SIZE = 50;
+        public static final long DIRECTORY_SEEN_SEED_MS = 7L * 24 * 60 * 60 * 1000;  // journal span read at startup
+        
+        // Thumbnails of registered faces shown by the directory list
+        public static final int THUMBNAIL_JPEG_QUALITY = 85;           // ~3-4 KB per 112x112 crop on disk
+        public static final int THUMBNAIL_DISPLAY_SIZE = 56;           // decoded as 56x56 RGB_565, ~6 KB each
+        public static final long THUMBNAIL_CACHE_BYTES = 2L * 1024 * 1024;
+        public static final int THUMBNAIL_PREFETCH_ROWS = 20;          // beyond the visible rows, each way
+        
+        // Results handed to the UI once per display frame, latest per face
+        public static final int RESULT_STREAM_MAX_KEYS = 64;           // pending keys before the oldest is dropped
+        public static final long ERROR_TOAST_INTERVAL_MS = 3500;       // a repeated error is shown again after this
+        
+        // Recognition event journal
+        public static final int JOURNAL_BUFFER_EVENTS = 8192;          // queued before events are dropped
+        public static final int JOURNAL_RECORDS_PER_SEGMENT = 65536;   // 2 MB segment files
+        public static final int JOURNAL_MAX_SEGMENTS = 32;
+        public static final long JOURNAL_COOLDOWN_MS = 30000;          // repeats of one identity within this are skipped
+        public static final long JOURNAL_FLUSH_INTERVAL_MS = 250;
+        
+        // Multi-frame identity voting (evidence is measured in threshold-normalized distance)
+        public static final float VOTE_ACCEPT_BOUND = 0.6f;
+        public static final float VOTE_REJECT_BOUND = 0.8f;
+        public static final int VOTE_MAX_FRAMES = 10;
+        public static final long VOTE_TRACK_TIMEOUT_MS = 1000;
+        public static final long VOTE_UNKNOWN_RECHECK_MS = 3000;
+        
+        // Clustering of unknown faces (enrollment suggestions)
+        public static final int UNKNOWN_CLUSTER_CAPACITY = 64;
+        public static final float UNKNOWN_CLUSTER_RADIUS = 0.65f;
+        public static final int UNKNOWN_CLUSTER_EXEMPLARS = 2;         // 112x112 crops, ~100 KB per cluster
+        public static final int UNKNOWN_CLUSTER_MAX_WEIGHT = 20;       // centroid turns into a moving average
+        public static final long UNKNOWN_CLUSTER_MAX_AGE_MS = 6L * 60 * 60 * 1000;
+        public static final int UNKNOWN_MIN_SIGHTINGS = 2;             // distinct tracks before a suggestion
     }
     
-    // Future: Audio Recognition Model Configuration
+    // Face Detection Model Configuration (BlazeFace short range)
+    public static class FaceDetection {
+        public static final String MODEL_FILE = "face_detection_short_range.tflite";
+        public static final String MODEL_KEY = "face_detection";
+        public static final int INPUT_SIZE = 128;
+        public static final float IMAGE_MEAN = 127.5f;     // inputs normalized to [-1, 1]
+        public static final float IMAGE_STD = 127.5f;
+        public static final int[] ANCHOR_STRIDES = {8, 16, 16, 16};
+        public static final int ANCHORS_PER_LAYER = 2;
+        public static final int NUM_ANCHORS = 896;
+        public static final int NUM_COORDS = 16;           // box (4) + 6 keypoints (x, y)
+        public static final float BOX_SCALE = 128f;        // regressor units per input image
+        public static final float SCORE_CLIP = 100f;
+        public static final float SCORE_THRESHOLD = 0.5f;
+        public static final float NMS_IOU_THRESHOLD = 0.3f;
+        public static final int MAX_FACES = 10;
+        public static final float TRACK_IOU_THRESHOLD = 0.3f; // box overlap that continues a track
+    }
+    
+    // Inference autotuning (microbenchmarks on first launch and after model changes)
+    public static class Autotune {
+        public static final String QUANTIZED_MODEL_FILE = "mobile_face_net_int8.tflite";
+        public static final int[] THREAD_CANDIDATES = {1, 2, 4};
+        public static final int[] BATCH_CANDIDATES = {1, 2, 4, 8};
+        public static final int[][] RESOLUTION_CANDIDATES = {{640, 480}, {480, 360}, {320, 240}};
+        public static final int DEFAULT_ANALYSIS_WIDTH = 640;
+        public static final int DEFAULT_ANALYSIS_HEIGHT = 480;
+        public static final int WARMUP_RUNS = 3;
+        public static final int TIMED_RUNS = 15;
+        public static final float FRAME_BUDGET_MS = 66f;       // detection + one embedding per frame (15 fps)
+        public static final float MIN_BATCH_GAIN = 0.1f;       // larger batches must be this much faster per face
+        public static final float MIN_QUANTIZED_GAIN = 0.15f;
+    }
+    
+    // Audio Recognition Model Configuration
     public static class AudioRecognition {
         public static final String MODEL_FILE = "audio_recognition.tflite";
         public static final String MODEL_KEY = "audio_recognition";
-        // Additional audio-specific configurations will be added here
+        public static final int SAMPLE_RATE = 16000;
+        public static final int FRAME_SIZE = 512;          // 32 ms analysis window
+        public static final int HOP_SIZE = 160;            // 10 ms hop
+        public static final int NUM_MEL_BINS = 40;
+        public static final int NUM_MFCC = 0;              // 0 = feed log-mel energies
+        public static final float MEL_MIN_FREQUENCY = 20f;
+        public static final float MEL_MAX_FREQUENCY = 7600f;
+        public static final int WINDOW_FRAMES = 98;        // ~1 s of context per inference
+        public static final int INFERENCE_STRIDE = 25;     // infer every 250 ms
+        public static final int RING_BUFFER_SAMPLES = 32768;
+    }
+    
+    // Gallery replication between devices
+    public static class Replication {
+        public static final int HUB_PORT = 8477;
+        public static final int BATCH_CHANGES = 500;               // ~400 KB of packed 192-d vectors per request
+        public static final long SYNC_INTERVAL_MS = 30000;
+        public static final int TIMEOUT_MS = 10000;
+        public static final int HUB_WORKER_THREADS = 2;
+    }
+    
+    // Soak runs (long replayed sessions watching memory and resource lifecycles)
+    public static class Diagnostics {
+        public static final long SOAK_FRAME_INTERVAL_MS = 66;          // 15 fps, like the camera
+        public static final long SOAK_SAMPLE_INTERVAL_MS = 10000;
+        public static final float SOAK_WARMUP_FRACTION = 0.1f;         // samples ignored while caches fill
+        public static final long LEAK_AGE_MS = 60000;                  // outstanding longer than this is suspect
+        public static final long MAX_GROWTH_BYTES_PER_HOUR = 8L * 1024 * 1024;
+    }
+    
+    // Metrics and control endpoint of headless kiosks
+    public static class Control {
+        public static final String HOST = "127.0.0.1";                 // loopback until an operator opens it
+        public static final int PORT = 8478;
+        public static final int WORKER_THREADS = 2;
+        public static final long METRICS_WINDOW_MS = 30000;            // percentiles cover the last 30-60 s
+        public static final int CLIP_MAX_FRAMES = 150;                  // ~10 s at 15 fps
+        public static final long CLIP_MAX_BYTES = 8L * 1024 * 1024;
+        public static final String CLIP_DIRECTORY = "replay_clips";
+    }
+    
+    // Headless batch recognition of uploaded snapshots
+    public static class BatchServer {
+        public static final int PORT = 8479;
+        public static final int MAX_BATCH = 16;                         // when the device was never autotuned
+        public static final long MAX_DELAY_MS = 10;                     // longest a crop waits for company
+        public static final int MAX_REQUEST_ITEMS = 64;
+        public static final int TIMEOUT_MS = 10000;
     }
     
     // Future: Other model configurations can be added here
@@ -1,8 +1,11 @@
 package com.atharvakale.facerecognition.ml;
 
 import android.graphics.Bitmap;
+import com.atharvakale.facerecognition.diagnostics.ResourceTracker;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Utility class for TensorFlow Lite preprocessing and postprocessing
@@ -10,6 +13,18 @@ import java.nio.ByteOrder;
  */
 public class TFLiteProcessor {
     
+    /**
+     * Input buffers reused per thread and input size, so converting a frame does not allocate
+     * native memory (each buffer is only valid until the same thread converts the next bitmap)
+     */
+    private static final ThreadLocal<Map<Integer, ByteBuffer>> inputBuffers = new ThreadLocal<Map<Integer, ByteBuffer>>() {
+        @Override
+        protected Map<Integer, ByteBuffer> initialValue() {
+            return new HashMap<>();
+        }
+    };
+    private static final ThreadLocal<int[]> pixelBuffers = new ThreadLocal<>();
+    
     /**
      * Convert bitmap to ByteBuffer for TensorFlow Lite input
      * @param bitmap Input bitmap
@@ -17,14 +32,27 @@ public class TFLiteProcessor {
      * @param isQuantized Whether the model is quantized
      * @param imageMean Mean value for normalization
      * @param imageStd Standard deviation for normalization
-     * @return ByteBuffer ready for model input
+     * @return ByteBuffer ready for model input, reused by the next call on this thread
      */
     public static ByteBuffer bitmapToByteBuffer(Bitmap bitmap, int inputSize, 
                                               boolean isQuantized, float imageMean, float imageStd) {
-        ByteBuffer imgData = ByteBuffer.allocateDirect(1 * inputSize * inputSize * 3 * 4);
-        imgData.order(ByteOrder.nativeOrder());
+        Map<Integer, ByteBuffer> buffers = inputBuffers.get();
+        ByteBuffer imgData = buffers.get(inputSize);
+        if (imgData == null) {
+            imgData = ByteBuffer.allocateDirect(1 * inputSize * inputSize * 3 * 4);
+            imgData.order(ByteOrder.nativeOrder());
+            // Lives as long as the thread; not expected to be released
+            ResourceTracker.handOff(ResourceTracker.track(ResourceTracker.Kind.DIRECT_BUFFER, imgData,
+                imgData.capacity(), "tflite-input"));
+            buffers.put(inputSize, imgData);
+        }
+        imgData.clear();
         
-        int[] intValues = new int[inputSize * inputSize];
+        int[] intValues = pixelBuffers.get();
+        if (intValues == null || intValues.length != inputSize * inputSize) {
+            intValues = new int[inputSize * inputSize];
+            pixelBuffers.set(intValues);
+        }
         bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
         
         imgData.rewind();
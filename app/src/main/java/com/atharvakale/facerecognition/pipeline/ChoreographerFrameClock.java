@@ -0,0 +1,22 @@
+package com.atharvakale.facerecognition.pipeline;
+
+import android.view.Choreographer;
+
+/**
+ * Frame clock of the UI thread: callbacks run at the next vsync, before the frame is drawn
+ */
+public class ChoreographerFrameClock implements ResultStream.FrameClock {
+    private final Choreographer choreographer;
+
+    /**
+     * Must be created on the UI thread
+     */
+    public ChoreographerFrameClock() {
+        this.choreographer = Choreographer.getInstance();
+    }
+
+    @Override
+    public void postFrame(Runnable callback) {
+        choreographer.postFrameCallback(frameTimeNanos -> callback.run());
+    }
+}
@@ -0,0 +1,13 @@
+package com.atharvakale.facerecognition.pipeline;
+
+/**
+ * What a stream does with a new frame when its queue is full
+ */
+public enum DropPolicy {
+    /** Discard the oldest queued frame (live cameras: always analyze the freshest frame) */
+    DROP_OLDEST,
+    /** Discard the incoming frame (keeps already queued frames, e.g. for short bursts) */
+    DROP_NEWEST,
+    /** Make the producer wait for space (replayed clips, where every frame must be analyzed) */
+    BLOCK
+}
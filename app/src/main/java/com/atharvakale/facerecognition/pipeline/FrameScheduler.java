@@ -0,0 +1,337 @@
+package com.atharvakale.facerecognition.pipeline;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shares a fixed pool of worker threads between several frame streams
+ * Streams are served by weighted round robin: each stream gets up to its weight in frames per round,
+ * so a busy stream (e.g. a replayed clip) cannot starve the others. Every stream has its own bounded
+ * queue and drop policy, and a limit on frames in flight (1 keeps frames of a stream in order, which
+ * face tracking relies on).
+ */
+public class FrameScheduler<T> {
+    private final FrameHandler<T> handler;
+    private final Thread[] workers;
+    private final Object lock = new Object();
+    private final List<Stream<T>> streams = new ArrayList<>();
+    private int cursor;
+    private boolean started;
+    private boolean shutdown;
+
+    public interface FrameHandler<T> {
+        /**
+         * Process one frame on a worker thread
+         */
+        void process(int streamId, T frame);
+
+        /**
+         * Release a frame that will not be processed (dropped or left over at shutdown)
+         */
+        void discard(int streamId, T frame);
+    }
+
+    /**
+     * Snapshot of one stream's counters
+     */
+    public static class StreamStats {
+        public final long submitted;
+        public final long processed;
+        public final long dropped;
+        public final int queued;
+        public final float averageProcessMs;
+
+        StreamStats(long submitted, long processed, long dropped, int queued, float averageProcessMs) {
+            this.submitted = submitted;
+            this.processed = processed;
+            this.dropped = dropped;
+            this.queued = queued;
+            this.averageProcessMs = averageProcessMs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("submitted=%d processed=%d dropped=%d queued=%d avgMs=%.1f",
+                submitted, processed, dropped, queued, averageProcessMs);
+        }
+    }
+
+    private static class Stream<T> {
+        final int id;
+        final int weight;
+        final int capacity;
+        final int maxInFlight;
+        final DropPolicy policy;
+        final ArrayDeque<T> queue = new ArrayDeque<>();
+        int credit;
+        int inFlight;
+        long submitted;
+        long processed;
+        long dropped;
+        long busyNanos;
+        boolean removed;
+
+        Stream(int id, int weight, int capacity, int maxInFlight, DropPolicy policy) {
+            this.id = id;
+            this.weight = weight;
+            this.capacity = capacity;
+            this.maxInFlight = maxInFlight;
+            this.policy = policy;
+            this.credit = weight;
+        }
+
+        boolean isReady() {
+            return !queue.isEmpty() && inFlight < maxInFlight;
+        }
+    }
+
+    /**
+     * @param workerCount Threads processing frames (typically the number of cores)
+     */
+    public FrameScheduler(int workerCount, FrameHandler<T> handler) {
+        this.handler = handler;
+        this.workers = new Thread[Math.max(1, workerCount)];
+    }
+
+    /**
+     * Start the worker threads
+     */
+    public void start() {
+        synchronized (lock) {
+            if (started || shutdown) {
+                return;
+            }
+            started = true;
+        }
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(this::runWorker, "frame-worker-" + i);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Add a stream
+     * @param weight Frames served per scheduling round relative to other streams
+     * @param queueCapacity Frames that may wait before the drop policy applies
+     * @param maxInFlight Frames of this stream processed at the same time
+     */
+    public void addStream(int streamId, int weight, int queueCapacity, int maxInFlight, DropPolicy policy) {
+        if (weight < 1 || queueCapacity < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("Stream weight, capacity and in-flight limit must be positive");
+        }
+        synchronized (lock) {
+            if (find(streamId) != null) {
+                throw new IllegalArgumentException("Stream already exists: " + streamId);
+            }
+            streams.add(new Stream<>(streamId, weight, queueCapacity, maxInFlight, policy));
+        }
+    }
+
+    /**
+     * Remove a stream, discarding its queued frames; frames being processed finish normally
+     */
+    public void removeStream(int streamId) {
+        List<T> leftovers = new ArrayList<>();
+        synchronized (lock) {
+            Stream<T> stream = find(streamId);
+            if (stream == null) {
+                return;
+            }
+            streams.remove(stream);
+            stream.removed = true;
+            leftovers.addAll(stream.queue);
+            stream.queue.clear();
+            cursor = 0;
+            lock.notifyAll();
+        }
+        for (T frame : leftovers) {
+            handler.discard(streamId, frame);
+        }
+    }
+
+    /**
+     * Queue a frame for processing (frames may be queued before start)
+     * Never blocks unless the stream's policy is BLOCK
+     * @return true if the frame was queued, false if it was discarded
+     */
+    public boolean submit(int streamId, T frame) {
+        T discarded = null;
+        boolean accepted = true;
+        synchronized (lock) {
+            Stream<T> stream = find(streamId);
+            if (stream == null || shutdown) {
+                discarded = frame;
+                accepted = false;
+            } else {
+                stream.submitted++;
+                if (stream.queue.size() >= stream.capacity) {
+                    switch (stream.policy) {
+                        case DROP_OLDEST:
+                            discarded = stream.queue.poll();
+                            stream.dropped++;
+                            break;
+                        case DROP_NEWEST:
+                            discarded = frame;
+                            accepted = false;
+                            stream.dropped++;
+                            break;
+                        case BLOCK:
+                            try {
+                                while (!shutdown && !stream.removed && stream.queue.size() >= stream.capacity) {
+                                    lock.wait();
+                                }
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            if (shutdown || stream.removed || stream.queue.size() >= stream.capacity) {
+                                discarded = frame;
+                                accepted = false;
+                                stream.dropped++;
+                            }
+                            break;
+                    }
+                }
+                if (accepted) {
+                    stream.queue.add(frame);
+                    lock.notifyAll();
+                }
+            }
+        }
+        if (discarded != null) {
+            handler.discard(streamId, discarded);
+        }
+        return accepted;
+    }
+
+    /**
+     * Get counters for a stream
+     * @return Stats or null if the stream does not exist
+     */
+    public StreamStats getStats(int streamId) {
+        synchronized (lock) {
+            Stream<T> stream = find(streamId);
+            if (stream == null) {
+                return null;
+            }
+            float averageMs = stream.processed == 0 ? 0f : stream.busyNanos / 1e6f / stream.processed;
+            return new StreamStats(stream.submitted, stream.processed, stream.dropped, stream.queue.size(), averageMs);
+        }
+    }
+
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    /**
+     * Stop the workers after their current frame and discard everything still queued
+     */
+    public void shutdown() {
+        List<Stream<T>> remaining;
+        synchronized (lock) {
+            shutdown = true;
+            lock.notifyAll();
+            remaining = new ArrayList<>(streams);
+        }
+        for (Thread worker : workers) {
+            if (worker != null) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        for (Stream<T> stream : remaining) {
+            List<T> leftovers;
+            synchronized (lock) {
+                leftovers = new ArrayList<>(stream.queue);
+                stream.queue.clear();
+            }
+            for (T frame : leftovers) {
+                handler.discard(stream.id, frame);
+            }
+        }
+    }
+
+    private void runWorker() {
+        while (true) {
+            Stream<T> stream;
+            T frame;
+            synchronized (lock) {
+                stream = nextLocked();
+                while (!shutdown && stream == null) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    stream = nextLocked();
+                }
+                if (shutdown) {
+                    return;
+                }
+                frame = stream.queue.poll();
+                stream.inFlight++;
+                // Room in the queue for blocked producers
+                lock.notifyAll();
+            }
+
+            long start = System.nanoTime();
+            try {
+                handler.process(stream.id, frame);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+
+            synchronized (lock) {
+                stream.inFlight--;
+                stream.processed++;
+                stream.busyNanos += System.nanoTime() - start;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Pick the next stream to serve (weighted round robin over ready streams)
+     * @return Stream with a frame to process, or null if none is ready
+     */
+    private Stream<T> nextLocked() {
+        int count = streams.size();
+        for (int round = 0; round < 2; round++) {
+            boolean anyReady = false;
+            for (int i = 0; i < count; i++) {
+                int index = (cursor + i) % count;
+                Stream<T> stream = streams.get(index);
+                if (!stream.isReady()) {
+                    continue;
+                }
+                anyReady = true;
+                if (stream.credit > 0) {
+                    stream.credit--;
+                    // Stay on this stream until its share for the round is used up
+                    cursor = stream.credit > 0 ? index : (index + 1) % count;
+                    return stream;
+                }
+            }
+            if (!anyReady) {
+                return null;
+            }
+            // Every ready stream used its share: start a new round
+            for (Stream<T> stream : streams) {
+                stream.credit = stream.weight;
+            }
+        }
+        return null;
+    }
+
+    private Stream<T> find(int streamId) {
+        for (Stream<T> stream : streams) {
+            if (stream.id == streamId) {
+                return stream;
+            }
+        }
+        return null;
+    }
+}
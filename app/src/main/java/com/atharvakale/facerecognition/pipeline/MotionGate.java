@@ -0,0 +1,245 @@
+package com.atharvakale.facerecognition.pipeline;
+
+import androidx.camera.core.ImageProxy;
+import java.nio.ByteBuffer;
+
+/**
+ * Skips frames of an empty, static scene before any conversion or detection work
+ * The luma plane is averaged into a small grid and compared with a slowly adapting background;
+ * frames pass when enough cells changed or a face was seen recently. After a stretch without motion
+ * the gate only looks at one frame per idle interval, so an empty corridor costs almost nothing.
+ */
+public class MotionGate {
+    private static final int SAMPLES_PER_CELL_SIDE = 4;
+    private static final long NEVER = Long.MIN_VALUE;
+
+    private final int gridWidth;
+    private final int gridHeight;
+    private final float[] background;
+    private final float[] cells;
+    private float pixelThreshold;
+    private float minChangedFraction;
+    private float backgroundRate;
+    private long trackHoldMs;
+    private long idleTimeoutMs;
+    private long idleIntervalMs;
+    private boolean enabled = true;
+
+    private boolean hasBackground;
+    private long lastActivityMs = NEVER;
+    private long lastCheckMs = NEVER;
+    private long lastFaceMs = NEVER;
+
+    private long framesSeen;
+    private long framesGated;
+    private long motionFrames;
+    private long idleFrames;
+    private long gateNanos;
+    private float averageProcessMs;
+
+    /**
+     * @param pixelThreshold Luma change of a cell (0-255) that counts as motion
+     * @param minChangedFraction Fraction of changed cells that makes a frame pass
+     * @param backgroundRate Weight of a new frame in the running background (0-1)
+     * @param trackHoldMs Frames keep passing for this long after the last detected face
+     * @param idleTimeoutMs Time without motion or faces after which the gate goes idle
+     * @param idleIntervalMs Minimum time between checked frames while idle
+     */
+    public MotionGate(int gridWidth, int gridHeight, float pixelThreshold, float minChangedFraction,
+                      float backgroundRate, long trackHoldMs, long idleTimeoutMs, long idleIntervalMs) {
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        this.background = new float[gridWidth * gridHeight];
+        this.cells = new float[gridWidth * gridHeight];
+        setThresholds(pixelThreshold, minChangedFraction, backgroundRate);
+        setTiming(trackHoldMs, idleTimeoutMs, idleIntervalMs);
+    }
+
+    /**
+     * Decide whether a camera frame needs detection; does not close the frame
+     */
+    public boolean shouldProcess(ImageProxy imageProxy, long nowMs) {
+        ImageProxy.PlaneProxy luma = imageProxy.getPlanes()[0];
+        return shouldProcess(luma.getBuffer(), imageProxy.getWidth(), imageProxy.getHeight(),
+            luma.getRowStride(), luma.getPixelStride(), nowMs);
+    }
+
+    /**
+     * Decide whether a frame needs detection
+     * @param luma Y plane
+     * @param nowMs Monotonic time of the frame
+     * @return true if the frame should go through detection
+     */
+    public synchronized boolean shouldProcess(ByteBuffer luma, int width, int height,
+                                              int rowStride, int pixelStride, long nowMs) {
+        framesSeen++;
+        if (!enabled) {
+            return true;
+        }
+        long start = System.nanoTime();
+        try {
+            boolean idle = elapsed(lastActivityMs, nowMs) >= idleTimeoutMs;
+            if (idle && elapsed(lastCheckMs, nowMs) < idleIntervalMs) {
+                idleFrames++;
+                framesGated++;
+                return false;
+            }
+            lastCheckMs = nowMs;
+
+            boolean motion = detectMotion(luma, width, height, rowStride, pixelStride);
+            if (motion) {
+                motionFrames++;
+                lastActivityMs = nowMs;
+                return true;
+            }
+            if (elapsed(lastFaceMs, nowMs) <= trackHoldMs) {
+                return true;
+            }
+            framesGated++;
+            return false;
+        } finally {
+            gateNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Report the outcome of a frame that passed the gate
+     * @param faceFound Whether a face was detected (keeps the gate open while a face is tracked)
+     * @param processMs Time spent on detection and recognition, used to estimate the work saved
+     */
+    public synchronized void onFrameProcessed(boolean faceFound, long processMs, long nowMs) {
+        if (faceFound) {
+            lastFaceMs = nowMs;
+            lastActivityMs = nowMs;
+        }
+        averageProcessMs = averageProcessMs == 0f ? processMs : averageProcessMs * 0.9f + processMs * 0.1f;
+    }
+
+    private boolean detectMotion(ByteBuffer luma, int width, int height, int rowStride, int pixelStride) {
+        downsample(luma, width, height, rowStride, pixelStride);
+        if (!hasBackground) {
+            System.arraycopy(cells, 0, background, 0, cells.length);
+            hasBackground = true;
+            return true;
+        }
+        int changed = 0;
+        for (int i = 0; i < cells.length; i++) {
+            if (Math.abs(cells[i] - background[i]) > pixelThreshold) {
+                changed++;
+            }
+            background[i] += (cells[i] - background[i]) * backgroundRate;
+        }
+        return changed >= Math.max(1, minChangedFraction * cells.length);
+    }
+
+    /**
+     * Average a few samples per grid cell; the cost is independent of the frame resolution
+     */
+    private void downsample(ByteBuffer luma, int width, int height, int rowStride, int pixelStride) {
+        for (int gy = 0; gy < gridHeight; gy++) {
+            int top = gy * height / gridHeight;
+            int bottom = (gy + 1) * height / gridHeight;
+            int stepY = Math.max(1, (bottom - top) / SAMPLES_PER_CELL_SIDE);
+            for (int gx = 0; gx < gridWidth; gx++) {
+                int left = gx * width / gridWidth;
+                int right = (gx + 1) * width / gridWidth;
+                int stepX = Math.max(1, (right - left) / SAMPLES_PER_CELL_SIDE);
+                int sum = 0;
+                int count = 0;
+                for (int y = top + stepY / 2; y < bottom; y += stepY) {
+                    int row = y * rowStride;
+                    for (int x = left + stepX / 2; x < right; x += stepX) {
+                        sum += luma.get(row + x * pixelStride) & 0xFF;
+                        count++;
+                    }
+                }
+                cells[gy * gridWidth + gx] = count == 0 ? 0f : (float) sum / count;
+            }
+        }
+    }
+
+    private static long elapsed(long sinceMs, long nowMs) {
+        return sinceMs == NEVER ? Long.MAX_VALUE : nowMs - sinceMs;
+    }
+
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * True while the gate only checks one frame per idle interval
+     */
+    public synchronized boolean isIdle(long nowMs) {
+        return enabled && elapsed(lastActivityMs, nowMs) >= idleTimeoutMs;
+    }
+
+    public synchronized void setThresholds(float pixelThreshold, float minChangedFraction, float backgroundRate) {
+        this.pixelThreshold = pixelThreshold;
+        this.minChangedFraction = minChangedFraction;
+        this.backgroundRate = backgroundRate;
+    }
+
+    public synchronized void setTiming(long trackHoldMs, long idleTimeoutMs, long idleIntervalMs) {
+        this.trackHoldMs = trackHoldMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.idleIntervalMs = idleIntervalMs;
+    }
+
+    /**
+     * Forget the background (e.g. after the camera was switched)
+     */
+    public synchronized void reset() {
+        hasBackground = false;
+        lastActivityMs = NEVER;
+        lastCheckMs = NEVER;
+        lastFaceMs = NEVER;
+    }
+
+    public synchronized long getFramesSeen() {
+        return framesSeen;
+    }
+
+    /**
+     * Frames that skipped conversion and detection
+     */
+    public synchronized long getFramesGated() {
+        return framesGated;
+    }
+
+    public synchronized long getMotionFrames() {
+        return motionFrames;
+    }
+
+    /**
+     * Gated frames that were not even checked for motion because the gate was idle
+     */
+    public synchronized long getIdleFrames() {
+        return idleFrames;
+    }
+
+    /**
+     * Estimated processing time saved: gated frames at the average cost of a processed frame,
+     * minus the time spent in the gate itself
+     */
+    public synchronized float getEstimatedCpuSavedMs() {
+        return framesGated * averageProcessMs - gateNanos / 1e6f;
+    }
+
+    public synchronized void resetCounters() {
+        framesSeen = 0;
+        framesGated = 0;
+        motionFrames = 0;
+        idleFrames = 0;
+        gateNanos = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("seen=%d gated=%d motion=%d idle=%d savedMs=%.0f",
+            framesSeen, framesGated, motionFrames, idleFrames, getEstimatedCpuSavedMs());
+    }
+}
@@ -0,0 +1,166 @@
+package com.atharvakale.facerecognition.pipeline;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Hands results from worker threads to subscribers at most once per display frame
+ * Results are keyed (e.g. per face or per view they update): a newer result replaces one under the
+ * same key that was not delivered yet, so however fast the producer runs, each frame delivers one
+ * result per key. Publishing never blocks and never queues more than one frame callback; with no
+ * subscriber, or past maxKeys pending keys, results are dropped and counted.
+ */
+public class ResultStream<K, V> {
+    private final FrameClock clock;
+    private final int maxKeys;
+    private final List<Subscriber<K, V>> subscribers = new CopyOnWriteArrayList<>();
+    private final Object lock = new Object();
+    private final Runnable deliverFrame = this::deliverFrame;
+    private LinkedHashMap<K, V> pending = new LinkedHashMap<>();
+    private LinkedHashMap<K, V> delivering = new LinkedHashMap<>();
+    private boolean frameRequested;
+    private long published;
+    private long delivered;
+    private long conflated;
+    private long dropped;
+    private long frames;
+
+    /**
+     * Runs a callback on the delivery thread at its next frame (Choreographer on the UI thread)
+     */
+    public interface FrameClock {
+        /**
+         * Called from any thread
+         */
+        void postFrame(Runnable callback);
+    }
+
+    public interface Subscriber<K, V> {
+        /**
+         * Latest result of every key updated since the last frame, oldest update first
+         * Called on the delivery thread; the map is only valid during the call
+         */
+        void onResults(Map<K, V> latest);
+    }
+
+    /**
+     * Snapshot of the stream's counters
+     */
+    public static class Stats {
+        public final long published;
+        public final long delivered;
+        public final long conflated;    // replaced by a newer result before delivery
+        public final long dropped;      // no subscriber, or too many pending keys
+        public final long frames;
+        public final int pending;
+
+        Stats(long published, long delivered, long conflated, long dropped, long frames, int pending) {
+            this.published = published;
+            this.delivered = delivered;
+            this.conflated = conflated;
+            this.dropped = dropped;
+            this.frames = frames;
+            this.pending = pending;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("published=%d delivered=%d conflated=%d dropped=%d frames=%d pending=%d",
+                published, delivered, conflated, dropped, frames, pending);
+        }
+    }
+
+    /**
+     * @param maxKeys Pending keys kept between frames; the oldest is dropped beyond it
+     */
+    public ResultStream(FrameClock clock, int maxKeys) {
+        this.clock = clock;
+        this.maxKeys = Math.max(1, maxKeys);
+    }
+
+    public void subscribe(Subscriber<K, V> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    /**
+     * Stop delivering to a subscriber; results already pending are dropped once none is left
+     */
+    public void unsubscribe(Subscriber<K, V> subscriber) {
+        subscribers.remove(subscriber);
+        if (subscribers.isEmpty()) {
+            synchronized (lock) {
+                dropped += pending.size();
+                pending.clear();
+            }
+        }
+    }
+
+    /**
+     * Offer a result from any thread
+     * @return false if it was dropped
+     */
+    public boolean publish(K key, V value) {
+        boolean requestFrame = false;
+        synchronized (lock) {
+            published++;
+            if (subscribers.isEmpty()) {
+                dropped++;
+                return false;
+            }
+            if (pending.remove(key) != null) {
+                conflated++;
+            } else if (pending.size() >= maxKeys) {
+                Iterator<K> oldest = pending.keySet().iterator();
+                oldest.next();
+                oldest.remove();
+                dropped++;
+            }
+            // Re-inserted so keys are delivered in order of their latest update
+            pending.put(key, value);
+            if (!frameRequested) {
+                frameRequested = true;
+                requestFrame = true;
+            }
+        }
+        if (requestFrame) {
+            clock.postFrame(deliverFrame);
+        }
+        return true;
+    }
+
+    /**
+     * Deliver what is pending (runs on the delivery thread)
+     */
+    private void deliverFrame() {
+        LinkedHashMap<K, V> batch;
+        synchronized (lock) {
+            frameRequested = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = delivering;
+            delivering = batch;
+            delivered += batch.size();
+            frames++;
+        }
+        try {
+            Map<K, V> latest = Collections.unmodifiableMap(batch);
+            for (Subscriber<K, V> subscriber : subscribers) {
+                subscriber.onResults(latest);
+            }
+        } finally {
+            batch.clear();
+        }
+    }
+
+    public Stats getStats() {
+        synchronized (lock) {
+            return new Stats(published, delivered, conflated, dropped, frames, pending.size());
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package com.atharvakale.facerecognition.startup;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import com.atharvakale.facerecognition.data.PreferencesRepository;
+import com.atharvakale.facerecognition.data.journal.RecognitionJournal;
+import com.atharvakale.facerecognition.data.thumbnails.ThumbnailStore;
+import com.atharvakale.facerecognition.features.face.FaceProcessor;
+import com.atharvakale.facerecognition.features.face.FaceRecognitionManager;
+import com.atharvakale.facerecognition.features.face.detection.FaceDetector;
+import com.atharvakale.facerecognition.ml.MLModelManager;
+import com.atharvakale.facerecognition.ml.ModelConfig;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Prepares the face recognition components in parallel on background threads at process start
+ * Model loading + warm-up and detector warm-up overlap with the splash screen, and each phase
+ * reports its own duration. The manager is handed over asynchronously once they finish, and the
+ * gallery is not waited for: the manager streams it in after handover (see ProgressiveGalleryLoader)
+ */
+public class StartupOrchestrator {
+    private static final int WARMUP_FRAME_WIDTH = 480;
+    private static final int WARMUP_FRAME_HEIGHT = 640;
+    
+    private final Phases phases;
+    private final Executor mainThread;
+    private final Map<String, Long> phaseTimings = Collections.synchronizedMap(new LinkedHashMap<>());
+    private ExecutorService executor;
+    private Future<MLModelManager> modelFuture;
+    private Future<FaceDetector> detectorFuture;
+    private Future<PreferencesRepository> repositoryFuture;
+    private Future<RecognitionJournal> journalFuture;
+    private Future<ThumbnailStore> thumbnailFuture;
+    private long startTime;
+    private ManagerCallback pendingCallback;
+    
+    /**
+     * Work done by each preload phase
+     */
+    interface Phases {
+        MLModelManager loadModel() throws Exception;
+        void warmUpModel(MLModelManager modelManager) throws Exception;
+        FaceDetector createDetector() throws Exception;
+        void warmUpDetector(FaceDetector detector) throws Exception;
+        PreferencesRepository openRepository() throws Exception;
+        RecognitionJournal openJournal() throws Exception;
+        ThumbnailStore openThumbnails() throws Exception;
+        FaceRecognitionManager assemble(MLModelManager modelManager, FaceDetector detector,
+                                        PreferencesRepository repository, RecognitionJournal journal,
+                                        ThumbnailStore thumbnails) throws Exception;
+        FaceRecognitionManager createFallback() throws Exception;
+    }
+    
+    public StartupOrchestrator(Context context) {
+        this(new DevicePhases(context.getApplicationContext()), new Handler(Looper.getMainLooper())::post);
+    }
+    
+    /**
+     * @param mainThread Runs the hand-over to the caller
+     */
+    StartupOrchestrator(Phases phases, Executor mainThread) {
+        this.phases = phases;
+        this.mainThread = mainThread;
+    }
+    
+    /**
+     * Start all preload phases; safe to call once per process
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        startTime = now();
+        executor = Executors.newFixedThreadPool(3, runnable -> {
+            Thread thread = new Thread(runnable, "startup-preload");
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+        
+        modelFuture = executor.submit(() -> {
+            MLModelManager modelManager = timed("model_load", phases::loadModel);
+            try {
+                timed("model_warmup", () -> {
+                    phases.warmUpModel(modelManager);
+                    return null;
+                });
+            } catch (Exception e) {
+                modelManager.cleanup();
+                throw e;
+            }
+            return modelManager;
+        });
+        
+        detectorFuture = executor.submit(() -> {
+            FaceDetector detector = timed("detector_create", phases::createDetector);
+            try {
+                timed("detector_warmup", () -> {
+                    phases.warmUpDetector(detector);
+                    return null;
+                });
+            } catch (Exception e) {
+                detector.close();
+                throw e;
+            }
+            return detector;
+        });
+        
+        repositoryFuture = executor.submit(() -> timed("repository_open", phases::openRepository));
+        journalFuture = executor.submit(() -> timed("journal_open", phases::openJournal));
+        thumbnailFuture = executor.submit(() -> timed("thumbnails_open", phases::openThumbnails));
+    }
+    
+    /**
+     * Receives the face recognition manager on the main thread
+     */
+    public interface ManagerCallback {
+        void onReady(FaceRecognitionManager manager);
+        void onError(String error);
+    }
+    
+    /**
+     * Hand over the face recognition manager once the preload finishes, without blocking the caller
+     * The manager is assembled on a background thread and delivered on the main thread. If preloading
+     * failed, was never started or was already handed over, a manager is constructed from scratch on
+     * a background thread instead. A caller that goes away first must call cancel, so the late
+     * manager is closed rather than leaked
+     */
+    public synchronized void requestFaceRecognitionManager(ManagerCallback callback) {
+        pendingCallback = callback;
+        if (executor == null || modelFuture == null) {
+            new Thread(() -> deliver(createFallback()), "startup-fallback").start();
+            return;
+        }
+        Future<MLModelManager> model = modelFuture;
+        Future<FaceDetector> detector = detectorFuture;
+        Future<PreferencesRepository> repository = repositoryFuture;
+        Future<RecognitionJournal> journal = journalFuture;
+        Future<ThumbnailStore> thumbnails = thumbnailFuture;
+        modelFuture = null;
+        detectorFuture = null;
+        repositoryFuture = null;
+        journalFuture = null;
+        thumbnailFuture = null;
+        // Queued behind the preload phases, so the threads they need are never taken by the wait
+        executor.execute(() -> deliver(assemble(model, detector, repository, journal, thumbnails)));
+        executor.shutdown();
+    }
+    
+    /**
+     * Stop waiting for the manager; one that arrives later is cleaned up instead of delivered
+     */
+    public synchronized void cancel(ManagerCallback callback) {
+        if (pendingCallback == callback) {
+            pendingCallback = null;
+        }
+    }
+    
+    /**
+     * Wait for every preload phase and build the manager from them
+     * Components of a failed preload are closed, and the manager is constructed from scratch
+     */
+    private FaceRecognitionManager assemble(Future<MLModelManager> modelFuture, Future<FaceDetector> detectorFuture,
+                                            Future<PreferencesRepository> repositoryFuture,
+                                            Future<RecognitionJournal> journalFuture,
+                                            Future<ThumbnailStore> thumbnailFuture) {
+        MLModelManager modelManager = result(modelFuture);
+        FaceDetector detector = result(detectorFuture);
+        PreferencesRepository repository = result(repositoryFuture);
+        RecognitionJournal journal = result(journalFuture);
+        ThumbnailStore thumbnails = result(thumbnailFuture);
+        if (modelManager != null && detector != null && repository != null) {
+            try {
+                FaceRecognitionManager manager = phases.assemble(modelManager, detector, repository, journal,
+                    thumbnails);
+                if (manager != null) {
+                    recordPhase("total_until_ready", now() - startTime);
+                    return manager;
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        if (modelManager != null) {
+            modelManager.cleanup();
+        }
+        if (detector != null) {
+            detector.close();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+        if (thumbnails != null) {
+            thumbnails.close();
+        }
+        return createFallback();
+    }
+    
+    private FaceRecognitionManager createFallback() {
+        try {
+            return phases.createFallback();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+    
+    /**
+     * Post the manager to the main thread, or clean it up if the caller has gone away
+     */
+    private void deliver(FaceRecognitionManager manager) {
+        mainThread.execute(() -> {
+            ManagerCallback callback;
+            synchronized (this) {
+                callback = pendingCallback;
+                pendingCallback = null;
+            }
+            if (callback == null) {
+                if (manager != null) {
+                    new Thread(manager::cleanup, "startup-discard").start();
+                }
+            } else if (manager != null) {
+                callback.onReady(manager);
+            } else {
+                callback.onError("Face recognition could not be initialized");
+            }
+        });
+    }
+    
+    private static <T> T result(Future<T> future) {
+        try {
+            return future.get();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+    
+    /**
+     * Get duration of each completed startup phase in milliseconds, in completion order
+     */
+    public Map<String, Long> getPhaseTimings() {
+        synchronized (phaseTimings) {
+            return new LinkedHashMap<>(phaseTimings);
+        }
+    }
+    
+    private <T> T timed(String phase, Callable<T> work) throws Exception {
+        long start = now();
+        try {
+            return work.call();
+        } finally {
+            recordPhase(phase, now() - start);
+        }
+    }
+    
+    private void recordPhase(String phase, long durationMs) {
+        phaseTimings.put(phase, durationMs);
+    }
+    
+    private static long now() {
+        return System.nanoTime() / 1_000_000L;
+    }
+    
+    /**
+     * Phases building the real components from the application context
+     */
+    private static class DevicePhases implements Phases {
+        private final Context context;
+        
+        DevicePhases(Context context) {
+            this.context = context;
+        }
+        
+        @Override
+        public MLModelManager loadModel() {
+            return FaceRecognitionManager.createModelManager(context);
+        }
+        
+        @Override
+        public void warmUpModel(MLModelManager modelManager) {
+            modelManager.warmUp(ModelConfig.FaceRecognition.MODEL_KEY, ModelConfig.FaceRecognition.WARMUP_RUNS);
+        }
+        
+        @Override
+        public FaceDetector createDetector() {
+            return FaceProcessor.createDefaultDetector();
+        }
+        
+        /**
+         * Run one frame through the detector so its native pipeline is initialized before the camera starts
+         */
+        @Override
+        public void warmUpDetector(FaceDetector detector) throws Exception {
+            Bitmap blank = Bitmap.createBitmap(WARMUP_FRAME_WIDTH, WARMUP_FRAME_HEIGHT, Bitmap.Config.ARGB_8888);
+            try {
+                detector.detect(null, blank, 0);
+            } finally {
+                blank.recycle();
+            }
+        }
+        
+        @Override
+        public PreferencesRepository openRepository() {
+            return FaceRecognitionManager.createRepository(context);
+        }
+        
+        @Override
+        public RecognitionJournal openJournal() {
+            return FaceRecognitionManager.createRecognitionJournal(context);
+        }
+        
+        @Override
+        public ThumbnailStore openThumbnails() {
+            return FaceRecognitionManager.createThumbnailStore(context);
+        }
+        
+        @Override
+        public FaceRecognitionManager assemble(MLModelManager modelManager, FaceDetector detector,
+                                               PreferencesRepository repository, RecognitionJournal journal,
+                                               ThumbnailStore thumbnails) {
+            FaceRecognitionManager manager = new FaceRecognitionManager(modelManager, detector, repository,
+                FaceRecognitionManager.createStagingRepository(context),
+                FaceRecognitionManager.createCropStore(context), null);
+            manager.setRecognitionJournal(journal);
+            manager.setThumbnailStore(thumbnails);
+            manager.setGalleryTiering(FaceRecognitionManager.createColdGalleryFile(context),
+                ModelConfig.FaceRecognition.GALLERY_HOT_BUDGET_BYTES);
+            return manager;
+        }
+        
+        @Override
+        public FaceRecognitionManager createFallback() {
+            return new FaceRecognitionManager(context);
+        }
+    }
+}
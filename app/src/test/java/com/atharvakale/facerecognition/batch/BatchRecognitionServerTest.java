@@ -0,0 +1,300 @@
+package com.atharvakale.facerecognition.batch;
+
+import com.atharvakale.facerecognition.features.face.FaceGallery;
+import com.atharvakale.facerecognition.features.face.ParallelGalleryMatcher;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Batched embedding and matching behind the recognition endpoint, with a fake engine
+ */
+public class BatchRecognitionServerTest {
+    private static final String TOKEN = "batch-token";
+    private static final String FINGERPRINT = "model-v1";
+    private static final int INPUT_SIZE = 4;
+    private static final int DIMENSION = 4;
+
+    private final FakeEngine engine = new FakeEngine(8);
+    private final FaceGallery gallery = new FaceGallery(new String[]{"alice", "bob", "carol"},
+        new float[]{0, 0, 0, 0, 10, 0, 0, 0, 0, 10, 0, 0}, DIMENSION);
+    private ParallelGalleryMatcher matcher;
+    private BatchRecognitionServer server;
+    private String base;
+
+    /**
+     * Embeds a crop as its first pixel values, taking a little time per call like a model would
+     */
+    private static class FakeEngine implements EmbeddingEngine {
+        final int maxBatch;
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        volatile String fingerprint = FINGERPRINT;     // null once the model is unloaded
+
+        FakeEngine(int maxBatch) {
+            this.maxBatch = maxBatch;
+        }
+
+        @Override
+        public int getInputSize() {
+            return INPUT_SIZE;
+        }
+
+        @Override
+        public int getDimension() {
+            return DIMENSION;
+        }
+
+        @Override
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        @Override
+        public int getMaxBatchSize() {
+            return maxBatch;
+        }
+
+        @Override
+        public float[][] embed(List<byte[]> crops) {
+            assertTrue(crops.size() <= maxBatch);
+            batchSizes.add(crops.size());
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                return null;
+            }
+            float[][] embeddings = new float[crops.size()][DIMENSION];
+            for (int i = 0; i < crops.size(); i++) {
+                for (int d = 0; d < DIMENSION; d++) {
+                    embeddings[i][d] = crops.get(i)[d];
+                }
+            }
+            return embeddings;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        matcher = new ParallelGalleryMatcher(2, 64 * 1024, 0);
+        server = new BatchRecognitionServer(engine, new BatchRecognitionServer.GalleryProvider() {
+            @Override
+            public FaceGallery getGallery() {
+                return gallery;
+            }
+
+            @Override
+            public float getSimilarityThreshold() {
+                return 2f;
+            }
+        }, matcher, 20, 16, 5000, TOKEN);
+        assertTrue(server.start("127.0.0.1", 0, 16));
+        base = "http://127.0.0.1:" + server.getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+        matcher.shutdown();
+    }
+
+    @Test
+    public void crops_areMatchedToNearestAndSecond() throws Exception {
+        List<RecognitionCodec.Result> results = server.recognizeCrops(Arrays.asList(crop(9, 0), crop(0, 0), crop(3, 3)));
+        assertEquals(3, results.size());
+
+        assertEquals("bob", results.get(0).nearest);
+        assertEquals(1f, results.get(0).distance, 1e-6f);
+        assertEquals("alice", results.get(0).second);
+        assertEquals(9f, results.get(0).secondDistance, 1e-6f);
+        assertTrue(results.get(0).isKnown);
+
+        assertEquals("alice", results.get(1).nearest);
+        assertEquals(0f, results.get(1).distance, 0f);
+        assertTrue(results.get(1).isKnown);
+
+        assertEquals("alice", results.get(2).nearest);
+        assertFalse(results.get(2).isKnown);
+    }
+
+    @Test
+    public void concurrentRequests_shareInterpreterCalls() throws Exception {
+        int clients = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        CountDownLatch go = new CountDownLatch(1);
+        try {
+            List<Future<List<RecognitionCodec.Result>>> futures = new ArrayList<>();
+            for (int c = 0; c < clients; c++) {
+                final int x = c % 2 == 0 ? 10 : 0;
+                futures.add(pool.submit((Callable<List<RecognitionCodec.Result>>) () -> {
+                    go.await();
+                    return server.recognizeCrops(Collections.singletonList(crop(x, 0)));
+                }));
+            }
+            go.countDown();
+            for (int c = 0; c < clients; c++) {
+                assertEquals(c % 2 == 0 ? "bob" : "alice", futures.get(c).get().get(0).nearest);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        EmbeddingBatcher batcher = server.getBatcher();
+        assertEquals(clients, batcher.getItemCount());
+        assertTrue("batches of " + engine.batchSizes, batcher.getAverageBatchSize() > 1.5f);
+        assertTrue(batcher.getBatchCount() < clients);
+    }
+
+    @Test
+    public void http_acceptsCropsAndEmbeddings() throws Exception {
+        RecognitionCodec.Request crops = RecognitionCodec.Request.ofCrops(FINGERPRINT, INPUT_SIZE,
+            Arrays.asList(crop(0, 9), crop(10, 1)));
+        List<RecognitionCodec.Result> cropResults = RecognitionCodec.readResults(
+            new ByteArrayInputStream(post(crops, TOKEN).body));
+        assertEquals("carol", cropResults.get(0).nearest);
+        assertEquals("bob", cropResults.get(1).nearest);
+
+        RecognitionCodec.Request embeddings = RecognitionCodec.Request.ofEmbeddings("",
+            new float[][]{{0, 0, 0, 0.5f}});
+        Reply reply = post(embeddings, TOKEN);
+        assertEquals(200, reply.status);
+        List<RecognitionCodec.Result> results = RecognitionCodec.readResults(new ByteArrayInputStream(reply.body));
+        assertEquals("alice", results.get(0).nearest);
+        assertEquals(0.5f, results.get(0).distance, 1e-6f);
+    }
+
+    @Test
+    public void http_refusesIncompatibleRequests() throws Exception {
+        RecognitionCodec.Request valid = RecognitionCodec.Request.ofCrops(FINGERPRINT, INPUT_SIZE,
+            Collections.singletonList(crop(0, 0)));
+        assertEquals(401, post(valid, null).status);
+        assertEquals(401, post(valid, "wrong").status);
+
+        RecognitionCodec.Request otherModel = RecognitionCodec.Request.ofCrops("model-v2", INPUT_SIZE,
+            Collections.singletonList(crop(0, 0)));
+        assertEquals(409, post(otherModel, TOKEN).status);
+
+        RecognitionCodec.Request wrongSize = RecognitionCodec.Request.ofCrops(FINGERPRINT, 8,
+            Collections.singletonList(new byte[8 * 8 * 3]));
+        assertEquals(400, post(wrongSize, TOKEN).status);
+
+        RecognitionCodec.Request wrongDimension = RecognitionCodec.Request.ofEmbeddings(FINGERPRINT,
+            new float[][]{{0, 0, 0}});
+        assertEquals(400, post(wrongDimension, TOKEN).status);
+        assertEquals(0, server.getBatcher().getItemCount());
+    }
+
+    @Test
+    public void metrics_needTheToken() throws Exception {
+        assertEquals(401, get("/metrics", null));
+        assertEquals(401, get("/metrics", "wrong"));
+        assertEquals(200, get("/metrics", TOKEN));
+        assertEquals(200, get("/healthz", null));
+    }
+
+    @Test
+    public void servers_withoutAToken_areRefused() {
+        for (String token : new String[]{null, ""}) {
+            try {
+                new BatchRecognitionServer(engine, null, matcher, 20, 16, 5000, token);
+                fail("Started without a token");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void http_refusesWhileTheModelIsUnloaded() throws Exception {
+        engine.fingerprint = null;
+        RecognitionCodec.Request request = RecognitionCodec.Request.ofEmbeddings("",
+            new float[][]{{0, 0, 0, 0.5f}});
+        // Unchecked embeddings could be matched against a gallery of another model
+        assertEquals(503, post(request, TOKEN).status);
+        assertEquals(0, server.getBatcher().getItemCount());
+    }
+
+    @Test
+    public void loadGenerator_reportsThroughputAndLatency() throws Exception {
+        LoadGenerator generator = new LoadGenerator(base, TOKEN, INPUT_SIZE, DIMENSION, 5000);
+        LoadGenerator.Report report = generator.run(8, 500, 2, false, 1L);
+
+        assertEquals(0, report.errors);
+        assertTrue(report.requests > 0);
+        assertEquals(report.requests * 2, report.items);
+        assertEquals(report.requests, report.latency.getCount());
+        assertTrue(report.latency.percentile(0.99) >= report.latency.percentile(0.5));
+        assertTrue(server.getBatcher().getAverageBatchSize() > 2f);
+    }
+
+    private static byte[] crop(int x, int y) {
+        byte[] crop = new byte[INPUT_SIZE * INPUT_SIZE * 3];
+        crop[0] = (byte) x;
+        crop[1] = (byte) y;
+        return crop;
+    }
+
+    private static class Reply {
+        final int status;
+        final byte[] body;
+
+        Reply(int status, byte[] body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    private int get(String path, String token) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(base + path).openConnection();
+        connection.setConnectTimeout(5000);
+        connection.setReadTimeout(5000);
+        if (token != null) {
+            connection.setRequestProperty("Authorization", "Bearer " + token);
+        }
+        int status = connection.getResponseCode();
+        connection.disconnect();
+        return status;
+    }
+
+    private Reply post(RecognitionCodec.Request request, String token) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(base + "/recognize").openConnection();
+        connection.setRequestMethod("POST");
+        connection.setConnectTimeout(5000);
+        connection.setReadTimeout(5000);
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", RecognitionCodec.CONTENT_TYPE);
+        if (token != null) {
+            connection.setRequestProperty("Authorization", "Bearer " + token);
+        }
+        try (OutputStream out = connection.getOutputStream()) {
+            RecognitionCodec.writeRequest(request, out);
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if (in != null) {
+            byte[] buffer = new byte[4096];
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                body.write(buffer, 0, n);
+            }
+            in.close();
+        }
+        connection.disconnect();
+        return new Reply(status, body.toByteArray());
+    }
+}
@@ -0,0 +1,253 @@
+package com.atharvakale.facerecognition.control;
+
+import com.atharvakale.facerecognition.diagnostics.MetricsWriter;
+import com.atharvakale.facerecognition.diagnostics.PipelineMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Metrics and control endpoint served on localhost
+ */
+public class KioskControlServerTest {
+    private static final String TOKEN = "0123456789abcdef";
+
+    private final FakeControls controls = new FakeControls();
+    private KioskControlServer server;
+    private String base;
+
+    private static class FakeControls implements KioskControlServer.Controls {
+        final PipelineMetrics metrics = new PipelineMetrics(30000);
+        volatile float threshold = 0.65f;
+        final AtomicInteger reloads = new AtomicInteger();
+        volatile File clip;
+
+        @Override
+        public void collect(MetricsWriter writer) {
+            metrics.collect(writer);
+            writer.gauge("gallery_identities", "Enrolled identities", 1200);
+        }
+
+        @Override
+        public float getSimilarityThreshold() {
+            return threshold;
+        }
+
+        @Override
+        public void setSimilarityThreshold(float threshold) {
+            this.threshold = threshold;
+        }
+
+        @Override
+        public int reload() {
+            reloads.incrementAndGet();
+            return 1200;
+        }
+
+        @Override
+        public File dumpReplayClip() {
+            return clip;
+        }
+    }
+
+    private static class Reply {
+        final int status;
+        final String body;
+        final String contentType;
+
+        Reply(int status, String body, String contentType) {
+            this.status = status;
+            this.body = body;
+            this.contentType = contentType;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        server = new KioskControlServer(controls, TOKEN);
+        assertTrue(server.start("127.0.0.1", 0, 2));
+        base = "http://127.0.0.1:" + server.getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void metrics_needTheTokenAndAreInTextFormat() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            controls.metrics.record(PipelineMetrics.Stage.DETECT, System.nanoTime() - (i + 1) * 100000L);
+            controls.metrics.record(PipelineMetrics.Stage.FRAME, System.nanoTime() - 30000000L);
+        }
+
+        assertEquals(401, request("GET", "/metrics", null, null).status);
+        Reply reply = request("GET", "/metrics", TOKEN, null);
+        assertEquals(200, reply.status);
+        assertTrue(reply.contentType.startsWith("text/plain"));
+        assertTrue(reply.body.contains("# TYPE facerec_pipeline_stage_seconds summary\n"));
+        assertTrue(reply.body.contains("facerec_pipeline_stage_seconds_count{stage=\"detect\"} 100\n"));
+        assertTrue(reply.body.contains("facerec_pipeline_stage_seconds{stage=\"detect\",quantile=\"0.99\"} "));
+        assertTrue(reply.body.contains("facerec_pipeline_frames_total 100\n"));
+        assertTrue(reply.body.contains("facerec_gallery_identities 1200\n"));
+
+        // The 99th percentile of 0.1..10 ms is within a bucket of 9.9 ms
+        double p99 = sampleValue(reply.body, "facerec_pipeline_stage_seconds{stage=\"detect\",quantile=\"0.99\"}");
+        assertEquals(0.0099, p99, 0.0099 / 8);
+
+        assertEquals(200, request("GET", "/healthz", null, null).status);
+    }
+
+    @Test
+    public void controlCalls_needTheToken() throws Exception {
+        assertEquals(401, request("POST", "/control/threshold?value=0.8", null, null).status);
+        assertEquals(401, request("POST", "/control/threshold?value=0.8", "wrong-token", null).status);
+        assertEquals(401, request("POST", "/control/reload", "Basic " + TOKEN, null).status);
+        assertEquals(0.65f, controls.threshold, 0f);
+        assertEquals(0, controls.reloads.get());
+        assertTrue(request("GET", "/metrics", TOKEN, null).body.contains("facerec_control_unauthorized_total 3\n"));
+    }
+
+    @Test
+    public void threshold_isReadAndChanged() throws Exception {
+        Reply changed = request("POST", "/control/threshold?value=0.8", TOKEN, null);
+        assertEquals(200, changed.status);
+        assertEquals("threshold=0.8000 previous=0.6500\n", changed.body);
+        assertEquals(0.8f, controls.threshold, 0f);
+        assertEquals("0.8000\n", request("GET", "/control/threshold", TOKEN, null).body);
+
+        // Form body instead of a query string
+        assertEquals(200, request("POST", "/control/threshold", TOKEN, "value=0.75").status);
+        assertEquals(0.75f, controls.threshold, 0f);
+
+        assertEquals(400, request("POST", "/control/threshold?value=abc", TOKEN, null).status);
+        assertEquals(400, request("POST", "/control/threshold?value=-1", TOKEN, null).status);
+        assertEquals(400, request("POST", "/control/threshold", TOKEN, null).status);
+        assertEquals(0.75f, controls.threshold, 0f);
+    }
+
+    @Test
+    public void reloadAndReplayClip_reachTheControls() throws Exception {
+        Reply reload = request("POST", "/control/reload", TOKEN, null);
+        assertEquals(200, reload.status);
+        assertEquals("identities=1200\n", reload.body);
+        assertEquals(1, controls.reloads.get());
+
+        assertEquals(409, request("POST", "/control/replay-clip", TOKEN, null).status);
+        controls.clip = new File("/data/replay_clips/clip_1");
+        Reply clip = request("POST", "/control/replay-clip", TOKEN, null);
+        assertEquals(200, clip.status);
+        assertEquals(controls.clip.getPath() + "\n", clip.body);
+    }
+
+    @Test
+    public void unknownRoutesAndOversizedBodies_areRefused() throws Exception {
+        assertEquals(404, request("GET", "/nothing", null, null).status);
+        assertEquals(405, request("GET", "/control/reload", TOKEN, null).status);
+
+        // Refused from the headers alone, before the body is read
+        try (Socket client = new Socket("127.0.0.1", server.getPort())) {
+            client.getOutputStream().write(("POST /control/threshold HTTP/1.1\r\nAuthorization: Bearer " + TOKEN
+                + "\r\nContent-Length: 100000\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            String response = new String(readAll(client.getInputStream()), StandardCharsets.UTF_8);
+            assertTrue(response.startsWith("HTTP/1.1 413 "));
+        }
+        assertEquals(200, request("GET", "/healthz", null, null).status);
+    }
+
+    @Test
+    public void slowClient_doesNotBlockOthers() throws Exception {
+        try (Socket slow = new Socket("127.0.0.1", server.getPort())) {
+            // Headers still arriving
+            slow.getOutputStream().write("GET /healthz HTTP/1.1\r\nHost: x".getBytes(StandardCharsets.US_ASCII));
+            slow.getOutputStream().flush();
+            assertEquals(200, request("GET", "/healthz", null, null).status);
+
+            // The slow client still gets its answer once it finishes
+            slow.getOutputStream().write("\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            String response = new String(readAll(slow.getInputStream()), StandardCharsets.UTF_8);
+            assertTrue(response.startsWith("HTTP/1.1 200 OK\r\n"));
+        }
+    }
+
+    @Test
+    public void concurrentScrapes_allSucceed() throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                final boolean control = i % 4 == 0;
+                results.add(clients.submit((Callable<Integer>) () -> control
+                    ? request("POST", "/control/reload", TOKEN, null).status
+                    : request("GET", "/metrics", TOKEN, null).status));
+            }
+            for (Future<Integer> result : results) {
+                assertEquals(200, (int) result.get());
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+        assertEquals(50, controls.reloads.get());
+    }
+
+    private Reply request(String method, String path, String token, String body) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(base + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(5000);
+        connection.setReadTimeout(5000);
+        if (token != null) {
+            connection.setRequestProperty("Authorization", token.startsWith("Basic ") ? token : "Bearer " + token);
+        }
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        String text = in != null ? new String(readAll(in), StandardCharsets.UTF_8) : "";
+        String contentType = connection.getContentType();
+        connection.disconnect();
+        return new Reply(status, text, contentType);
+    }
+
+    private static byte[] readAll(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    private static double sampleValue(String text, String sample) {
+        for (String line : text.split("\n")) {
+            if (line.startsWith(sample + " ")) {
+                return Double.parseDouble(line.substring(sample.length() + 1));
+            }
+        }
+        fail("No sample " + sample);
+        return 0;
+    }
+}
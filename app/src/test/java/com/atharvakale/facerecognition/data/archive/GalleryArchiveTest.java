@@ -0,0 +1,196 @@
+package com.atharvakale.facerecognition.data.archive;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writing and reading gallery archives, and rejecting damaged ones
+ */
+public class GalleryArchiveTest {
+    private static final int DIMENSION = 192;
+    private static final String FINGERPRINT = "abc123";
+
+    @Test
+    public void roundTrip_keepsNamesVectorsAndThumbnails() throws Exception {
+        for (boolean compress : new boolean[]{false, true}) {
+            byte[] archive = write(3000, compress, 1L);
+            GalleryArchiveReader reader = new GalleryArchiveReader(new ByteArrayInputStream(archive));
+            assertEquals(FINGERPRINT, reader.getFingerprint());
+            assertEquals(DIMENSION, reader.getDimension());
+            assertEquals(compress, reader.isCompressed());
+
+            Random random = new Random(1L);
+            int count = 0;
+            for (GalleryArchive.Record record = reader.next(); record != null; record = reader.next()) {
+                assertEquals("person" + count, record.name);
+                assertArrayEquals(vector(random), record.vector, 0f);
+                byte[] thumbnail = thumbnail(random, count);
+                if (thumbnail == null) {
+                    assertNull(record.thumbnail);
+                } else {
+                    assertArrayEquals(thumbnail, record.thumbnail);
+                }
+                count++;
+            }
+            assertEquals(3000, count);
+            assertEquals(3000, reader.getRecordCount());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void emptyArchive_readsNoRecords() throws Exception {
+        byte[] archive = write(0, true, 2L);
+        GalleryArchiveReader reader = new GalleryArchiveReader(new ByteArrayInputStream(archive));
+        assertNull(reader.next());
+        assertEquals(0, reader.getRecordCount());
+    }
+
+    @Test
+    public void damagedChunk_failsTheChecksum() throws Exception {
+        for (boolean compress : new boolean[]{false, true}) {
+            byte[] archive = write(2000, compress, 3L);
+            // Flip a byte well past the header, inside the stored bytes of some chunk
+            archive[archive.length / 2] ^= 0x40;
+            try {
+                readAll(archive);
+                fail("Damaged chunk was accepted");
+            } catch (IOException expected) {
+                // Checksum mismatch, or a stream that no longer inflates
+            }
+        }
+    }
+
+    @Test
+    public void damagedHeader_isRejected() throws Exception {
+        byte[] archive = write(10, false, 4L);
+        archive[10] ^= 0x01;    // inside the fingerprint
+        try {
+            new GalleryArchiveReader(new ByteArrayInputStream(archive));
+            fail("Damaged header was accepted");
+        } catch (IOException expected) {
+        }
+
+        try {
+            new GalleryArchiveReader(new ByteArrayInputStream("not an archive".getBytes("UTF-8")));
+            fail("Foreign stream was accepted");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void truncatedArchive_isRejected() throws Exception {
+        byte[] archive = write(2000, true, 5L);
+        for (int cut : new int[]{archive.length - 1, archive.length - 12, archive.length / 2}) {
+            try {
+                readAll(Arrays.copyOf(archive, cut));
+                fail("Archive truncated to " + cut + " bytes was accepted");
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void recordLengthMismatch_isRejected() throws Exception {
+        for (int delta : new int[]{-4, 4}) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            GalleryArchiveWriter writer = new GalleryArchiveWriter(bytes, FINGERPRINT, DIMENSION, false);
+            writer.write("alice", new float[DIMENSION], null);
+            writer.write("bob", new float[DIMENSION], null);
+            writer.finish();
+            byte[] archive = bytes.toByteArray();
+
+            // Rewrite the first record's length prefix and re-checksum the chunk so only the framing is wrong
+            int header = 4 + 2 + 1 + 2 + FINGERPRINT.length() + 4 + 4;
+            ByteBuffer buffer = ByteBuffer.wrap(archive);
+            int rawLength = buffer.getInt(header + 4);
+            int raw = header + 16;
+            buffer.putInt(raw, buffer.getInt(raw) + delta);
+            CRC32 crc = new CRC32();
+            crc.update(archive, raw, rawLength);
+            buffer.putInt(header + 12, (int) crc.getValue());
+
+            try {
+                readAll(archive);
+                fail("Record length off by " + delta + " was accepted");
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void largeGallery_streamsWithBoundedBuffers() throws Exception {
+        int faces = 100000;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GalleryArchiveWriter writer = new GalleryArchiveWriter(bytes, FINGERPRINT, DIMENSION, false);
+        float[] vector = new float[DIMENSION];
+        Random random = new Random(6L);
+        for (int i = 0; i < faces; i++) {
+            vector[i % DIMENSION] = random.nextFloat();
+            writer.write("person" + i, vector, null);
+        }
+        assertEquals(faces, writer.finish());
+
+        GalleryArchiveReader reader = new GalleryArchiveReader(new ByteArrayInputStream(bytes.toByteArray()));
+        int count = 0;
+        while (reader.next() != null) {
+            count++;
+        }
+
+        assertEquals(faces, count);
+        // One chunk, not the gallery, is held at a time
+        assertTrue(reader.getBufferBytes() < 2 * GalleryArchive.CHUNK_BYTES);
+        // Packed floats: the archive is about the size of the vectors it holds
+        assertTrue(bytes.size() < (long) faces * (DIMENSION * 4 + 32));
+    }
+
+    private static byte[] write(int faces, boolean compress, long seed) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GalleryArchiveWriter writer = new GalleryArchiveWriter(bytes, FINGERPRINT, DIMENSION, compress);
+        Random random = new Random(seed);
+        for (int i = 0; i < faces; i++) {
+            writer.write("person" + i, vector(random), thumbnail(random, i));
+        }
+        assertEquals(faces, writer.finish());
+        writer.close();
+        return bytes.toByteArray();
+    }
+
+    private static int readAll(byte[] archive) throws IOException {
+        GalleryArchiveReader reader = new GalleryArchiveReader(new ByteArrayInputStream(archive));
+        int count = 0;
+        while (reader.next() != null) {
+            count++;
+        }
+        return count;
+    }
+
+    private static float[] vector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int d = 0; d < DIMENSION; d++) {
+            vector[d] = (float) random.nextGaussian() * 0.1f;
+        }
+        return vector;
+    }
+
+    /**
+     * Every third face has no thumbnail
+     */
+    private static byte[] thumbnail(Random random, int index) {
+        if (index % 3 == 0) {
+            return null;
+        }
+        byte[] thumbnail = new byte[200 + random.nextInt(3000)];
+        random.nextBytes(thumbnail);
+        return thumbnail;
+    }
+}
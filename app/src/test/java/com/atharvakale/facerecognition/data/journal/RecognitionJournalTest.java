@@ -0,0 +1,205 @@
+package com.atharvakale.facerecognition.data.journal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Journal writes, rotation, cooldown and time-range queries
+ */
+public class RecognitionJournalTest {
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("journal").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void rangeQuery_matchesBruteForceAcrossRotatedSegments() {
+        RecognitionJournal journal = new RecognitionJournal(directory, 4096, 1000, 100, 0, 10);
+        assertTrue(journal.open());
+        List<RecognitionEvent> written = new ArrayList<>();
+        Random random = new Random(5L);
+        long time = 1_000_000L;
+        for (int i = 0; i < 5000; i++) {
+            time += random.nextInt(20);
+            RecognitionEvent event = new RecognitionEvent(time, "person" + random.nextInt(50),
+                random.nextFloat(), random.nextBoolean(), i, i % 3);
+            while (!journal.record(event)) {
+                journal.flush();
+            }
+            written.add(event);
+        }
+        journal.flush();
+        assertEquals(5, journal.getSegmentCount());
+
+        for (int q = 0; q < 20; q++) {
+            long from = 1_000_000L + random.nextInt(50000);
+            long to = from + random.nextInt(20000);
+            List<RecognitionEvent> result = journal.query(from, to);
+            List<RecognitionEvent> expected = new ArrayList<>();
+            for (RecognitionEvent event : written) {
+                if (event.timestampMs >= from && event.timestampMs <= to) {
+                    expected.add(event);
+                }
+            }
+            assertEquals(expected.size(), result.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).timestampMs, result.get(i).timestampMs);
+                assertEquals(expected.get(i).name, result.get(i).name);
+                assertEquals(expected.get(i).trackId, result.get(i).trackId);
+                assertEquals(expected.get(i).cameraId, result.get(i).cameraId);
+                assertEquals(expected.get(i).isKnown, result.get(i).isKnown);
+                assertEquals(expected.get(i).distance, result.get(i).distance, 0f);
+            }
+        }
+        journal.close();
+    }
+
+    @Test
+    public void cooldown_dedupesRepeatsPerIdentity() {
+        RecognitionJournal journal = new RecognitionJournal(directory, 64, 1000, 4, 1000, 10);
+        assertTrue(journal.open());
+        assertTrue(journal.record(new RecognitionEvent(0, "alice", 0.3f, true, 1, 0)));
+        assertFalse(journal.record(new RecognitionEvent(500, "alice", 0.3f, true, 2, 0)));
+        assertTrue(journal.record(new RecognitionEvent(500, "bob", 0.3f, true, 3, 0)));
+        assertTrue(journal.record(new RecognitionEvent(1500, "alice", 0.3f, true, 1, 0)));
+
+        // Unknown faces are separated by track
+        assertTrue(journal.record(new RecognitionEvent(600, "Unknown", 0.9f, false, 7, 0)));
+        assertTrue(journal.record(new RecognitionEvent(600, "Unknown", 0.9f, false, 8, 0)));
+        assertFalse(journal.record(new RecognitionEvent(700, "Unknown", 0.9f, false, 7, 0)));
+
+        assertEquals(2, journal.getDeduplicatedCount());
+        Set<String> identities = journal.getIdentitiesBetween(0, 1000);
+        assertEquals(2, identities.size());
+        assertTrue(identities.contains("alice"));
+        assertTrue(identities.contains("bob"));
+        journal.close();
+    }
+
+    @Test
+    public void reopen_keepsEventsAndNames() {
+        RecognitionJournal journal = new RecognitionJournal(directory, 256, 100, 10, 0, 10);
+        assertTrue(journal.open());
+        for (int i = 0; i < 250; i++) {
+            journal.record(new RecognitionEvent(i, "name" + (i % 7), 0.1f, true, i, 0));
+            if (i % 100 == 0) {
+                journal.flush();
+            }
+        }
+        journal.close();
+
+        RecognitionJournal reopened = new RecognitionJournal(directory, 256, 100, 10, 0, 10);
+        assertTrue(reopened.open());
+        reopened.record(new RecognitionEvent(250, "name3", 0.1f, true, 250, 0));
+        List<RecognitionEvent> events = reopened.query(0, 1000);
+        assertEquals(251, events.size());
+        assertEquals("name6", events.get(97).name);
+        assertEquals("name3", events.get(250).name);
+        assertEquals(3, reopened.getSegmentCount());
+        reopened.close();
+    }
+
+    @Test
+    public void retention_deletesOldestSegments() {
+        RecognitionJournal journal = new RecognitionJournal(directory, 256, 100, 2, 0, 10);
+        assertTrue(journal.open());
+        for (int i = 0; i < 500; i++) {
+            journal.record(new RecognitionEvent(i, "x", 0.1f, true, i, 0));
+            if (i % 50 == 0) {
+                journal.flush();
+            }
+        }
+        List<RecognitionEvent> events = journal.query(0, 1000);
+        assertEquals(2, journal.getSegmentCount());
+        assertEquals(200, events.size());
+        assertEquals(300, events.get(0).timestampMs);
+        journal.close();
+    }
+
+    @Test
+    public void latestSeen_matchesBruteForceAcrossRotatedSegments() {
+        RecognitionJournal journal = new RecognitionJournal(directory, 4096, 1000, 100, 0, 10);
+        assertTrue(journal.open());
+        List<RecognitionEvent> written = new ArrayList<>();
+        Random random = new Random(9L);
+        long time = 1_000_000L;
+        for (int i = 0; i < 3000; i++) {
+            time += random.nextInt(20);
+            RecognitionEvent event = new RecognitionEvent(time, "person" + random.nextInt(40),
+                random.nextFloat(), random.nextInt(4) != 0, i, 0);
+            while (!journal.record(event)) {
+                journal.flush();
+            }
+            written.add(event);
+        }
+        journal.flush();
+
+        long from = 1_000_000L + 10000;
+        Map<String, Long> expected = new HashMap<>();
+        for (RecognitionEvent event : written) {
+            if (event.isKnown && event.timestampMs >= from) {
+                Long previous = expected.get(event.name);
+                if (previous == null || previous < event.timestampMs) {
+                    expected.put(event.name, event.timestampMs);
+                }
+            }
+        }
+        assertEquals(expected, journal.getLatestSeenSince(from));
+        assertTrue(journal.getLatestSeenSince(time + 1000).isEmpty());
+        journal.close();
+    }
+
+    @Test
+    public void concurrentProducers_sustainThousandsOfEventsPerSecond() throws Exception {
+        RecognitionJournal journal = new RecognitionJournal(directory, 8192, 65536, 8, 0, 5);
+        assertTrue(journal.open());
+        int producers = 4;
+        int perProducer = 20000;
+        CountDownLatch done = new CountDownLatch(producers);
+        long start = System.nanoTime();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    journal.record(new RecognitionEvent(i, "p" + producer, 0.2f, true, i, producer));
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        long recordNanos = System.nanoTime() - start;
+        journal.close();
+
+        long total = (long) producers * perProducer;
+        assertEquals(total, journal.getRecordedCount() + journal.getDroppedCount());
+        assertEquals(journal.getRecordedCount(), journal.getFlushedCount());
+        double eventsPerSecond = total / (recordNanos / 1e9);
+        assertTrue(eventsPerSecond > 5000);
+    }
+}
@@ -0,0 +1,276 @@
+package com.atharvakale.facerecognition.data.sync;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replication through a local stand-in hub: peers converge, conflicts resolve last-writer-wins,
+ * syncs after the first carry only deltas, and the feed survives restarts
+ */
+public class ReplicationTest {
+    private static final int DIMENSION = 192;
+    private static final String FINGERPRINT = "model-a";
+    private static final String TOKEN = "fleet-secret";
+
+    private File root;
+    private ChangeFeed hub;
+    private ReplicationServer server;
+    private String hubUrl;
+    private final List<ChangeFeed> feeds = new ArrayList<>();
+    private final Random random = new Random(3L);
+
+    @Before
+    public void setUp() throws Exception {
+        root = Files.createTempDirectory("replication").toFile();
+        hub = openFeed("hub");
+        server = new ReplicationServer(hub, 500, TOKEN);
+        assertTrue(server.start("127.0.0.1", 0, 2));
+        hubUrl = "http://127.0.0.1:" + server.getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+        for (ChangeFeed feed : feeds) {
+            feed.close();
+        }
+        delete(root);
+    }
+
+    @Test
+    public void peers_convergeThroughHub() {
+        ChangeFeed[] peers = {openFeed("a"), openFeed("b"), openFeed("c")};
+        ReplicationClient[] clients = new ReplicationClient[peers.length];
+        for (int p = 0; p < peers.length; p++) {
+            clients[p] = new ReplicationClient(peers[p], hubUrl, TOKEN, 100, 5000);
+            for (int i = 0; i < 50; i++) {
+                peers[p].recordUpsert("gate" + p + "-person" + i, randomVector());
+            }
+        }
+        peers[1].recordDelete("gate1-person0");
+
+        // Two rounds: the first peer only sees the others' changes on the second
+        for (int round = 0; round < 2; round++) {
+            for (ReplicationClient client : clients) {
+                assertTrue(client.getLastError(), client.sync());
+            }
+        }
+
+        Map<String, float[]> expected = hub.snapshot();
+        assertEquals(149, expected.size());
+        for (ChangeFeed peer : peers) {
+            assertSnapshotEquals(expected, peer.snapshot());
+        }
+        // Nothing a peer pushed came back to it
+        assertEquals(100, clients[2].getPulledChanges());
+    }
+
+    @Test
+    public void concurrentEdits_lastWriterWins() throws Exception {
+        ChangeFeed a = openFeed("a");
+        ChangeFeed b = openFeed("b");
+        ReplicationClient clientA = new ReplicationClient(a, hubUrl, TOKEN, 100, 5000);
+        ReplicationClient clientB = new ReplicationClient(b, hubUrl, TOKEN, 100, 5000);
+        a.recordUpsert("bob", randomVector());
+        assertTrue(clientA.sync());
+        assertTrue(clientB.sync());
+
+        // Both gates re-enroll alice while offline; b's enrollment is later
+        float[] older = randomVector();
+        float[] newer = randomVector();
+        a.recordUpsert("alice", older);
+        Thread.sleep(5);
+        b.recordUpsert("alice", newer);
+        // a deletes bob after having seen b's state
+        a.recordDelete("bob");
+
+        List<List<GalleryChange>> notified = new ArrayList<>();
+        a.addListener(notified::add);
+        assertTrue(clientB.sync());
+        assertTrue(clientA.sync());
+        assertTrue(clientB.sync());
+
+        for (ChangeFeed feed : new ChangeFeed[]{hub, a, b}) {
+            assertArrayEquals(newer, feed.get("alice").vector, 0f);
+            assertTrue(feed.get("bob").isDelete());
+            assertEquals(1, feed.getLiveCount());
+        }
+        // a was told only about the change that won
+        assertEquals(1, notified.size());
+        assertEquals("alice", notified.get(0).get(0).name);
+
+        // A stale replay changes nothing
+        GalleryChange stale = new GalleryChange(GalleryChange.UPSERT, "alice", older, 1L, "zzz");
+        assertTrue(b.apply(Collections.singletonList(stale), "test").isEmpty());
+    }
+
+    @Test
+    public void laterSyncs_sendOnlyDeltas() {
+        ChangeFeed a = openFeed("a");
+        ChangeFeed b = openFeed("b");
+        ReplicationClient clientA = new ReplicationClient(a, hubUrl, TOKEN, 500, 5000);
+        ReplicationClient clientB = new ReplicationClient(b, hubUrl, TOKEN, 500, 5000);
+        for (int i = 0; i < 10000; i++) {
+            a.recordUpsert("person" + i, randomVector());
+        }
+        assertTrue(clientA.sync());
+        assertTrue(clientB.sync());
+        assertEquals(10000, b.getLiveCount());
+        long fullBytes = clientB.getBytesReceived();
+
+        for (int i = 0; i < 10; i++) {
+            a.recordUpsert("person" + i * 7, randomVector());
+        }
+        a.recordDelete("person9999");
+        assertTrue(clientA.sync());
+        long before = clientB.getBytesReceived();
+        assertTrue(clientB.sync());
+        long deltaBytes = clientB.getBytesReceived() - before;
+
+        assertEquals(10011, clientB.getPulledChanges());
+        assertEquals(9999, b.getLiveCount());
+        assertArrayEquals(a.get("person63").vector, b.get("person63").vector, 0f);
+        // 11 changes of ~800 bytes each, not the whole gallery
+        assertTrue(deltaBytes < 11 * 1000);
+        // Packed floats: about 4 bytes per dimension plus name and version
+        assertTrue(fullBytes < 10000L * (DIMENSION * 4 + 100));
+    }
+
+    @Test
+    public void missingOrWrongToken_isRefused() {
+        ChangeFeed a = openFeed("a");
+        a.recordUpsert("mallory", randomVector());
+        hub.recordUpsert("dave", randomVector());
+
+        for (String token : new String[]{null, "guess"}) {
+            ReplicationClient client = new ReplicationClient(a, hubUrl, token, 100, 5000);
+            assertFalse(client.push());
+            assertTrue(client.getLastError(), client.getLastError().contains("401"));
+            assertFalse(client.pull());
+            assertTrue(client.getLastError(), client.getLastError().contains("401"));
+        }
+        assertNull(hub.get("mallory"));
+        assertNull(a.get("dave"));
+        assertEquals(4, server.getUnauthorizedCount());
+    }
+
+    @Test
+    public void oversizedPushes_areRefused() {
+        ChangeFeed a = openFeed("a");
+        for (int i = 0; i < 2000; i++) {
+            a.recordUpsert("person" + i, randomVector());
+        }
+
+        // Within the byte budget but more changes than the hub takes per request
+        ReplicationClient tooMany = new ReplicationClient(a, hubUrl, TOKEN, 600, 5000);
+        assertFalse(tooMany.push());
+        assertTrue(tooMany.getLastError(), tooMany.getLastError().contains("413"));
+        // Over the byte budget: refused before the body is buffered
+        ReplicationClient tooLarge = new ReplicationClient(a, hubUrl, TOKEN, 2000, 5000);
+        assertFalse(tooLarge.push());
+        assertEquals(0, hub.getLiveCount());
+        assertEquals(0, server.getChangesReceived());
+
+        ReplicationClient client = new ReplicationClient(a, hubUrl, TOKEN, 500, 5000);
+        assertTrue(client.getLastError(), client.push());
+        assertEquals(2000, hub.getLiveCount());
+    }
+
+    @Test
+    public void feed_survivesRestartAndTornTail() throws Exception {
+        ChangeFeed feed = openFeed("restart");
+        for (int i = 0; i < 20; i++) {
+            feed.recordUpsert("person" + i, randomVector());
+        }
+        feed.recordDelete("person3");
+        feed.recordUpsert("person4", randomVector());
+        feed.setCheckpoint("pull:hub", 17L);
+        String origin = feed.getOrigin();
+        long sequence = feed.getLatestSequence();
+        Map<String, float[]> snapshot = feed.snapshot();
+        feed.close();
+
+        // A record cut short by a crash
+        File log = new File(new File(root, "restart"), "changes.log");
+        try (FileOutputStream out = new FileOutputStream(log, true)) {
+            out.write(new byte[]{0, 0, 3, 0, 1, 2, 3});
+        }
+
+        ChangeFeed reopened = openFeed("restart");
+        assertEquals(origin, reopened.getOrigin());
+        assertEquals(sequence, reopened.getLatestSequence());
+        assertEquals(17L, reopened.getCheckpoint("pull:hub"));
+        assertSnapshotEquals(snapshot, reopened.snapshot());
+        assertTrue(reopened.get("person3").isDelete());
+        assertEquals(sequence + 1, reopened.recordUpsert("late", randomVector()).getSequence());
+
+        // Embeddings of another model start a fresh feed
+        reopened.close();
+        ChangeFeed otherModel = new ChangeFeed(new File(root, "restart"), DIMENSION);
+        feeds.add(otherModel);
+        assertTrue(otherModel.open("model-b"));
+        assertEquals(0, otherModel.size());
+        assertEquals(0L, otherModel.getCheckpoint("pull:hub"));
+        assertEquals(origin, otherModel.getOrigin());
+    }
+
+    @Test
+    public void mismatchedModel_isRejected() {
+        ChangeFeed other = new ChangeFeed(new File(root, "other"), DIMENSION);
+        feeds.add(other);
+        assertTrue(other.open("model-b"));
+        other.recordUpsert("carol", randomVector());
+        hub.recordUpsert("dave", randomVector());
+
+        ReplicationClient client = new ReplicationClient(other, hubUrl, TOKEN, 100, 5000);
+        assertFalse(client.push());
+        assertTrue(client.getLastError().contains("409"));
+        assertFalse(client.pull());
+        assertNull(hub.get("carol"));
+        assertNull(other.get("dave"));
+    }
+
+    private ChangeFeed openFeed(String name) {
+        ChangeFeed feed = new ChangeFeed(new File(root, name), DIMENSION);
+        assertTrue(feed.open(FINGERPRINT));
+        feeds.add(feed);
+        return feed;
+    }
+
+    private float[] randomVector() {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private static void assertSnapshotEquals(Map<String, float[]> expected, Map<String, float[]> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, float[]> entry : expected.entrySet()) {
+            assertArrayEquals(entry.getValue(), actual.get(entry.getKey()), 0f);
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,174 @@
+package com.atharvakale.facerecognition.data.thumbnails;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Packed thumbnail file: lookups by name, replacement, deletion, crash recovery and compaction
+ */
+public class ThumbnailStoreTest {
+    private File dir;
+    private File file;
+    private ThumbnailStore store;
+    private final Random random = new Random(5L);
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("thumbnails").toFile();
+        file = new File(dir, "thumbs.dat");
+        store = new ThumbnailStore(file, 85);
+        assertTrue(store.open());
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                child.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void putReplaceDelete_surviveReopen() {
+        byte[][] images = new byte[1000][];
+        for (int i = 0; i < images.length; i++) {
+            images[i] = image(3000 + random.nextInt(1000));
+            assertTrue(store.putEncoded("person" + i, images[i]));
+        }
+        byte[] replaced = image(3500);
+        assertTrue(store.putEncoded("person7", replaced));
+        assertTrue(store.delete("person8"));
+        assertFalse(store.delete("nobody"));
+        assertEquals(999, store.size());
+
+        store.close();
+        store = new ThumbnailStore(file, 85);
+        assertTrue(store.open());
+        assertEquals(999, store.size());
+        assertArrayEquals(images[0], store.readEncoded("person0"));
+        assertArrayEquals(images[999], store.readEncoded("person999"));
+        assertArrayEquals(replaced, store.readEncoded("person7"));
+        assertNull(store.readEncoded("person8"));
+        assertFalse(store.contains("person8"));
+    }
+
+    @Test
+    public void namesOutsideAscii_surviveReopen() {
+        // writeUTF stores emoji and U+0000 in more bytes than UTF-8 does
+        String[] names = {"Zo\u00EB", "Ana \uD83D\uDE00", "nul\u0000name", "\u674E\u96F7"};
+        byte[][] images = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            images[i] = image(2000 + i);
+            assertTrue(store.putEncoded(names[i], images[i]));
+        }
+        assertTrue(store.putEncoded("after", image(100)));
+
+        store.close();
+        store = new ThumbnailStore(file, 85);
+        assertTrue(store.open());
+        assertEquals(names.length + 1, store.size());
+        for (int i = 0; i < names.length; i++) {
+            assertArrayEquals(images[i], store.readEncoded(names[i]));
+        }
+        assertNotNull(store.readEncoded("after"));
+    }
+
+    @Test
+    public void tornTail_isDroppedOnOpen() throws Exception {
+        byte[] kept = image(3000);
+        assertTrue(store.putEncoded("alice", kept));
+        long length = store.getFileBytes();
+        store.close();
+
+        // A record cut short by a crash
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[]{0, 0, 20, 0, 1, 2, 3, 4, 1, 0});
+        }
+
+        store = new ThumbnailStore(file, 85);
+        assertTrue(store.open());
+        assertEquals(1, store.size());
+        assertEquals(length, store.getFileBytes());
+        assertArrayEquals(kept, store.readEncoded("alice"));
+        assertTrue(store.putEncoded("bob", image(100)));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    public void damagedImage_readsAsNull() throws Exception {
+        assertTrue(store.putEncoded("alice", image(3000)));
+        store.close();
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        bytes[bytes.length - 10] ^= 0x55;
+        Files.write(file.toPath(), bytes);
+
+        store = new ThumbnailStore(file, 85);
+        assertTrue(store.open());
+        assertTrue(store.contains("alice"));
+        assertNull(store.readEncoded("alice"));
+    }
+
+    @Test
+    public void replacedThumbnails_areCompactedAway() {
+        byte[][] latest = new byte[400][];
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < latest.length; i++) {
+                latest[i] = image(4000);
+                assertTrue(store.putEncoded("person" + i, latest[i]));
+            }
+        }
+        assertTrue(store.getCompactionCount() > 0);
+        // Never more than about twice the live data on disk
+        assertTrue(store.getFileBytes() < 2 * 400 * 4100 + 1024 * 1024);
+        for (int i = 0; i < latest.length; i++) {
+            assertArrayEquals(latest[i], store.readEncoded("person" + i));
+        }
+
+        store.close();
+        store = new ThumbnailStore(file, 85);
+        assertTrue(store.open());
+        assertEquals(400, store.size());
+        assertArrayEquals(latest[123], store.readEncoded("person123"));
+    }
+
+    @Test
+    public void clear_dropsEverything() {
+        assertTrue(store.putEncoded("alice", image(100)));
+        assertTrue(store.clear());
+        assertEquals(0, store.size());
+        assertTrue(store.putEncoded("bob", image(100)));
+        store.close();
+        store = new ThumbnailStore(file, 85);
+        assertTrue(store.open());
+        assertEquals(1, store.size());
+        assertTrue(store.contains("bob"));
+    }
+
+    @Test
+    public void sampleSize_keepsDecodeAtOrAboveTarget() {
+        assertEquals(1, ThumbnailStore.sampleSize(112, 112));
+        assertEquals(1, ThumbnailStore.sampleSize(112, 64));
+        assertEquals(2, ThumbnailStore.sampleSize(112, 56));
+        assertEquals(2, ThumbnailStore.sampleSize(112, 48));
+        assertEquals(4, ThumbnailStore.sampleSize(112, 28));
+        assertEquals(1, ThumbnailStore.sampleSize(112, 0));
+    }
+
+    private byte[] image(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
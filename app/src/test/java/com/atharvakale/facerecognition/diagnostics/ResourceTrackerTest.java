@@ -0,0 +1,135 @@
+package com.atharvakale.facerecognition.diagnostics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Resource lifecycle tracking and soak report arithmetic
+ */
+public class ResourceTrackerTest {
+
+    @Before
+    public void setUp() {
+        ResourceTracker.reset();
+        ResourceTracker.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        ResourceTracker.setEnabled(false);
+        ResourceTracker.reset();
+    }
+
+    @Test
+    public void releasedAndHandedOff_areNotLeaks() {
+        ByteBuffer released = ResourceTracker.track(ResourceTracker.Kind.DIRECT_BUFFER,
+            ByteBuffer.allocateDirect(1024), 1024, "input");
+        ByteBuffer kept = ResourceTracker.track(ResourceTracker.Kind.DIRECT_BUFFER,
+            ByteBuffer.allocateDirect(1024), 1024, "input");
+        assertEquals(2, ResourceTracker.getOutstandingCount());
+
+        ResourceTracker.release(released);
+        ResourceTracker.handOff(kept);
+        assertEquals(0, ResourceTracker.getOutstandingCount());
+
+        ResourceTracker.SiteStats stats = site(ResourceTracker.snapshot(0), "input");
+        assertEquals(2, stats.allocated);
+        assertEquals(1, stats.released);
+        assertEquals(1, stats.handedOff);
+        assertFalse(stats.isSuspect());
+
+        // A second release of the same buffer is noticed
+        ResourceTracker.release(released);
+        assertEquals(1, ResourceTracker.getUntrackedReleases());
+    }
+
+    @Test
+    public void droppedWithoutRelease_isReportedOnceCollected() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            ResourceTracker.track(ResourceTracker.Kind.BITMAP, new byte[4096], 4096, "crop");
+        }
+        Object held = ResourceTracker.track(ResourceTracker.Kind.BITMAP, new byte[4096], 4096, "crop");
+
+        ResourceTracker.SiteStats stats = null;
+        for (int attempt = 0; attempt < 50; attempt++) {
+            System.gc();
+            Thread.sleep(20);
+            stats = site(ResourceTracker.snapshot(Long.MAX_VALUE), "crop");
+            if (stats.collectedUnreleased == 10) {
+                break;
+            }
+        }
+        assertEquals(10, stats.collectedUnreleased);
+        assertEquals(10 * 4096, stats.collectedUnreleasedBytes);
+        assertEquals(1, stats.outstanding);
+        assertTrue(stats.isSuspect());
+        assertNotNull(held);
+    }
+
+    @Test
+    public void outstandingPastLeakAge_isStale() throws Exception {
+        Object interpreter = ResourceTracker.track(ResourceTracker.Kind.INTERPRETER, new Object(), 4000000, "interpreter");
+        Thread.sleep(5);
+        assertEquals(0, site(ResourceTracker.snapshot(60000), "interpreter").stale);
+        ResourceTracker.SiteStats stats = site(ResourceTracker.snapshot(1), "interpreter");
+        assertEquals(1, stats.stale);
+        assertEquals(4000000, stats.outstandingBytes);
+        ResourceTracker.release(interpreter);
+        assertFalse(site(ResourceTracker.snapshot(1), "interpreter").isSuspect());
+    }
+
+    @Test
+    public void disabled_tracksNothing() {
+        ResourceTracker.setEnabled(false);
+        Object resource = ResourceTracker.track(ResourceTracker.Kind.DIRECT_BUFFER, new Object(), 16, "input");
+        ResourceTracker.release(resource);
+        assertEquals(0, ResourceTracker.getOutstandingCount());
+        assertTrue(ResourceTracker.snapshot(0).isEmpty());
+        assertEquals(0, ResourceTracker.getUntrackedReleases());
+    }
+
+    @Test
+    public void report_fitsGrowthAfterWarmupAndDiffsGcCounters() {
+        // One hour: Java heap flat after a warm-up spike, native heap growing 36 MB/h
+        List<MemorySample> samples = new ArrayList<>();
+        for (int minute = 0; minute <= 60; minute++) {
+            long javaHeap = minute < 3 ? 10000000L * minute : 20000000L;
+            long nativeHeap = 50000000L + minute * 600000L;
+            long blockingTime = minute == 30 ? 400 : minute > 30 ? 500 + minute : minute;
+            samples.add(new MemorySample(minute * 60000L, javaHeap, nativeHeap, 100 + minute * 10,
+                1000 + minute * 20, 5 + minute, blockingTime, 3));
+        }
+        SoakHarness.Report report = new SoakHarness.Report(3600000L, 54000, 2, samples,
+            Collections.<ResourceTracker.SiteStats>emptyList(), 0);
+
+        assertEquals(0, report.javaHeapGrowthPerHour, 1);
+        assertEquals(36000000, report.nativeHeapGrowthPerHour, 1000);
+        assertEquals(600, report.gcCount);
+        assertEquals(1200, report.gcTimeMs);
+        assertEquals(2f, report.getAverageGcMs(), 1e-6f);
+        assertEquals(60, report.blockingGcCount);
+        assertEquals(560, report.blockingGcTimeMs);
+        assertEquals(400 - 29, report.worstBlockingGcMsPerInterval);
+        assertTrue(report.hasLeaks(8L * 1024 * 1024));
+        assertFalse(report.hasLeaks(64L * 1024 * 1024));
+        assertTrue(report.toString().startsWith("Soak 60.0 min, 54000 frames (15.0 fps), 2 errors"));
+    }
+
+    private static ResourceTracker.SiteStats site(List<ResourceTracker.SiteStats> stats, String site) {
+        for (ResourceTracker.SiteStats stat : stats) {
+            if (stat.site.equals(site)) {
+                return stat;
+            }
+        }
+        fail("No stats for " + site);
+        return null;
+    }
+}
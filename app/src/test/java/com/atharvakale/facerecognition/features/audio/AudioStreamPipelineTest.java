@@ -0,0 +1,118 @@
+package com.atharvakale.facerecognition.features.audio;
+
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Headless tests for the streaming audio front-end, driven from generated WAV files
+ */
+public class AudioStreamPipelineTest {
+    private static final int SAMPLE_RATE = 16000;
+
+    @Test
+    public void ringBuffer_wrapsAroundAndCountsOverrun() {
+        AudioRingBuffer ring = new AudioRingBuffer(6);
+        assertEquals(8, ring.capacity());
+
+        float[] data = {1, 2, 3, 4, 5, 6};
+        float[] out = new float[8];
+        assertEquals(6, ring.write(data, 0, 6));
+        assertEquals(4, ring.read(out, 0, 4));
+        assertEquals(6, ring.write(data, 0, 6));
+        assertEquals(8, ring.available());
+        assertEquals(0, ring.write(data, 0, 2));
+        assertEquals(2, ring.getDroppedSamples());
+
+        assertEquals(8, ring.read(out, 0, 8));
+        assertArrayEquals(new float[]{5, 6, 1, 2, 3, 4, 5, 6}, out, 0f);
+        assertEquals(0, ring.available());
+    }
+
+    @Test
+    public void wavSource_producesOneFramePerHop() throws IOException {
+        File wav = writeSineWav(1000f, SAMPLE_RATE);
+        LogMelExtractor extractor = new LogMelExtractor(SAMPLE_RATE, 512, 160, 40, 20f, 7600f, 0);
+        AudioStreamPipeline pipeline = new AudioStreamPipeline(extractor, 98, 25, 4096, null, null, null);
+
+        long frames = pipeline.runToCompletion(new WavFileInputSource(wav));
+
+        assertEquals(SAMPLE_RATE / 160, frames);
+        assertEquals(0, pipeline.getDroppedSamples());
+        assertEquals(0, pipeline.getInferencesRun());
+        wav.delete();
+    }
+
+    @Test
+    public void logMel_peakFollowsTone() throws IOException {
+        assertTrue(peakMelBin(3000f) > peakMelBin(500f));
+    }
+
+    @Test
+    public void mfcc_hasRequestedSize() {
+        LogMelExtractor extractor = new LogMelExtractor(SAMPLE_RATE, 512, 160, 40, 20f, 7600f, 13);
+        assertEquals(13, extractor.getFeatureSize());
+        float[] out = new float[13];
+        extractor.processHop(new float[160], 0, out, 0);
+        assertTrue(Float.isFinite(out[0]));
+    }
+
+    private int peakMelBin(float frequency) throws IOException {
+        File wav = writeSineWav(frequency, SAMPLE_RATE / 4);
+        LogMelExtractor extractor = new LogMelExtractor(SAMPLE_RATE, 512, 160, 40, 20f, 7600f, 0);
+        final float[] last = new float[40];
+        AudioStreamPipeline pipeline = new AudioStreamPipeline(extractor, 98, 25, 4096, null, null,
+            new AudioStreamPipeline.Listener() {
+                @Override
+                public void onFeatureFrame(float[] features, long frameIndex) {
+                    System.arraycopy(features, 0, last, 0, last.length);
+                }
+
+                @Override
+                public void onInference(float[] scores, long frameIndex) {}
+
+                @Override
+                public void onError(String error) {}
+            });
+        pipeline.runToCompletion(new WavFileInputSource(wav));
+        wav.delete();
+
+        int peak = 0;
+        for (int i = 1; i < last.length; i++) {
+            if (last[i] > last[peak]) {
+                peak = i;
+            }
+        }
+        return peak;
+    }
+
+    private static File writeSineWav(float frequency, int samples) throws IOException {
+        File file = File.createTempFile("tone", ".wav");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            int dataBytes = samples * 2;
+            out.writeBytes("RIFF");
+            out.writeInt(Integer.reverseBytes(36 + dataBytes));
+            out.writeBytes("WAVE");
+            out.writeBytes("fmt ");
+            out.writeInt(Integer.reverseBytes(16));
+            out.writeShort(Short.reverseBytes((short) 1));
+            out.writeShort(Short.reverseBytes((short) 1));
+            out.writeInt(Integer.reverseBytes(SAMPLE_RATE));
+            out.writeInt(Integer.reverseBytes(SAMPLE_RATE * 2));
+            out.writeShort(Short.reverseBytes((short) 2));
+            out.writeShort(Short.reverseBytes((short) 16));
+            out.writeBytes("data");
+            out.writeInt(Integer.reverseBytes(dataBytes));
+            for (int i = 0; i < samples; i++) {
+                short value = (short) (Math.sin(2 * Math.PI * frequency * i / SAMPLE_RATE) * 16000);
+                out.writeShort(Short.reverseBytes(value));
+            }
+        }
+        return file;
+    }
+}
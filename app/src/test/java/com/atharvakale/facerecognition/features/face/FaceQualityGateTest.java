@@ -0,0 +1,135 @@
+package com.atharvakale.facerecognition.features.face;
+
+import android.graphics.Rect;
+
+import com.atharvakale.facerecognition.features.face.detection.DetectedFace;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Quality gate thresholds: size, edge clipping, head pose and blur, and the counters of avoided inferences
+ */
+public class FaceQualityGateTest {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    private static FaceQualityGate gate() {
+        // At least 64 px, |yaw| <= 35, |pitch| <= 25, |roll| <= 30, 90% inside the frame, sharpness >= 25
+        return new FaceQualityGate(64, 35f, 25f, 30f, 0.9f, 25f);
+    }
+
+    private static DetectedFace face(float left, float top, float size, float yaw, float pitch, float roll) {
+        return new DetectedFace(left, top, left + size, top + size, 0.9f, new float[12], 1, yaw, pitch, roll);
+    }
+
+    @Test
+    public void sizeThreshold_isInclusive() {
+        FaceQualityGate gate = gate();
+        assertEquals(FaceQualityGate.Rejection.TOO_SMALL, gate.evaluate(face(100, 100, 63, 0, 0, 0), WIDTH, HEIGHT, 0).rejection);
+        assertTrue(gate.evaluate(face(100, 100, 64, 0, 0, 0), WIDTH, HEIGHT, 0).isAccepted());
+    }
+
+    @Test
+    public void clippedFaces_areRejectedBelowTheVisibleFraction() {
+        FaceQualityGate gate = gate();
+        // 10 of 100 columns outside the frame: exactly 90% visible
+        assertTrue(gate.evaluate(face(-10, 100, 100, 0, 0, 0), WIDTH, HEIGHT, 0).isAccepted());
+        assertEquals(FaceQualityGate.Rejection.CLIPPED,
+            gate.evaluate(face(-11, 100, 100, 0, 0, 0), WIDTH, HEIGHT, 0).rejection);
+        assertEquals(FaceQualityGate.Rejection.CLIPPED,
+            gate.evaluate(face(100, HEIGHT - 80, 100, 0, 0, 0), WIDTH, HEIGHT, 0).rejection);
+    }
+
+    @Test
+    public void sidewaysFrames_areClippedInUprightCoordinates() {
+        FaceQualityGate gate = gate();
+        // A 640x480 sensor frame rotated by 90 degrees is 480 wide and 640 tall upright
+        DetectedFace lowFace = face(100, 540, 100, 0, 0, 0);
+        assertTrue(gate.evaluate(lowFace, WIDTH, HEIGHT, 90).isAccepted());
+        assertEquals(FaceQualityGate.Rejection.CLIPPED, gate.evaluate(lowFace, WIDTH, HEIGHT, 0).rejection);
+    }
+
+    @Test
+    public void poseThresholds_applyToEachAngle() {
+        FaceQualityGate gate = gate();
+        assertTrue(gate.evaluate(face(100, 100, 128, 35f, -25f, 30f), WIDTH, HEIGHT, 0).isAccepted());
+        assertEquals(FaceQualityGate.Rejection.POSE, gate.evaluate(face(100, 100, 128, -36f, 0, 0), WIDTH, HEIGHT, 0).rejection);
+        assertEquals(FaceQualityGate.Rejection.POSE, gate.evaluate(face(100, 100, 128, 0, 26f, 0), WIDTH, HEIGHT, 0).rejection);
+        assertEquals(FaceQualityGate.Rejection.POSE, gate.evaluate(face(100, 100, 128, 0, 0, -31f), WIDTH, HEIGHT, 0).rejection);
+        // Angles the detector does not estimate are not checked
+        assertTrue(gate.evaluate(face(100, 100, 128, Float.NaN, Float.NaN, Float.NaN), WIDTH, HEIGHT, 0).isAccepted());
+    }
+
+    @Test
+    public void score_prefersFrontalFacesAndSkipsBlurWithoutLuma() {
+        FaceQualityGate gate = gate();
+        FaceQualityGate.Assessment frontal = gate.evaluate(face(100, 100, 224, 0, 0, 0), WIDTH, HEIGHT, 0);
+        FaceQualityGate.Assessment turned = gate.evaluate(face(100, 100, 224, 30f, 0, 0), WIDTH, HEIGHT, 0);
+        FaceQualityGate.Assessment small = gate.evaluate(face(100, 100, 80, 0, 0, 0), WIDTH, HEIGHT, 0);
+        assertTrue(frontal.score > turned.score);
+        assertTrue(frontal.score > small.score);
+        assertTrue(Float.isNaN(frontal.sharpness));
+    }
+
+    @Test
+    public void laplacianVariance_separatesFlatFromDetailedRegions() {
+        int stride = 200;
+        ByteBuffer flat = ByteBuffer.allocate(stride * 200);
+        ByteBuffer checker = ByteBuffer.allocate(stride * 200);
+        for (int y = 0; y < 200; y++) {
+            for (int x = 0; x < stride; x++) {
+                flat.put(y * stride + x, (byte) 128);
+                checker.put(y * stride + x, (byte) (((x / 2 + y / 2) % 2) * 255));
+            }
+        }
+        assertEquals(0f, FaceQualityGate.laplacianVariance(flat, stride, 1, 20, 20, 180, 180), 0f);
+        assertTrue(FaceQualityGate.laplacianVariance(checker, stride, 1, 20, 20, 180, 180) > 25f);
+        // Too small to sample around
+        assertEquals(0f, FaceQualityGate.laplacianVariance(checker, stride, 1, 20, 20, 22, 22), 0f);
+    }
+
+    @Test
+    public void toSensorRect_invertsEachRotation() {
+        // Upright box near the top-left corner of the rotated frame
+        Rect r90 = FaceQualityGate.toSensorRect(10, 20, 50, 80, 90, WIDTH, HEIGHT);
+        assertEquals(20, r90.left);
+        assertEquals(HEIGHT - 50, r90.top);
+        assertEquals(80, r90.right);
+        assertEquals(HEIGHT - 10, r90.bottom);
+
+        Rect r180 = FaceQualityGate.toSensorRect(10, 20, 50, 80, 180, WIDTH, HEIGHT);
+        assertEquals(WIDTH - 50, r180.left);
+        assertEquals(HEIGHT - 80, r180.top);
+
+        Rect r270 = FaceQualityGate.toSensorRect(10, 20, 50, 80, 270, WIDTH, HEIGHT);
+        assertEquals(WIDTH - 80, r270.left);
+        assertEquals(10, r270.top);
+        assertEquals(r270.right - r270.left, 60);
+        assertEquals(r270.bottom - r270.top, 40);
+    }
+
+    @Test
+    public void counters_trackEachRejection() {
+        FaceQualityGate gate = gate();
+        gate.evaluate(face(100, 100, 20, 0, 0, 0), WIDTH, HEIGHT, 0);
+        gate.evaluate(face(100, 100, 20, 0, 0, 0), WIDTH, HEIGHT, 0);
+        gate.evaluate(face(100, 100, 128, 50f, 0, 0), WIDTH, HEIGHT, 0);
+        gate.evaluate(face(100, 100, 128, 0, 0, 0), WIDTH, HEIGHT, 0);
+
+        assertEquals(4, gate.getEvaluatedCount());
+        assertEquals(2, gate.getRejectedCount(FaceQualityGate.Rejection.TOO_SMALL));
+        assertEquals(1, gate.getRejectedCount(FaceQualityGate.Rejection.POSE));
+        assertEquals(3, gate.getAvoidedInferenceCount());
+
+        // Thresholds can be relaxed at run time
+        gate.setThresholds(16, 60f, 25f, 30f, 0.9f, 25f);
+        assertTrue(gate.evaluate(face(100, 100, 20, 50f, 0, 0), WIDTH, HEIGHT, 0).isAccepted());
+        gate.resetCounters();
+        assertEquals(0, gate.getEvaluatedCount());
+        assertEquals(0, gate.getAvoidedInferenceCount());
+    }
+}
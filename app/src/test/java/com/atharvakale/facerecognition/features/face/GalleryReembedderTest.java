@@ -0,0 +1,220 @@
+package com.atharvakale.facerecognition.features.face;
+
+import com.atharvakale.facerecognition.SimilarityClassifier;
+import com.atharvakale.facerecognition.data.Repository;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Re-embedding checkpoints: finished faces are staged every few faces, and a restarted job resumes from them
+ */
+public class GalleryReembedderTest {
+    private static final List<String> NAMES = Arrays.asList("a", "b", "c", "d", "e", "f", "g");
+
+    /**
+     * Staging repository in memory, counting the checkpoints written
+     */
+    private static class MemoryRepository implements Repository<String, SimilarityClassifier.Recognition> {
+        final Map<String, SimilarityClassifier.Recognition> items = new HashMap<>();
+        int saveAllCalls;
+
+        @Override
+        public boolean save(String key, SimilarityClassifier.Recognition value) {
+            items.put(key, value);
+            return true;
+        }
+
+        @Override
+        public boolean saveAll(Map<String, SimilarityClassifier.Recognition> items) {
+            saveAllCalls++;
+            this.items.putAll(items);
+            return true;
+        }
+
+        @Override
+        public SimilarityClassifier.Recognition load(String key) {
+            return items.get(key);
+        }
+
+        @Override
+        public Map<String, SimilarityClassifier.Recognition> loadAll() {
+            return new HashMap<>(items);
+        }
+
+        @Override
+        public boolean delete(String key) {
+            return items.remove(key) != null;
+        }
+
+        @Override
+        public boolean deleteAll(Iterable<String> keys) {
+            for (String key : keys) {
+                items.remove(key);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean clear() {
+            items.clear();
+            return true;
+        }
+
+        @Override
+        public boolean exists(String key) {
+            return items.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return items.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return items.isEmpty();
+        }
+    }
+
+    /**
+     * Embeds names without crops or a model: names in "noCrop" have no stored crop, and the job
+     * fails after "failAfter" faces
+     */
+    private static class FakeReembedder extends GalleryReembedder {
+        final List<String> embedded = new ArrayList<>();
+        final Set<String> noCrop = new HashSet<>();
+        int failAfter = Integer.MAX_VALUE;
+        int cancelAfter = Integer.MAX_VALUE;
+
+        FakeReembedder(Repository<String, SimilarityClassifier.Recognition> staging, int checkpointInterval) {
+            super(null, staging, null, 0, checkpointInterval);
+        }
+
+        @Override
+        public SimilarityClassifier.Recognition embedStored(String name) {
+            if (embedded.size() >= failAfter) {
+                throw new IllegalStateException("interpreter closed");
+            }
+            embedded.add(name);
+            if (embedded.size() >= cancelAfter) {
+                cancel();
+            }
+            if (noCrop.contains(name)) {
+                return null;
+            }
+            SimilarityClassifier.Recognition recognition = new SimilarityClassifier.Recognition("0", "", -1f);
+            recognition.setExtra(new float[][]{{name.charAt(0)}});
+            return recognition;
+        }
+    }
+
+    private static class RecordingListener implements GalleryReembedder.Listener {
+        final List<Integer> progress = new ArrayList<>();
+        Map<String, SimilarityClassifier.Recognition> embeddings;
+        List<String> missingCrops;
+        String error;
+
+        @Override
+        public void onProgress(int completed, int total) {
+            assertEquals(NAMES.size(), total);
+            progress.add(completed);
+        }
+
+        @Override
+        public void onFinished(Map<String, SimilarityClassifier.Recognition> embeddings, List<String> missingCrops) {
+            this.embeddings = embeddings;
+            this.missingCrops = missingCrops;
+        }
+
+        @Override
+        public void onError(String error) {
+            this.error = error;
+        }
+    }
+
+    @Test
+    public void completedJob_embedsEveryFaceAndReportsMissingCrops() {
+        MemoryRepository staging = new MemoryRepository();
+        FakeReembedder job = new FakeReembedder(staging, 3);
+        job.noCrop.add("d");
+        RecordingListener listener = new RecordingListener();
+
+        job.run(NAMES, listener);
+
+        assertNull(listener.error);
+        assertEquals(NAMES, job.embedded);
+        assertEquals(6, listener.embeddings.size());
+        assertFalse(listener.embeddings.containsKey("d"));
+        assertEquals(Arrays.asList("d"), listener.missingCrops);
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7), listener.progress);
+        // Two interval checkpoints (after 3 and 6 embeddings) and the final save
+        assertEquals(3, staging.saveAllCalls);
+        assertEquals(6, staging.size());
+    }
+
+    @Test
+    public void failedJob_keepsTheLastCheckpoint() {
+        MemoryRepository staging = new MemoryRepository();
+        FakeReembedder job = new FakeReembedder(staging, 2);
+        job.failAfter = 5;
+        RecordingListener listener = new RecordingListener();
+
+        job.run(NAMES, listener);
+
+        assertNotNull(listener.error);
+        assertNull(listener.embeddings);
+        // Checkpoints after the 2nd and 4th faces; the 5th was embedded but not yet staged
+        assertEquals(2, staging.saveAllCalls);
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c", "d")), staging.items.keySet());
+    }
+
+    @Test
+    public void restartedJob_resumesFromTheCheckpoint() {
+        MemoryRepository staging = new MemoryRepository();
+        FakeReembedder first = new FakeReembedder(staging, 2);
+        first.failAfter = 4;
+        first.run(NAMES, new RecordingListener());
+        SimilarityClassifier.Recognition checkpointed = staging.load("a");
+
+        FakeReembedder second = new FakeReembedder(staging, 2);
+        RecordingListener listener = new RecordingListener();
+        second.run(NAMES, listener);
+
+        // Only the faces past the checkpoint are embedded again
+        assertEquals(Arrays.asList("e", "f", "g"), second.embedded);
+        assertEquals(Arrays.asList(4, 5, 6, 7), listener.progress);
+        assertEquals(NAMES.size(), listener.embeddings.size());
+        assertSame(checkpointed, listener.embeddings.get("a"));
+    }
+
+    @Test
+    public void cancelledJob_checkpointsWithoutFinishing() {
+        MemoryRepository staging = new MemoryRepository();
+        FakeReembedder job = new FakeReembedder(staging, 10);
+        job.cancelAfter = 3;
+        RecordingListener listener = new RecordingListener();
+
+        job.run(NAMES, listener);
+
+        assertTrue(job.isCancelled());
+        assertNull(listener.embeddings);
+        assertNull(listener.error);
+        // Stops after the current face, and staging still receives everything embedded so far
+        assertEquals(3, job.embedded.size());
+        assertEquals(3, staging.size());
+
+        FakeReembedder resumed = new FakeReembedder(staging, 10);
+        resumed.run(NAMES, new RecordingListener());
+        assertEquals(Arrays.asList("d", "e", "f", "g"), resumed.embedded);
+    }
+}
@@ -0,0 +1,196 @@
+package com.atharvakale.facerecognition.features.face;
+
+import com.atharvakale.facerecognition.SimilarityClassifier;
+import com.atharvakale.facerecognition.data.Repository;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Gallery writes racing each other: storage must end up matching the registered faces
+ */
+public class GalleryStorageTest {
+    private final Object galleryLock = new Object();
+    private final Map<String, SimilarityClassifier.Recognition> faces = new ConcurrentHashMap<>();
+    private final SlowRepository repository = new SlowRepository();
+    private final GalleryStorage storage = new GalleryStorage(galleryLock, faces, repository);
+
+    /**
+     * Stores the whole gallery as one value rewritten on every change, like the preferences repository
+     */
+    private static class SlowRepository implements Repository<String, SimilarityClassifier.Recognition> {
+        volatile Map<String, SimilarityClassifier.Recognition> items = new HashMap<>();
+
+        @Override
+        public boolean save(String key, SimilarityClassifier.Recognition value) {
+            Map<String, SimilarityClassifier.Recognition> current = loadAll();
+            current.put(key, value);
+            return saveAll(current);
+        }
+
+        @Override
+        public boolean saveAll(Map<String, SimilarityClassifier.Recognition> items) {
+            Map<String, SimilarityClassifier.Recognition> copy = new HashMap<>(items);
+            // Widens the window a write that is not ordered with others could lose
+            Thread.yield();
+            this.items = copy;
+            return true;
+        }
+
+        @Override
+        public SimilarityClassifier.Recognition load(String key) {
+            return items.get(key);
+        }
+
+        @Override
+        public Map<String, SimilarityClassifier.Recognition> loadAll() {
+            return new HashMap<>(items);
+        }
+
+        @Override
+        public boolean delete(String key) {
+            return deleteAll(Collections.singletonList(key));
+        }
+
+        @Override
+        public boolean deleteAll(Iterable<String> keys) {
+            Map<String, SimilarityClassifier.Recognition> current = loadAll();
+            for (String key : keys) {
+                current.remove(key);
+            }
+            return saveAll(current);
+        }
+
+        @Override
+        public boolean clear() {
+            return saveAll(new HashMap<>());
+        }
+
+        @Override
+        public boolean exists(String key) {
+            return items.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return items.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return items.isEmpty();
+        }
+    }
+
+    @Test
+    public void importWhileEnrolling_storesEveryFace() throws Exception {
+        int enrollers = 4;
+        int enrollments = 200;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger failures = new AtomicInteger();
+        Thread[] threads = new Thread[enrollers + 1];
+
+        // Imports apply batches under the gallery lock and write one snapshot at the end
+        threads[0] = new Thread(() -> {
+            await(start);
+            for (int round = 0; round < 20; round++) {
+                for (int batch = 0; batch < 5; batch++) {
+                    synchronized (galleryLock) {
+                        for (int i = 0; i < 10; i++) {
+                            faces.put("imported-" + round + "-" + batch + "-" + i, face());
+                        }
+                    }
+                }
+                if (!storage.saveSnapshot()) {
+                    failures.incrementAndGet();
+                }
+            }
+        });
+        // Enrollments publish a face, then store it; every third one is deleted again
+        for (int t = 1; t <= enrollers; t++) {
+            final int enroller = t;
+            threads[t] = new Thread(() -> {
+                await(start);
+                for (int i = 0; i < enrollments; i++) {
+                    String name = "enrolled-" + enroller + "-" + i;
+                    SimilarityClassifier.Recognition recognition = face();
+                    synchronized (galleryLock) {
+                        faces.put(name, recognition);
+                    }
+                    if (!storage.saveFace(name, recognition, null)) {
+                        failures.incrementAndGet();
+                    }
+                    if (i % 3 == 0) {
+                        synchronized (galleryLock) {
+                            faces.remove(name);
+                        }
+                        storage.deleteFaces(Collections.singletonList(name));
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(30000);
+            assertFalse(thread.isAlive());
+        }
+
+        assertEquals(0, failures.get());
+        assertEquals(20 * 5 * 10 + enrollers * (enrollments - (enrollments + 2) / 3), faces.size());
+        assertEquals(faces, repository.items);
+    }
+
+    @Test
+    public void replacedFace_isNotStoredOverItsReplacement() {
+        SimilarityClassifier.Recognition first = face();
+        SimilarityClassifier.Recognition second = face();
+        faces.put("alice", second);
+        storage.saveFace("alice", second, null);
+
+        // The write of the first enrollment arrives late
+        AtomicInteger thumbnails = new AtomicInteger();
+        assertTrue(storage.saveFace("alice", first, thumbnails::incrementAndGet));
+        assertEquals(0, thumbnails.get());
+        assertSame(second, repository.items.get("alice"));
+    }
+
+    @Test
+    public void delete_skipsFacesRegisteredAgain() {
+        SimilarityClassifier.Recognition again = face();
+        faces.put("bob", again);
+        storage.saveFace("bob", again, null);
+
+        // The delete of the earlier "bob" arrives after the new one was stored
+        assertFalse(storage.deleteFaces(Collections.singletonList("bob")));
+        assertSame(again, repository.items.get("bob"));
+
+        faces.remove("bob");
+        assertTrue(storage.deleteFaces(Collections.singletonList("bob")));
+        assertTrue(repository.items.isEmpty());
+    }
+
+    private static SimilarityClassifier.Recognition face() {
+        SimilarityClassifier.Recognition recognition = new SimilarityClassifier.Recognition("0", "", -1f);
+        recognition.setExtra(new float[][]{{0f}});
+        return recognition;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
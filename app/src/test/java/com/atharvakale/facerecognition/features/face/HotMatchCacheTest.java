@@ -0,0 +1,178 @@
+package com.atharvakale.facerecognition.features.face;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Hot-set fast path: with skewed traffic most queries end at the cache, and every decision
+ * (nearest row, distance, known or unknown) matches the exhaustive scan
+ */
+public class HotMatchCacheTest {
+    private static final int DIMENSION = 192;
+    private static final int IDENTITIES = 5000;
+    private static final float THRESHOLD = 0.65f;
+    private static final float MARGIN = 0.1f;
+
+    private FaceGallery gallery;
+    private ParallelGalleryMatcher matcher;
+    private HotMatchCache cache;
+
+    @Before
+    public void setUp() {
+        gallery = unitGallery(IDENTITIES, 21L);
+        matcher = new ParallelGalleryMatcher(2, 64 * 1024, 0);
+        cache = new HotMatchCache(16, DIMENSION, MARGIN);
+    }
+
+    @After
+    public void tearDown() {
+        matcher.shutdown();
+    }
+
+    @Test
+    public void skewedTraffic_matchesExhaustiveDecisions() {
+        Random random = new Random(5L);
+        int queries = 3000;
+        for (int q = 0; q < queries; q++) {
+            // 80% of visitors come from 10 regulars, the rest from anyone or strangers
+            int identity;
+            float noise;
+            double draw = random.nextDouble();
+            if (draw < 0.8) {
+                identity = random.nextInt(10);
+                noise = 0.01f + random.nextFloat() * 0.02f;
+            } else if (draw < 0.95) {
+                identity = random.nextInt(IDENTITIES);
+                noise = 0.02f + random.nextFloat() * 0.04f;
+            } else {
+                identity = -1;
+                noise = 0f;
+            }
+            float[] query = identity >= 0 ? perturb(gallery, identity, noise, random) : randomUnit(random);
+            assertSameDecision(query);
+        }
+
+        assertTrue("hit ratio " + cache.getHitRatio(), cache.getHitRatio() > 0.6f);
+        assertTrue(cache.getAverageComparisons() < IDENTITIES * 0.6f);
+    }
+
+    @Test
+    public void nearDuplicateIdentities_neverExitEarlyOnTheWrongOne() {
+        // Two registrations of nearly the same face: isolation keeps the cache from deciding alone
+        float[] vectors = gallery.getVectors().clone();
+        float[] twin = perturb(gallery, 0, 0.01f, new Random(3L));
+        System.arraycopy(twin, 0, vectors, DIMENSION, DIMENSION);
+        String[] names = new String[gallery.size()];
+        for (int row = 0; row < names.length; row++) {
+            names[row] = gallery.getName(row);
+        }
+        gallery = new FaceGallery(names, vectors, DIMENSION);
+
+        Random random = new Random(8L);
+        for (int q = 0; q < 300; q++) {
+            assertSameDecision(perturb(gallery, q % 2, 0.02f, random));
+        }
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void marginRule_missesNearThreshold() {
+        Random random = new Random(4L);
+        // Populate the cache with identity 3
+        assertSameDecision(perturb(gallery, 3, 0.01f, random));
+        assertEquals(0, cache.size());
+        assertSameDecision(perturb(gallery, 3, 0.01f, random));
+        assertEquals(1, cache.size());
+
+        // A query between threshold - margin and threshold must go through the full scan
+        float[] query = atDistance(gallery, 3, THRESHOLD - MARGIN / 2f, random);
+        long hits = cache.getHits();
+        assertSameDecision(query);
+        assertEquals(hits, cache.getHits());
+
+        // Well inside the margin it is answered by the cache
+        assertSameDecision(atDistance(gallery, 3, 0.2f, random));
+        assertEquals(hits + 1, cache.getHits());
+    }
+
+    @Test
+    public void newGallerySnapshot_clearsCache() {
+        Random random = new Random(6L);
+        assertSameDecision(perturb(gallery, 1, 0.01f, random));
+        assertSameDecision(perturb(gallery, 1, 0.01f, random));
+        assertEquals(1, cache.size());
+
+        gallery = unitGallery(IDENTITIES, 22L);
+        assertSameDecision(perturb(gallery, 1, 0.01f, random));
+        assertFalse(cache.contains(gallery, 1));
+        assertSameDecision(perturb(gallery, 1, 0.01f, random));
+        assertEquals(0, cache.getHits());
+        assertTrue(cache.contains(gallery, 1));
+    }
+
+    private void assertSameDecision(float[] query) {
+        NearestMatches exhaustive = ParallelGalleryMatcher.scanSequential(gallery, query, 1);
+        HotMatchCache.Match fast = cache.findNearest(gallery, query, THRESHOLD, matcher);
+        assertEquals(exhaustive.getRow(0), fast.row);
+        assertEquals(exhaustive.getDistance(0), fast.distance, 0f);
+        assertEquals(exhaustive.getDistance(0) < THRESHOLD, fast.distance < THRESHOLD);
+    }
+
+    /**
+     * Normalized random embeddings, like MobileFaceNet outputs after L2 normalization
+     */
+    private static FaceGallery unitGallery(int count, long seed) {
+        Random random = new Random(seed);
+        String[] names = new String[count];
+        float[] vectors = new float[count * DIMENSION];
+        for (int row = 0; row < count; row++) {
+            names[row] = "person" + row;
+            System.arraycopy(randomUnit(random), 0, vectors, row * DIMENSION, DIMENSION);
+        }
+        return new FaceGallery(names, vectors, DIMENSION);
+    }
+
+    private static float[] randomUnit(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return normalize(vector);
+    }
+
+    private static float[] perturb(FaceGallery gallery, int row, float noise, Random random) {
+        float[] vector = new float[DIMENSION];
+        gallery.copyRow(row, vector);
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] += (float) random.nextGaussian() * noise;
+        }
+        return vector;
+    }
+
+    private static float[] atDistance(FaceGallery gallery, int row, float distance, Random random) {
+        float[] direction = randomUnit(random);
+        float[] vector = new float[DIMENSION];
+        gallery.copyRow(row, vector);
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] += direction[i] * distance;
+        }
+        return vector;
+    }
+
+    private static float[] normalize(float[] vector) {
+        float norm = 0f;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = (float) Math.sqrt(norm);
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] /= norm;
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,101 @@
+package com.atharvakale.facerecognition.features.face;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Identity directory: case-insensitive prefix ranges, paging and recently-seen ordering
+ */
+public class IdentityDirectoryTest {
+    private IdentityDirectory directory;
+
+    @Before
+    public void setUp() {
+        directory = new IdentityDirectory();
+        directory.setNames(Arrays.asList("bob", "Alice", "alan", "Albert", "carol", "al", "Bea", "alice"));
+    }
+
+    @Test
+    public void query_sortsCaseInsensitively() {
+        IdentityDirectory.Page page = directory.query("", 0, 100, IdentityDirectory.Order.NAME);
+        assertEquals(Arrays.asList("al", "alan", "Albert", "Alice", "alice", "Bea", "bob", "carol"), page.names);
+        assertEquals(8, page.total);
+        assertFalse(page.hasMore());
+    }
+
+    @Test
+    public void prefix_matchesContiguousRange() {
+        assertEquals(Arrays.asList("alan", "Albert", "Alice", "alice"),
+            directory.query("AL", 1, 10, IdentityDirectory.Order.NAME).names);
+        assertEquals(5, directory.count("al"));
+        assertEquals(2, directory.count("ali"));
+        assertEquals(2, directory.count("b"));
+        assertEquals(0, directory.count("z"));
+        assertEquals(0, directory.count("alicia"));
+        assertEquals(Arrays.asList("Bea", "bob"), directory.selectPrefix("B"));
+    }
+
+    @Test
+    public void paging_coversEveryNameOnce() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            names.add(String.format("person%04d", i));
+        }
+        directory.setNames(names);
+
+        List<String> collected = new ArrayList<>();
+        IdentityDirectory.Page page;
+        int offset = 0;
+        do {
+            page = directory.query("person0", offset, 64, IdentityDirectory.Order.NAME);
+            collected.addAll(page.names);
+            offset += page.names.size();
+        } while (page.hasMore());
+        assertEquals(names, collected);
+
+        assertEquals(10, directory.query("person005", 0, 50, IdentityDirectory.Order.NAME).names.size());
+        assertTrue(directory.query("", 5000, 50, IdentityDirectory.Order.NAME).names.isEmpty());
+    }
+
+    @Test
+    public void recentlySeen_putsLatestFirstThenUnseenByName() {
+        directory.markSeen("carol", 100);
+        directory.markSeen("alan", 300);
+        directory.markSeen("bob", 200);
+        directory.markSeen("bob", 50);          // older sighting is ignored
+        directory.markSeen("nobody", 400);      // not registered
+
+        assertEquals(Arrays.asList("alan", "bob", "carol", "al", "Albert", "Alice", "alice", "Bea"),
+            directory.query(null, 0, 100, IdentityDirectory.Order.RECENTLY_SEEN).names);
+        assertEquals(Arrays.asList("carol", "al"),
+            directory.query(null, 2, 2, IdentityDirectory.Order.RECENTLY_SEEN).names);
+        assertEquals(Arrays.asList("Albert", "Alice"),
+            directory.query(null, 4, 2, IdentityDirectory.Order.RECENTLY_SEEN).names);
+        assertEquals(Arrays.asList("alan", "al", "Albert"),
+            directory.query("al", 0, 3, IdentityDirectory.Order.RECENTLY_SEEN).names);
+        assertEquals(IdentityDirectory.NEVER_SEEN, directory.getLastSeen("nobody"));
+    }
+
+    @Test
+    public void select_andRebuildDropsRemovedNames() {
+        directory.markSeen("bob", 200);
+        directory.markSeen("carol", 100);
+
+        List<String> stale = directory.select((name, lastSeenMs) -> lastSeenMs < 150);
+        assertEquals(7, stale.size());
+        assertFalse(stale.contains("bob"));
+
+        directory.setNames(Arrays.asList("bob", "dave"));
+        assertEquals(2, directory.size());
+        assertEquals(200, directory.getLastSeen("bob"));
+        assertEquals(IdentityDirectory.NEVER_SEEN, directory.getLastSeen("carol"));
+        assertTrue(directory.contains("dave"));
+        assertFalse(directory.contains("carol"));
+    }
+}
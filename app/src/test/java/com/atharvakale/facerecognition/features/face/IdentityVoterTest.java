@@ -0,0 +1,182 @@
+package com.atharvakale.facerecognition.features.face;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sequential voting: accept and reject bounds, forced decisions, track expiry and unknown rechecks
+ */
+public class IdentityVoterTest {
+    private static final float THRESHOLD = 1.0f;
+    private static final long TRACK = IdentityVoter.trackKey(0, 7);
+
+    private static IdentityVoter voter() {
+        // Accept at a margin of 1, reject at unknown evidence 1, force after 5 frames,
+        // forget tracks idle for 1 s and recheck unknowns after 500 ms
+        return new IdentityVoter(1.0f, 1.0f, 5, 1000, 500);
+    }
+
+    @Test
+    public void consistentMatch_isAcceptedOnceTheMarginIsReached() {
+        IdentityVoter voter = voter();
+        assertNull(voter.addObservation(TRACK, "alice", 0.5f, THRESHOLD, 0));
+        IdentityVoter.Decision decision = voter.addObservation(TRACK, "alice", 0.6f, THRESHOLD, 40);
+        assertNull(decision);
+        decision = voter.addObservation(TRACK, "alice", 0.4f, THRESHOLD, 80);
+
+        assertNotNull(decision);
+        assertTrue(decision.isKnown);
+        assertFalse(decision.isForced);
+        assertEquals("alice", decision.name);
+        assertEquals(0.4f, decision.distance, 0f);
+        assertEquals(3, decision.frames);
+        assertEquals(80, decision.elapsedMs);
+        // Committed: later frames skip embedding
+        assertSame(decision, voter.getDecision(TRACK, 120));
+        assertEquals(1, voter.getStats().getSkippedFrames());
+    }
+
+    @Test
+    public void competingNames_delayAcceptance() {
+        IdentityVoter voter = voter();
+        assertNull(voter.addObservation(TRACK, "alice", 0.5f, THRESHOLD, 0));
+        assertNull(voter.addObservation(TRACK, "bob", 0.5f, THRESHOLD, 10));
+        assertNull(voter.addObservation(TRACK, "alice", 0.5f, THRESHOLD, 20));
+        // alice 1.5 against bob 0.5: exactly the margin
+        IdentityVoter.Decision decision = voter.addObservation(TRACK, "alice", 0.5f, THRESHOLD, 30);
+        assertNotNull(decision);
+        assertEquals("alice", decision.name);
+        assertEquals(4, decision.frames);
+    }
+
+    @Test
+    public void distantMatches_areRejectedAsUnknown() {
+        IdentityVoter voter = voter();
+        assertNull(voter.addObservation(TRACK, "alice", 1.5f, THRESHOLD, 0));
+        IdentityVoter.Decision decision = voter.addObservation(TRACK, "alice", 1.5f, THRESHOLD, 10);
+
+        assertNotNull(decision);
+        assertFalse(decision.isKnown);
+        assertFalse(decision.isForced);
+        assertEquals("Unknown", decision.name);
+        assertEquals(1, voter.getStats().getUnknownDecisions());
+    }
+
+    @Test
+    public void ambiguousTrack_isForcedAtMaxFrames() {
+        IdentityVoter voter = voter();
+        // At the threshold every frame is neutral evidence
+        for (int frame = 0; frame < 4; frame++) {
+            assertNull(voter.addObservation(TRACK, "alice", THRESHOLD, THRESHOLD, frame));
+        }
+        IdentityVoter.Decision decision = voter.addObservation(TRACK, "alice", THRESHOLD, THRESHOLD, 4);
+        assertNotNull(decision);
+        assertTrue(decision.isForced);
+        assertFalse(decision.isKnown);
+        assertEquals(5, decision.frames);
+
+        // Two names sharing weak evidence: the leader wins when forced
+        long other = IdentityVoter.trackKey(0, 8);
+        String[] names = {"alice", "bob", "alice", "bob", "alice"};
+        for (int frame = 0; frame < names.length; frame++) {
+            decision = voter.addObservation(other, names[frame], 0.8f, THRESHOLD, 10 + frame);
+        }
+        assertNotNull(decision);
+        assertTrue(decision.isForced);
+        assertTrue(decision.isKnown);
+        assertEquals("alice", decision.name);
+        assertEquals(2, voter.getStats().getForcedDecisions());
+    }
+
+    @Test
+    public void idleTracks_areForgotten() {
+        IdentityVoter voter = voter();
+        assertNull(voter.addObservation(TRACK, "alice", 0.5f, THRESHOLD, 0));
+        assertEquals(1, voter.getActiveTrackCount());
+
+        // Past the timeout the evidence is gone and the next frame starts over
+        assertNull(voter.getDecision(TRACK, 1500));
+        assertEquals(0, voter.getActiveTrackCount());
+        assertNull(voter.addObservation(TRACK, "alice", 0.5f, THRESHOLD, 1500));
+
+        // Committed tracks expire too
+        IdentityVoter.Decision decision = voter.addObservation(TRACK, "alice", 0.5f, THRESHOLD, 1600);
+        assertNotNull(decision);
+        assertSame(decision, voter.getDecision(TRACK, 2500));
+        assertNull(voter.getDecision(TRACK, 3600));
+    }
+
+    @Test
+    public void unknownDecisions_areRecheckedKnownOnesAreNot() {
+        IdentityVoter voter = voter();
+        long known = IdentityVoter.trackKey(1, 7);
+        voter.addObservation(TRACK, "alice", 1.5f, THRESHOLD, 0);
+        assertFalse(voter.addObservation(TRACK, "alice", 1.5f, THRESHOLD, 10).isKnown);
+        voter.addObservation(known, "bob", 0.5f, THRESHOLD, 0);
+        assertTrue(voter.addObservation(known, "bob", 0.5f, THRESHOLD, 10).isKnown);
+
+        assertNotNull(voter.getDecision(TRACK, 400));
+        assertNotNull(voter.getDecision(known, 400));
+        // The unknown decision has aged past the recheck interval
+        assertNull(voter.getDecision(TRACK, 600));
+        assertNotNull(voter.getDecision(known, 600));
+    }
+
+    @Test
+    public void resetUnknown_keepsAcceptedTracks() {
+        IdentityVoter voter = voter();
+        long known = IdentityVoter.trackKey(1, 7);
+        voter.addObservation(TRACK, "alice", 1.5f, THRESHOLD, 0);
+        voter.addObservation(TRACK, "alice", 1.5f, THRESHOLD, 10);
+        voter.addObservation(known, "bob", 0.5f, THRESHOLD, 0);
+        voter.addObservation(known, "bob", 0.5f, THRESHOLD, 10);
+
+        voter.resetUnknown();
+        assertNull(voter.getDecision(TRACK, 20));
+        assertEquals("bob", voter.getDecision(known, 20).name);
+
+        voter.reset();
+        assertNull(voter.getDecision(known, 30));
+    }
+
+    @Test
+    public void untrackedFaces_areNeverLocked() {
+        IdentityVoter voter = new IdentityVoter(0.4f, 1.0f, 5, 1000, 0);
+        IdentityVoter.Decision decision = voter.addObservation(IdentityVoter.NO_TRACK, "alice", 0.5f, THRESHOLD, 0);
+        assertNotNull(decision);
+        assertNull(voter.getDecision(IdentityVoter.NO_TRACK, 10));
+        assertEquals(0, voter.getActiveTrackCount());
+    }
+
+    @Test
+    public void untrackedFaces_ofDifferentPeople_areDecidedPerFrame() {
+        IdentityVoter voter = new IdentityVoter(0.4f, 1.0f, 5, 1000, 0);
+        for (int frame = 0; frame < 6; frame++) {
+            long now = frame * 33L;
+            IdentityVoter.Decision alice = voter.addObservation(IdentityVoter.NO_TRACK, "alice", 0.9f, THRESHOLD, now);
+            IdentityVoter.Decision stranger = voter.addObservation(IdentityVoter.NO_TRACK, "bob", 1.6f, THRESHOLD, now);
+            // Neither face's evidence leaks into the other's decision
+            assertEquals("alice", alice.name);
+            assertTrue(alice.isKnown);
+            assertEquals(1, alice.frames);
+            assertEquals("Unknown", stranger.name);
+            assertFalse(stranger.isKnown);
+            assertEquals(1.6f, stranger.distance, 0f);
+        }
+        assertEquals(0, voter.getActiveTrackCount());
+        assertEquals(6, voter.getStats().getKnownDecisions());
+        assertEquals(6, voter.getStats().getUnknownDecisions());
+    }
+
+    @Test
+    public void trackKeys_separateCameras() {
+        assertTrue(IdentityVoter.trackKey(0, 7) != IdentityVoter.trackKey(1, 7));
+        assertEquals(IdentityVoter.NO_TRACK, IdentityVoter.trackKey(3, IdentityVoter.NO_TRACK));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveBounds_areRefused() {
+        voter().setBounds(0f, 1f, 5);
+    }
+}
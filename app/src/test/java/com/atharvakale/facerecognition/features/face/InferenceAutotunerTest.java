@@ -0,0 +1,222 @@
+package com.atharvakale.facerecognition.features.face;
+
+import android.graphics.Bitmap;
+
+import androidx.camera.core.ImageProxy;
+
+import com.atharvakale.facerecognition.features.face.detection.DetectedFace;
+import com.atharvakale.facerecognition.features.face.detection.FaceDetector;
+import com.atharvakale.facerecognition.ml.InferenceProfile;
+import com.atharvakale.facerecognition.ml.MLModelManager;
+import com.atharvakale.facerecognition.ml.ModelConfig;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Autotuning decisions against scripted timings: threads and XNNPACK, batch size, the int8 model and
+ * the analysis resolution
+ */
+public class InferenceAutotunerTest {
+    private static final String MODEL = "mobile_face_net";
+    private static final String QUANTIZED = "autotune_quantized";
+
+    /**
+     * Model manager returning scripted milliseconds per face instead of running interpreters
+     */
+    private static class ScriptedModelManager extends MLModelManager {
+        final Map<String, Float> timings = new HashMap<>();
+        final List<String> benchmarked = new ArrayList<>();
+        final List<String> unloaded = new ArrayList<>();
+        boolean quantizedBundled;
+
+        ScriptedModelManager() {
+            super(null);
+        }
+
+        void time(String modelKey, int threads, boolean xnnpack, int batch, float ms) {
+            timings.put(key(modelKey, threads, xnnpack, batch), ms);
+        }
+
+        static String key(String modelKey, int threads, boolean xnnpack, int batch) {
+            return modelKey + "/" + threads + "/" + xnnpack + "/" + batch;
+        }
+
+        @Override
+        public float benchmark(String modelKey, int numThreads, boolean useXnnpack, int batchSize,
+                               int warmupRuns, int timedRuns) {
+            String key = key(modelKey, numThreads, useXnnpack, batchSize);
+            benchmarked.add(key);
+            Float ms = timings.get(key);
+            return ms != null ? ms : -1f;
+        }
+
+        @Override
+        public boolean loadModel(String modelName, String modelKey) {
+            return quantizedBundled && ModelConfig.Autotune.QUANTIZED_MODEL_FILE.equals(modelName);
+        }
+
+        @Override
+        public void unloadModel(String modelKey) {
+            unloaded.add(modelKey);
+        }
+
+        @Override
+        public String getModelFingerprint(String modelKey) {
+            return "fingerprint-" + modelKey;
+        }
+    }
+
+    /**
+     * Autotuner timing detection from a table of milliseconds per frame width (missing widths fail)
+     */
+    private static class ScriptedAutotuner extends InferenceAutotuner {
+        final Map<Integer, Float> detectionMs = new HashMap<>();
+
+        ScriptedAutotuner(MLModelManager modelManager, int cores) {
+            super(modelManager, 0, 1, cores);
+        }
+
+        @Override
+        float timeDetection(FaceDetector detector, int width, int height) {
+            Float ms = detectionMs.get(width);
+            return ms != null ? ms : -1f;
+        }
+    }
+
+    private static class IdleDetector implements FaceDetector {
+        int closed;
+
+        @Override
+        public List<DetectedFace> detect(ImageProxy imageProxy, Bitmap frameBitmap, int rotationDegrees) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public FaceDetector newInstance() {
+            return this;
+        }
+
+        @Override
+        public void close() {
+            closed++;
+        }
+    }
+
+    /**
+     * Batch 1 timings where 2 threads without XNNPACK win at 10 ms per face
+     */
+    private static ScriptedModelManager baseline() {
+        ScriptedModelManager manager = new ScriptedModelManager();
+        manager.time(MODEL, 1, true, 1, 20f);
+        manager.time(MODEL, 1, false, 1, 24f);
+        manager.time(MODEL, 2, true, 1, 12f);
+        manager.time(MODEL, 2, false, 1, 10f);
+        manager.time(MODEL, 4, true, 1, 5f);
+        manager.time(MODEL, 4, false, 1, 6f);
+        return manager;
+    }
+
+    @Test
+    public void fastestThreadsAndXnnpack_winWithinTheCoreCount() {
+        ScriptedModelManager manager = baseline();
+        InferenceProfile profile = new ScriptedAutotuner(manager, 2).tune(MODEL, null);
+
+        assertEquals(2, profile.numThreads);
+        assertFalse(profile.useXnnpack);
+        assertEquals(10f, profile.embeddingMs, 0f);
+        assertEquals("fingerprint-" + MODEL, profile.modelFingerprint);
+        // 4 threads would be faster but exceeds the cores and is never measured
+        assertFalse(manager.benchmarked.contains(ScriptedModelManager.key(MODEL, 4, true, 1)));
+
+        profile = new ScriptedAutotuner(manager, 8).tune(MODEL, null);
+        assertEquals(4, profile.numThreads);
+        assertTrue(profile.useXnnpack);
+    }
+
+    @Test
+    public void failedConfigurations_areSkipped_andNoWorkingOneGivesNoProfile() {
+        ScriptedModelManager manager = baseline();
+        manager.timings.remove(ScriptedModelManager.key(MODEL, 2, false, 1));
+        assertEquals(12f, new ScriptedAutotuner(manager, 2).tune(MODEL, null).embeddingMs, 0f);
+
+        assertNull(new ScriptedAutotuner(new ScriptedModelManager(), 8).tune(MODEL, null));
+    }
+
+    @Test
+    public void batchSize_needsAClearGainPerFace() {
+        ScriptedModelManager manager = baseline();
+        manager.time(MODEL, 2, false, 2, 9.5f);   // only 5% cheaper than batch 1
+        manager.time(MODEL, 2, false, 4, 8f);     // 20% cheaper
+        manager.time(MODEL, 2, false, 8, 7.5f);   // only 6% cheaper than batch 4
+        assertEquals(4, new ScriptedAutotuner(manager, 2).tune(MODEL, null).batchSize);
+
+        // Batches are measured with the winning threads and XNNPACK setting only
+        assertFalse(manager.benchmarked.contains(ScriptedModelManager.key(MODEL, 1, true, 4)));
+
+        ScriptedModelManager noGain = baseline();
+        noGain.time(MODEL, 2, false, 4, 9.5f);
+        assertEquals(1, new ScriptedAutotuner(noGain, 2).tune(MODEL, null).batchSize);
+    }
+
+    @Test
+    public void quantizedModel_isPreferredOnlyWhenBundledAndClearlyFaster() {
+        ScriptedModelManager manager = baseline();
+        manager.time(QUANTIZED, 2, false, 1, 8f);
+        assertFalse(new ScriptedAutotuner(manager, 2).tune(MODEL, null).preferQuantized);
+        assertTrue(manager.unloaded.isEmpty());
+
+        manager.quantizedBundled = true;
+        assertTrue(new ScriptedAutotuner(manager, 2).tune(MODEL, null).preferQuantized);
+        assertEquals(Collections.singletonList(QUANTIZED), manager.unloaded);
+
+        // 10% faster is within the noise margin
+        manager.time(QUANTIZED, 2, false, 1, 9f);
+        assertFalse(new ScriptedAutotuner(manager, 2).tune(MODEL, null).preferQuantized);
+    }
+
+    @Test
+    public void resolution_isTheLargestThatFitsTheFrameBudget() {
+        ScriptedModelManager manager = baseline();
+        IdleDetector detector = new IdleDetector();
+        ScriptedAutotuner autotuner = new ScriptedAutotuner(manager, 2);
+        // With 10 ms per embedding, 640x480 detection overruns the 66 ms budget
+        autotuner.detectionMs.put(640, 60f);
+        autotuner.detectionMs.put(480, 50f);
+        autotuner.detectionMs.put(320, 20f);
+
+        InferenceProfile profile = autotuner.tune(MODEL, detector);
+        assertEquals(480, profile.analysisWidth);
+        assertEquals(360, profile.analysisHeight);
+        assertEquals(50f, profile.detectionMs, 0f);
+        assertEquals(1, detector.closed);
+    }
+
+    @Test
+    public void resolution_fallsBackToTheSmallestMeasuredOrTheDefault() {
+        ScriptedModelManager manager = baseline();
+        ScriptedAutotuner autotuner = new ScriptedAutotuner(manager, 2);
+        autotuner.detectionMs.put(640, 200f);
+        autotuner.detectionMs.put(480, 120f);
+        // 320x240 fails to run; the smallest one measured is still used
+        InferenceProfile profile = autotuner.tune(MODEL, new IdleDetector());
+        assertEquals(480, profile.analysisWidth);
+        assertEquals(120f, profile.detectionMs, 0f);
+
+        autotuner.detectionMs.clear();
+        profile = autotuner.tune(MODEL, new IdleDetector());
+        assertEquals(ModelConfig.Autotune.DEFAULT_ANALYSIS_WIDTH, profile.analysisWidth);
+        assertEquals(ModelConfig.Autotune.DEFAULT_ANALYSIS_HEIGHT, profile.analysisHeight);
+        assertEquals(-1f, profile.detectionMs, 0f);
+
+        profile = autotuner.tune(MODEL, null);
+        assertEquals(ModelConfig.Autotune.DEFAULT_ANALYSIS_WIDTH, profile.analysisWidth);
+    }
+}
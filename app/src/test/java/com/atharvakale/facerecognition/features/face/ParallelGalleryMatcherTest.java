@@ -0,0 +1,272 @@
+package com.atharvakale.facerecognition.features.face;
+
+import com.atharvakale.facerecognition.ml.TFLiteProcessor;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Parallel exact matching must agree with the original single-threaded map scan,
+ * and should scale with the number of cores on large galleries
+ */
+public class ParallelGalleryMatcherTest {
+    private static final int DIMENSION = 192;
+
+    @Test
+    public void parallelScan_matchesSequentialScanExactly() {
+        FaceGallery gallery = randomGallery(20000, 42L, true);
+        ParallelGalleryMatcher matcher = new ParallelGalleryMatcher(4, 16 * 1024, 0);
+        Random random = new Random(7L);
+        try {
+            for (int q = 0; q < 50; q++) {
+                float[] query = q % 5 == 0 ? row(gallery, random.nextInt(gallery.size())) : randomVector(random);
+                NearestMatches parallel = matcher.findNearest(gallery, query, 2);
+                int[] legacy = legacyTopTwo(gallery, query);
+
+                assertEquals(legacy[0], parallel.getRow(0));
+                assertEquals(legacy[1], parallel.getRow(1));
+                assertEquals(TFLiteProcessor.calculateEuclideanDistance(query, row(gallery, legacy[0])),
+                    parallel.getDistance(0), 0f);
+            }
+        } finally {
+            matcher.shutdown();
+        }
+    }
+
+    @Test
+    public void topK_isSortedByDistanceThenRow() {
+        FaceGallery gallery = randomGallery(5000, 3L, true);
+        ParallelGalleryMatcher matcher = new ParallelGalleryMatcher(3, 8 * 1024, 0);
+        try {
+            float[] query = randomVector(new Random(11L));
+            NearestMatches parallel = matcher.findNearest(gallery, query, 10);
+            NearestMatches sequential = ParallelGalleryMatcher.scanSequential(gallery, query, 10);
+            assertEquals(10, parallel.size());
+            for (int rank = 0; rank < 10; rank++) {
+                assertEquals(sequential.getRow(rank), parallel.getRow(rank));
+                if (rank > 0) {
+                    assertTrue(parallel.getDistance(rank - 1) <= parallel.getDistance(rank));
+                }
+            }
+        } finally {
+            matcher.shutdown();
+        }
+    }
+
+    @Test
+    public void smallGallery_fallsBackToSequentialPath() {
+        FaceGallery gallery = randomGallery(10, 5L, false);
+        ParallelGalleryMatcher matcher = new ParallelGalleryMatcher(4, 1024, 8192);
+        try {
+            float[] query = row(gallery, 3);
+            NearestMatches matches = matcher.findNearest(gallery, query, 2);
+            assertEquals(3, matches.getRow(0));
+            assertEquals(0f, matches.getDistance(0), 0f);
+        } finally {
+            matcher.shutdown();
+        }
+    }
+
+    @Test
+    public void benchmark_scalingAcrossCores() {
+        FaceGallery gallery = randomGallery(100000, 99L, false);
+        Random random = new Random(1L);
+        float[][] queries = new float[20][];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = randomVector(random);
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        double baseline = 0;
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            ParallelGalleryMatcher matcher = new ParallelGalleryMatcher(threads, 128 * 1024, 0);
+            try {
+                for (float[] query : queries) {
+                    matcher.findNearest(gallery, query, 2); // warm-up
+                }
+                NearestMatches[] results = new NearestMatches[queries.length];
+                long start = System.nanoTime();
+                for (int i = 0; i < queries.length; i++) {
+                    results[i] = matcher.findNearest(gallery, queries[i], 2);
+                }
+                double msPerQuery = (System.nanoTime() - start) / 1e6 / queries.length;
+                if (threads == 1) {
+                    baseline = msPerQuery;
+                } else {
+                    // Splitting a 100k-row scan across cores must pay for its hand-off
+                    assertTrue(msPerQuery < baseline);
+                }
+                for (int i = 0; i < queries.length; i++) {
+                    assertEquals(ParallelGalleryMatcher.scanSequential(gallery, queries[i], 2).getRow(0),
+                        results[i].getRow(0));
+                }
+            } finally {
+                matcher.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void earlyAbandon_matchesFullScanExactly() {
+        FaceGallery gallery = skewedGallery(20000, 8L);
+        Random random = new Random(9L);
+        for (int threads : new int[]{1, 4}) {
+            ParallelGalleryMatcher matcher = new ParallelGalleryMatcher(threads, 16 * 1024, 0);
+            matcher.setEarlyAbandon(16);
+            try {
+                for (int q = 0; q < 60; q++) {
+                    float[] query = q % 3 == 0 ? row(gallery, random.nextInt(gallery.size())) : skewedVector(random);
+                    int k = q % 2 == 0 ? 2 : 10;
+                    NearestMatches expected = ParallelGalleryMatcher.scanSequential(gallery, query, k);
+                    NearestMatches actual = matcher.findNearest(gallery, query, k);
+                    assertEquals(expected.size(), actual.size());
+                    for (int rank = 0; rank < k; rank++) {
+                        assertEquals(expected.getRow(rank), actual.getRow(rank));
+                        assertEquals(expected.getDistance(rank), actual.getDistance(rank), 0f);
+                    }
+                }
+                assertTrue(matcher.getAverageDimensionsEvaluated() < DIMENSION);
+            } finally {
+                matcher.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void earlyAbandon_ordersDimensionsByVariance() {
+        FaceGallery gallery = skewedGallery(2000, 10L);
+        int[] order = gallery.getEarlyAbandonIndex(16).getOrder();
+        assertEquals(DIMENSION, order.length);
+        // skewedVector scales dimension d by 0.97^(d * 37 % DIMENSION); neighbours differ by sampling noise
+        for (int i = 0; i < 16; i++) {
+            assertTrue(order[i] * 37 % DIMENSION < 32);
+            assertTrue(order[DIMENSION - 1 - i] * 37 % DIMENSION >= DIMENSION - 32);
+        }
+        assertSame(gallery.getEarlyAbandonIndex(16), gallery.getEarlyAbandonIndex(16));
+    }
+
+    @Test
+    public void benchmark_earlyAbandonDimensionsEvaluated() {
+        Random random = new Random(12L);
+        for (int size : new int[]{1000, 10000, 100000}) {
+            FaceGallery gallery = skewedGallery(size, 11L);
+            float[][] queries = new float[50][];
+            for (int i = 0; i < queries.length; i++) {
+                // Half the queries are noisy copies of enrolled faces, half strangers
+                queries[i] = i % 2 == 0 ? skewedVector(random) : perturb(row(gallery, random.nextInt(size)), random);
+            }
+            ParallelGalleryMatcher matcher = new ParallelGalleryMatcher(1, 128 * 1024, 0);
+            matcher.setEarlyAbandon(16);
+            try {
+                matcher.prepare(gallery);
+                for (float[] query : queries) {
+                    matcher.findNearest(gallery, query, 2); // warm-up
+                }
+                long start = System.nanoTime();
+                for (float[] query : queries) {
+                    matcher.findNearest(gallery, query, 2);
+                }
+                double abandonMs = (System.nanoTime() - start) / 1e6 / queries.length;
+                for (float[] query : queries) {
+                    ParallelGalleryMatcher.scanSequential(gallery, query, 2);
+                }
+                start = System.nanoTime();
+                for (float[] query : queries) {
+                    ParallelGalleryMatcher.scanSequential(gallery, query, 2);
+                }
+                double fullMs = (System.nanoTime() - start) / 1e6 / queries.length;
+                // Most rows are abandoned within the first blocks of high-variance dimensions
+                assertTrue(matcher.getAverageDimensionsEvaluated() < DIMENSION / 4);
+                assertTrue(abandonMs < fullMs);
+            } finally {
+                matcher.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Gallery whose dimensions have very different spreads, like real embeddings
+     */
+    private static FaceGallery skewedGallery(int size, long seed) {
+        Random random = new Random(seed);
+        String[] names = new String[size];
+        float[] vectors = new float[size * DIMENSION];
+        for (int row = 0; row < size; row++) {
+            names[row] = "person" + row;
+            System.arraycopy(skewedVector(random), 0, vectors, row * DIMENSION, DIMENSION);
+        }
+        return new FaceGallery(names, vectors, DIMENSION);
+    }
+
+    private static float[] skewedVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) (random.nextGaussian() * Math.pow(0.97, i * 37 % DIMENSION));
+        }
+        return vector;
+    }
+
+    private static float[] perturb(float[] vector, Random random) {
+        float[] noisy = vector.clone();
+        for (int i = 0; i < noisy.length; i++) {
+            noisy[i] += (float) random.nextGaussian() * 0.05f;
+        }
+        return noisy;
+    }
+
+    /**
+     * Reference implementation of the original findNearest loop over map entries
+     */
+    private static int[] legacyTopTwo(FaceGallery gallery, float[] query) {
+        int closest = -1;
+        int second = -1;
+        float closestDistance = 0;
+        float secondDistance = 0;
+        for (int row = 0; row < gallery.size(); row++) {
+            float distance = TFLiteProcessor.calculateEuclideanDistance(query, row(gallery, row));
+            if (closest == -1 || distance < closestDistance) {
+                second = closest;
+                secondDistance = closestDistance;
+                closest = row;
+                closestDistance = distance;
+            } else if (second == -1 || distance < secondDistance) {
+                second = row;
+                secondDistance = distance;
+            }
+        }
+        return new int[]{closest, second};
+    }
+
+    private static FaceGallery randomGallery(int size, long seed, boolean withDuplicates) {
+        Random random = new Random(seed);
+        String[] names = new String[size];
+        float[] vectors = new float[size * DIMENSION];
+        for (int row = 0; row < size; row++) {
+            names[row] = "person" + row;
+            if (withDuplicates && row > 0 && row % 97 == 0) {
+                System.arraycopy(vectors, (row - 1) * DIMENSION, vectors, row * DIMENSION, DIMENSION);
+            } else {
+                float[] vector = randomVector(random);
+                System.arraycopy(vector, 0, vectors, row * DIMENSION, DIMENSION);
+            }
+        }
+        return new FaceGallery(names, vectors, DIMENSION);
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian() * 0.1f;
+        }
+        return vector;
+    }
+
+    private static float[] row(FaceGallery gallery, int row) {
+        float[] vector = new float[DIMENSION];
+        System.arraycopy(gallery.getVectors(), row * DIMENSION, vector, 0, DIMENSION);
+        return vector;
+    }
+}
@@ -0,0 +1,219 @@
+package com.atharvakale.facerecognition.features.face;
+
+import com.atharvakale.facerecognition.SimilarityClassifier;
+import com.atharvakale.facerecognition.data.GalleryChunkReader;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Streaming the stored gallery JSON in growing chunks, as written by PreferencesRepository
+ */
+public class ProgressiveGalleryLoaderTest {
+    private static final int DIMENSION = 192;
+
+    private static class RecordingSink implements ProgressiveGalleryLoader.Sink {
+        final Map<String, SimilarityClassifier.Recognition> faces = Collections.synchronizedMap(new LinkedHashMap<>());
+        final List<Integer> chunkSizes = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch finished = new CountDownLatch(1);
+        volatile boolean complete;
+
+        @Override
+        public void onChunk(Map<String, SimilarityClassifier.Recognition> chunk) {
+            chunkSizes.add(chunk.size());
+            faces.putAll(chunk);
+        }
+
+        @Override
+        public void onFinished(boolean complete) {
+            this.complete = complete;
+            finished.countDown();
+        }
+    }
+
+    @Test
+    public void chunks_matchTheWholeGalleryParse() throws Exception {
+        Map<String, SimilarityClassifier.Recognition> stored = randomGallery(1000, 1L);
+        String json = new Gson().toJson(stored);
+
+        GalleryChunkReader reader = new GalleryChunkReader(new StringReader(json), json.length(), DIMENSION);
+        Map<String, SimilarityClassifier.Recognition> read = new LinkedHashMap<>();
+        float progress = 0f;
+        for (Map<String, SimilarityClassifier.Recognition> chunk = reader.next(100); chunk != null; chunk = reader.next(100)) {
+            assertTrue(chunk.size() <= 100);
+            assertTrue(reader.getProgress() >= progress);
+            progress = reader.getProgress();
+            read.putAll(chunk);
+        }
+        assertTrue(reader.isFinished());
+        assertEquals(1f, reader.getProgress(), 0f);
+        assertEquals(1000, reader.getReadCount());
+
+        // Same names in stored order, same floats as the boxed-Double conversion
+        assertEquals(new ArrayList<>(stored.keySet()), new ArrayList<>(read.keySet()));
+        for (Map.Entry<String, SimilarityClassifier.Recognition> entry : stored.entrySet()) {
+            float[] expected = ((float[][]) entry.getValue().getExtra())[0];
+            float[] actual = ((float[][]) read.get(entry.getKey()).getExtra())[0];
+            assertArrayEquals(expected, actual, 0f);
+        }
+    }
+
+    @Test
+    public void reader_toleratesOddEntries() throws Exception {
+        String json = "{\"a\":{\"id\":\"0\",\"title\":\"\",\"distance\":-1.0,\"extra\":[[1.5,2.5]],\"location\":{}},"
+            + "\"b\":{\"id\":\"0\",\"extra\":[[1,2,3,4,5]]},\"c\":null,\"d\":{\"id\":\"0\",\"extra\":[]}}";
+        GalleryChunkReader reader = new GalleryChunkReader(new StringReader(json), json.length(), 4);
+        Map<String, SimilarityClassifier.Recognition> read = reader.next(10);
+        assertNull(reader.next(10));
+
+        assertEquals(3, read.size());
+        assertArrayEquals(new float[]{1.5f, 2.5f, 0f, 0f}, ((float[][]) read.get("a").getExtra())[0], 0f);
+        assertArrayEquals(new float[]{1f, 2f, 3f, 4f}, ((float[][]) read.get("b").getExtra())[0], 0f);
+        assertFalse(read.containsKey("c"));
+        assertNull(read.get("d").getExtra());
+
+        assertNull(new GalleryChunkReader(new StringReader("{}"), 2, 4).next(10));
+    }
+
+    @Test
+    public void loader_growsChunksAndReportsProgress() throws Exception {
+        Map<String, SimilarityClassifier.Recognition> stored = randomGallery(1000, 2L);
+        String json = new Gson().toJson(stored);
+        RecordingSink sink = new RecordingSink();
+        ProgressiveGalleryLoader loader = new ProgressiveGalleryLoader(
+            () -> new GalleryChunkReader(new StringReader(json), json.length(), DIMENSION), 16, 256, sink);
+        assertEquals(-1, loader.getReadyMs());
+        loader.start();
+        assertTrue(sink.finished.await(10, TimeUnit.SECONDS));
+
+        assertTrue(sink.complete);
+        assertTrue(loader.isFinished());
+        assertEquals(java.util.Arrays.asList(16, 32, 64, 128, 256, 256, 248), sink.chunkSizes);
+        assertEquals(stored.keySet(), sink.faces.keySet());
+        assertEquals(1000, loader.getLoadedCount());
+        assertEquals(7, loader.getChunkCount());
+        assertEquals(1f, loader.getProgress(), 0f);
+        assertTrue(loader.getFirstChunkMs() >= 0);
+        assertTrue(loader.getReadyMs() >= loader.getFirstChunkMs());
+    }
+
+    @Test
+    public void cancel_stopsAfterTheCurrentChunk() throws Exception {
+        Map<String, SimilarityClassifier.Recognition> stored = randomGallery(1000, 3L);
+        String json = new Gson().toJson(stored);
+        CountDownLatch firstChunk = new CountDownLatch(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        RecordingSink sink = new RecordingSink() {
+            @Override
+            public void onChunk(Map<String, SimilarityClassifier.Recognition> chunk) {
+                super.onChunk(chunk);
+                firstChunk.countDown();
+                try {
+                    cancelled.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        ProgressiveGalleryLoader loader = new ProgressiveGalleryLoader(
+            () -> new GalleryChunkReader(new StringReader(json), json.length(), DIMENSION), 10, 100, sink);
+        loader.start();
+        assertTrue(firstChunk.await(10, TimeUnit.SECONDS));
+        loader.cancel();
+        cancelled.countDown();
+        assertTrue(sink.finished.await(10, TimeUnit.SECONDS));
+
+        assertFalse(sink.complete);
+        assertEquals(Collections.singletonList(10), sink.chunkSizes);
+        assertEquals(1f, loader.getProgress(), 0f);
+    }
+
+    @Test
+    public void malformedJson_keepsWhatWasLoaded() throws Exception {
+        Map<String, SimilarityClassifier.Recognition> stored = randomGallery(50, 4L);
+        String json = new Gson().toJson(stored);
+        String truncated = json.substring(0, json.length() * 3 / 4);
+        RecordingSink sink = new RecordingSink();
+        new ProgressiveGalleryLoader(() -> new GalleryChunkReader(new StringReader(truncated), truncated.length(),
+            DIMENSION), 8, 8, sink).start();
+        assertTrue(sink.finished.await(10, TimeUnit.SECONDS));
+
+        assertFalse(sink.complete);
+        assertTrue(sink.faces.size() >= 32);
+        assertTrue(sink.faces.size() < 50);
+    }
+
+    @Test
+    public void benchmark_firstMatchableChunkVersusWholeParse() throws Exception {
+        Map<String, SimilarityClassifier.Recognition> stored = randomGallery(20000, 5L);
+        String json = new Gson().toJson(stored);
+        Gson gson = new Gson();
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            Map<String, SimilarityClassifier.Recognition> whole = parseWhole(gson, json);
+            long wholeNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            GalleryChunkReader reader = new GalleryChunkReader(new StringReader(json), json.length(), DIMENSION);
+            Map<String, SimilarityClassifier.Recognition> first = reader.next(256);
+            long firstNanos = System.nanoTime() - start;
+            int count = first.size();
+            for (int size = 512; (first = reader.next(size)) != null; size = Math.min(16384, size * 2)) {
+                count += first.size();
+            }
+            long streamedNanos = System.nanoTime() - start;
+
+            assertEquals(whole.size(), count);
+            // The first chunk is matchable long before a whole parse would be, at a similar total cost
+            assertTrue(firstNanos * 4 < wholeNanos);
+            assertTrue(streamedNanos < wholeNanos * 3);
+        }
+    }
+
+    /**
+     * The original PreferencesRepository.loadAll parse: Gson object mapping, then Double lists to floats
+     */
+    @SuppressWarnings("rawtypes")
+    private static Map<String, SimilarityClassifier.Recognition> parseWhole(Gson gson, String json) {
+        HashMap<String, SimilarityClassifier.Recognition> map = gson.fromJson(json,
+            new TypeToken<HashMap<String, SimilarityClassifier.Recognition>>(){}.getType());
+        for (SimilarityClassifier.Recognition recognition : map.values()) {
+            float[][] output = new float[1][DIMENSION];
+            ArrayList list = (ArrayList) ((ArrayList) recognition.getExtra()).get(0);
+            for (int d = 0; d < list.size() && d < DIMENSION; d++) {
+                output[0][d] = ((Double) list.get(d)).floatValue();
+            }
+            recognition.setExtra(output);
+        }
+        return map;
+    }
+
+    private static Map<String, SimilarityClassifier.Recognition> randomGallery(int size, long seed) {
+        Random random = new Random(seed);
+        Map<String, SimilarityClassifier.Recognition> faces = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            float[][] embedding = new float[1][DIMENSION];
+            for (int d = 0; d < DIMENSION; d++) {
+                embedding[0][d] = (float) random.nextGaussian() * 0.1f;
+            }
+            SimilarityClassifier.Recognition recognition = new SimilarityClassifier.Recognition("0", "", -1f);
+            recognition.setExtra(embedding);
+            faces.put("person" + i, recognition);
+        }
+        return faces;
+    }
+}
@@ -0,0 +1,69 @@
+package com.atharvakale.facerecognition.features.face;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Picking the registration crop: best quality among recent crops, with old and overwritten ones left out
+ */
+public class RegistrationCaptureTest {
+
+    @Test
+    public void takeBest_picksTheHighestQualityCrop() {
+        RegistrationCapture capture = new RegistrationCapture(4, 1000);
+        capture.offer(null, 0.4f, 0);
+        capture.offer(null, 0.9f, 10);
+        capture.offer(null, 0.6f, 20);
+
+        RegistrationCapture.Candidate best = capture.takeBest(30);
+        assertNotNull(best);
+        assertEquals(0.9f, best.getQuality(), 0f);
+        assertEquals(10, best.getTimestampMs());
+    }
+
+    @Test
+    public void takeBest_ignoresCropsPastTheMaxAge() {
+        RegistrationCapture capture = new RegistrationCapture(4, 1000);
+        capture.offer(null, 0.9f, 0);
+        capture.offer(null, 0.5f, 800);
+        capture.offer(null, 0.3f, 1200);
+
+        // The best crop has aged out; the best of the recent ones is used instead
+        RegistrationCapture.Candidate best = capture.takeBest(1500);
+        assertEquals(0.5f, best.getQuality(), 0f);
+
+        capture.offer(null, 0.7f, 0);
+        assertNull(capture.takeBest(5000));
+    }
+
+    @Test
+    public void ring_keepsOnlyTheMostRecentCrops() {
+        RegistrationCapture capture = new RegistrationCapture(3, 1000);
+        capture.offer(null, 0.95f, 0);
+        for (int i = 1; i <= 3; i++) {
+            capture.offer(null, 0.1f * i, i);
+        }
+
+        // The best crop was overwritten by three newer ones
+        assertEquals(0.3f, capture.takeBest(10).getQuality(), 1e-6f);
+    }
+
+    @Test
+    public void takeBest_consumesTheCrops() {
+        RegistrationCapture capture = new RegistrationCapture(4, 1000);
+        capture.offer(null, 0.8f, 0);
+        assertNotNull(capture.takeBest(10));
+        assertNull(capture.takeBest(10));
+
+        capture.offer(null, 0.8f, 20);
+        capture.clear();
+        assertNull(capture.takeBest(30));
+        assertNull(capture.getLatest());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroCapacity_isRefused() {
+        new RegistrationCapture(0, 1000);
+    }
+}
@@ -0,0 +1,180 @@
+package com.atharvakale.facerecognition.features.face;
+
+import com.atharvakale.facerecognition.SimilarityClassifier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tiered gallery: identical distances from both tiers, promotion and eviction by access,
+ * the hot budget, and statistics carried over when the gallery is rebuilt
+ */
+public class TieredGalleryTest {
+    private static final int DIMENSION = 192;
+    private static final int ROWS = 2000;
+    private static final long ROW_BYTES = DIMENSION * 4L;
+
+    private File directory;
+    private File coldFile;
+    private Map<String, SimilarityClassifier.Recognition> faces;
+    private FaceGallery reference;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("tiered-gallery").toFile();
+        coldFile = new File(directory, "cold.bin");
+        faces = randomFaces(ROWS, 5L);
+        reference = FaceGallery.fromRecognitions(faces, DIMENSION);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void coldScan_matchesHeapGalleryExactly() {
+        TieredGallery tiered = create(ROWS * 4L + 100 * ROW_BYTES, null);
+        assertNotNull(tiered);
+        assertEquals(ROWS, tiered.size());
+        assertEquals(0, tiered.getHotSize());
+        assertEquals(ROWS * ROW_BYTES + 16, tiered.getColdBytes());
+
+        ParallelGalleryMatcher matcher = new ParallelGalleryMatcher(4, 16 * 1024, 0);
+        Random random = new Random(9L);
+        try {
+            for (int q = 0; q < 20; q++) {
+                float[] query = randomVector(random);
+                NearestMatches expected = ParallelGalleryMatcher.scanSequential(reference, query, 2);
+                NearestMatches actual = matcher.findNearest(tiered, query, 2);
+                assertEquals(expected.getName(0), actual.getName(0));
+                assertEquals(expected.getDistance(0), actual.getDistance(0), 0f);
+                assertEquals(expected.getName(1), actual.getName(1));
+            }
+        } finally {
+            matcher.shutdown();
+        }
+    }
+
+    @Test
+    public void frequentMatches_arePromotedWithinBudget() {
+        long budget = ROWS * 4L + 10 * ROW_BYTES;
+        TieredGallery tiered = create(budget, null);
+        assertEquals(10, tiered.getHotCapacity());
+
+        for (int i = 0; i < 64; i++) {
+            tiered.recordMatch(i % 16);
+        }
+        assertEquals(10, tiered.getHotSize());
+        assertTrue(tiered.getHotBytes() <= budget);
+        assertEquals(10 * ROW_BYTES, tiered.getHeapBytes());
+        // Equal counts, so the most recently matched rows win
+        assertTrue(tiered.isHot(15));
+        assertFalse(tiered.isHot(0));
+        assertFalse(tiered.isHot(500));
+
+        // Hot rows give the same distances as their cold copies
+        float[] query = randomVector(new Random(1L));
+        for (int row = 0; row < 16; row++) {
+            assertEquals(reference.distance(query, row), tiered.distance(query, row), 0f);
+        }
+    }
+
+    @Test
+    public void shiftedAccess_evictsStaleRows() {
+        TieredGallery tiered = create(ROWS * 4L + 4 * ROW_BYTES, null);
+        for (int i = 0; i < 64; i++) {
+            tiered.recordMatch(i % 4);
+        }
+        assertTrue(tiered.isHot(0));
+
+        for (int i = 0; i < 640; i++) {
+            tiered.recordMatch(100 + i % 4);
+        }
+        assertTrue(tiered.isHot(100));
+        assertFalse(tiered.isHot(0));
+        assertEquals(4, tiered.getHotSize());
+        assertTrue(tiered.getEvictions() >= 4);
+        assertTrue(tiered.getPromotions() >= 8);
+        assertTrue(tiered.getHotMatches() > 0 && tiered.getColdMatches() > 0);
+    }
+
+    @Test
+    public void rebuild_carriesStatisticsByName() {
+        TieredGallery first = create(ROWS * 4L + 8 * ROW_BYTES, null);
+        String favourite = first.getName(7);
+        for (int i = 0; i < 64; i++) {
+            first.recordMatch(7);
+        }
+        assertTrue(first.isHot(7));
+
+        faces.remove(first.getName(0));
+        TieredGallery second = create(ROWS * 4L + 8 * ROW_BYTES, first);
+        assertEquals(ROWS - 1, second.size());
+        int row = indexOf(second, favourite);
+        assertTrue(second.isHot(row));
+
+        // The older mapping stays readable after the file was replaced
+        float[] query = randomVector(new Random(2L));
+        assertEquals(reference.distance(query, 7), first.distance(query, 7), 0f);
+    }
+
+    @Test
+    public void open_rejectsMismatchedFile() {
+        assertNotNull(create(1024 * 1024, null));
+        String[] names = new String[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            names[i] = reference.getName(i);
+        }
+        assertNotNull(TieredGallery.open(coldFile, names, DIMENSION, 1024, 64, 0.999f));
+        assertNull(TieredGallery.open(coldFile, names, 128, 1024, 64, 0.999f));
+        assertNull(TieredGallery.open(coldFile, new String[ROWS - 1], DIMENSION, 1024, 64, 0.999f));
+    }
+
+    private TieredGallery create(long budget, FaceGallery previous) {
+        return TieredGallery.create(faces, DIMENSION, coldFile, budget, 64, 0.99f, previous);
+    }
+
+    private static int indexOf(FaceGallery gallery, String name) {
+        for (int row = 0; row < gallery.size(); row++) {
+            if (gallery.getName(row).equals(name)) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    private static Map<String, SimilarityClassifier.Recognition> randomFaces(int count, long seed) {
+        Random random = new Random(seed);
+        Map<String, SimilarityClassifier.Recognition> faces = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            SimilarityClassifier.Recognition recognition = new SimilarityClassifier.Recognition("0", "", -1f);
+            recognition.setExtra(new float[][]{randomVector(random)});
+            faces.put("person" + i, recognition);
+        }
+        return faces;
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
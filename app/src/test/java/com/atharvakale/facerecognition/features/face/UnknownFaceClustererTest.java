@@ -0,0 +1,164 @@
+package com.atharvakale.facerecognition.features.face;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unknown-face clustering: recurring strangers rise to the top, repeated observations of one
+ * track count once, old clusters age out and the per-embedding cost stays well below the
+ * cluster count
+ */
+public class UnknownFaceClustererTest {
+    private static final int DIMENSION = 192;
+    private static final float RADIUS = 0.65f;
+    private static final long HOUR_MS = 60 * 60 * 1000L;
+
+    private UnknownFaceClusterer clusterer;
+    private Random random;
+
+    @Before
+    public void setUp() {
+        clusterer = new UnknownFaceClusterer(DIMENSION, 256, RADIUS, 2, 20, 6 * HOUR_MS, 1L);
+        random = new Random(17L);
+    }
+
+    @Test
+    public void recurringVisitors_rankAboveOneOffStrangers() {
+        float[][] regulars = new float[5][];
+        for (int i = 0; i < regulars.length; i++) {
+            regulars[i] = randomUnit(random);
+        }
+        long track = 0;
+        long now = 0;
+        for (int visit = 0; visit < 4; visit++) {
+            for (int i = 0; i < regulars.length; i++) {
+                // Visitor i comes on the first i + 1 visits: 1, 2, 3, 4 and 4 sightings
+                if (visit <= i) {
+                    clusterer.observe(perturb(regulars[i], 0.015f), null, 0.8f, ++track, now += 1000);
+                }
+            }
+            for (int s = 0; s < 40; s++) {
+                clusterer.observe(randomUnit(random), null, 0.8f, ++track, now += 1000);
+            }
+        }
+
+        List<UnknownFaceClusterer.RecurringUnknown> top = clusterer.getTopRecurring(10, 2, now);
+        assertEquals(4, top.size());
+        assertEquals(4, top.get(0).sightings);
+        assertEquals(4, top.get(1).sightings);
+        assertEquals(3, top.get(2).sightings);
+        assertEquals(2, top.get(3).sightings);
+        assertTrue(clusterer.getClusterCount() >= 160);
+    }
+
+    @Test
+    public void sameTrack_countsAsOneSighting() {
+        float[] face = randomUnit(random);
+        int id = clusterer.observe(perturb(face, 0.01f), null, 0.5f, 7L, 0);
+        for (int i = 1; i < 10; i++) {
+            assertEquals(id, clusterer.observe(perturb(face, 0.01f), null, 0.5f, 7L, i * 100));
+        }
+        UnknownFaceClusterer.RecurringUnknown unknown = clusterer.get(id);
+        assertEquals(1, unknown.sightings);
+        assertEquals(10, unknown.observations);
+        assertNull(unknown.getBestExemplar());
+
+        clusterer.observe(perturb(face, 0.01f), null, 0.5f, 8L, 2000);
+        assertEquals(2, clusterer.get(id).sightings);
+    }
+
+    @Test
+    public void centroid_tracksTheMean() {
+        float[] face = randomUnit(random);
+        int id = 0;
+        for (int i = 0; i < 20; i++) {
+            id = clusterer.observe(perturb(face, 0.02f), null, 0.5f, i, i);
+        }
+        assertTrue(distance(clusterer.getCentroid(id), face) < 0.15f);
+    }
+
+    @Test
+    public void oldClusters_ageOut() {
+        int old = clusterer.observe(randomUnit(random), null, 0.5f, 1L, 0);
+        int recent = clusterer.observe(randomUnit(random), null, 0.5f, 2L, 5 * HOUR_MS);
+        clusterer.observe(randomUnit(random), null, 0.5f, 3L, 7 * HOUR_MS);
+
+        assertNull(clusterer.get(old));
+        assertNotNull(clusterer.get(recent));
+        assertEquals(1, clusterer.getExpiredCount());
+    }
+
+    @Test
+    public void capacity_evictsLeastRecentlySeen() {
+        UnknownFaceClusterer small = new UnknownFaceClusterer(DIMENSION, 8, RADIUS, 1, 20, HOUR_MS, 1L);
+        float[] regular = randomUnit(random);
+        int regularId = small.observe(regular, null, 0.5f, 0L, 0);
+        for (int i = 1; i <= 50; i++) {
+            small.observe(randomUnit(random), null, 0.5f, i, i);
+            if (i % 4 == 0) {
+                small.observe(perturb(regular, 0.01f), null, 0.5f, 1000 + i, i);
+            }
+        }
+        assertEquals(8, small.getClusterCount());
+        assertNotNull(small.get(regularId));
+        assertTrue(small.getEvictedCount() > 0);
+    }
+
+    @Test
+    public void costPerEmbedding_isSublinearInClusterCount() {
+        UnknownFaceClusterer large = new UnknownFaceClusterer(DIMENSION, 4096, RADIUS, 0, 20, HOUR_MS * 24, 1L);
+        Set<Integer> ids = new HashSet<>();
+        float[][] people = new float[3000][];
+        for (int i = 0; i < people.length; i++) {
+            people[i] = randomUnit(random);
+            ids.add(large.observe(people[i], null, 0.5f, i, i));
+        }
+        // Returning faces still find their cluster through the probed buckets
+        int found = 0;
+        for (int i = 0; i < 300; i++) {
+            if (ids.contains(large.observe(perturb(people[i], 0.02f), null, 0.5f, 10000 + i, 5000 + i))) {
+                found++;
+            }
+        }
+        assertTrue("found " + found, found >= 280);
+        assertTrue(large.getAverageComparisons() < people.length / 20f);
+    }
+
+    private float[] perturb(float[] vector, float noise) {
+        float[] result = vector.clone();
+        for (int i = 0; i < result.length; i++) {
+            result[i] += (float) random.nextGaussian() * noise;
+        }
+        return result;
+    }
+
+    private static float[] randomUnit(Random random) {
+        float[] vector = new float[DIMENSION];
+        float norm = 0f;
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        norm = (float) Math.sqrt(norm);
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] /= norm;
+        }
+        return vector;
+    }
+
+    private static float distance(float[] a, float[] b) {
+        float sum = 0f;
+        for (int i = 0; i < a.length; i++) {
+            float diff = a[i] - b[i];
+            sum += diff * diff;
+        }
+        return (float) Math.sqrt(sum);
+    }
+}
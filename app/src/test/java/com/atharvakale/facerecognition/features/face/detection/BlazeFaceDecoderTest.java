@@ -0,0 +1,159 @@
+package com.atharvakale.facerecognition.features.face.detection;
+
+import com.atharvakale.facerecognition.ml.ModelConfig;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * BlazeFace post-processing: anchor layout, box decoding and weighted NMS,
+ * plus a decode timing so detector cost can be compared off-device
+ */
+public class BlazeFaceDecoderTest {
+    private static final int COORDS = ModelConfig.FaceDetection.NUM_COORDS;
+    private static final float FRAME_WIDTH = 640f;
+    private static final float FRAME_HEIGHT = 480f;
+
+    private BlazeFaceDecoder decoder;
+    private float[] regressors;
+    private float[] scores;
+
+    @Before
+    public void setUp() {
+        decoder = new BlazeFaceDecoder(
+            ModelConfig.FaceDetection.INPUT_SIZE,
+            ModelConfig.FaceDetection.ANCHOR_STRIDES,
+            ModelConfig.FaceDetection.ANCHORS_PER_LAYER,
+            COORDS,
+            ModelConfig.FaceDetection.BOX_SCALE,
+            ModelConfig.FaceDetection.SCORE_CLIP,
+            ModelConfig.FaceDetection.SCORE_THRESHOLD,
+            ModelConfig.FaceDetection.NMS_IOU_THRESHOLD,
+            ModelConfig.FaceDetection.MAX_FACES);
+        regressors = new float[decoder.getAnchorCount() * COORDS];
+        scores = new float[decoder.getAnchorCount()];
+        Arrays.fill(scores, -10f);
+    }
+
+    @Test
+    public void anchors_matchShortRangeModelLayout() {
+        assertEquals(ModelConfig.FaceDetection.NUM_ANCHORS, decoder.getAnchorCount());
+
+        float[] anchors = BlazeFaceDecoder.generateAnchors(128, new int[]{8, 16, 16, 16}, 2);
+        // 16x16 cells with 2 anchors, then 8x8 cells with the 6 anchors of the three stride-16 layers
+        assertEquals(0.5f / 16, anchors[0], 1e-6f);
+        assertEquals(anchors[0], anchors[2], 0f);
+        assertEquals(1.5f / 16, anchors[4], 1e-6f);
+        int firstCoarse = 16 * 16 * 2;
+        assertEquals(0.5f / 8, anchors[2 * firstCoarse], 1e-6f);
+        assertEquals(0.5f / 8, anchors[2 * (firstCoarse + 5)], 1e-6f);
+        assertEquals(1.5f / 8, anchors[2 * (firstCoarse + 6)], 1e-6f);
+    }
+
+    @Test
+    public void decode_scalesBoxAndKeypointsToFrame() {
+        // Fine-grid cell (8, 8) is centered at 0.53125 of the input
+        int anchor = (8 * 16 + 8) * 2;
+        setDetection(anchor, 0f, 0f, 32f, 32f, 5f);
+        regressors[anchor * COORDS + 4] = -8f;   // right eye 1/16 left of center
+        regressors[anchor * COORDS + 5] = -8f;
+        regressors[anchor * COORDS + 6] = 8f;    // left eye 1/16 right of center, same height
+        regressors[anchor * COORDS + 7] = -8f;
+
+        List<DetectedFace> faces = decoder.decode(regressors, scores, FRAME_WIDTH, FRAME_HEIGHT);
+
+        assertEquals(1, faces.size());
+        DetectedFace face = faces.get(0);
+        float center = 8.5f / 16;
+        assertEquals((center - 0.125f) * FRAME_WIDTH, face.left, 1e-3f);
+        assertEquals((center + 0.125f) * FRAME_WIDTH, face.right, 1e-3f);
+        assertEquals((center - 0.125f) * FRAME_HEIGHT, face.top, 1e-3f);
+        assertEquals((center + 0.125f) * FRAME_HEIGHT, face.bottom, 1e-3f);
+        assertEquals(1f / (1f + (float) Math.exp(-5f)), face.score, 1e-5f);
+        assertEquals((center - 1f / 16) * FRAME_WIDTH, face.getLandmarkX(DetectedFace.RIGHT_EYE), 1e-3f);
+        assertEquals((center + 1f / 16) * FRAME_WIDTH, face.getLandmarkX(DetectedFace.LEFT_EYE), 1e-3f);
+        assertEquals(0f, face.roll, 1e-3f);
+        assertTrue(Float.isNaN(face.yaw));
+    }
+
+    @Test
+    public void lowScores_areDropped() {
+        setDetection(10, 0f, 0f, 32f, 32f, -1f);
+        assertTrue(decoder.decode(regressors, scores, FRAME_WIDTH, FRAME_HEIGHT).isEmpty());
+    }
+
+    @Test
+    public void weightedNms_mergesOverlapsAndKeepsSeparateFaces() {
+        int anchor = (8 * 16 + 8) * 2;
+        setDetection(anchor, 0f, 0f, 32f, 32f, 3f);
+        setDetection(anchor + 1, 4f, 0f, 32f, 32f, 1f);
+        setDetection(anchor + 2, 0f, 0f, 32f, 32f, 2f);
+        setDetection(2, 0f, 0f, 16f, 16f, 4f);   // far corner, no overlap
+
+        List<DetectedFace> faces = decoder.decode(regressors, scores, FRAME_WIDTH, FRAME_HEIGHT);
+
+        assertEquals(2, faces.size());
+        assertTrue(faces.get(0).score > faces.get(1).score);
+        DetectedFace merged = faces.get(1);
+        float weight0 = sigmoid(3f);
+        float weight1 = sigmoid(1f);
+        float weight2 = sigmoid(2f);
+        float center0 = 8.5f / 16;
+        float center2 = 9.5f / 16;
+        float expectedCenter = (center0 * weight0 + (center0 + 4f / 128) * weight1 + center2 * weight2)
+            / (weight0 + weight1 + weight2);
+        assertEquals(expectedCenter * FRAME_WIDTH, (merged.left + merged.right) / 2f, 1e-2f);
+        assertEquals(weight0, merged.score, 1e-5f);
+    }
+
+    @Test
+    public void iou_ofDisjointAndIdenticalBoxes() {
+        assertEquals(0f, DetectedFace.iou(0, 0, 10, 10, 20, 20, 30, 30), 0f);
+        assertEquals(1f, DetectedFace.iou(0, 0, 10, 10, 0, 0, 10, 10), 1e-6f);
+        assertEquals(1f / 3f, DetectedFace.iou(0, 0, 10, 10, 5, 0, 15, 10), 1e-6f);
+    }
+
+    @Test
+    public void benchmark_decode() {
+        Random random = new Random(1L);
+        for (int i = 0; i < regressors.length; i++) {
+            regressors[i] = random.nextFloat() * 20f - 10f;
+        }
+        for (int i = 0; i < scores.length; i++) {
+            // A handful of confident anchors around a few faces, the rest background
+            scores[i] = i % 97 == 0 ? 2f + random.nextFloat() : -6f + random.nextFloat();
+        }
+        int iterations = 2000;
+        for (int i = 0; i < iterations / 4; i++) {
+            decoder.decode(regressors, scores, FRAME_WIDTH, FRAME_HEIGHT);
+        }
+        long start = System.nanoTime();
+        int faces = 0;
+        for (int i = 0; i < iterations; i++) {
+            faces += decoder.decode(regressors, scores, FRAME_WIDTH, FRAME_HEIGHT).size();
+        }
+        double microsPerFrame = (System.nanoTime() - start) / 1000.0 / iterations;
+        assertTrue(faces > 0);
+        // Decoding must stay a small slice of the per-frame detection budget
+        assertTrue("decode took " + microsPerFrame + " us/frame", microsPerFrame < 1000);
+    }
+
+    private void setDetection(int anchor, float dx, float dy, float width, float height, float logit) {
+        int base = anchor * COORDS;
+        regressors[base] = dx;
+        regressors[base + 1] = dy;
+        regressors[base + 2] = width;
+        regressors[base + 3] = height;
+        scores[anchor] = logit;
+    }
+
+    private static float sigmoid(float x) {
+        return 1f / (1f + (float) Math.exp(-x));
+    }
+}
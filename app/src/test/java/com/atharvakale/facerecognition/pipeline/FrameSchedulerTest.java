@@ -0,0 +1,206 @@
+package com.atharvakale.facerecognition.pipeline;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Fair sharing of workers between streams and per-stream drop policies
+ */
+public class FrameSchedulerTest {
+
+    /**
+     * Records processed frames and simulates a fixed processing cost
+     */
+    private static class RecordingHandler implements FrameScheduler.FrameHandler<Integer> {
+        final List<int[]> processed = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger discarded = new AtomicInteger();
+        final long workMillis;
+
+        RecordingHandler(long workMillis) {
+            this.workMillis = workMillis;
+        }
+
+        @Override
+        public void process(int streamId, Integer frame) {
+            processed.add(new int[] {streamId, frame});
+            sleep(workMillis);
+        }
+
+        @Override
+        public void discard(int streamId, Integer frame) {
+            discarded.incrementAndGet();
+        }
+    }
+
+    /**
+     * Blocks the worker on negative frames until released; those frames are not recorded
+     */
+    private static class GatedHandler extends RecordingHandler {
+        private final CountDownLatch release;
+
+        GatedHandler(CountDownLatch release) {
+            super(0);
+            this.release = release;
+        }
+
+        @Override
+        public void process(int streamId, Integer frame) {
+            if (frame < 0) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            } else {
+                super.process(streamId, frame);
+            }
+        }
+    }
+
+    @Test
+    public void weightedRoundRobin_givesEachBacklogItsShare() throws Exception {
+        RecordingHandler handler = new RecordingHandler(1);
+        FrameScheduler<Integer> scheduler = new FrameScheduler<>(1, handler);
+        scheduler.addStream(0, 1, 1000, 1, DropPolicy.BLOCK);
+        scheduler.addStream(1, 3, 1000, 1, DropPolicy.BLOCK);
+        for (int i = 0; i < 200; i++) {
+            scheduler.submit(0, i);
+            scheduler.submit(1, i);
+        }
+        scheduler.start();
+        waitFor(() -> handler.processed.size() >= 120);
+        scheduler.shutdown();
+
+        int first = 0;
+        int second = 0;
+        synchronized (handler.processed) {
+            for (int[] frame : handler.processed.subList(0, 120)) {
+                if (frame[0] == 0) {
+                    first++;
+                } else {
+                    second++;
+                }
+            }
+        }
+        assertEquals(30, first);
+        assertEquals(90, second);
+    }
+
+    @Test
+    public void dropOldest_keepsNewestFrameAndDiscardsTheRest() {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingHandler handler = new GatedHandler(release);
+        FrameScheduler<Integer> scheduler = new FrameScheduler<>(1, handler);
+        scheduler.addStream(0, 1, 1, 1, DropPolicy.DROP_OLDEST);
+        scheduler.addStream(1, 1, 1, 1, DropPolicy.DROP_OLDEST);
+        scheduler.start();
+
+        // A gate frame on another stream occupies the only worker while frames pile up
+        scheduler.submit(1, -1);
+        waitFor(() -> scheduler.getStats(1).queued == 0);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(scheduler.submit(0, i));
+        }
+        release.countDown();
+        waitFor(() -> scheduler.getStats(0).processed == 1);
+        scheduler.shutdown();
+
+        FrameScheduler.StreamStats stats = scheduler.getStats(0);
+        assertEquals(10, stats.submitted);
+        assertEquals(9, stats.dropped);
+        assertEquals(9, handler.discarded.get());
+        assertEquals(9, handler.processed.get(0)[1]);
+    }
+
+    @Test
+    public void dropNewest_rejectsIncomingWhenFull() {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingHandler handler = new GatedHandler(release);
+        FrameScheduler<Integer> scheduler = new FrameScheduler<>(1, handler);
+        scheduler.addStream(0, 1, 2, 1, DropPolicy.DROP_NEWEST);
+        scheduler.addStream(1, 1, 1, 1, DropPolicy.DROP_NEWEST);
+        scheduler.start();
+
+        scheduler.submit(1, -1);
+        waitFor(() -> scheduler.getStats(1).queued == 0);
+        assertTrue(scheduler.submit(0, 1));
+        assertTrue(scheduler.submit(0, 2));
+        assertFalse(scheduler.submit(0, 3));
+        release.countDown();
+        waitFor(() -> scheduler.getStats(0).processed == 2);
+        scheduler.shutdown();
+
+        assertEquals(1, scheduler.getStats(0).dropped);
+        assertEquals(1, handler.discarded.get());
+        assertEquals(1, handler.processed.get(0)[1]);
+        assertEquals(2, handler.processed.get(1)[1]);
+    }
+
+    @Test
+    public void workerPool_processesStreamsInParallelAndKeepsPerStreamOrder() throws Exception {
+        int streams = 4;
+        int frames = 50;
+        AtomicLong outOfOrder = new AtomicLong();
+        int[] last = new int[streams];
+        Arrays.fill(last, -1);
+        RecordingHandler handler = new RecordingHandler(2) {
+            @Override
+            public void process(int streamId, Integer frame) {
+                synchronized (last) {
+                    if (frame <= last[streamId]) {
+                        outOfOrder.incrementAndGet();
+                    }
+                    last[streamId] = frame;
+                }
+                super.process(streamId, frame);
+            }
+        };
+        FrameScheduler<Integer> scheduler = new FrameScheduler<>(4, handler);
+        for (int s = 0; s < streams; s++) {
+            scheduler.addStream(s, 1, frames, 1, DropPolicy.BLOCK);
+        }
+        scheduler.start();
+        for (int i = 0; i < frames; i++) {
+            for (int s = 0; s < streams; s++) {
+                assertTrue(scheduler.submit(s, i));
+            }
+        }
+        waitFor(() -> handler.processed.size() == streams * frames);
+        scheduler.shutdown();
+        assertEquals(0, outOfOrder.get());
+        for (int s = 0; s < streams; s++) {
+            assertEquals(frames, scheduler.getStats(s).processed);
+            assertEquals(0, scheduler.getStats(s).dropped);
+        }
+    }
+
+    private interface Condition {
+        boolean met();
+    }
+
+    private static void waitFor(Condition condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.met()) {
+            assertTrue("Timed out", System.nanoTime() < deadline);
+            sleep(1);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
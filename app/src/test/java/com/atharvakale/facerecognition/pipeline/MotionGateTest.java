@@ -0,0 +1,123 @@
+package com.atharvakale.facerecognition.pipeline;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Motion gating on synthetic luma frames: static scenes are skipped, motion and tracked faces
+ * pass, and an idle gate only checks one frame per interval
+ */
+public class MotionGateTest {
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final long FRAME_MS = 33;
+    private static final long TRACK_HOLD_MS = 500;
+    private static final long IDLE_TIMEOUT_MS = 2000;
+    private static final long IDLE_INTERVAL_MS = 500;
+
+    private MotionGate gate;
+    private ByteBuffer frame;
+
+    @Before
+    public void setUp() {
+        gate = new MotionGate(16, 12, 12f, 0.01f, 0.05f, TRACK_HOLD_MS, IDLE_TIMEOUT_MS, IDLE_INTERVAL_MS);
+        frame = ByteBuffer.allocate(WIDTH * HEIGHT);
+        fill(frame, 80);
+    }
+
+    @Test
+    public void staticScene_isGatedAfterFirstFrame() {
+        assertTrue(check(0));
+        for (long t = FRAME_MS; t < 1000; t += FRAME_MS) {
+            assertFalse(check(t));
+        }
+        assertTrue(gate.getFramesGated() > 0);
+        assertEquals(1, gate.getMotionFrames());
+    }
+
+    @Test
+    public void movingBlock_passesGate() {
+        check(0);
+        check(FRAME_MS);
+        drawBlock(frame, 100, 60, 60, 60, 220);
+        assertTrue(check(2 * FRAME_MS));
+    }
+
+    @Test
+    public void noisyStaticScene_isGated() {
+        check(0);
+        // Sensor noise of a few levels stays below the cell threshold
+        for (int i = 0; i < frame.capacity(); i += 7) {
+            frame.put(i, (byte) (80 + (i % 5)));
+        }
+        assertFalse(check(FRAME_MS));
+    }
+
+    @Test
+    public void trackedFace_keepsGateOpenUntilHoldExpires() {
+        check(0);
+        gate.onFrameProcessed(true, 20, 0);
+        assertTrue(check(FRAME_MS));
+        assertTrue(check(TRACK_HOLD_MS));
+        assertFalse(check(TRACK_HOLD_MS + FRAME_MS));
+    }
+
+    @Test
+    public void idleGate_checksOneFramePerInterval() {
+        check(0);
+        gate.onFrameProcessed(false, 30, 0);
+        long t = FRAME_MS;
+        for (; t < IDLE_TIMEOUT_MS; t += FRAME_MS) {
+            check(t);
+        }
+        assertTrue(gate.isIdle(t));
+
+        long idleBefore = gate.getIdleFrames();
+        for (long end = t + 2 * IDLE_INTERVAL_MS; t < end; t += FRAME_MS) {
+            assertFalse(check(t));
+        }
+        long checked = (2 * IDLE_INTERVAL_MS) / FRAME_MS - (gate.getIdleFrames() - idleBefore);
+        assertTrue("checked " + checked, checked <= 3);
+
+        // Motion wakes the gate on the next checked frame
+        drawBlock(frame, 0, 0, 160, 120, 200);
+        boolean woke = false;
+        for (long end = t + IDLE_INTERVAL_MS + FRAME_MS; t < end && !woke; t += FRAME_MS) {
+            woke = check(t);
+        }
+        assertTrue(woke);
+        assertFalse(gate.isIdle(t));
+        assertTrue(gate.getEstimatedCpuSavedMs() > 0f);
+    }
+
+    @Test
+    public void disabledGate_passesEverything() {
+        gate.setEnabled(false);
+        for (long t = 0; t < 1000; t += FRAME_MS) {
+            assertTrue(check(t));
+        }
+        assertEquals(0, gate.getFramesGated());
+    }
+
+    private boolean check(long nowMs) {
+        return gate.shouldProcess(frame, WIDTH, HEIGHT, WIDTH, 1, nowMs);
+    }
+
+    private static void fill(ByteBuffer buffer, int value) {
+        for (int i = 0; i < buffer.capacity(); i++) {
+            buffer.put(i, (byte) value);
+        }
+    }
+
+    private static void drawBlock(ByteBuffer buffer, int left, int top, int width, int height, int value) {
+        for (int y = top; y < top + height; y++) {
+            for (int x = left; x < left + width; x++) {
+                buffer.put(y * WIDTH + x, (byte) value);
+            }
+        }
+    }
+}
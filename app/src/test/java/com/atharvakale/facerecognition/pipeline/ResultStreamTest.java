@@ -0,0 +1,201 @@
+package com.atharvakale.facerecognition.pipeline;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Conflating results to one delivery per key per frame
+ */
+public class ResultStreamTest {
+
+    /**
+     * Frame clock driven by the test: callbacks run when a frame is ticked
+     */
+    private static class ManualClock implements ResultStream.FrameClock {
+        final List<Runnable> posted = new ArrayList<>();
+
+        @Override
+        public synchronized void postFrame(Runnable callback) {
+            posted.add(callback);
+        }
+
+        void tick() {
+            List<Runnable> due;
+            synchronized (this) {
+                due = new ArrayList<>(posted);
+                posted.clear();
+            }
+            for (Runnable callback : due) {
+                callback.run();
+            }
+        }
+
+        synchronized int pendingCallbacks() {
+            return posted.size();
+        }
+    }
+
+    private static class Recorder implements ResultStream.Subscriber<String, Integer> {
+        final List<Map<String, Integer>> frames = new ArrayList<>();
+
+        @Override
+        public void onResults(Map<String, Integer> latest) {
+            frames.add(new LinkedHashMap<>(latest));
+        }
+    }
+
+    @Test
+    public void burst_isConflatedToTheLatestPerKey() {
+        ManualClock clock = new ManualClock();
+        ResultStream<String, Integer> stream = new ResultStream<>(clock, 16);
+        Recorder recorder = new Recorder();
+        stream.subscribe(recorder);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(stream.publish("face/0", i));
+        }
+        stream.publish("preview/0", 7);
+        stream.publish("face/1", 3);
+        assertEquals(1, clock.pendingCallbacks());
+        clock.tick();
+
+        assertEquals(1, recorder.frames.size());
+        Map<String, Integer> frame = recorder.frames.get(0);
+        assertEquals(Arrays.asList("face/0", "preview/0", "face/1"), new ArrayList<>(frame.keySet()));
+        assertEquals(Integer.valueOf(99), frame.get("face/0"));
+
+        ResultStream.Stats stats = stream.getStats();
+        assertEquals(102, stats.published);
+        assertEquals(3, stats.delivered);
+        assertEquals(99, stats.conflated);
+        assertEquals(0, stats.dropped);
+        assertEquals(1, stats.frames);
+        assertEquals(0, stats.pending);
+    }
+
+    @Test
+    public void deliveries_followFrames() {
+        ManualClock clock = new ManualClock();
+        ResultStream<String, Integer> stream = new ResultStream<>(clock, 16);
+        Recorder recorder = new Recorder();
+        stream.subscribe(recorder);
+
+        // Nothing published: no frame callback, nothing delivered
+        clock.tick();
+        assertTrue(recorder.frames.isEmpty());
+
+        stream.publish("face/0", 1);
+        clock.tick();
+        stream.publish("face/0", 2);
+        stream.publish("error", 5);
+        clock.tick();
+        clock.tick();
+
+        assertEquals(2, recorder.frames.size());
+        assertEquals(Integer.valueOf(1), recorder.frames.get(0).get("face/0"));
+        assertEquals(Arrays.asList("face/0", "error"), new ArrayList<>(recorder.frames.get(1).keySet()));
+        assertEquals(2, stream.getStats().frames);
+    }
+
+    @Test
+    public void reorderedOnUpdate_oldestKeyIsDroppedWhenFull() {
+        ManualClock clock = new ManualClock();
+        ResultStream<String, Integer> stream = new ResultStream<>(clock, 3);
+        Recorder recorder = new Recorder();
+        stream.subscribe(recorder);
+
+        stream.publish("a", 1);
+        stream.publish("b", 2);
+        stream.publish("c", 3);
+        stream.publish("a", 4);     // a is now the latest update
+        stream.publish("d", 5);     // evicts b
+        clock.tick();
+
+        assertEquals(Arrays.asList("c", "a", "d"), new ArrayList<>(recorder.frames.get(0).keySet()));
+        assertEquals(1, stream.getStats().dropped);
+        assertEquals(1, stream.getStats().conflated);
+    }
+
+    @Test
+    public void withoutSubscribers_resultsAreDropped() {
+        ManualClock clock = new ManualClock();
+        ResultStream<String, Integer> stream = new ResultStream<>(clock, 16);
+        assertFalse(stream.publish("face/0", 1));
+        assertEquals(0, clock.pendingCallbacks());
+
+        Recorder recorder = new Recorder();
+        stream.subscribe(recorder);
+        stream.publish("face/0", 2);
+        stream.publish("error", 3);
+        stream.unsubscribe(recorder);
+        clock.tick();
+
+        assertTrue(recorder.frames.isEmpty());
+        assertEquals(3, stream.getStats().dropped);
+        assertEquals(0, stream.getStats().pending);
+    }
+
+    @Test
+    public void producers_neverWaitForASlowSubscriber() throws Exception {
+        ManualClock clock = new ManualClock();
+        ResultStream<String, Integer> stream = new ResultStream<>(clock, 16);
+        CountDownLatch delivering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        stream.subscribe(latest -> {
+            delivering.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        stream.publish("face/0", 0);
+        Thread ui = new Thread(clock::tick);
+        ui.start();
+        assertTrue(delivering.await(5, TimeUnit.SECONDS));
+
+        // The UI thread is stuck in the subscriber; the frame path keeps publishing
+        int producers = 4;
+        int perProducer = 100000;
+        Thread[] threads = new Thread[producers];
+        long start = System.nanoTime();
+        for (int p = 0; p < producers; p++) {
+            String key = "face/" + p;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    stream.publish(key, i);
+                }
+            });
+            threads[p].start();
+        }
+        for (Thread thread : threads) {
+            thread.join(10000);
+            assertFalse(thread.isAlive());
+        }
+        long publishNanos = System.nanoTime() - start;
+        // A publish only swaps the latest value per key; it never queues behind the subscriber
+        assertTrue("ns per publish " + publishNanos / (producers * perProducer),
+            publishNanos / (producers * perProducer) < 10000);
+
+        ResultStream.Stats stats = stream.getStats();
+        assertEquals(producers, stats.pending);
+        assertEquals(1, clock.pendingCallbacks());
+        release.countDown();
+        ui.join(5000);
+        clock.tick();
+
+        stats = stream.getStats();
+        assertEquals(1 + producers, stats.delivered);
+        assertEquals((long) producers * perProducer - producers, stats.conflated);
+        assertEquals(2, stats.frames);
+    }
+}
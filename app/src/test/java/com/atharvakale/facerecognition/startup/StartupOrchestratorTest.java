@@ -0,0 +1,243 @@
+package com.atharvakale.facerecognition.startup;
+
+import android.graphics.Bitmap;
+
+import androidx.camera.core.ImageProxy;
+
+import com.atharvakale.facerecognition.data.PreferencesRepository;
+import com.atharvakale.facerecognition.data.journal.RecognitionJournal;
+import com.atharvakale.facerecognition.data.thumbnails.ThumbnailStore;
+import com.atharvakale.facerecognition.features.face.FaceRecognitionManager;
+import com.atharvakale.facerecognition.features.face.detection.DetectedFace;
+import com.atharvakale.facerecognition.features.face.detection.FaceDetector;
+import com.atharvakale.facerecognition.ml.MLModelManager;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Preload phase ordering, and what happens to the other components when a phase fails
+ * A repository and manager need a device, so phases hand over none and the fallback path is observed
+ */
+public class StartupOrchestratorTest {
+
+    private static class RecordingModelManager extends MLModelManager {
+        final List<String> events;
+
+        RecordingModelManager(List<String> events) {
+            super(null);
+            this.events = events;
+        }
+
+        @Override
+        public void cleanup() {
+            events.add("model_cleanup");
+        }
+    }
+
+    private static class RecordingDetector implements FaceDetector {
+        final List<String> events;
+
+        RecordingDetector(List<String> events) {
+            this.events = events;
+        }
+
+        @Override
+        public List<DetectedFace> detect(ImageProxy imageProxy, Bitmap frameBitmap, int rotationDegrees) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public FaceDetector newInstance() {
+            return this;
+        }
+
+        @Override
+        public void close() {
+            events.add("detector_close");
+        }
+    }
+
+    /**
+     * Phases recording the order they run in; the named phase throws
+     */
+    private static class ScriptedPhases implements StartupOrchestrator.Phases {
+        final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        final String failing;
+
+        ScriptedPhases(String failing) {
+            this.failing = failing;
+        }
+
+        private void run(String phase) throws Exception {
+            events.add(phase);
+            if (phase.equals(failing)) {
+                throw new IllegalStateException(phase + " failed");
+            }
+        }
+
+        @Override
+        public MLModelManager loadModel() throws Exception {
+            run("model_load");
+            return new RecordingModelManager(events);
+        }
+
+        @Override
+        public void warmUpModel(MLModelManager modelManager) throws Exception {
+            run("model_warmup");
+        }
+
+        @Override
+        public FaceDetector createDetector() throws Exception {
+            run("detector_create");
+            return new RecordingDetector(events);
+        }
+
+        @Override
+        public void warmUpDetector(FaceDetector detector) throws Exception {
+            run("detector_warmup");
+        }
+
+        @Override
+        public PreferencesRepository openRepository() throws Exception {
+            run("repository_open");
+            return null;
+        }
+
+        @Override
+        public RecognitionJournal openJournal() throws Exception {
+            run("journal_open");
+            return null;
+        }
+
+        @Override
+        public ThumbnailStore openThumbnails() throws Exception {
+            run("thumbnails_open");
+            return null;
+        }
+
+        @Override
+        public FaceRecognitionManager assemble(MLModelManager modelManager, FaceDetector detector,
+                                               PreferencesRepository repository, RecognitionJournal journal,
+                                               ThumbnailStore thumbnails) throws Exception {
+            run("assemble");
+            return null;
+        }
+
+        @Override
+        public FaceRecognitionManager createFallback() throws Exception {
+            run("fallback");
+            return null;
+        }
+    }
+
+    private static class RecordingCallback implements StartupOrchestrator.ManagerCallback {
+        String error;
+        int calls;
+
+        @Override
+        public void onReady(FaceRecognitionManager manager) {
+            calls++;
+        }
+
+        @Override
+        public void onError(String error) {
+            this.error = error;
+            calls++;
+        }
+    }
+
+    /**
+     * Run the hand-over posted to the main thread
+     */
+    private static void deliver(BlockingQueue<Runnable> mainThread) throws InterruptedException {
+        Runnable delivery = mainThread.poll(5, TimeUnit.SECONDS);
+        assertNotNull(delivery);
+        delivery.run();
+    }
+
+    @Test
+    public void warmUps_followTheirComponents_andAFailedPhaseReleasesTheOthers() throws Exception {
+        ScriptedPhases phases = new ScriptedPhases("repository_open");
+        BlockingQueue<Runnable> mainThread = new LinkedBlockingQueue<>();
+        StartupOrchestrator orchestrator = new StartupOrchestrator(phases, mainThread::add);
+        RecordingCallback callback = new RecordingCallback();
+
+        orchestrator.start();
+        orchestrator.requestFaceRecognitionManager(callback);
+        deliver(mainThread);
+
+        List<String> events = new ArrayList<>(phases.events);
+        assertTrue(events.indexOf("model_load") < events.indexOf("model_warmup"));
+        assertTrue(events.indexOf("detector_create") < events.indexOf("detector_warmup"));
+        // Without a repository nothing is assembled, and the warmed-up components are released
+        assertFalse(events.contains("assemble"));
+        assertTrue(events.contains("model_cleanup"));
+        assertTrue(events.contains("detector_close"));
+        int fallback = events.indexOf("fallback");
+        for (String phase : new String[]{"model_warmup", "detector_warmup", "journal_open", "thumbnails_open",
+                "model_cleanup", "detector_close"}) {
+            assertTrue(phase, events.indexOf(phase) < fallback);
+        }
+        assertEquals(1, callback.calls);
+        assertNotNull(callback.error);
+        assertTrue(orchestrator.getPhaseTimings().containsKey("detector_warmup"));
+    }
+
+    @Test
+    public void failedWarmUp_closesItsComponent_andFallsBack() throws Exception {
+        ScriptedPhases phases = new ScriptedPhases("detector_warmup");
+        BlockingQueue<Runnable> mainThread = new LinkedBlockingQueue<>();
+        StartupOrchestrator orchestrator = new StartupOrchestrator(phases, mainThread::add);
+        RecordingCallback callback = new RecordingCallback();
+
+        orchestrator.start();
+        orchestrator.requestFaceRecognitionManager(callback);
+        deliver(mainThread);
+
+        List<String> events = new ArrayList<>(phases.events);
+        assertEquals(1, Collections.frequency(events, "detector_close"));
+        assertFalse(events.contains("assemble"));
+        // The model finished loading, so it is released before the fallback builds its own
+        assertTrue(events.indexOf("model_cleanup") < events.indexOf("fallback"));
+        assertEquals(1, callback.calls);
+        assertNotNull(callback.error);
+    }
+
+    @Test
+    public void cancelledCaller_isNotCalled() throws Exception {
+        ScriptedPhases phases = new ScriptedPhases(null);
+        BlockingQueue<Runnable> mainThread = new LinkedBlockingQueue<>();
+        StartupOrchestrator orchestrator = new StartupOrchestrator(phases, mainThread::add);
+        RecordingCallback callback = new RecordingCallback();
+
+        orchestrator.start();
+        orchestrator.requestFaceRecognitionManager(callback);
+        orchestrator.cancel(callback);
+        deliver(mainThread);
+
+        assertEquals(0, callback.calls);
+    }
+
+    @Test
+    public void requestWithoutStart_buildsTheManagerFromScratch() throws Exception {
+        ScriptedPhases phases = new ScriptedPhases(null);
+        BlockingQueue<Runnable> mainThread = new LinkedBlockingQueue<>();
+        StartupOrchestrator orchestrator = new StartupOrchestrator(phases, mainThread::add);
+        RecordingCallback callback = new RecordingCallback();
+
+        orchestrator.requestFaceRecognitionManager(callback);
+        deliver(mainThread);
+
+        assertEquals(Collections.singletonList("fallback"), phases.events);
+        assertEquals(1, callback.calls);
+    }
+}